@@ -29,6 +29,7 @@ import java.util.Properties;
 import org.apache.batik.dom.AbstractDocument;
 import org.apache.batik.dom.svg.SVGDocumentFactory;
 import org.apache.batik.dom.util.SAXDocumentFactory;
+import org.apache.batik.dom.util.XMLReaderPool;
 import org.apache.batik.util.MimeTypeConstants;
 import org.apache.batik.util.ParsedURL;
 
@@ -120,6 +121,18 @@ public class SAXSVGDocumentFactory
         super(SVGDOMImplementation.getDOMImplementation(), parser, dd);
     }
 
+    /**
+     * Creates a new SVGDocumentFactory object taking its parsers from
+     * the given pool.
+     * @param pool The pool of SAX2 parsers.
+     * @param dd Whether a document descriptor must be generated.
+     */
+    public SAXSVGDocumentFactory(XMLReaderPool pool, boolean dd) {
+        super(SVGDOMImplementation.getDOMImplementation(),
+              pool.getParserClassName(), dd);
+        setXMLReaderPool(pool);
+    }
+
     public SVGDocument createSVGDocument(String uri) throws IOException {
         return (SVGDocument)createDocument(uri);
     }
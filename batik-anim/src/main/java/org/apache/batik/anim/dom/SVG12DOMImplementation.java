@@ -18,7 +18,6 @@
  */
 package org.apache.batik.anim.dom;
 
-import java.net.URL;
 import java.util.HashMap;
 
 import org.apache.batik.css.engine.CSSContext;
@@ -41,7 +40,6 @@ import org.apache.batik.util.ParsedURL;
 import org.apache.batik.util.SVG12Constants;
 import org.apache.batik.util.XBLConstants;
 
-import org.w3c.css.sac.InputSource;
 import org.w3c.dom.Document;
 import org.w3c.dom.DocumentType;
 import org.w3c.dom.DOMImplementation;
@@ -78,13 +76,8 @@ public class SVG12DOMImplementation
         ParsedURL durl = ((SVGOMDocument)doc).getParsedURL();
         CSSEngine result = new SVG12CSSEngine(doc, durl, ep, vms, sms, ctx);
 
-        URL url = getClass().getResource("resources/UserAgentStyleSheet.css");
-        if (url != null) {
-            ParsedURL purl = new ParsedURL(url);
-            InputSource is = new InputSource(purl.toString());
-            result.setUserAgentStyleSheet
-                (result.parseStyleSheet(is, purl, "all"));
-        }
+        result.setUserAgentStyleSheet
+            (getUserAgentStyleSheet(result, vms, sms));
 
         return result;
     }
@@ -19,6 +19,7 @@
 package org.apache.batik.anim.dom;
 
 import java.net.URL;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import org.apache.batik.css.dom.CSSOMSVGViewCSS;
@@ -79,6 +80,14 @@ public class SVGDOMImplementation
 
     protected HashMap<String, ElementFactory> factories;
 
+    /**
+     * The parsed user agent style sheet and the managers it was
+     * parsed with.
+     */
+    protected org.apache.batik.css.engine.StyleSheet userAgentStyleSheet;
+    protected ValueManager     [] userAgentStyleSheetVMs;
+    protected ShorthandManager [] userAgentStyleSheetSMs;
+
     /**
      * Returns the default instance of this class.
      */
@@ -111,17 +120,41 @@ public class SVGDOMImplementation
         ParsedURL durl = ((SVGOMDocument)doc).getParsedURL();
         CSSEngine result = new SVGCSSEngine(doc, durl, ep, vms, sms, ctx);
 
-        URL url = getClass().getResource("resources/UserAgentStyleSheet.css");
-        if (url != null) {
-            ParsedURL purl = new ParsedURL(url);
-            InputSource is = new InputSource(purl.toString());
-            result.setUserAgentStyleSheet
-                (result.parseStyleSheet(is, purl, "all"));
-        }
+        result.setUserAgentStyleSheet
+            (getUserAgentStyleSheet(result, vms, sms));
 
         return result;
     }
 
+    /**
+     * Returns the user agent style sheet for <code>eng</code>.
+     * The style sheet only depends on the value and shorthand managers
+     * of the engine, so it is parsed once and shared by all the engines
+     * created with the same managers.  The CSS engine never modifies
+     * its user agent style sheet.
+     */
+    protected synchronized org.apache.batik.css.engine.StyleSheet
+        getUserAgentStyleSheet(CSSEngine eng,
+                               ValueManager     [] vms,
+                               ShorthandManager [] sms) {
+        if ((userAgentStyleSheet != null) &&
+            Arrays.equals(vms, userAgentStyleSheetVMs) &&
+            Arrays.equals(sms, userAgentStyleSheetSMs)) {
+            return userAgentStyleSheet;
+        }
+
+        URL url = getClass().getResource("resources/UserAgentStyleSheet.css");
+        if (url == null) {
+            return null;
+        }
+        ParsedURL purl = new ParsedURL(url);
+        InputSource is = new InputSource(purl.toString());
+        userAgentStyleSheet = eng.parseStyleSheet(is, purl, "all");
+        userAgentStyleSheetVMs = (vms == null) ? null : vms.clone();
+        userAgentStyleSheetSMs = (sms == null) ? null : sms.clone();
+        return userAgentStyleSheet;
+    }
+
     /**
      * Creates a ViewCSS.
      */
@@ -34,6 +34,9 @@ import java.awt.image.Raster;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.batik.ext.awt.image.GraphicsUtil;
 
@@ -183,6 +186,24 @@ abstract class MultipleGradientPaintContext implements PaintContext {
      */
     private static final int MAX_GRADIENT_ARRAY_SIZE = 5000;
 
+    /**
+     * Maximum number of gradient tables kept in the tables cache.
+     */
+    private static final int MAX_CACHED_TABLES = 64;
+
+    /**
+     * The gradient tables computed by the last contexts created, keyed
+     * by TablesKey.  A paint creates a new context for each shape it
+     * fills, this avoids computing the same tables again for each of
+     * them.
+     */
+    private static final Map tablesCache =
+        new LinkedHashMap(MAX_CACHED_TABLES, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > MAX_CACHED_TABLES;
+            }
+        };
+
    /** Constructor for superclass. Does some initialization, but leaves most
     * of the heavy-duty math for calculateGradient(), so the subclass may do
     * some other manipulation beforehand if necessary.  This is not possible
@@ -202,6 +223,59 @@ abstract class MultipleGradientPaintContext implements PaintContext {
                                         colorSpace)
         throws NoninvertibleTransformException
     {
+        // The inverse transform is needed to from device to user space.
+        // Get all the components of the inverse transform matrix.
+        AffineTransform tInv = t.createInverse();
+
+        double[] m = new double[6];
+        tInv.getMatrix(m);
+        a00 = (float)m[0];
+        a10 = (float)m[1];
+        a01 = (float)m[2];
+        a11 = (float)m[3];
+        a02 = (float)m[4];
+        a12 = (float)m[5];
+
+        //copy some flags
+        this.cycleMethod = cycleMethod;
+        this.colorSpace = colorSpace;
+
+        // Setup an example Model, we may refine it later.
+        if (cm.getColorSpace() == lrgbmodel_A.getColorSpace())
+            dataModel = lrgbmodel_A;
+        else if (cm.getColorSpace() == srgbmodel_A.getColorSpace())
+            dataModel = srgbmodel_A;
+        else
+            throw new IllegalArgumentException
+                ("Unsupported ColorSpace for interpolation");
+
+        // The tables only depend on the stops and on the way the colors
+        // are interpolated, contexts of the same gradient share them.
+        TablesKey key = new TablesKey(fractions, colors, cycleMethod,
+                                      colorSpace, dataModel);
+        GradientTables tables;
+        synchronized (tablesCache) {
+            tables = (GradientTables)tablesCache.get(key);
+        }
+        if (tables == null) {
+            calculateGradientStops(fractions, colors);
+            tables = new GradientTables(this);
+            synchronized (tablesCache) {
+                tablesCache.put(key, tables);
+            }
+        } else {
+            tables.copyTo(this);
+        }
+
+        model = GraphicsUtil.coerceColorModel(dataModel,
+                                              cm.isAlphaPremultiplied());
+    }
+
+    /**
+     * Fixes up the gradient stops and calculates the gradient tables
+     * from them.
+     */
+    private void calculateGradientStops(float[] fractions, Color[] colors) {
         //We have to deal with the cases where the 1st gradient stop is not
         //equal to 0 and/or the last gradient stop is not equal to 1.
         //In both cases, create a new point and replicate the previous
@@ -268,36 +342,7 @@ abstract class MultipleGradientPaintContext implements PaintContext {
             this.fractions[idx] = 1;
         }
 
-        // The inverse transform is needed to from device to user space.
-        // Get all the components of the inverse transform matrix.
-        AffineTransform tInv = t.createInverse();
-
-        double[] m = new double[6];
-        tInv.getMatrix(m);
-        a00 = (float)m[0];
-        a10 = (float)m[1];
-        a01 = (float)m[2];
-        a11 = (float)m[3];
-        a02 = (float)m[4];
-        a12 = (float)m[5];
-
-        //copy some flags
-        this.cycleMethod = cycleMethod;
-        this.colorSpace = colorSpace;
-
-        // Setup an example Model, we may refine it later.
-        if (cm.getColorSpace() == lrgbmodel_A.getColorSpace())
-            dataModel = lrgbmodel_A;
-        else if (cm.getColorSpace() == srgbmodel_A.getColorSpace())
-            dataModel = srgbmodel_A;
-        else
-            throw new IllegalArgumentException
-                ("Unsupported ColorSpace for interpolation");
-
         calculateGradientFractions(loColors, hiColors);
-
-        model = GraphicsUtil.coerceColorModel(dataModel,
-                                              cm.isAlphaPremultiplied());
     }
 
 
@@ -779,6 +824,9 @@ abstract class MultipleGradientPaintContext implements PaintContext {
               int idx1 = (int)(position);
               if (idx1+1 < gradient.length)
                 return gradient[idx1];
+              // A tiny negative position may have been rounded up to 1.
+              if (idx1 >= gradient.length)
+                idx1 = gradient.length-1;
 
               w = (int)((position-idx1)*(1<<16));
               c1 = gradient[idx1];
@@ -806,24 +854,7 @@ abstract class MultipleGradientPaintContext implements PaintContext {
               }
             }
 
-            return
-              ((((  (  (c1>>  8)           &0xFF0000)+
-                    ((((c2>>>24)     )-((c1>>>24)     ))*w))&0xFF0000)<< 8) |
-
-               (((  (  (c1     )           &0xFF0000)+
-                    ((((c2>> 16)&0xFF)-((c1>> 16)&0xFF))*w))&0xFF0000)    ) |
-
-               (((  (  (c1<<  8)           &0xFF0000)+
-                    ((((c2>>  8)&0xFF)-((c1>>  8)&0xFF))*w))&0xFF0000)>> 8) |
-
-               (((  (  (c1<< 16)           &0xFF0000)+
-                    ((((c2     )&0xFF)-((c1     )&0xFF))*w))&0xFF0000)>>16));
-
-            // return c1 +
-            //   ((( ((((c2>>>24)     )-((c1>>>24)     ))*w)&0xFF0000)<< 8) |
-            //    (( ((((c2>> 16)&0xFF)-((c1>> 16)&0xFF))*w)&0xFF0000)    ) |
-            //    (( ((((c2>>  8)&0xFF)-((c1>>  8)&0xFF))*w)&0xFF0000)>> 8) |
-            //    (( ((((c2     )&0xFF)-((c1     )&0xFF))*w)&0xFF0000)>>16));
+            return blend(c1, c2, w);
         }
 
         else {  //cycleMethod == MultipleGradientPaint.REFLECT
@@ -869,6 +900,95 @@ abstract class MultipleGradientPaintContext implements PaintContext {
         return gradientOverflow;
     }
 
+    /**
+     * Blends two colors, <code>w</code> is the weight of the second
+     * color in 16.16 fixed point.
+     */
+    private static int blend(int c1, int c2, int w) {
+        return
+          ((((  (  (c1>>  8)           &0xFF0000)+
+                ((((c2>>>24)     )-((c1>>>24)     ))*w))&0xFF0000)<< 8) |
+
+           (((  (  (c1     )           &0xFF0000)+
+                ((((c2>> 16)&0xFF)-((c1>> 16)&0xFF))*w))&0xFF0000)    ) |
+
+           (((  (  (c1<<  8)           &0xFF0000)+
+                ((((c2>>  8)&0xFF)-((c1>>  8)&0xFF))*w))&0xFF0000)>> 8) |
+
+           (((  (  (c1<< 16)           &0xFF0000)+
+                ((((c2     )&0xFF)-((c1     )&0xFF))*w))&0xFF0000)>>16));
+
+        // return c1 +
+        //   ((( ((((c2>>>24)     )-((c1>>>24)     ))*w)&0xFF0000)<< 8) |
+        //    (( ((((c2>> 16)&0xFF)-((c1>> 16)&0xFF))*w)&0xFF0000)    ) |
+        //    (( ((((c2>>  8)&0xFF)-((c1>>  8)&0xFF))*w)&0xFF0000)>> 8) |
+        //    (( ((((c2     )&0xFF)-((c1     )&0xFF))*w)&0xFF0000)>>16));
+    }
+
+    /**
+     * Stores in <code>pixels</code>, from <code>off</code>, the colors
+     * of the first <code>w</code> gradient positions of
+     * <code>positions</code>.  This gives the same colors as calling
+     * indexIntoGradientsArrays(float) for each position, but the cycle
+     * method and lookup mode are only tested once, so that the loops
+     * for the fast lookup mode are small enough to be unrolled by the
+     * JIT.
+     */
+    protected final void indexIntoGradientsArrays(float[] positions,
+                                                  int[] pixels, int off,
+                                                  int w) {
+        if (!isSimpleLookup) {
+            for (int i = 0; i < w; i++)
+                pixels[off + i] = indexIntoGradientsArrays(positions[i]);
+            return;
+        }
+
+        final int[] grad = gradient;
+        final int size = fastGradientArraySize;
+
+        if (cycleMethod == MultipleGradientPaint.NO_CYCLE) {
+            final int under = gradientUnderflow;
+            final int over  = gradientOverflow;
+            for (int i = 0; i < w; i++) {
+                float p = positions[i];
+                int rgb;
+                if (p >= 1)      rgb = over;
+                else if (p <= 0) rgb = under;
+                else             rgb = grad[(int)(p * size)];
+                pixels[off + i] = rgb;
+            }
+        } else if (cycleMethod == MultipleGradientPaint.REPEAT) {
+            final int len = grad.length;
+            for (int i = 0; i < w; i++) {
+                float p = positions[i];
+                p = p - (int)p;
+                if (p < 0)
+                    p = p + 1;
+                p *= len;
+                int idx = (int)p;
+                if (idx + 1 < len) {
+                    pixels[off + i] = grad[idx];
+                } else {
+                    // Blend the last entry with the first one.
+                    if (idx >= len) idx = len - 1;
+                    pixels[off + i] = blend(grad[idx], grad[0],
+                                            (int)((p - idx) * (1 << 16)));
+                }
+            }
+        } else { // cycleMethod == MultipleGradientPaint.REFLECT
+            for (int i = 0; i < w; i++) {
+                float p = positions[i];
+                if (p < 0)
+                    p = -p;
+                int part = (int)p;
+                p = p - part;
+                if ((part & 0x00000001) == 1)
+                    p = 1 - p;
+                pixels[off + i] = grad[(int)(p * size)];
+            }
+        }
+    }
+
 
     /** Helper function to index into the gradients array.  This is necessary
      * because each interval has an array of colors with uniform size 255.
@@ -1471,5 +1591,103 @@ abstract class MultipleGradientPaintContext implements PaintContext {
     public final ColorModel getColorModel() {
         return model;
     }
-}
 
+    /**
+     * The key of the tables cache: the gradient stops and the way the
+     * colors are interpolated.
+     */
+    private static final class TablesKey {
+        private final float[] fractions;
+        private final int[] colors;
+        private final Object cycleMethod;
+        private final Object colorSpace;
+        private final ColorSpace dataColorSpace;
+        private final int hash;
+
+        TablesKey(float[] fractions, Color[] colors, Object cycleMethod,
+                  Object colorSpace, ColorModel dataModel) {
+            this.fractions = (float[])fractions.clone();
+            this.colors = new int[colors.length];
+            for (int i = 0; i < colors.length; i++)
+                this.colors[i] = colors[i].getRGB();
+            this.cycleMethod = cycleMethod;
+            this.colorSpace = colorSpace;
+            this.dataColorSpace = dataModel.getColorSpace();
+
+            int h = Arrays.hashCode(this.fractions);
+            h = 31 * h + Arrays.hashCode(this.colors);
+            h = 31 * h + cycleMethod.hashCode();
+            h = 31 * h + colorSpace.hashCode();
+            hash = 31 * h + dataColorSpace.hashCode();
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof TablesKey))
+                return false;
+            TablesKey k = (TablesKey)o;
+            return hash == k.hash
+                && cycleMethod == k.cycleMethod
+                && colorSpace == k.colorSpace
+                && dataColorSpace == k.dataColorSpace
+                && Arrays.equals(fractions, k.fractions)
+                && Arrays.equals(colors, k.colors);
+        }
+    }
+
+    /**
+     * The gradient tables computed by a context.  The arrays are
+     * shared by all the contexts using the tables and must not be
+     * modified.
+     */
+    private static final class GradientTables {
+        private final float[] fractions;
+        private final float[] normalizedIntervals;
+        private final int[] gradient;
+        private final int[][] gradients;
+        private final int gradientsLength;
+        private final int fastGradientArraySize;
+        private final int gradientAverage;
+        private final int gradientUnderflow;
+        private final int gradientOverflow;
+        private final int transparencyTest;
+        private final boolean isSimpleLookup;
+        private final boolean hasDiscontinuity;
+        private final ColorModel dataModel;
+
+        GradientTables(MultipleGradientPaintContext c) {
+            fractions             = c.fractions;
+            normalizedIntervals   = c.normalizedIntervals;
+            gradient              = c.gradient;
+            gradients             = c.gradients;
+            gradientsLength       = c.gradientsLength;
+            fastGradientArraySize = c.fastGradientArraySize;
+            gradientAverage       = c.gradientAverage;
+            gradientUnderflow     = c.gradientUnderflow;
+            gradientOverflow      = c.gradientOverflow;
+            transparencyTest      = c.transparencyTest;
+            isSimpleLookup        = c.isSimpleLookup;
+            hasDiscontinuity      = c.hasDiscontinuity;
+            dataModel             = c.dataModel;
+        }
+
+        void copyTo(MultipleGradientPaintContext c) {
+            c.fractions             = fractions;
+            c.normalizedIntervals   = normalizedIntervals;
+            c.gradient              = gradient;
+            c.gradients             = gradients;
+            c.gradientsLength       = gradientsLength;
+            c.fastGradientArraySize = fastGradientArraySize;
+            c.gradientAverage       = gradientAverage;
+            c.gradientUnderflow     = gradientUnderflow;
+            c.gradientOverflow      = gradientOverflow;
+            c.transparencyTest      = transparencyTest;
+            c.isSimpleLookup        = isSimpleLookup;
+            c.hasDiscontinuity      = hasDiscontinuity;
+            c.dataModel             = dataModel;
+        }
+    }
+}
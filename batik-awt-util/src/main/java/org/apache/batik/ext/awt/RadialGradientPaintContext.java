@@ -66,6 +66,7 @@ final class RadialGradientPaintContext extends MultipleGradientPaintContext {
     private static final int FIXED_POINT_IMPL = 1;
     private static final int DEFAULT_IMPL     = 2;
     private static final int ANTI_ALIAS_IMPL  = 3;
+    private static final int SIMPLE_FOCUS_IMPL = 4;
 
     private int fillMethod;
 
@@ -215,6 +216,9 @@ final class RadialGradientPaintContext extends MultipleGradientPaintContext {
             this.calculateFixedPointSqrtLookupTable();
             fillMethod = FIXED_POINT_IMPL;
         }
+
+        if ((fillMethod == DEFAULT_IMPL) && isSimpleFocus)
+            fillMethod = SIMPLE_FOCUS_IMPL;
     }
 
     /**
@@ -242,6 +246,9 @@ final class RadialGradientPaintContext extends MultipleGradientPaintContext {
             // System.out.println("Calling AA");
             antiAliasFillRaster(pixels, off, adjust, x, y, w, h);
             break;
+        case SIMPLE_FOCUS_IMPL:
+            simpleFocusFillRaster(pixels, off, adjust, x, y, w, h);
+            break;
         case DEFAULT_IMPL:
         default:
             // System.out.println("Calling Default");
@@ -371,6 +378,38 @@ final class RadialGradientPaintContext extends MultipleGradientPaintContext {
         invSqStepFloat = 1.0f/sqStepFloat;
     }
 
+    /**
+     * Fills the raster when the focus is the center of the gradient
+     * circle, for the cases the fixed point fill does not handle.  The
+     * gradient position of a point is then its distance to the center
+     * divided by the radius.  The positions of a row are computed
+     * first, without dependencies between pixels, then turned into
+     * colors in a second loop.
+     */
+    private void simpleFocusFillRaster(int[] pixels, int off, int adjust,
+                                       int x, int y, int w, int h) {
+        final float invRadius = 1 / radius;
+
+        //constant part of X and Y coordinates relative to the center
+        final float constX = (a00*x) + (a01*y) + constA;
+        final float constY = (a10*x) + (a11*y) + constB;
+        final float[] gs = new float[w];
+        int indexer = off;
+
+        for (int j = 0; j < h; j++) { //for every row
+            final float rowX = (a01*j) + constX;
+            final float rowY = (a11*j) + constY;
+
+            for (int i = 0; i < w; i++) {
+                float dX = rowX + a00*i;
+                float dY = rowY + a10*i;
+                gs[i] = (float)Math.sqrt((dX * dX) + (dY * dY)) * invRadius;
+            }
+            indexIntoGradientsArrays(gs, pixels, indexer, w);
+            indexer += w + adjust;
+        }
+    }
+
     /** Fill the raster, cycling the gradient colors when a point falls outside
      *  of the perimeter of the 100% stop circle.
      *
@@ -410,7 +449,6 @@ final class RadialGradientPaintContext extends MultipleGradientPaintContext {
         final float precalc3 =-2 * centerX;//const in inner loop quad. formula
         float X; // User space point X coordinate
         float Y; // User space point Y coordinate
-        float g;//value between 0 and 1 specifying position in the gradient
         float det; //determinant of quadratic formula (should always be >0)
         float currentToFocusSq;//sq distance from the current pt. to focus
         float intersectToFocusSq;//sq distance from the intersect pt. to focus
@@ -419,6 +457,7 @@ final class RadialGradientPaintContext extends MultipleGradientPaintContext {
         int indexer = off; //index variable for pixels array
         int i, j; //indexing variables for FOR loops
         int pixInc = w+adjust;//incremental index change for pixels array
+        float[] gs = new float[w]; //gradient positions of a row
 
         for (j = 0; j < h; j++) { //for every row
 
@@ -489,14 +528,14 @@ final class RadialGradientPaintContext extends MultipleGradientPaintContext {
 
                 //want the percentage (0-1) of the current point along the
                 //focus-circumference line
-                g = (float)Math.sqrt(currentToFocusSq / intersectToFocusSq);
-
-                //Get the color at this point
-                pixels[indexer + i] = indexIntoGradientsArrays(g);
+                gs[i] = (float)Math.sqrt(currentToFocusSq / intersectToFocusSq);
 
                 X += a00; //incremental change in X, Y
                 Y += a10;
             } //end inner loop
+
+            //Get the colors of the row
+            indexIntoGradientsArrays(gs, pixels, indexer, w);
             indexer += pixInc;
         } //end outer loop
     }
@@ -73,6 +73,14 @@ public final class RenderingHintsKeyExt {
      */
     public static final RenderingHints.Key KEY_AVOID_TILE_PAINTING;
 
+    /**
+     * Hint holding the layer cache of the renderer, whose graphics
+     * nodes may be painted from a rasterized copy kept from an earlier
+     * frame.  The value is an
+     * <code>org.apache.batik.gvt.GraphicsNodeLayerCache</code>.
+     */
+    public static final RenderingHints.Key KEY_LAYER_CACHE;
+
     public static final Object VALUE_AVOID_TILE_PAINTING_ON = new Object();
     public static final Object VALUE_AVOID_TILE_PAINTING_OFF = new Object();
     public static final Object VALUE_AVOID_TILE_PAINTING_DEFAULT = new Object();
@@ -80,6 +88,7 @@ public final class RenderingHintsKeyExt {
     static {
         int base = 10100;
         RenderingHints.Key trans=null, aoi=null, bi=null, cs=null, atp=null;
+        RenderingHints.Key lc=null;
         while (true) {
             int val = base;
 
@@ -89,6 +98,7 @@ public final class RenderingHintsKeyExt {
                 bi    = new BufferedImageHintKey (val++);
                 cs    = new ColorSpaceHintKey    (val++);
                 atp   = new AvoidTilingHintKey   (val++);
+                lc    = new LayerCacheHintKey    (val++);
             } catch (Exception e) {
                 System.err.println
                     ("You have loaded the Batik jar files more than once\n" +
@@ -106,6 +116,7 @@ public final class RenderingHintsKeyExt {
         KEY_BUFFERED_IMAGE      = bi;
         KEY_COLORSPACE          = cs;
         KEY_AVOID_TILE_PAINTING = atp;
+        KEY_LAYER_CACHE         = lc;
     }
 
     /**
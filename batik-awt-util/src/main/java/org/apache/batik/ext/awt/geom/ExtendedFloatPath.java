@@ -0,0 +1,796 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.geom;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.FlatteningPathIterator;
+import java.awt.geom.IllegalPathStateException;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * A compact <code>ExtendedShape</code> storing its segments in one
+ * array of segment types and one array of float coordinates.
+ *
+ * <p>It is built with the same calls as {@link ExtendedGeneralPath}
+ * and gives the same results through both {@link
+ * #getExtendedPathIterator()} and {@link #getPathIterator}, but it
+ * stores each segment only once instead of keeping a
+ * <code>GeneralPath</code> next to the extended segments.  Each
+ * segment is tagged with the views it belongs to: a moveto not
+ * followed by anything drawn is only part of the extended path, an
+ * elliptical arc is stored as a SEG_ARCTO segment for the extended
+ * path followed by the Bezier curves approximating it for the AWT
+ * path.  Iterating over either view allocates nothing but the
+ * iterator.</p>
+ *
+ * <p>The bounds are those of all the points of the AWT path,
+ * including the control points, as computed by
+ * <code>GeneralPath</code>.</p>
+ *
+ * @version $Id$
+ */
+public class ExtendedFloatPath implements ExtendedShape, Cloneable {
+
+    /** Kind of a SEG_ARCTO segment in the types array. */
+    protected static final byte ARCTO = 5;
+
+    /** Mask of the segment kind in the types array. */
+    protected static final byte KIND = 0x0F;
+
+    /** Flag of the segments of the extended path. */
+    protected static final byte EXT = 0x10;
+
+    /** Flag of the segments of the AWT path. */
+    protected static final byte AWT = 0x20;
+
+    /**
+     * The number of coordinates of each segment kind.
+     */
+    protected static final int [] COORDS = { 2, 2, 4, 6, 0, 7 };
+
+    protected static final int INIT_SIZE = 20;
+
+    protected byte  [] types;
+    protected float [] coords;
+    protected int numTypes;
+    protected int numCoords;
+    protected int windingRule;
+
+    /** Index of the last extended segment and of its coordinates. */
+    protected int lastExt = -1;
+    protected int lastExtCoord;
+
+    /** Index of the extended segment before the last one. */
+    protected int prevExt = -1;
+
+    /** Index of the last AWT segment and of its coordinates. */
+    protected int lastAwt = -1;
+    protected int lastAwtCoord;
+
+    /** The number of coordinates of the extended path. */
+    protected int numExtCoords;
+
+    protected float mx, my, cx, cy;
+
+    /** The cached bounds, or null. */
+    protected Rectangle2D bounds;
+
+    /**
+     * Constructs a new <code>ExtendedFloatPath</code> with the non
+     * zero winding rule.
+     */
+    public ExtendedFloatPath() {
+        this(PathIterator.WIND_NON_ZERO, INIT_SIZE);
+    }
+
+    /**
+     * Constructs a new <code>ExtendedFloatPath</code> with the
+     * specified winding rule.
+     */
+    public ExtendedFloatPath(int rule) {
+        this(rule, INIT_SIZE);
+    }
+
+    /**
+     * Constructs a new <code>ExtendedFloatPath</code> with the
+     * specified winding rule and room for
+     * <code>initialCapacity</code> segments.
+     */
+    public ExtendedFloatPath(int rule, int initialCapacity) {
+        setWindingRule(rule);
+        types  = new byte[initialCapacity];
+        coords = new float[initialCapacity * 2];
+    }
+
+    /**
+     * Constructs a new <code>ExtendedFloatPath</code> from an
+     * arbitrary <code>Shape</code>.
+     */
+    public ExtendedFloatPath(Shape s) {
+        this();
+        if (s instanceof ExtendedShape) {
+            ExtendedPathIterator epi =
+                ((ExtendedShape)s).getExtendedPathIterator();
+            setWindingRule(epi.getWindingRule());
+            append(epi, false);
+        } else {
+            PathIterator pi = s.getPathIterator(null);
+            setWindingRule(pi.getWindingRule());
+            append(pi, false);
+        }
+    }
+
+    /**
+     * Appends a segment.
+     */
+    protected void add(int kind, int flags) {
+        int n = COORDS[kind];
+        if (numTypes == types.length) {
+            types = Arrays.copyOf(types, Math.max(types.length*2, 8));
+        }
+        if (numCoords + n > coords.length) {
+            coords = Arrays.copyOf
+                (coords, Math.max(coords.length*2, numCoords + n));
+        }
+        if ((flags & EXT) != 0) {
+            prevExt = lastExt;
+            lastExt = numTypes;
+            lastExtCoord = numCoords;
+            numExtCoords += n;
+        }
+        if ((flags & AWT) != 0) {
+            lastAwt = numTypes;
+            lastAwtCoord = numCoords;
+        }
+        types[numTypes++] = (byte)(kind | flags);
+        bounds = null;
+    }
+
+    protected int kind(int i) {
+        return types[i] & KIND;
+    }
+
+    /**
+     * Makes the segment <code>i</code>, a moveto, part of the AWT path.
+     * As <code>GeneralPath</code> does, a moveto directly following
+     * another one replaces it.
+     */
+    protected void addAwtMoveTo(int i, int coord) {
+        if ((types[i] & AWT) != 0) return;
+        if ((lastAwt != -1) && (kind(lastAwt) == PathIterator.SEG_MOVETO))
+            types[lastAwt] &= ~AWT;
+        types[i] |= AWT;
+        lastAwt = i;
+        lastAwtCoord = coord;
+        bounds = null;
+    }
+
+    /**
+     * Throws if the AWT path has no initial moveto.
+     */
+    protected void checkAwtMoveTo() {
+        if (lastAwt == -1)
+            throw new IllegalPathStateException
+                ("missing initial moveto in path definition");
+    }
+
+    /**
+     * Adds an elliptical arc, defined by two radii, an angle from the
+     * x-axis, a flag to choose the large arc or not, a flag to
+     * indicate if we increase or decrease the angles and the final
+     * point of the arc.
+     * @see ExtendedGeneralPath#arcTo
+     */
+    public synchronized void arcTo(float rx, float ry,
+                                   float angle,
+                                   boolean largeArcFlag,
+                                   boolean sweepFlag,
+                                   float x, float y) {
+
+        // Ensure radii are valid
+        if (rx == 0 || ry == 0) {
+            lineTo(x, y);
+            return;
+        }
+
+        checkMoveTo();  // check if prev command was moveto
+
+        // Get the current (x, y) coordinates of the path
+        double x0 = cx;
+        double y0 = cy;
+        if (x0 == x && y0 == y) {
+            // If the endpoints (x, y) and (x0, y0) are identical, then this
+            // is equivalent to omitting the elliptical arc segment entirely.
+            return;
+        }
+
+        Arc2D arc = ExtendedGeneralPath.computeArc
+            (x0, y0, rx, ry, angle, largeArcFlag, sweepFlag, x, y);
+        if (arc == null) return;
+
+        int c = numCoords;
+        add(ARCTO, EXT);
+        coords[c++] = rx;
+        coords[c++] = ry;
+        coords[c++] = angle;
+        coords[c++] = largeArcFlag?1:0;
+        coords[c++] = sweepFlag?1:0;
+        cx = coords[c++] = x;
+        cy = coords[c++] = y;
+        numCoords = c;
+
+        // Append the curves, connected to the current point the way
+        // GeneralPath.append(shape, true) does.
+        AffineTransform t = AffineTransform.getRotateInstance
+            (Math.toRadians(angle), arc.getCenterX(), arc.getCenterY());
+        PathIterator pi = arc.getPathIterator(t);
+        double [] vals = new double[6];
+        boolean connect = true;
+        while (!pi.isDone()) {
+            int type = pi.currentSegment(vals);
+            if (type == PathIterator.SEG_MOVETO) {
+                float px = (float)vals[0];
+                float py = (float)vals[1];
+                if (!connect || (lastAwt == -1)) {
+                    add(PathIterator.SEG_MOVETO, 0);
+                    coords[numCoords] = px;
+                    coords[numCoords+1] = py;
+                    addAwtMoveTo(numTypes-1, numCoords);
+                    numCoords += 2;
+                } else if ((kind(lastAwt) == PathIterator.SEG_CLOSE) ||
+                           (coords[lastAwtCoord+lastAwtCount()-2] != px) ||
+                           (coords[lastAwtCoord+lastAwtCount()-1] != py)) {
+                    addAwt(PathIterator.SEG_LINETO, vals);
+                }
+            } else if (type == PathIterator.SEG_CLOSE) {
+                if (kind(lastAwt) != PathIterator.SEG_CLOSE)
+                    add(PathIterator.SEG_CLOSE, AWT);
+            } else {
+                addAwt(type, vals);
+            }
+            connect = false;
+            pi.next();
+        }
+    }
+
+    /**
+     * Returns the number of coordinates of the last AWT segment.
+     */
+    private int lastAwtCount() {
+        return COORDS[kind(lastAwt)];
+    }
+
+    /**
+     * Appends an AWT only segment.
+     */
+    private void addAwt(int kind, double [] vals) {
+        checkAwtMoveTo();
+        int c = numCoords;
+        add(kind, AWT);
+        for (int i = 0; i < COORDS[kind]; i++)
+            coords[c++] = (float)vals[i];
+        numCoords = c;
+    }
+
+    /**
+     * Adds a point to the path by moving to the specified coordinates.
+     */
+    public synchronized void moveTo(float x, float y) {
+        // Don't add moveto to the AWT path unless there is a reason.
+        int c = numCoords;
+        add(PathIterator.SEG_MOVETO, EXT);
+        cx = mx = coords[c++] = x;
+        cy = my = coords[c++] = y;
+        numCoords = c;
+    }
+
+    /**
+     * Adds a point to the path by drawing a straight line from the
+     * current coordinates to the new specified coordinates.
+     */
+    public synchronized void lineTo(float x, float y) {
+        checkMoveTo();  // check if prev command was moveto
+        checkAwtMoveTo();
+
+        int c = numCoords;
+        add(PathIterator.SEG_LINETO, EXT|AWT);
+        cx = coords[c++] = x;
+        cy = coords[c++] = y;
+        numCoords = c;
+    }
+
+    /**
+     * Adds a quadratic Bezier curve to the path.
+     */
+    public synchronized void quadTo(float x1, float y1, float x2, float y2) {
+        checkMoveTo();  // check if prev command was moveto
+        checkAwtMoveTo();
+
+        int c = numCoords;
+        add(PathIterator.SEG_QUADTO, EXT|AWT);
+        coords[c++] = x1;
+        coords[c++] = y1;
+        cx = coords[c++] = x2;
+        cy = coords[c++] = y2;
+        numCoords = c;
+    }
+
+    /**
+     * Adds a cubic Bezier curve to the path.
+     */
+    public synchronized void curveTo(float x1, float y1,
+                                     float x2, float y2,
+                                     float x3, float y3) {
+        checkMoveTo();   // check if prev command was moveto
+        checkAwtMoveTo();
+
+        int c = numCoords;
+        add(PathIterator.SEG_CUBICTO, EXT|AWT);
+        coords[c++] = x1;
+        coords[c++] = y1;
+        coords[c++] = x2;
+        coords[c++] = y2;
+        cx = coords[c++] = x3;
+        cy = coords[c++] = y3;
+        numCoords = c;
+    }
+
+    /**
+     * Closes the current subpath.
+     */
+    public synchronized void closePath() {
+        // Don't double close path.
+        if ((lastExt != -1) && (kind(lastExt) == PathIterator.SEG_CLOSE))
+            return;
+
+        // Only close the AWT path if the previous command wasn't a moveto
+        int flags = EXT;
+        if ((lastExt != -1) &&
+            (kind(lastExt) != PathIterator.SEG_MOVETO) &&
+            (lastAwt != -1) &&
+            (kind(lastAwt) != PathIterator.SEG_CLOSE))
+            flags |= AWT;
+
+        add(PathIterator.SEG_CLOSE, flags);
+        cx = mx;
+        cy = my;
+    }
+
+    /**
+     * Checks if previous command was a moveto command,
+     * skipping a close command (if present).
+     */
+    protected void checkMoveTo() {
+        if (lastExt == -1) return;
+
+        switch (kind(lastExt)) {
+
+        case PathIterator.SEG_MOVETO:
+            addAwtMoveTo(lastExt, lastExtCoord);
+            break;
+
+        case PathIterator.SEG_CLOSE:
+            if (prevExt == -1) return;
+            if (kind(prevExt) == PathIterator.SEG_MOVETO) {
+                // The close is not part of the AWT path.
+                moveAwtMoveTo(prevExt);
+            }
+            break;
+
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Makes the moveto <code>i</code> part of the AWT path.  Its
+     * coordinates are the last two extended coordinates before the
+     * following close.
+     */
+    private void moveAwtMoveTo(int i) {
+        addAwtMoveTo(i, lastExtCoord - 2);
+    }
+
+    /**
+     * Appends the segments of <code>s</code>.
+     */
+    public void append(Shape s, boolean connect) {
+        append(s.getPathIterator(new AffineTransform()), connect);
+    }
+
+    /**
+     * Appends the segments of <code>pi</code>.
+     * @see ExtendedGeneralPath#append(PathIterator,boolean)
+     */
+    public void append(PathIterator pi, boolean connect) {
+        double [] vals = new double[6];
+
+        while (!pi.isDone()) {
+            Arrays.fill( vals, 0 );
+            int type = pi.currentSegment(vals);
+            pi.next();
+            if (connect && (numExtCoords != 0)) {
+                if (type == PathIterator.SEG_MOVETO) {
+                    double x = vals[0];
+                    double y = vals[1];
+                    if ((x != cx) ||
+                        (y != cy)) {
+                        // Change MOVETO to LINETO.
+                        type = PathIterator.SEG_LINETO;
+                    } else {
+                        // Redundant segment (move to current loc) drop it...
+                        if (pi.isDone()) break; // Nothing interesting
+                        type = pi.currentSegment(vals);
+                        pi.next();
+                    }
+                }
+                connect = false;
+            }
+
+            switch(type) {
+            case PathIterator.SEG_CLOSE:   closePath(); break;
+            case PathIterator.SEG_MOVETO:
+                moveTo ((float)vals[0], (float)vals[1]); break;
+            case PathIterator.SEG_LINETO:
+                lineTo ((float)vals[0], (float)vals[1]); break;
+            case PathIterator.SEG_QUADTO:
+                quadTo ((float)vals[0], (float)vals[1],
+                        (float)vals[2], (float)vals[3]); break;
+            case PathIterator.SEG_CUBICTO:
+                curveTo((float)vals[0], (float)vals[1],
+                        (float)vals[2], (float)vals[3],
+                        (float)vals[4], (float)vals[5]); break;
+            }
+        }
+    }
+
+    /**
+     * Appends the segments of <code>epi</code>.
+     * @see ExtendedGeneralPath#append(ExtendedPathIterator,boolean)
+     */
+    public void append(ExtendedPathIterator epi, boolean connect) {
+        float[] vals = new float[ 7 ];
+        while (!epi.isDone()) {
+            Arrays.fill( vals, 0 );
+            int type = epi.currentSegment(vals);
+            epi.next();
+            if (connect && (numExtCoords != 0)) {
+                if (type == PathIterator.SEG_MOVETO) {
+                    float x = vals[0];
+                    float y = vals[1];
+                    if ((x != cx) ||
+                        (y != cy)) {
+                        // Change MOVETO to LINETO.
+                        type = PathIterator.SEG_LINETO;
+                    } else {
+                        // Redundant segment (move to current loc) drop it...
+                        if (epi.isDone()) break; // Nothing interesting
+                        type = epi.currentSegment(vals);
+                        epi.next();
+                    }
+                }
+                connect = false;
+            }
+
+            switch(type) {
+            case PathIterator.SEG_CLOSE:   closePath(); break;
+            case PathIterator.SEG_MOVETO:
+                moveTo (vals[0], vals[1]); break;
+            case PathIterator.SEG_LINETO:
+                lineTo (vals[0], vals[1]); break;
+            case PathIterator.SEG_QUADTO:
+                quadTo (vals[0], vals[1],
+                        vals[2], vals[3]); break;
+            case PathIterator.SEG_CUBICTO:
+                curveTo(vals[0], vals[1],
+                        vals[2], vals[3],
+                        vals[4], vals[5]); break;
+            case ExtendedPathIterator.SEG_ARCTO:
+                arcTo  (vals[0], vals[1], vals[2],
+                        (vals[3]!=0), (vals[4]!=0),
+                        vals[5], vals[6]); break;
+            }
+        }
+    }
+
+    /**
+     * Returns the winding rule of the path.
+     */
+    public synchronized int getWindingRule() {
+        return windingRule;
+    }
+
+    /**
+     * Sets the winding rule of the path.
+     */
+    public void setWindingRule(int rule) {
+        if ((rule != PathIterator.WIND_EVEN_ODD) &&
+            (rule != PathIterator.WIND_NON_ZERO))
+            throw new IllegalArgumentException("winding rule must be " +
+                                               "WIND_EVEN_ODD or " +
+                                               "WIND_NON_ZERO");
+        windingRule = rule;
+    }
+
+    /**
+     * Get the current position or <code>null</code>.
+     */
+    public synchronized Point2D getCurrentPoint() {
+        if (numExtCoords == 0) return null;
+        return new Point2D.Double(cx, cy);
+    }
+
+    /**
+     * Returns the x coordinate of the current position, 0 if there
+     * is none.
+     */
+    public synchronized float getCurrentX() {
+        return cx;
+    }
+
+    /**
+     * Returns the y coordinate of the current position, 0 if there
+     * is none.
+     */
+    public synchronized float getCurrentY() {
+        return cy;
+    }
+
+    /**
+     * Returns the number of segments of the extended path.
+     */
+    public synchronized int getSegmentCount() {
+        int n = 0;
+        for (int i = 0; i < numTypes; i++) {
+            if ((types[i] & EXT) != 0) n++;
+        }
+        return n;
+    }
+
+    /**
+     * Removes all the segments of the path.
+     */
+    public synchronized void reset() {
+        numTypes = numCoords = numExtCoords = 0;
+        lastExt = prevExt = lastAwt = -1;
+        lastExtCoord = lastAwtCoord = 0;
+        mx = my = cx = cy = 0;
+        bounds = null;
+    }
+
+    /**
+     * Trims the arrays of the path to its size.
+     */
+    public synchronized void trimToSize() {
+        if (types.length != numTypes)
+            types = Arrays.copyOf(types, numTypes);
+        if (coords.length != numCoords)
+            coords = Arrays.copyOf(coords, numCoords);
+    }
+
+    /**
+     * Only the identity transform is supported, as for
+     * <code>ExtendedGeneralPath</code>.
+     */
+    public void transform(AffineTransform at) {
+        if (at.getType() != AffineTransform.TYPE_IDENTITY)
+            throw new IllegalArgumentException
+                ("ExtendedFloatPaths can not be transformed");
+    }
+
+    /**
+     * Returns a new <code>Path2D</code> holding the AWT path
+     * transformed by <code>at</code>.
+     */
+    public synchronized Shape createTransformedShape(AffineTransform at) {
+        return new Path2D.Float(this, at);
+    }
+
+    public synchronized Rectangle getBounds() {
+        return getBounds2D().getBounds();
+    }
+
+    public synchronized Rectangle2D getBounds2D() {
+        if (bounds == null) {
+            float x1, y1, x2, y2;
+            x1 = y1 = Float.POSITIVE_INFINITY;
+            x2 = y2 = Float.NEGATIVE_INFINITY;
+            int c = 0;
+            for (int i = 0; i < numTypes; i++) {
+                int t = types[i];
+                int n = COORDS[t & KIND];
+                if ((t & AWT) != 0) {
+                    for (int j = c; j < c + n; j += 2) {
+                        float x = coords[j];
+                        float y = coords[j+1];
+                        if (x < x1) x1 = x;
+                        if (y < y1) y1 = y;
+                        if (x > x2) x2 = x;
+                        if (y > y2) y2 = y;
+                    }
+                }
+                c += n;
+            }
+            if (x1 > x2) {
+                x1 = y1 = x2 = y2 = 0;
+            }
+            bounds = new Rectangle2D.Float(x1, y1, x2 - x1, y2 - y1);
+        }
+        return (Rectangle2D)bounds.clone();
+    }
+
+    public boolean contains(double x, double y) {
+        return Path2D.contains(getPathIterator(null), x, y);
+    }
+
+    public boolean contains(Point2D p) {
+        return Path2D.contains(getPathIterator(null), p);
+    }
+
+    public boolean contains(double x, double y, double w, double h) {
+        return Path2D.contains(getPathIterator(null), x, y, w, h);
+    }
+
+    public boolean contains(Rectangle2D r) {
+        return Path2D.contains(getPathIterator(null), r);
+    }
+
+    public boolean intersects(double x, double y, double w, double h) {
+        return Path2D.intersects(getPathIterator(null), x, y, w, h);
+    }
+
+    public boolean intersects(Rectangle2D r) {
+        return Path2D.intersects(getPathIterator(null), r);
+    }
+
+    /**
+     * Returns an iterator over the AWT path, elliptical arcs are
+     * returned as Bezier curves.
+     */
+    public PathIterator getPathIterator(AffineTransform at) {
+        return new AWTIterator(at);
+    }
+
+    public PathIterator getPathIterator(AffineTransform at, double flatness) {
+        return new FlatteningPathIterator(getPathIterator(at), flatness);
+    }
+
+    /**
+     * Returns an iterator over the extended path.
+     */
+    public ExtendedPathIterator getExtendedPathIterator() {
+        return new EPI();
+    }
+
+    /**
+     * Walks the segments having <code>flag</code> set.
+     */
+    abstract class Walker {
+        final byte flag;
+        final int  nTypes;
+        int typeIdx  = -1;
+        int coordIdx = 0;
+        int type;
+
+        Walker(byte flag) {
+            this.flag = flag;
+            this.nTypes = numTypes;
+            advance(0);
+        }
+
+        /**
+         * Moves to the next segment having the flag set, skipping
+         * <code>skip</code> coordinates first.
+         */
+        final void advance(int skip) {
+            coordIdx += skip;
+            int i = typeIdx + 1;
+            while ((i < nTypes) && ((types[i] & flag) == 0)) {
+                coordIdx += COORDS[types[i] & KIND];
+                i++;
+            }
+            typeIdx = i;
+            if (i < nTypes)
+                type = types[i] & KIND;
+        }
+
+        public int getWindingRule() {
+            return windingRule;
+        }
+
+        public boolean isDone() {
+            return typeIdx >= nTypes;
+        }
+
+        public void next() {
+            advance(COORDS[type]);
+        }
+    }
+
+    class AWTIterator extends Walker implements PathIterator {
+        final AffineTransform at;
+
+        AWTIterator(AffineTransform at) {
+            super(AWT);
+            this.at = at;
+        }
+
+        public int currentSegment(float[] c) {
+            int n = COORDS[type];
+            if (at != null) {
+                at.transform(coords, coordIdx, c, 0, n / 2);
+            } else {
+                System.arraycopy(coords, coordIdx, c, 0, n);
+            }
+            return type;
+        }
+
+        public int currentSegment(double[] c) {
+            int n = COORDS[type];
+            if (at != null) {
+                at.transform(coords, coordIdx, c, 0, n / 2);
+            } else {
+                for (int i = 0; i < n; i++)
+                    c[i] = coords[coordIdx + i];
+            }
+            return type;
+        }
+    }
+
+    class EPI extends Walker implements ExtendedPathIterator {
+        EPI() {
+            super(EXT);
+        }
+
+        public int currentSegment() {
+            return (type == ARCTO) ? SEG_ARCTO : type;
+        }
+
+        public int currentSegment(double[] c) {
+            int n = COORDS[type];
+            for (int i = 0; i < n; i++)
+                c[i] = coords[coordIdx + i];
+            return currentSegment();
+        }
+
+        public int currentSegment(float[] c) {
+            System.arraycopy(coords, coordIdx, c, 0, COORDS[type]);
+            return currentSegment();
+        }
+    }
+
+    public Object clone() {
+        try {
+            ExtendedFloatPath result = (ExtendedFloatPath) super.clone();
+            synchronized (this) {
+                result.types  = Arrays.copyOf(types, numTypes);
+                result.coords = Arrays.copyOf(coords, numCoords);
+            }
+            return result;
+        } catch (CloneNotSupportedException ex) {}
+        return null;
+    }
+}
@@ -710,6 +710,117 @@ public class RectListManager implements Collection {
         }
     }
 
+    /**
+     * Merges the rectangles as {@link #mergeRects(int,int)} does, then
+     * keeps merging the two rectangles whose union adds the least to
+     * the total cost until at most <code>maxRects</code> are left.
+     * The cost of a rectangle is <code>overhead + height*lineOverhead
+     * + width*height</code>.
+     * @param maxRects the maximum number of rectangles to keep, less
+     *        than one means no limit.
+     */
+    public void mergeRects(int overhead, int lineOverhead, int maxRects) {
+        mergeRects(overhead, lineOverhead);
+        if ((maxRects < 1) || (size <= maxRects)) return;
+
+        int n = size;
+        long [] cost     = new long[n];
+        int  [] best     = new int[n];
+        long [] bestCost = new long[n];
+        for (int i=0; i<n; i++)
+            cost[i] = cost(rects[i], overhead, lineOverhead);
+        for (int i=0; i<n; i++)
+            findBestMerge(i, cost, best, bestCost, overhead, lineOverhead);
+
+        int live = n;
+        while (live > maxRects) {
+            int i = -1;
+            for (int k=0; k<n; k++) {
+                if (rects[k] == null) continue;
+                if ((i == -1) || (bestCost[k] < bestCost[i]))
+                    i = k;
+            }
+            int j = best[i];
+            rects[i] = rects[i].union(rects[j]);
+            cost[i]  = cost(rects[i], overhead, lineOverhead);
+            rects[j] = null;
+            live--;
+
+            // Update the best partner of the others, only the ones
+            // that were paired with i or j need a full search.
+            for (int k=0; k<n; k++) {
+                if ((rects[k] == null) || (k == i)) continue;
+                if ((best[k] == i) || (best[k] == j)) {
+                    findBestMerge(k, cost, best, bestCost,
+                                  overhead, lineOverhead);
+                } else {
+                    long c = mergeCost(k, i, cost, overhead, lineOverhead);
+                    if (c < bestCost[k]) {
+                        best[k] = i;
+                        bestCost[k] = c;
+                    }
+                }
+            }
+            findBestMerge(i, cost, best, bestCost, overhead, lineOverhead);
+        }
+
+        int j=0;
+        for (int i=0; i<n; i++) {
+            if (rects[i] != null)
+                rects[j++] = rects[i];
+        }
+        for (int i=j; i<n; i++)
+            rects[i] = null;
+        size = j;
+        Arrays.sort(rects, 0, size, comparator);
+        bounds = null;
+    }
+
+    /**
+     * Returns the cost of repainting <code>r</code>.
+     */
+    protected static long cost(Rectangle r, int overhead, int lineOverhead) {
+        return (overhead + (r.height*(long)lineOverhead) +
+                (r.height*(long)r.width));
+    }
+
+    /**
+     * Returns how much merging the rectangles at index <code>i</code>
+     * and <code>j</code> adds to the total cost.
+     */
+    private long mergeCost(int i, int j, long [] cost,
+                           int overhead, int lineOverhead) {
+        Rectangle r1 = rects[i];
+        Rectangle r2 = rects[j];
+        int x0 = Math.min(r1.x, r2.x);
+        int y0 = Math.min(r1.y, r2.y);
+        int x1 = Math.max(r1.x+r1.width,  r2.x+r2.width);
+        int y1 = Math.max(r1.y+r1.height, r2.y+r2.height);
+        long h = y1-y0;
+        long c = overhead + h*lineOverhead + h*(x1-x0);
+        return c - cost[i] - cost[j];
+    }
+
+    /**
+     * Finds the rectangle that is cheapest to merge with the one at
+     * index <code>i</code>.
+     */
+    private void findBestMerge(int i, long [] cost, int [] best,
+                               long [] bestCost,
+                               int overhead, int lineOverhead) {
+        best[i] = -1;
+        bestCost[i] = Long.MAX_VALUE;
+        int n = cost.length;
+        for (int k=0; k<n; k++) {
+            if ((k == i) || (rects[k] == null)) continue;
+            long c = mergeCost(i, k, cost, overhead, lineOverhead);
+            if (c < bestCost[i]) {
+                best[i] = k;
+                bestCost[i] = c;
+            }
+        }
+    }
+
     public void subtract(RectListManager rlm, int overhead, int lineOverhead) {
         Rectangle r, sr;
         int cost;
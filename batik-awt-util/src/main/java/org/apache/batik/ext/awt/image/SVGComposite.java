@@ -29,10 +29,20 @@ import java.awt.image.PackedColorModel;
 import java.awt.image.Raster;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.batik.ext.awt.image.rendered.GaussianBlurRed8Bit;
 
 /**
  * This provides an implementation of all the composite rules in SVG.
  *
+ * Int packed rasters are composited straight on their data buffers,
+ * large ones a few rows at a time over a <code>ForkJoinPool</code>.
+ * Rasters with any other layout go through the generic contexts,
+ * which work on the samples of each scanline.
+ *
  * @author <a href="mailto:Thomas.DeWeeese@Kodak.com">Thomas DeWeese</a>
  * @version $Id$
  */
@@ -69,8 +79,42 @@ public class SVGComposite
 
     CompositeRule rule;
 
+    /**
+     * The pool the rows of large rasters are split over, see
+     * <code>getCompositePool</code>.
+     */
+    private static ForkJoinPool compositePool;
+    private static boolean      compositePoolSet;
+
+    /**
+     * The minimum number of pixels worth handing to a separate task.
+     */
+    static final int MIN_TASK_PIXELS = 1<<15;
+
     public CompositeRule getRule() { return rule; }
 
+    /**
+     * Returns the pool the rows of large int packed rasters are split
+     * over when they are not composited from a thread that is already
+     * part of a <code>ForkJoinPool</code>.  Unless one was set this is
+     * the pool of <code>GaussianBlurRed8Bit</code>.
+     */
+    public static synchronized ForkJoinPool getCompositePool() {
+        if (!compositePoolSet)
+            return GaussianBlurRed8Bit.getBlurPool();
+        return compositePool;
+    }
+
+    /**
+     * Sets the pool the rows of large int packed rasters are split
+     * over.  If <code>pool</code> is null those rasters are composited
+     * on the calling thread.
+     */
+    public static synchronized void setCompositePool(ForkJoinPool pool) {
+        compositePool    = pool;
+        compositePoolSet = true;
+    }
+
     public SVGComposite(CompositeRule rule) {
         this.rule = rule;
     }
@@ -133,6 +177,22 @@ public class SVGComposite
         boolean use_int_pack = (is_INT_PACK(srcCM) && is_INT_PACK(dstCM));
         // use_int_pack = false;
 
+        CompositeContext ctx = createContext(srcCM, dstCM, use_int_pack);
+        if (ctx instanceof AlphaPreCompositeContext_INT_PACK) {
+            // For the rasters that turn out not to be int packed.
+            ((AlphaPreCompositeContext_INT_PACK)ctx).fallback =
+                (AlphaPreCompositeContext)createContext(srcCM, dstCM, false);
+        }
+        return ctx;
+    }
+
+    /**
+     * Creates the context of this composite, the int packed one if
+     * <code>use_int_pack</code> is true.
+     */
+    protected CompositeContext createContext(ColorModel srcCM,
+                                             ColorModel dstCM,
+                                             boolean use_int_pack) {
         switch (rule.getRule()) {
         case CompositeRule.RULE_OVER:
             if (!dstCM.hasAlpha()) {
@@ -261,10 +321,43 @@ public class SVGComposite
     public abstract static class AlphaPreCompositeContext_INT_PACK
         extends AlphaPreCompositeContext {
 
+        /**
+         * The context used for the rasters that are not int packed.
+         */
+        AlphaPreCompositeContext fallback;
+
         AlphaPreCompositeContext_INT_PACK(ColorModel srcCM, ColorModel dstCM) {
             super(srcCM, dstCM);
         }
 
+        public void dispose() {
+            super.dispose();
+            if (fallback != null)
+                fallback.dispose();
+        }
+
+        public void compose(Raster src, Raster dstIn, WritableRaster dstOut) {
+            if (useFallback(src, dstIn, dstOut))
+                fallback.compose(src, dstIn, dstOut);
+            else
+                super.compose(src, dstIn, dstOut);
+        }
+
+        /**
+         * Returns true if one of the rasters is not int packed and
+         * there is a generic context to composite them with.
+         */
+        boolean useFallback(Raster src, Raster dstIn, Raster dstOut) {
+            if (fallback == null)
+                return false;
+            return
+                !(GraphicsUtil.is_INT_PACK_Data(src.getSampleModel(), false)
+                  && GraphicsUtil.is_INT_PACK_Data(dstIn.getSampleModel(),
+                                                   false)
+                  && GraphicsUtil.is_INT_PACK_Data(dstOut.getSampleModel(),
+                                                   false));
+        }
+
         protected abstract void precompose_INT_PACK
             (final int width, final int height,
              final int [] srcPixels,    final int srcAdjust,    int srcSp,
@@ -314,14 +407,90 @@ public class SVGComposite
                  dstOutSPPSM.getOffset(x0-dstOut.getSampleModelTranslateX(),
                                        y0-dstOut.getSampleModelTranslateY()));
 
-            final int   srcAdjust  =    srcScanStride - w;
-            final int  dstInAdjust =  dstInScanStride - w;
-            final int dstOutAdjust = dstOutScanStride - w;
+            RowTask task = new RowTask
+                (this, w,
+                 srcPixels,    srcScanStride,    srcBase,
+                 dstInPixels,  dstInScanStride,  dstInBase,
+                 dstOutPixels, dstOutScanStride, dstOutBase,
+                 0, h);
+            if (task.isLeaf()) {
+                task.precompose();
+            } else if (ForkJoinTask.inForkJoinPool()) {
+                task.invoke();
+            } else {
+                ForkJoinPool pool = getCompositePool();
+                if (pool == null)
+                    task.precompose();
+                else
+                    pool.invoke(task);
+            }
+        }
+    }
 
-            precompose_INT_PACK(w, h,
-                                srcPixels,    srcAdjust,    srcBase,
-                                dstInPixels,  dstInAdjust,  dstInBase,
-                                dstOutPixels, dstOutAdjust, dstOutBase);
+    /**
+     * Composites a range of rows of int packed rasters.  The range is
+     * split in halves until it is small enough.  The rows are
+     * independent of each other so this gives the same pixels as
+     * compositing all the rows at once.
+     */
+    static class RowTask extends RecursiveAction {
+        final AlphaPreCompositeContext_INT_PACK ctx;
+        final int width;
+        final int [] srcPixels,    dstInPixels,    dstOutPixels;
+        final int    srcStride,    dstInStride,    dstOutStride;
+        final int    srcBase,      dstInBase,      dstOutBase;
+        final int lo, hi;
+
+        RowTask(AlphaPreCompositeContext_INT_PACK ctx, int width,
+                int [] srcPixels,    int srcStride,    int srcBase,
+                int [] dstInPixels,  int dstInStride,  int dstInBase,
+                int [] dstOutPixels, int dstOutStride, int dstOutBase,
+                int lo, int hi) {
+            this.ctx          = ctx;
+            this.width        = width;
+            this.srcPixels    = srcPixels;
+            this.srcStride    = srcStride;
+            this.srcBase      = srcBase;
+            this.dstInPixels  = dstInPixels;
+            this.dstInStride  = dstInStride;
+            this.dstInBase    = dstInBase;
+            this.dstOutPixels = dstOutPixels;
+            this.dstOutStride = dstOutStride;
+            this.dstOutBase   = dstOutBase;
+            this.lo           = lo;
+            this.hi           = hi;
+        }
+
+        boolean isLeaf() {
+            return ((hi-lo) < 2) || ((long)(hi-lo)*width <= MIN_TASK_PIXELS);
+        }
+
+        protected void compute() {
+            if (isLeaf()) {
+                precompose();
+                return;
+            }
+            int mid = (lo+hi)>>>1;
+            invokeAll(new RowTask(ctx, width,
+                                  srcPixels,    srcStride,    srcBase,
+                                  dstInPixels,  dstInStride,  dstInBase,
+                                  dstOutPixels, dstOutStride, dstOutBase,
+                                  lo, mid),
+                      new RowTask(ctx, width,
+                                  srcPixels,    srcStride,    srcBase,
+                                  dstInPixels,  dstInStride,  dstInBase,
+                                  dstOutPixels, dstOutStride, dstOutBase,
+                                  mid, hi));
+        }
+
+        void precompose() {
+            ctx.precompose_INT_PACK(width, hi-lo,
+                                    srcPixels,    srcStride-width,
+                                    srcBase+lo*srcStride,
+                                    dstInPixels,  dstInStride-width,
+                                    dstInBase+lo*dstInStride,
+                                    dstOutPixels, dstOutStride-width,
+                                    dstOutBase+lo*dstOutStride);
         }
     }
 
@@ -524,6 +693,11 @@ public class SVGComposite
         }
 
         public void compose(Raster src, Raster dstIn, WritableRaster dstOut) {
+            if (useFallback(src, dstIn, dstOut)) {
+                fallback.compose(src, dstIn, dstOut);
+                return;
+            }
+
             ColorModel dstPreCM = dstCM;
             if (!dstCM.isAlphaPremultiplied())
                 dstPreCM = GraphicsUtil.coerceData((WritableRaster)dstIn,
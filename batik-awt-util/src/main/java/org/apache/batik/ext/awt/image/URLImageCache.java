@@ -16,16 +16,24 @@
    limitations under the License.
 
  */
-
 package org.apache.batik.ext.awt.image;
 
+import java.awt.geom.Rectangle2D;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.batik.ext.awt.image.renderable.DeferRable;
 import org.apache.batik.ext.awt.image.renderable.Filter;
 import org.apache.batik.util.ParsedURL;
-import org.apache.batik.util.SoftReferenceCache;
 
 /**
- * This class manages a cache of soft references to Images that
- * we have already loaded.
+ * This class manages a cache of Images that we have already loaded.
  *
  * <p>
  *   Adding an image is two fold. First you add the ParsedURL, this lets
@@ -34,51 +42,172 @@ import org.apache.batik.util.SoftReferenceCache;
  * </p>
  * <p>
  *   If someone requests a ParsedURL after it has been added but before it has
- *   been put they will be blocked until the put.
+ *   been put they will be blocked until the put.  Requests for other
+ *   ParsedURLs are not blocked, each ParsedURL has its own entry that
+ *   the waiting threads wait on, so only one thread loads a given
+ *   ParsedURL at a time.
+ * </p>
+ * <p>
+ *   The cache holds at most {@link #getMaxBytes()} bytes of decoded
+ *   images, counted as four bytes per pixel, and drops the least
+ *   recently requested images beyond that.  The size of an image that
+ *   is still being decoded is counted once it is known.
  * </p>
  *
  * @author <a href="mailto:thomas.deweese@kodak.com">Thomas DeWeese</a>
  * @version $Id$
  */
-public class URLImageCache extends SoftReferenceCache {
+public class URLImageCache {
+
+    /**
+     * The default number of bytes of images a cache holds.
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
 
     static URLImageCache theCache = new URLImageCache();
 
     public static URLImageCache getDefaultCache() { return theCache; }
 
+    /**
+     * The entry of a ParsedURL, from the time someone is put on the
+     * hook for it until it is cleared, flushed or evicted.
+     */
+    protected static class Entry {
+
+        /**
+         * Released when the image is put or the entry cleared.
+         */
+        protected final CountDownLatch done = new CountDownLatch(1);
+
+        /**
+         * The image, null until it is put.
+         */
+        protected volatile Filter filter;
+
+        /**
+         * The bytes counted for the image, guarded by the LRU list.
+         */
+        protected long bytes;
+
+        /**
+         * Whether the size of the image is known, guarded by the LRU
+         * list.
+         */
+        protected boolean sized;
+
+        protected boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        /**
+         * Waits until the image is put or the entry cleared, returns
+         * the image or null if it was cleared.
+         */
+        protected Filter await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+            return filter;
+        }
+    }
+
+    /**
+     * The entries, including the images still being loaded.
+     */
+    protected final ConcurrentHashMap entries = new ConcurrentHashMap();
+
+    /**
+     * The entries whose image was put, least recently requested first.
+     * The fields below are guarded by this map.
+     */
+    protected final LinkedHashMap lru = new LinkedHashMap(16, 0.75f, true);
+
+    /**
+     * The entries of the LRU list whose size is not known yet.
+     */
+    protected final List unsized = new LinkedList();
+
+    protected long bytes;
+    protected long maxBytes;
+
+    protected final AtomicLong hits      = new AtomicLong();
+    protected final AtomicLong misses    = new AtomicLong();
+    protected final AtomicLong evictions = new AtomicLong();
+
     /**
      * Let people create there own caches.
      */
-    public URLImageCache() { }
+    public URLImageCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Creates a cache holding at most <code>maxBytes</code> bytes of
+     * images.
+     */
+    public URLImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
 
     /**
      * Check if <code>request(url)</code> will return with a Filter
      * (not putting you on the hook for it).  Note that it is possible
      * that this will return true but between this call and the call
-     * to request the soft-reference will be cleared.  So it
-     * is still possible for request to return NULL, just much less
-     * likely (you can always call 'clear' in that case). 
+     * to request the entry will be cleared.  So it is still possible
+     * for request to return NULL, just much less likely (you can
+     * always call 'clear' in that case).
      */
-    public synchronized boolean isPresent(ParsedURL purl) {
-        return super.isPresentImpl(purl);
+    public boolean isPresent(ParsedURL purl) {
+        return entries.containsKey(purl);
     }
 
     /**
      * Check if <code>request(url)</code> will return immediately with the
      * Filter.  Note that it is possible that this will return
      * true but between this call and the call to request the
-     * soft-reference will be cleared.
+     * entry will be cleared.
      */
-    public synchronized boolean isDone(ParsedURL purl) {
-        return super.isDoneImpl(purl);
+    public boolean isDone(ParsedURL purl) {
+        Entry e = (Entry)entries.get(purl);
+        return (e != null) && e.isDone() && (e.filter != null);
     }
 
     /**
      * If this returns null then you are now 'on the hook'.
      * to put the Filter associated with ParsedURL into the
      * cache.  */
-    public synchronized Filter request(ParsedURL purl) {
-        return (Filter)super.requestImpl(purl);
+    public Filter request(ParsedURL purl) {
+        while (true) {
+            Entry e = (Entry)entries.get(purl);
+            if (e == null) {
+                Entry ne = new Entry();
+                e = (Entry)entries.putIfAbsent(purl, ne);
+                if (e == null) {
+                    // So now the caller get's the hot potato.
+                    misses.incrementAndGet();
+                    return null;
+                }
+            }
+
+            Filter filt = e.await();
+            if (filt != null) {
+                hits.incrementAndGet();
+                synchronized (lru) {
+                    lru.get(purl); // Moves it to the end of the list.
+                }
+                return filt;
+            }
+            // The entry was cleared before it was put, someone has
+            // to load it again.
+        }
     }
 
     /**
@@ -86,18 +215,198 @@ public class URLImageCache extends SoftReferenceCache {
      * This is the easiest way to 'get off the hook'.
      * if you didn't indend to get on it.
      */
-    public synchronized void clear(ParsedURL purl) {
-        super.clearImpl(purl);
+    public void clear(ParsedURL purl) {
+        Entry e = (Entry)entries.remove(purl);
+        if (e == null)
+            return;
+        synchronized (lru) {
+            if (lru.get(purl) == e) {
+                lru.remove(purl);
+                forget(e);
+            }
+        }
+        // Wake up the threads waiting on it, one of them will go on
+        // the hook.
+        e.done.countDown();
     }
 
     /**
-     * Associate bi with purl.  bi is only referenced through
-     * a soft reference so don't rely on the cache to keep it
-     * around.  If the map no longer contains our purl it was
-     * probably cleared or flushed since we were put on the hook
+     * Associate filt with purl.  filt may be evicted at any time to
+     * keep the cache within its size, so don't rely on the cache to
+     * keep it around.  If the cache no longer contains our purl it
+     * was probably cleared or flushed since we were put on the hook
      * for it, so in that case we will do nothing.
      */
-    public synchronized void put(ParsedURL purl, Filter filt) {
-        super.putImpl(purl, filt);
+    public void put(ParsedURL purl, Filter filt) {
+        Entry e = (Entry)entries.get(purl);
+        if ((e == null) || e.isDone())
+            return;
+        if (filt == null) {
+            // Nothing to keep, let the next request try again.
+            clear(purl);
+            return;
+        }
+
+        e.filter = filt;
+        synchronized (lru) {
+            if (entries.get(purl) == e) {
+                lru.put(purl, e);
+                long sz = getBytes(filt);
+                if (sz < 0) {
+                    unsized.add(e);
+                } else {
+                    e.bytes = sz;
+                    e.sized = true;
+                    bytes += sz;
+                }
+                evict();
+            }
+        }
+        e.done.countDown();
+    }
+
+    /**
+     * Let people flush the cache (remove any cached data).  Pending
+     * requests will be treated as though clear() was called on the
+     * ParsedURL, this should cause them to go and re-read the data.
+     */
+    public void flush() {
+        Iterator i = entries.keySet().iterator();
+        while (i.hasNext())
+            clear((ParsedURL)i.next());
+    }
+
+    /**
+     * Returns the maximum number of bytes of images the cache holds.
+     */
+    public long getMaxBytes() {
+        synchronized (lru) {
+            return maxBytes;
+        }
+    }
+
+    /**
+     * Sets the maximum number of bytes of images the cache holds,
+     * evicting images if needed.
+     */
+    public void setMaxBytes(long maxBytes) {
+        synchronized (lru) {
+            this.maxBytes = maxBytes;
+            evict();
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the images in the cache, not
+     * counting the ones whose size is not known yet.
+     */
+    public long getBytes() {
+        synchronized (lru) {
+            updateSizes();
+            return bytes;
+        }
+    }
+
+    /**
+     * Returns the number of images in the cache.
+     */
+    public int getSize() {
+        synchronized (lru) {
+            return lru.size();
+        }
+    }
+
+    /**
+     * Returns the number of requests answered with a cached image.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of requests that put the caller on the hook.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of images evicted to keep the cache within
+     * its size.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Resets the hit, miss and eviction counts.
+     */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    /**
+     * Returns the number of bytes counted for <code>filt</code>, four
+     * per pixel of its bounds, or -1 if <code>filt</code> is still
+     * being decoded and its bounds are not known yet.
+     */
+    public static long getBytes(Filter filt) {
+        Rectangle2D r;
+        if (filt instanceof DeferRable)
+            r = ((DeferRable)filt).peekBounds();
+        else
+            r = filt.getBounds2D();
+        if (r == null)
+            return -1;
+        return 4L * (long)Math.ceil(r.getWidth())
+                  * (long)Math.ceil(r.getHeight());
+    }
+
+    /**
+     * Drops the least recently requested images until the cache is
+     * within its size.  Must be called with the LRU list locked.
+     */
+    protected void evict() {
+        updateSizes();
+        Iterator i = lru.entrySet().iterator();
+        while ((bytes > maxBytes) && i.hasNext()) {
+            Map.Entry me = (Map.Entry)i.next();
+            Entry e = (Entry)me.getValue();
+            i.remove();
+            entries.remove(me.getKey(), e);
+            forget(e);
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts the images whose size has become known.  Must be called
+     * with the LRU list locked.
+     */
+    protected void updateSizes() {
+        Iterator i = unsized.iterator();
+        while (i.hasNext()) {
+            Entry e = (Entry)i.next();
+            long sz = getBytes(e.filter);
+            if (sz < 0)
+                continue;
+            i.remove();
+            e.bytes = sz;
+            e.sized = true;
+            bytes += sz;
+        }
+    }
+
+    /**
+     * Stops counting an entry removed from the LRU list.  Must be
+     * called with the LRU list locked.
+     */
+    protected void forget(Entry e) {
+        if (e.sized)
+            bytes -= e.bytes;
+        else
+            unsized.remove(e);
     }
 }
@@ -127,6 +127,19 @@ public class DeferRable implements Filter {
         return bounds;
     }
 
+    /**
+     * Returns the bounds if they are already known, or null rather
+     * than blocking until they are.
+     */
+    public Rectangle2D peekBounds() {
+        Filter s = src;
+        if (s != null)
+            return s.getBounds2D();
+        synchronized (this) {
+            return bounds;
+        }
+    }
+
     public float getMinX() {
         return (float)getBounds2D().getX();
     }
@@ -25,6 +25,7 @@ import java.awt.image.DataBufferInt;
 import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -433,11 +434,11 @@ public abstract class AbstractTiledRed
         }
 
         // Check If we should halt early.
-        Thread currentThread = Thread.currentThread();
         if (HaltingThread.hasBeenHalted())
             return;
 
         idx = 0;
+        List edgeTiles = null;
         // Fill in the ones that weren't in the cache.
         for (ty=ty0; ty<=ty1; ty++) {
 
@@ -463,24 +464,48 @@ public abstract class AbstractTiledRed
                 else {
                     if (got[idx++]) continue;
 
-                    // System.out.println("Computing : " + x + "," + y);
-
-                    ras = getTile(tx, ty);// Compute the tile..
-                    // Check If we should halt early.
-                    if (HaltingThread.hasBeenHalted( currentThread ))
-                        return;
-
-                    if (is_INT_PACK)
-                        GraphicsUtil.copyData_INT_PACK(ras, wr);
-                    else
-                        GraphicsUtil.copyData_FALLBACK(ras, wr);
+                    if (edgeTiles == null)
+                        edgeTiles = new ArrayList();
+                    edgeTiles.add(new Point(tx, ty));
                 }
             }
         }
 
+        if (edgeTiles != null)
+            drawTiles(edgeTiles, wr);
+
         // System.out.println("Ending Computation: " + this);
     }
 
+    /**
+     * Computes the tiles that lie partially outside of wr and copies
+     * them into wr.
+     * @param tiles The <code>Point</code>s holding the tile indices.
+     * @param wr Raster to fill with image data.
+     */
+    protected void drawTiles(List tiles, WritableRaster wr) {
+        final boolean is_INT_PACK =
+            GraphicsUtil.is_INT_PACK_Data(getSampleModel(), false);
+
+        // cache for reuse in hasBeenHalted()
+        Thread currentThread = Thread.currentThread();
+
+        for (Object tile : tiles) {
+            Point pt = (Point) tile;
+            // System.out.println("Computing : " + pt.x + "," + pt.y);
+
+            Raster ras = getTile(pt.x, pt.y);// Compute the tile..
+            // Check If we should halt early.
+            if (HaltingThread.hasBeenHalted(currentThread))
+                return;
+
+            if (is_INT_PACK)
+                GraphicsUtil.copyData_INT_PACK(ras, wr);
+            else
+                GraphicsUtil.copyData_FALLBACK(ras, wr);
+        }
+    }
+
     /**
      * Copies data from this images tile grid into wr.  wr may
      * extend outside the bounds of this image in which case the
@@ -18,19 +18,21 @@
  */
 package org.apache.batik.ext.awt.image.rendered;
 
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.color.ColorSpace;
 import java.awt.image.ColorModel;
-import java.awt.image.ConvolveOp;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferInt;
 import java.awt.image.DirectColorModel;
-import java.awt.image.Kernel;
 import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import org.apache.batik.ext.awt.image.GraphicsUtil;
 
@@ -38,6 +40,20 @@ import org.apache.batik.ext.awt.image.GraphicsUtil;
  * This implementation of RenderableImage will render its input
  * GraphicsNode on demand for tiles.
  *
+ * The blur is separable, a horizontal pass is followed by a vertical
+ * one.  Both work directly on the packed <code>int</code> pixels of
+ * scratch buffers taken from the shared
+ * <code>ScratchBufferPool</code>, and each pass is split by rows or
+ * columns over a <code>ForkJoinPool</code> when the tile is large
+ * enough to be worth it.
+ *
+ * The convolution used for small standard deviations and high quality
+ * rendering rounds its weights to fixed point and truncates the result
+ * of each pass the same way the native <code>ConvolveOp</code> it
+ * replaces does, so the result stays within one level of it, including
+ * the level that implementation loses on flat areas for some kernel
+ * sizes.  The box blur used otherwise gives the same result as before.
+ *
  * @author <a href="mailto:vincent.hardy@eng.sun.com">Vincent Hardy</a>
  * @version $Id$
  */
@@ -46,9 +62,13 @@ public class GaussianBlurRed8Bit extends AbstractRed {
     int xinset, yinset;
     double stdDevX, stdDevY;
     RenderingHints hints;
-    ConvolveOp [] convOp = new ConvolveOp [2];
+    int [][] kernel = new int [2][];
+    int [] kernelShift = new int [2];
     int dX, dY;
 
+    private static ForkJoinPool blurPool;
+    private static boolean      blurPoolSet;
+
     /**
      * Construct a blurred version of <code>src</code>, by blurring with a
      * gaussian kernel with standard Deviation of <code>stdDev</code> pixels.
@@ -111,12 +131,12 @@ public class GaussianBlurRed8Bit extends AbstractRed {
 
         // System.out.println("StdDev: " + stdDevX + "x" + stdDevY);
         if ((xinset != 0) && ((stdDevX < 2) || highQuality))
-            convOp[0] = new ConvolveOp(makeQualityKernelX(xinset*2+1));
+            kernel[0] = makeQualityKernel(xinset*2+1, stdDevX, 0);
         else
             dX = (int)Math.floor(DSQRT2PI*stdDevX+0.5f);
 
         if ((yinset != 0) && ((stdDevY < 2) || highQuality))
-            convOp[1] = new ConvolveOp(makeQualityKernelY(yinset*2+1));
+            kernel[1] = makeQualityKernel(yinset*2+1, stdDevY, 1);
         else
             dY = (int)Math.floor(DSQRT2PI*stdDevY+0.5f);
     }
@@ -180,7 +200,7 @@ public class GaussianBlurRed8Bit extends AbstractRed {
      * length '2*(radius-1) + 1'
      *
      * @param radius stdDeviationX or stdDeviationY.
-     * @see #makeQualityKernels */
+     * @see #makeQualityKernel */
     private float [] computeQualityKernelData(int len, double stdDev){
         final float[] kernelData = new float [len];
 
@@ -200,12 +220,62 @@ public class GaussianBlurRed8Bit extends AbstractRed {
         return kernelData;
     }
 
-    private Kernel makeQualityKernelX(int len) {
-        return new Kernel(len, 1, computeQualityKernelData(len, stdDevX));
+    /**
+     * Converts the kernel data to fixed point the way the native
+     * <code>ConvolveOp</code> converts its kernel for 8 bit images, so
+     * truncating the sums gives the same levels: the weights have 23
+     * fractional bits when they sum to less than one and 22 otherwise,
+     * and are rounded unless the rounded weights sum to 1&lt;&lt;23 or
+     * more, in which case they are truncated.
+     * @param axis 0 for the horizontal kernel, 1 for the vertical one.
+     */
+    private int [] makeQualityKernel(int len, double stdDev, int axis) {
+        float [] data = computeQualityKernelData(len, stdDev);
+        double sum = 0;
+        for (int i=0; i<len; i++)
+            sum += data[i];
+        int shift = (sum < 1) ? 23 : 22;
+        double norm = 1<<shift;
+
+        int [] ret = new int[len];
+        int isum = 0;
+        for (int i=0; i<len; i++) {
+            ret[i] = (int)(data[i]*norm+0.5);
+            isum += ret[i];
+        }
+        if (isum >= (1<<23)) {
+            for (int i=0; i<len; i++)
+                ret[i] = (int)(data[i]*norm);
+        }
+        kernelShift[axis] = shift;
+        return ret;
     }
 
-    private Kernel makeQualityKernelY(int len) {
-        return new Kernel(1, len, computeQualityKernelData(len, stdDevY));
+    /**
+     * Returns the pool the blur passes are split over when they are
+     * not requested from a thread that is already part of a
+     * <code>ForkJoinPool</code>.  By default this is a pool with one
+     * thread per processor, or null on single processor machines.
+     */
+    public static synchronized ForkJoinPool getBlurPool() {
+        if (!blurPoolSet) {
+            int n = Runtime.getRuntime().availableProcessors();
+            if (n > 1)
+                blurPool = new ForkJoinPool(n);
+            blurPoolSet = true;
+        }
+        return blurPool;
+    }
+
+    /**
+     * Sets the pool the blur passes are split over when they are not
+     * requested from a <code>ForkJoinPool</code> thread.  If
+     * <code>pool</code> is null those blurs are computed on the
+     * calling thread.
+     */
+    public static synchronized void setBlurPool(ForkJoinPool pool) {
+        blurPool    = pool;
+        blurPoolSet = true;
     }
 
     public WritableRaster copyData(WritableRaster wr) {
@@ -218,153 +288,220 @@ public class GaussianBlurRed8Bit extends AbstractRed {
         r.width  += 2*xinset;
         r.height += 2*yinset;
 
-        // System.out.println("Gaussian GenR: " + wr);
-        // System.out.println("SrcReq: " + r);
-
         ColorModel srcCM = src.getColorModel();
 
-        WritableRaster tmpR1=null, tmpR2=null;
-
-        tmpR1 = srcCM.createCompatibleWritableRaster(r.width, r.height);
-        {
-            WritableRaster fill;
-            fill = tmpR1.createWritableTranslatedChild(r.x, r.y);
-            src.copyData(fill);
-        }
-        if (srcCM.hasAlpha() && !srcCM.isAlphaPremultiplied())
-            GraphicsUtil.coerceData(tmpR1, srcCM, true);
-
-        // For the blur box approx we can use dest as our intermediate
-        // otherwise we let it default to null which means we create a new
-        // one...
-
-        // this lets the Vertical conv know how much is junk, so it
-        // doesn't bother to convolve the top and bottom edges
-        int skipX;
-        // long t1 = System.currentTimeMillis();
-        if (xinset == 0) {
-            skipX = 0;
-        } else if (convOp[0] != null) {
-            tmpR2 = getColorModel().createCompatibleWritableRaster
-                (r.width, r.height);
-            tmpR2 = convOp[0].filter(tmpR1, tmpR2);
-            skipX = convOp[0].getKernel().getXOrigin();
-
-            // Swap them...
-            WritableRaster tmp = tmpR1;
-            tmpR1 = tmpR2;
-            tmpR2 = tmp;
-        } else {
-            if ((dX&0x01) == 0){
-                tmpR1 = boxFilterH(tmpR1, tmpR1, 0,    0,   dX,   dX/2);
-                tmpR1 = boxFilterH(tmpR1, tmpR1, dX/2, 0,   dX,   dX/2-1);
-                tmpR1 = boxFilterH(tmpR1, tmpR1, dX-1, 0,   dX+1, dX/2);
-                skipX = dX-1 + dX/2;
+        final int w = r.width;
+        final int h = r.height;
+
+        ScratchBufferPool bufPool = ScratchBufferPool.getSharedPool();
+        int [] pix   = bufPool.getIntBuffer(w*h);
+        int [] other = null;
+        try {
+            SampleModel sm = srcCM.createCompatibleSampleModel(w, h);
+            if ((sm instanceof SinglePixelPackedSampleModel) &&
+                (sm.getDataType() == DataBuffer.TYPE_INT)) {
+                // Render the source straight into the scratch buffer.
+                WritableRaster tmpR = createScratchRaster(sm, pix, r);
+                src.copyData(tmpR);
+                if (srcCM.hasAlpha() && !srcCM.isAlphaPremultiplied())
+                    GraphicsUtil.coerceData(tmpR, srcCM, true);
             } else {
-                tmpR1 = boxFilterH(tmpR1, tmpR1, 0,    0,   dX, dX/2);
-                tmpR1 = boxFilterH(tmpR1, tmpR1, dX/2, 0,   dX, dX/2);
-                tmpR1 = boxFilterH(tmpR1, tmpR1, dX-2, 0,   dX, dX/2);
-                skipX = dX-2 + dX/2;
+                // Otherwise go through a raster in the source's
+                // format and copy that into our own int packed one.
+                WritableRaster fill;
+                fill = srcCM.createCompatibleWritableRaster(w, h);
+                fill = fill.createWritableTranslatedChild(r.x, r.y);
+                src.copyData(fill);
+                if (srcCM.hasAlpha() && !srcCM.isAlphaPremultiplied())
+                    GraphicsUtil.coerceData(fill, srcCM, true);
+
+                sm = getColorModel().createCompatibleSampleModel(w, h);
+                GraphicsUtil.copyData(fill, createScratchRaster(sm, pix, r));
             }
-        }
 
-        if (yinset == 0) {
-            tmpR2 = tmpR1;
-        } else if (convOp[1] != null) {
-            if (tmpR2 == null) {
-                tmpR2 = getColorModel().createCompatibleWritableRaster
-                    (r.width, r.height);
-            }
-            tmpR2 = convOp[1].filter(tmpR1, tmpR2);
-        } else {
-            if ((dY&0x01) == 0){
-                tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, 0,    dY,   dY/2);
-                tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, dY/2, dY,   dY/2-1);
-                tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, dY-1, dY+1, dY/2);
+            // this lets the Vertical pass know how much is junk, so it
+            // doesn't bother to convolve the left and right edges
+            int skipX = 0;
+            if (xinset != 0) {
+                if (kernel[0] != null) {
+                    other = bufPool.getIntBuffer(w*h);
+                    runPass(new PassTask(CONVOLVE_H, pix, other, w, h, 0,
+                                         0, h));
+                    int [] tmp = pix;
+                    pix   = other;
+                    other = tmp;
+                } else {
+                    runPass(new PassTask(BOX_H, pix, pix, w, h, 0, 0, h));
+                }
+                skipX = xinset;
             }
-            else {
-                tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, 0,    dY, dY/2);
-                tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, dY/2, dY, dY/2);
-                tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, dY-2, dY, dY/2);
+
+            if (yinset != 0) {
+                if (kernel[1] != null) {
+                    if (other == null)
+                        other = bufPool.getIntBuffer(w*h);
+                    runPass(new PassTask(CONVOLVE_V, pix, other, w, h, skipX,
+                                         0, h));
+                    int [] tmp = pix;
+                    pix   = other;
+                    other = tmp;
+                } else {
+                    runPass(new PassTask(BOX_V, pix, pix, w, h, skipX,
+                                         0, w));
+                }
             }
-            tmpR2 = tmpR1;
-        }
-        // long t2 = System.currentTimeMillis();
-        // System.out.println("Time: " + (t2-t1) +
-        //                       (((convOp[0] != null) || (convOp[1] != null))?
-        //                        " ConvOp":""));
-        // System.out.println("Rasters  WR :" + wr.getBounds());
-        // System.out.println("         tmp:" + tmpR2.getBounds());
-        // System.out.println("      bounds:" + getBounds());
-        // System.out.println("       skipX:" + skipX +
-        //                    " dx:" + dX + " Dy: " + dY);
-        tmpR2 = tmpR2.createWritableTranslatedChild(r.x, r.y);
-        GraphicsUtil.copyData(tmpR2, wr);
 
+            GraphicsUtil.copyData(createScratchRaster(sm, pix, r), wr);
+        } finally {
+            bufPool.putIntBuffer(pix);
+            bufPool.putIntBuffer(other);
+        }
         return wr;
     }
 
-    private WritableRaster boxFilterH(Raster src, WritableRaster dest,
-                                      int skipX, int skipY,
-                                      int boxSz, int loc) {
+    /**
+     * Wraps <code>pix</code> in a raster using <code>sm</code> located
+     * at <code>r</code>.
+     */
+    private static WritableRaster createScratchRaster(SampleModel sm,
+                                                      int [] pix,
+                                                      Rectangle r) {
+        DataBufferInt db = new DataBufferInt(pix, r.width*r.height);
+        return Raster.createWritableRaster(sm, db, new Point(r.x, r.y));
+    }
+
+    /**
+     * Runs <code>task</code>, splitting it over the current
+     * <code>ForkJoinPool</code> if there is one, otherwise over the
+     * blur pool.
+     */
+    private void runPass(PassTask task) {
+        if (task.isLeaf(task.lo, task.hi)) {
+            task.blur(task.lo, task.hi);
+        } else if (ForkJoinTask.inForkJoinPool()) {
+            task.invoke();
+        } else {
+            ForkJoinPool pool = getBlurPool();
+            if (pool == null)
+                task.blur(task.lo, task.hi);
+            else
+                pool.invoke(task);
+        }
+    }
+
+    /**
+     * Pass identifiers used by <code>PassTask</code>.
+     */
+    private static final int BOX_H      = 0;
+    private static final int BOX_V      = 1;
+    private static final int CONVOLVE_H = 2;
+    private static final int CONVOLVE_V = 3;
+
+    /**
+     * The minimum number of pixel operations worth handing to a
+     * separate task.
+     */
+    private static final int MIN_TASK_WORK = 1<<16;
+
+    /**
+     * Applies one blur pass over a range of rows (for the horizontal
+     * passes and the vertical convolution) or columns (for the
+     * vertical box passes, which run down the columns in place).
+     * The ranges are split in halves until they are small enough.
+     */
+    private class PassTask extends RecursiveAction {
+        final int pass;
+        final int [] src, dst;
+        final int w, h, skipX;
+        final int lo, hi;
+
+        PassTask(int pass, int [] src, int [] dst,
+                 int w, int h, int skipX, int lo, int hi) {
+            this.pass  = pass;
+            this.src   = src;
+            this.dst   = dst;
+            this.w     = w;
+            this.h     = h;
+            this.skipX = skipX;
+            this.lo    = lo;
+            this.hi    = hi;
+        }
+
+        boolean isLeaf(int lo, int hi) {
+            int work;
+            switch (pass) {
+            case BOX_H:      work = 3*w;                  break;
+            case BOX_V:      work = 3*h;                  break;
+            case CONVOLVE_H: work = w*kernel[0].length;   break;
+            default:         work = w*kernel[1].length;   break;
+            }
+            return ((hi-lo) < 2) || ((long)(hi-lo)*work <= MIN_TASK_WORK);
+        }
 
-        final int w = src.getWidth();
-        final int h = src.getHeight();
+        protected void compute() {
+            if (isLeaf(lo, hi)) {
+                blur(lo, hi);
+                return;
+            }
+            int mid = (lo+hi)>>>1;
+            invokeAll(new PassTask(pass, src, dst, w, h, skipX, lo, mid),
+                      new PassTask(pass, src, dst, w, h, skipX, mid, hi));
+        }
 
+        void blur(int lo, int hi) {
+            switch (pass) {
+            case BOX_H:
+                if ((dX&0x01) == 0){
+                    boxFilterH(src, w, h, 0,    dX,   dX/2,   lo, hi);
+                    boxFilterH(src, w, h, dX/2, dX,   dX/2-1, lo, hi);
+                    boxFilterH(src, w, h, dX-1, dX+1, dX/2,   lo, hi);
+                } else {
+                    boxFilterH(src, w, h, 0,    dX, dX/2, lo, hi);
+                    boxFilterH(src, w, h, dX/2, dX, dX/2, lo, hi);
+                    boxFilterH(src, w, h, dX-2, dX, dX/2, lo, hi);
+                }
+                break;
+            case BOX_V:
+                if ((dY&0x01) == 0){
+                    boxFilterV(src, w, h, skipX, 0,    dY,   dY/2,   lo, hi);
+                    boxFilterV(src, w, h, skipX, dY/2, dY,   dY/2-1, lo, hi);
+                    boxFilterV(src, w, h, skipX, dY-1, dY+1, dY/2,   lo, hi);
+                } else {
+                    boxFilterV(src, w, h, skipX, 0,    dY, dY/2, lo, hi);
+                    boxFilterV(src, w, h, skipX, dY/2, dY, dY/2, lo, hi);
+                    boxFilterV(src, w, h, skipX, dY-2, dY, dY/2, lo, hi);
+                }
+                break;
+            case CONVOLVE_H:
+                convolveH(src, dst, w, kernel[0], kernelShift[0], lo, hi);
+                break;
+            default:
+                convolveV(src, dst, w, h, skipX, kernel[1], kernelShift[1],
+                          lo, hi);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Box filters rows <code>y0</code> to <code>y1</code> (exclusive)
+     * of <code>pixels</code> in place.
+     */
+    private static void boxFilterH(int [] pixels, int w, int h,
+                                   int skipX, int boxSz, int loc,
+                                   int y0, int y1) {
           // Check if the raster is wide enough to do _any_ work
-        if (w < (2*skipX)+boxSz) return dest;
-        if (h < (2*skipY))       return dest;
-
-        final SinglePixelPackedSampleModel srcSPPSM =
-            (SinglePixelPackedSampleModel)src.getSampleModel();
-
-        final SinglePixelPackedSampleModel dstSPPSM =
-            (SinglePixelPackedSampleModel)dest.getSampleModel();
-
-        // Stride is the distance between two consecutive column elements,
-        // in the one-dimention dataBuffer
-        final int srcScanStride = srcSPPSM.getScanlineStride();
-        final int dstScanStride = dstSPPSM.getScanlineStride();
-
-        // Access the integer buffer for each image.
-        DataBufferInt srcDB = (DataBufferInt)src.getDataBuffer();
-        DataBufferInt dstDB = (DataBufferInt)dest.getDataBuffer();
-
-        // Offset defines where in the stack the real data begin
-        final int srcOff
-            = (srcDB.getOffset() +
-               srcSPPSM.getOffset
-               (src.getMinX()-src.getSampleModelTranslateX(),
-                src.getMinY()-src.getSampleModelTranslateY()));
-        final int dstOff
-            = (dstDB.getOffset() +
-               dstSPPSM.getOffset
-               (dest.getMinX()-dest.getSampleModelTranslateX(),
-                dest.getMinY()-dest.getSampleModelTranslateY()));
-
-        // Access the pixel value array
-        final int[] srcPixels  = srcDB.getBankData()[0];
-        final int[] destPixels = dstDB.getBankData()[0];
+        if (w < (2*skipX)+boxSz) return;
 
         final int [] buffer = new int [boxSz];
         int curr, prev;
 
           // Fixed point normalization factor (8.24)
-        int scale = (1<<24)/boxSz;
-
-        /*
-         * System.out.println("Info: srcOff: " + srcOff +
-         *                    " x: " + skipX +
-         *                    " y: " + skipY +
-         *                    " w: " + w +
-         *                    " h: " + h +
-         *                    " boxSz " + boxSz +
-         *                    " srcStride: " + srcScanStride);
-         */
-
-        for (int y=skipY; y<(h-skipY); y++) {
-            int sp     = srcOff + y*srcScanStride;
-            int dp     = dstOff + y*dstScanStride;
+        final int scale = (1<<24)/boxSz;
+
+        for (int y=y0; y<y1; y++) {
+            int sp     = y*w;
+            int dp     = sp;
             int rowEnd = sp + (w-skipX);
 
             int k    = 0;
@@ -377,7 +514,7 @@ public class GaussianBlurRed8Bit extends AbstractRed {
             int end  = sp+boxSz;
 
             while (sp < end) {
-                curr = buffer[k] = srcPixels[sp];
+                curr = buffer[k] = pixels[sp];
                 sumA += (curr>>> 24);
                 sumR += (curr >> 16)&0xFF;
                 sumG += (curr >>  8)&0xFF;
@@ -387,83 +524,52 @@ public class GaussianBlurRed8Bit extends AbstractRed {
             }
 
             dp += skipX + loc;
-            prev = destPixels[dp] = (( (sumA*scale)&0xFF000000)       |
-                                     (((sumR*scale)&0xFF000000)>>>8)  |
-                                     (((sumG*scale)&0xFF000000)>>>16) |
-                                     (((sumB*scale)&0xFF000000)>>>24));
+            prev = pixels[dp] = (( (sumA*scale)&0xFF000000)       |
+                                 (((sumR*scale)&0xFF000000)>>>8)  |
+                                 (((sumG*scale)&0xFF000000)>>>16) |
+                                 (((sumB*scale)&0xFF000000)>>>24));
             dp++;
             k=0;
             while (sp < rowEnd) {
                 curr = buffer[k];
-                if (curr == srcPixels[sp]) {
-                    destPixels[dp] = prev;
+                if (curr == pixels[sp]) {
+                    pixels[dp] = prev;
                 } else {
                     sumA -= (curr>>> 24);
                     sumR -= (curr >> 16)&0xFF;
                     sumG -= (curr >>  8)&0xFF;
                     sumB -= (curr      )&0xFF;
 
-                    curr = buffer[k] = srcPixels[sp];
+                    curr = buffer[k] = pixels[sp];
 
                     sumA += (curr>>> 24);
                     sumR += (curr >> 16)&0xFF;
                     sumG += (curr >>  8)&0xFF;
                     sumB += (curr      )&0xFF;
-                    prev = destPixels[dp] = (( (sumA*scale)&0xFF000000)       |
-                                             (((sumR*scale)&0xFF000000)>>>8)  |
-                                             (((sumG*scale)&0xFF000000)>>>16) |
-                                             (((sumB*scale)&0xFF000000)>>>24));
+                    prev = pixels[dp] = (( (sumA*scale)&0xFF000000)       |
+                                         (((sumR*scale)&0xFF000000)>>>8)  |
+                                         (((sumG*scale)&0xFF000000)>>>16) |
+                                         (((sumB*scale)&0xFF000000)>>>24));
                 }
-                k = (k+1)%boxSz;
+                if (++k == boxSz) k = 0;
                 sp++;
                 dp++;
             }
         }
-        return dest;
     }
 
-    private WritableRaster boxFilterV(Raster src, WritableRaster dest,
-                                      int skipX, int skipY,
-                                      int boxSz, int loc) {
-
-        final int w = src.getWidth();
-        final int h = src.getHeight();
-
+    /**
+     * Box filters columns <code>x0</code> to <code>x1</code>
+     * (exclusive) of <code>pixels</code> in place, leaving the
+     * <code>skipX</code> columns on either side alone.
+     */
+    private static void boxFilterV(int [] pixels, int w, int h,
+                                   int skipX, int skipY,
+                                   int boxSz, int loc,
+                                   int x0, int x1) {
           // Check if the raster is wide enough to do _any_ work
-        if (w < (2*skipX))       return dest;
-        if (h < (2*skipY)+boxSz) return dest;
-
-        final SinglePixelPackedSampleModel srcSPPSM =
-            (SinglePixelPackedSampleModel)src.getSampleModel();
-
-        final SinglePixelPackedSampleModel dstSPPSM =
-            (SinglePixelPackedSampleModel)dest.getSampleModel();
-
-        // Stride is the distance between two consecutive column elements,
-        // in the one-dimention dataBuffer
-        final int srcScanStride = srcSPPSM.getScanlineStride();
-        final int dstScanStride = dstSPPSM.getScanlineStride();
-
-        // Access the integer buffer for each image.
-        DataBufferInt srcDB = (DataBufferInt)src.getDataBuffer();
-        DataBufferInt dstDB = (DataBufferInt)dest.getDataBuffer();
-
-        // Offset defines where in the stack the real data begin
-        final int srcOff
-            = (srcDB.getOffset() +
-               srcSPPSM.getOffset
-               (src.getMinX()-src.getSampleModelTranslateX(),
-                src.getMinY()-src.getSampleModelTranslateY()));
-        final int dstOff
-            = (dstDB.getOffset() +
-               dstSPPSM.getOffset
-               (dest.getMinX()-dest.getSampleModelTranslateX(),
-                dest.getMinY()-dest.getSampleModelTranslateY()));
-
-
-        // Access the pixel value array
-        final int[] srcPixels  = srcDB.getBankData()[0];
-        final int[] destPixels = dstDB.getBankData()[0];
+        if (w < (2*skipX))       return;
+        if (h < (2*skipY)+boxSz) return;
 
         final int [] buffer = new int [boxSz];
         int curr, prev;
@@ -471,20 +577,13 @@ public class GaussianBlurRed8Bit extends AbstractRed {
           // Fixed point normalization factor (8.24)
         final int scale = (1<<24)/boxSz;
 
-        /*
-         * System.out.println("Info: srcOff: " + srcOff +
-         *                    " x: " + skipX +
-         *                    " y: " + skipY +
-         *                    " w: " + w +
-         *                    " h: " + h +
-         *                    " boxSz " + boxSz +
-         *                    " srcStride: " + srcScanStride);
-         */
-
-        for (int x=skipX; x<(w-skipX); x++) {
-            int sp = srcOff + x;
-            int dp = dstOff + x;
-            int colEnd = sp + (h-skipY)*srcScanStride;
+        if (x0 < skipX)   x0 = skipX;
+        if (x1 > w-skipX) x1 = w-skipX;
+
+        for (int x=x0; x<x1; x++) {
+            int sp = x;
+            int dp = x;
+            int colEnd = sp + (h-skipY)*w;
 
             int k=0;
             int sumA = 0;
@@ -492,54 +591,127 @@ public class GaussianBlurRed8Bit extends AbstractRed {
             int sumG = 0;
             int sumB = 0;
 
-            sp += skipY*srcScanStride;
-            int end  = sp+(boxSz*srcScanStride);
+            sp += skipY*w;
+            int end  = sp+(boxSz*w);
 
             while (sp < end) {
-                curr = buffer[k] = srcPixels[sp];
+                curr = buffer[k] = pixels[sp];
                 sumA += (curr>>> 24);
                 sumR += (curr >> 16)&0xFF;
                 sumG += (curr >>  8)&0xFF;
                 sumB += (curr      )&0xFF;
                 k++;
-                sp+=srcScanStride;
+                sp+=w;
             }
 
-
-            dp += (skipY + loc)*dstScanStride;
-            prev = destPixels[dp] = (( (sumA*scale)&0xFF000000)       |
-                                     (((sumR*scale)&0xFF000000)>>>8)  |
-                                     (((sumG*scale)&0xFF000000)>>>16) |
-                                     (((sumB*scale)&0xFF000000)>>>24));
-            dp+=dstScanStride;
+            dp += (skipY + loc)*w;
+            prev = pixels[dp] = (( (sumA*scale)&0xFF000000)       |
+                                 (((sumR*scale)&0xFF000000)>>>8)  |
+                                 (((sumG*scale)&0xFF000000)>>>16) |
+                                 (((sumB*scale)&0xFF000000)>>>24));
+            dp+=w;
             k=0;
             while (sp < colEnd) {
                 curr = buffer[k];
-                if (curr == srcPixels[sp]) {
-                    destPixels[dp] = prev;
+                if (curr == pixels[sp]) {
+                    pixels[dp] = prev;
                 } else {
                     sumA -= (curr>>> 24);
                     sumR -= (curr >> 16)&0xFF;
                     sumG -= (curr >>  8)&0xFF;
                     sumB -= (curr      )&0xFF;
 
-                    curr = buffer[k] = srcPixels[sp];
+                    curr = buffer[k] = pixels[sp];
 
                     sumA += (curr>>> 24);
                     sumR += (curr >> 16)&0xFF;
                     sumG += (curr >>  8)&0xFF;
                     sumB += (curr      )&0xFF;
-                    prev = destPixels[dp] = (( (sumA*scale)&0xFF000000)       |
-                                             (((sumR*scale)&0xFF000000)>>>8)  |
-                                             (((sumG*scale)&0xFF000000)>>>16) |
-                                             (((sumB*scale)&0xFF000000)>>>24));
+                    prev = pixels[dp] = (( (sumA*scale)&0xFF000000)       |
+                                         (((sumR*scale)&0xFF000000)>>>8)  |
+                                         (((sumG*scale)&0xFF000000)>>>16) |
+                                         (((sumB*scale)&0xFF000000)>>>24));
+                }
+                if (++k == boxSz) k = 0;
+                sp+=w;
+                dp+=w;
+            }
+        }
+    }
+
+    /**
+     * Convolves rows <code>y0</code> to <code>y1</code> (exclusive) of
+     * <code>src</code> with the fixed point <code>kern</code>, which has
+     * <code>shift</code> fractional bits, into <code>dst</code>.
+     * Columns closer than the kernel radius to the edges are not
+     * written.
+     */
+    private static void convolveH(int [] src, int [] dst, int w,
+                                  int [] kern, int shift, int y0, int y1) {
+        final int len = kern.length;
+        final int rad = len/2;
+
+        for (int y=y0; y<y1; y++) {
+            final int row = y*w;
+            for (int x=rad; x<w-rad; x++) {
+                int sp   = row+x-rad;
+                int sumA = 0;
+                int sumR = 0;
+                int sumG = 0;
+                int sumB = 0;
+                for (int k=0; k<len; k++, sp++) {
+                    int pel = src[sp];
+                    if (pel == 0) continue;
+                    int kv = kern[k];
+                    sumA += kv*(pel>>> 24);
+                    sumR += kv*((pel >> 16)&0xFF);
+                    sumG += kv*((pel >>  8)&0xFF);
+                    sumB += kv*((pel      )&0xFF);
+                }
+                dst[row+x] = (((sumA>>>shift)<<24) | ((sumR>>>shift)<<16) |
+                              ((sumG>>>shift)<< 8) |  (sumB>>>shift));
+            }
+        }
+    }
+
+    /**
+     * Convolves rows <code>y0</code> to <code>y1</code> (exclusive) of
+     * <code>src</code> vertically with the fixed point
+     * <code>kern</code>, which has <code>shift</code> fractional bits,
+     * into <code>dst</code>.  Rows closer than the kernel radius to the
+     * edges, and the <code>skipX</code> columns on either side, are not
+     * written.
+     */
+    private static void convolveV(int [] src, int [] dst, int w, int h,
+                                  int skipX, int [] kern, int shift,
+                                  int y0, int y1) {
+        final int len = kern.length;
+        final int rad = len/2;
+
+        if (y0 < rad)   y0 = rad;
+        if (y1 > h-rad) y1 = h-rad;
+
+        for (int y=y0; y<y1; y++) {
+            final int row = y*w;
+            for (int x=skipX; x<w-skipX; x++) {
+                int sp   = row-rad*w+x;
+                int sumA = 0;
+                int sumR = 0;
+                int sumG = 0;
+                int sumB = 0;
+                for (int k=0; k<len; k++, sp+=w) {
+                    int pel = src[sp];
+                    if (pel == 0) continue;
+                    int kv = kern[k];
+                    sumA += kv*(pel>>> 24);
+                    sumR += kv*((pel >> 16)&0xFF);
+                    sumG += kv*((pel >>  8)&0xFF);
+                    sumB += kv*((pel      )&0xFF);
                 }
-                k = (k+1)%boxSz;
-                sp+=srcScanStride;
-                dp+=dstScanStride;
+                dst[row+x] = (((sumA>>>shift)<<24) | ((sumR>>>shift)<<16) |
+                              ((sumG>>>shift)<< 8) |  (sumB>>>shift));
             }
         }
-        return dest;
     }
 
     protected static ColorModel fixColorModel(CachableRed src) {
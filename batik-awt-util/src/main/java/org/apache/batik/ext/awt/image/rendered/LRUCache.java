@@ -18,6 +18,8 @@
  */
 package org.apache.batik.ext.awt.image.rendered;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.batik.util.DoublyLinkedList;
 
 /**
@@ -69,6 +71,13 @@ public class LRUCache {
         private DoublyLinkedList used    = null;
         private int     maxSize = 0;
 
+        /**
+         * Statistics, updated by the cache and the tile stores using it.
+         */
+        protected final AtomicLong hits      = new AtomicLong();
+        protected final AtomicLong misses    = new AtomicLong();
+        protected final AtomicLong evictions = new AtomicLong();
+
         public LRUCache(int size) {
                 if (size <= 0) size=1;
                 maxSize = size;
@@ -144,9 +153,45 @@ public class LRUCache {
                         nde = (LRUNode)used.getTail();
                         nde.setObj(obj);
                         used.touch(nde);
+                        evictions.incrementAndGet();
                 }
         }
 
+        /**
+         * Records that a lookup found its object in the cache.
+         */
+        void recordHit()  { hits.incrementAndGet(); }
+
+        /**
+         * Records that a lookup had to regenerate its object.
+         */
+        void recordMiss() { misses.incrementAndGet(); }
+
+        /**
+         * Returns the number of lookups that found their object.
+         */
+        public long getHits()      { return hits.get(); }
+
+        /**
+         * Returns the number of lookups that had to regenerate their object.
+         */
+        public long getMisses()    { return misses.get(); }
+
+        /**
+         * Returns the number of objects pushed out of the cache to
+         * make room for others.
+         */
+        public long getEvictions() { return evictions.get(); }
+
+        /**
+         * Resets the hit, miss and eviction counters.
+         */
+        public void resetStatistics() {
+                hits.set(0);
+                misses.set(0);
+                evictions.set(0);
+        }
+
         protected synchronized void print() {
                 System.out.println("In Use: " + used.getSize() +
                                                    " Free: " + free.getSize());
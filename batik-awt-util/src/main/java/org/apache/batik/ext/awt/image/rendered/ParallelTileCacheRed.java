@@ -0,0 +1,141 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.image.WritableRaster;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.batik.util.HaltingThread;
+
+/**
+ * A TileCacheRed that computes the blocks and tiles of a request on a
+ * <code>ForkJoinPool</code>.
+ *
+ * The request is split exactly like <code>TileCacheRed</code> splits
+ * it, so the source renders the same regions, and the result is the
+ * same, whatever the number of threads.  The blocks of tiles are
+ * computed concurrently, and then the tiles lying partly outside the
+ * request.  Note that an area where none of the tiles are cached yet
+ * is a single block, so it is computed by one thread.
+ *
+ * @version $Id$
+ */
+public class ParallelTileCacheRed extends TileCacheRed {
+
+    /**
+     * The pool the blocks and tiles are computed on.
+     */
+    protected ForkJoinPool pool;
+
+    /**
+     * Place the results of computations of cr into the global tile
+     * cache, computing them on <code>pool</code>.
+     * @param cr The operation to cache results from.
+     * @param pool The pool to compute on, or null for the calling thread.
+     */
+    public ParallelTileCacheRed(CachableRed cr, ForkJoinPool pool) {
+        super(cr);
+        this.pool = pool;
+    }
+
+    /**
+     * Place the results of computations of cr into the given cache
+     * partition, computing them on <code>pool</code>.
+     * @param cr The operation to cache results from.
+     * @param partition The cache to hold the tiles.
+     * @param pool The pool to compute on, or null for the calling thread.
+     */
+    public ParallelTileCacheRed(CachableRed cr, LRUCache partition,
+                                ForkJoinPool pool) {
+        super(cr, partition);
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the pool the blocks and tiles are computed on.
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    protected void drawBlockInPlace(TileBlock [] blocks, WritableRaster wr) {
+        if ((pool == null) || (blocks.length < 2)) {
+            super.drawBlockInPlace(blocks, wr);
+            return;
+        }
+        pool.invoke(new DrawTask(blocks, wr, 0, blocks.length,
+                                 Thread.currentThread()));
+    }
+
+    protected void drawTiles(List tiles, WritableRaster wr) {
+        if ((pool == null) || (tiles.size() < 2)) {
+            super.drawTiles(tiles, wr);
+            return;
+        }
+        pool.invoke(new DrawTask(tiles.toArray(), wr, 0, tiles.size(),
+                                 Thread.currentThread()));
+    }
+
+    /**
+     * Computes one block of tiles, or one tile, into wr.
+     * @param item A <code>TileBlock</code> or the <code>Point</code>
+     *             holding the tile indices.
+     */
+    protected void draw(Object item, WritableRaster wr) {
+        if (item instanceof TileBlock)
+            super.drawBlockInPlace(new TileBlock[] { (TileBlock)item }, wr);
+        else
+            super.drawTiles(Collections.singletonList(item), wr);
+    }
+
+    /**
+     * Task that computes a range of the blocks or tiles of a request.
+     */
+    protected class DrawTask extends RecursiveAction {
+        protected final Object [] items;
+        protected final WritableRaster wr;
+        protected final int lo, hi;
+        protected final Thread caller;
+
+        protected DrawTask(Object [] items, WritableRaster wr,
+                           int lo, int hi, Thread caller) {
+            this.items  = items;
+            this.wr     = wr;
+            this.lo     = lo;
+            this.hi     = hi;
+            this.caller = caller;
+        }
+
+        protected void compute() {
+            if (HaltingThread.hasBeenHalted(caller))
+                return;
+
+            if (hi - lo == 1) {
+                draw(items[lo], wr);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new DrawTask(items, wr, lo, mid, caller),
+                      new DrawTask(items, wr, mid, hi, caller));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * A small pool of <code>int</code> arrays used as scratch space by
+ * filters that would otherwise allocate a fresh raster for every tile
+ * they compute.
+ *
+ * The pool keeps at most a fixed number of bytes of idle buffers,
+ * buffers returned once that budget is used up are simply left to
+ * the garbage collector.
+ *
+ * @version $Id$
+ */
+public class ScratchBufferPool {
+
+    /**
+     * The default number of bytes of idle buffers the shared pool
+     * holds on to.
+     */
+    public static final long DEFAULT_MAX_BYTES = 32L*1024*1024;
+
+    private static ScratchBufferPool sharedPool
+        = new ScratchBufferPool(DEFAULT_MAX_BYTES);
+
+    /**
+     * Returns the pool shared by the filters of this package.
+     */
+    public static ScratchBufferPool getSharedPool() {
+        return sharedPool;
+    }
+
+    protected LinkedList idle = new LinkedList();
+    protected long idleBytes;
+    protected long maxBytes;
+
+    /**
+     * Creates a pool that keeps at most <code>maxBytes</code> bytes of
+     * idle buffers.
+     */
+    public ScratchBufferPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the number of bytes of idle buffers this pool may keep.
+     */
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the number of bytes of idle buffers this pool may keep,
+     * dropping idle buffers if needed.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        while ((idleBytes > maxBytes) && !idle.isEmpty()) {
+            int[] buf = (int[])idle.removeFirst();
+            idleBytes -= buf.length*4L;
+        }
+    }
+
+    /**
+     * Returns the number of bytes held by idle buffers.
+     */
+    public synchronized long getIdleBytes() {
+        return idleBytes;
+    }
+
+    /**
+     * Returns a buffer at least <code>len</code> elements long whose
+     * first <code>len</code> elements are zero.  The smallest idle
+     * buffer that is large enough is reused if there is one.
+     */
+    public int[] getIntBuffer(int len) {
+        int[] ret = null;
+        synchronized (this) {
+            Iterator i = idle.iterator();
+            while (i.hasNext()) {
+                int[] buf = (int[])i.next();
+                if ((buf.length >= len) &&
+                    ((ret == null) || (buf.length < ret.length)))
+                    ret = buf;
+            }
+            if (ret != null) {
+                idle.remove(ret);
+                idleBytes -= ret.length*4L;
+            }
+        }
+        if (ret == null)
+            return new int[len];
+        Arrays.fill(ret, 0, len, 0);
+        return ret;
+    }
+
+    /**
+     * Hands <code>buf</code> back to the pool.  The caller must not
+     * use it afterwards.
+     */
+    public void putIntBuffer(int[] buf) {
+        if (buf == null) return;
+        synchronized (this) {
+            long sz = buf.length*4L;
+            if (idleBytes + sz > maxBytes)
+                return;
+            idle.addLast(buf);
+            idleBytes += sz;
+        }
+    }
+}
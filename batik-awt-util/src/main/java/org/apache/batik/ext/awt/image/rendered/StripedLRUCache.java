@@ -0,0 +1,264 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+
+import org.apache.batik.util.DoublyLinkedList;
+
+/**
+ * An LRU cache bounded by the number of bytes of the tiles it holds
+ * rather than by their count.
+ *
+ * The cache is split into a number of stripes, each one with its own
+ * LRU list, byte budget and lock.  An object always lives in the same
+ * stripe, picked from its identity hash code, so threads working on
+ * unrelated tiles rarely contend for the same lock.  Eviction is LRU
+ * within a stripe.
+ *
+ * @version $Id$
+ */
+public class StripedLRUCache extends LRUCache {
+
+    /**
+     * The number of bytes assumed for objects whose size is unknown,
+     * this is the size of a default sized ARGB tile.
+     */
+    public static final int DEFAULT_OBJECT_BYTES
+        = (AbstractTiledRed.getDefaultTileSize() *
+           AbstractTiledRed.getDefaultTileSize() * 4);
+
+    /**
+     * The default number of stripes.
+     */
+    public static final int DEFAULT_STRIPES = 8;
+
+    /**
+     * LRU node that remembers how many bytes its object accounts for.
+     */
+    protected static class SizedNode extends LRUNode {
+        protected long bytes;
+    }
+
+    /**
+     * One independently locked part of the cache.
+     */
+    protected static class Stripe {
+        protected DoublyLinkedList used = new DoublyLinkedList();
+        protected long bytes;
+        protected long maxBytes;
+    }
+
+    protected Stripe[] stripes;
+    protected int      stripeMask;
+    protected volatile long maxBytes;
+
+    /**
+     * Creates a cache holding at most <code>maxBytes</code> bytes of
+     * tiles split over <code>DEFAULT_STRIPES</code> stripes.
+     */
+    public StripedLRUCache(long maxBytes) {
+        this(maxBytes, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates a cache holding at most <code>maxBytes</code> bytes of
+     * tiles.
+     * @param maxBytes the byte budget of the whole cache.
+     * @param nStripes the number of stripes, rounded up to a power of two.
+     */
+    public StripedLRUCache(long maxBytes, int nStripes) {
+        super(1);
+        int n = 1;
+        while (n < nStripes) n <<= 1;
+        stripes = new Stripe[n];
+        for (int i = 0; i < n; i++)
+            stripes[i] = new Stripe();
+        stripeMask = n - 1;
+        setMaxBytes(maxBytes);
+    }
+
+    /**
+     * Returns the byte budget of the cache.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the byte budget of the cache, evicting tiles if needed.
+     */
+    public void setMaxBytes(long maxBytes) {
+        if (maxBytes < 1) maxBytes = 1;
+        this.maxBytes = maxBytes;
+        long perStripe = (maxBytes + stripes.length - 1) / stripes.length;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                s.maxBytes = perStripe;
+                evict(s);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes currently accounted for by the cache.
+     */
+    public long getBytes() {
+        long ret = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                ret += s.bytes;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Sets the size of the cache in default sized tiles.  This is
+     * converted to a byte budget using <code>DEFAULT_OBJECT_BYTES</code>.
+     */
+    public void setSize(int newSz) {
+        setMaxBytes(newSz * (long)DEFAULT_OBJECT_BYTES);
+    }
+
+    public int getUsed() {
+        int ret = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                ret += s.used.getSize();
+            }
+        }
+        return ret;
+    }
+
+    public void flush() {
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                while (s.used.getSize() > 0) {
+                    SizedNode nde = (SizedNode)s.used.pop();
+                    nde.setObj(null);
+                }
+                s.bytes = 0;
+            }
+        }
+    }
+
+    public void remove(LRUObj obj) {
+        Stripe s = getStripe(obj);
+        synchronized (s) {
+            SizedNode nde = (SizedNode)obj.lruGet();
+            if (nde == null) return;
+            s.used.remove(nde);
+            s.bytes -= nde.bytes;
+            nde.setObj(null);
+        }
+    }
+
+    public void touch(LRUObj obj) {
+        Stripe s = getStripe(obj);
+        synchronized (s) {
+            LRUNode nde = obj.lruGet();
+            if (nde == null) return;
+            s.used.touch(nde);
+        }
+    }
+
+    public void add(LRUObj obj) {
+        Stripe s = getStripe(obj);
+        long sz = getBytes(obj);
+        synchronized (s) {
+            SizedNode nde = (SizedNode)obj.lruGet();
+            if (nde != null) {
+                // Already linked in, the object may have a new raster.
+                s.used.touch(nde);
+                s.bytes += sz - nde.bytes;
+                nde.bytes = sz;
+            } else {
+                nde = new SizedNode();
+                nde.bytes = sz;
+                nde.setObj(obj);
+                s.used.add(nde);
+                s.bytes += sz;
+            }
+            evict(s);
+        }
+    }
+
+    /**
+     * Drops least recently used objects from <code>s</code> until it
+     * is within its budget.  The most recently used object is always
+     * kept, even if it is larger than the budget on its own.
+     * Must be called with the lock on <code>s</code> held.
+     */
+    protected void evict(Stripe s) {
+        while ((s.bytes > s.maxBytes) && (s.used.getSize() > 1)) {
+            SizedNode nde = (SizedNode)s.used.getTail();
+            s.used.remove(nde);
+            s.bytes -= nde.bytes;
+            nde.setObj(null);
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the stripe <code>obj</code> lives in.
+     */
+    protected Stripe getStripe(LRUObj obj) {
+        int h = System.identityHashCode(obj);
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return stripes[h & stripeMask];
+    }
+
+    /**
+     * Returns the number of bytes <code>obj</code> accounts for.
+     */
+    protected long getBytes(LRUObj obj) {
+        if (obj instanceof TileLRUMember) {
+            Raster ras = ((TileLRUMember)obj).hRaster;
+            if (ras != null)
+                return getBytes(ras);
+        }
+        return DEFAULT_OBJECT_BYTES;
+    }
+
+    /**
+     * Returns the number of bytes used by the pixels of <code>ras</code>.
+     */
+    public static long getBytes(Raster ras) {
+        SampleModel sm = ras.getSampleModel();
+        long elemBytes = (DataBuffer.getDataTypeSize(sm.getDataType())+7)/8;
+        return (ras.getWidth() * (long)ras.getHeight() *
+                sm.getNumDataElements() * elemBytes);
+    }
+
+    protected void print() {
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe s = stripes[i];
+            synchronized (s) {
+                System.out.println("Stripe " + i + ": " + s.used.getSize() +
+                                   " tiles, " + s.bytes + "/" +
+                                   s.maxBytes + " bytes");
+            }
+        }
+    }
+}
@@ -21,26 +21,73 @@ package org.apache.batik.ext.awt.image.rendered;
 import java.awt.image.RenderedImage;
 
 /**
+ * Entry point to the tile caches.  By default all the tile stores
+ * share one process wide cache, separate partitions with their own
+ * byte budget can be created for renderers or tenants that should
+ * not push each other's tiles out.
  *
  * @version $Id$
  */
 public class TileCache {
-        private static LRUCache cache = new LRUCache(50);
+        private static StripedLRUCache cache = new StripedLRUCache
+            (50L * StripedLRUCache.DEFAULT_OBJECT_BYTES);
 
+        /**
+         * Sets the size of the shared cache in default sized tiles.
+         */
         public static void setSize(int sz) { cache.setSize(sz); }
 
+        /**
+         * Sets the byte budget of the shared cache.
+         */
+        public static void setMaxBytes(long bytes) {
+                cache.setMaxBytes(bytes);
+        }
+
+        /**
+         * Returns the shared cache, mostly so its statistics can be read.
+         */
+        public static StripedLRUCache getCache() { return cache; }
+
+        /**
+         * Creates a new cache partition with its own byte budget.
+         */
+        public static StripedLRUCache createPartition(long maxBytes) {
+                return new StripedLRUCache(maxBytes);
+        }
+
         public static TileStore getTileGrid(int minTileX, int minTileY,
                                        int xSz, int ySz, TileGenerator src) {
-                return new TileGrid(minTileX, minTileY, xSz, ySz, src, cache);
+                return getTileGrid(minTileX, minTileY, xSz, ySz, src, cache);
+        }
+
+        public static TileStore getTileGrid(int minTileX, int minTileY,
+                                            int xSz, int ySz,
+                                            TileGenerator src,
+                                            LRUCache partition) {
+                return new TileGrid(minTileX, minTileY, xSz, ySz, src,
+                                    partition);
         }
 
         public static TileStore getTileGrid(RenderedImage img,
                                             TileGenerator src) {
+                return getTileGrid(img, src, cache);
+        }
+
+        public static TileStore getTileGrid(RenderedImage img,
+                                            TileGenerator src,
+                                            LRUCache partition) {
                 return new TileGrid(img.getMinTileX(),  img.getMinTileY(),
                             img.getNumXTiles(), img.getNumYTiles(),
-                            src, cache);
+                            src, partition);
         }
+
         public static TileStore getTileMap(TileGenerator src) {
-                return new TileMap(src, cache);
+                return getTileMap(src, cache);
+        }
+
+        public static TileStore getTileMap(TileGenerator src,
+                                           LRUCache partition) {
+                return new TileMap(src, partition);
         }
 }
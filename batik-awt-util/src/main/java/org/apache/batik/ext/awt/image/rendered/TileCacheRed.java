@@ -41,9 +41,18 @@ public class TileCacheRed extends AbstractTiledRed {
     }
 
     /**
-     * Place the results of computations of cr into the global tile cache.
+     * Place the results of computations of cr into the given cache
+     * partition instead of the global tile cache.
      * @param cr The operation to cache results from.
+     * @param partition The cache to hold the tiles.
      */
+    public TileCacheRed(CachableRed cr, LRUCache partition) {
+        super();
+        init(cr, null, null, null,
+             cr.getTileGridXOffset(), cr.getTileGridYOffset(),
+             TileCache.getTileMap(this, partition), null);
+    }
+
     public TileCacheRed(CachableRed cr, int tileWidth, int tileHeight) {
         super();
         ColorModel  cm = cr.getColorModel();
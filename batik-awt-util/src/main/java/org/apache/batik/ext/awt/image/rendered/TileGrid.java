@@ -53,37 +53,55 @@ public class TileGrid implements TileStore {
         rasters = new TileLRUMember[ySz][];
     }
 
+    /**
+     * Returns the cache entry for tile (x, y), in grid relative
+     * coordinates, creating it if <code>create</code> is true.  This
+     * is synchronized so that concurrent callers share the same
+     * entry, the tile itself is generated outside of the lock.
+     */
+    private synchronized TileLRUMember getItem(int x, int y, boolean create) {
+        TileLRUMember [] row = rasters[y];
+        if (row == null) {
+            if (!create) return null;
+            row = new TileLRUMember[xSz];
+            rasters[y] = row;
+        }
+        TileLRUMember item = row[x];
+        if ((item == null) && create) {
+            item = new TileLRUMember();
+            row[x] = item;
+        }
+        return item;
+    }
+
+    /**
+     * Removes the cache entry for tile (x, y), in grid relative
+     * coordinates, and returns it.
+     */
+    private synchronized TileLRUMember removeItem(int x, int y) {
+        TileLRUMember [] row = rasters[y];
+        if (row == null) return null;
+        TileLRUMember item = row[x];
+        row[x] = null;
+        return item;
+    }
+
     public void setTile(int x, int y, Raster ras) {
         x-= minTileX;
         y-= minTileY;
         if ((x<0) || (x>=xSz)) return;
         if ((y<0) || (y>=ySz)) return;
 
-        TileLRUMember [] row = rasters[y];
         TileLRUMember item;
         if (ras == null) {
             // Clearing entry.
-            if (row == null) return;
-            item = row[x];
-            if (item == null) return;
-
-            row[x] = null;
-            cache.remove(item);
+            item = removeItem(x, y);
+            if (item != null)
+                cache.remove(item);
             return;
         }
 
-        if (row != null) {
-            item = row[x];
-            if (item == null) {
-                item = new TileLRUMember();
-                row[x] = item;
-            }
-        } else {
-            row = new TileLRUMember[xSz];
-            item = new TileLRUMember();
-            row[x] = item;
-            rasters[y] = row;
-        }
+        item = getItem(x, y, true);
         item.setRaster(ras);
 
         cache.add(item);
@@ -100,10 +118,7 @@ public class TileGrid implements TileStore {
         if ((x<0) || (x>=xSz)) return null;
         if ((y<0) || (y>=ySz)) return null;
 
-        TileLRUMember [] row = rasters[y];
-        if (row == null)
-            return null;
-        TileLRUMember item = row[x];
+        TileLRUMember item = getItem(x, y, false);
         if (item == null)
             return null;
         Raster ret = item.retrieveRaster();
@@ -122,28 +137,14 @@ public class TileGrid implements TileStore {
                                       (y+minTileY) + ")");
         if (COUNT) synchronized (TileGrid.class) { requests++; }
 
-        Raster       ras  = null;
-        TileLRUMember [] row  = rasters[y];
-        TileLRUMember    item = null;
-        if (row != null) {
-            item = row[x];
-            if (item != null)
-                ras = item.retrieveRaster();
-            else {
-                item = new TileLRUMember();
-                row[x] = item;
-            }
-        } else {
-            row = new TileLRUMember[xSz];
-            rasters[y] = row;
-            item = new TileLRUMember();
-            row[x] = item;
-        }
+        TileLRUMember item = getItem(x, y, true);
+        Raster        ras  = item.retrieveRaster();
 
         if (ras == null) {
             if (DEBUG) System.out.println("Generating: ("+(x+minTileX)+", "+
                                           (y+minTileY) + ")");
             if (COUNT) synchronized (TileGrid.class) { misses++; }
+            cache.recordMiss();
             ras = source.genTile(x+minTileX, y+minTileY);
 
             // In all likelyhood the contents of this tile is junk!
@@ -153,6 +154,8 @@ public class TileGrid implements TileStore {
                 return ras;
 
             item.setRaster(ras);
+        } else {
+            cache.recordHit();
         }
 
         // Update the item's position in the cache..
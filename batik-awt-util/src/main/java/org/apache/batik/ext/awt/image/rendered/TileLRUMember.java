@@ -52,22 +52,27 @@ public class TileLRUMember implements LRUCache.LRUObj {
         public boolean checkRaster() {
             if (hRaster != null) return true;
 
-            if ((wRaster       != null) &&
-            (wRaster.get() != null)) return true;
+            // Copy the reference, the cache may clear it concurrently.
+            Reference ref = wRaster;
+            if ((ref       != null) &&
+            (ref.get() != null)) return true;
 
             return false;
         }
 
         public Raster retrieveRaster() {
-            if (hRaster != null) return hRaster;
-            if (wRaster == null) return null;
+            Raster ras = hRaster;
+            if (ras != null) return ras;
+            Reference ref = wRaster;
+            if (ref == null) return null;
 
-            hRaster = (Raster)wRaster.get();
+            ras = (Raster)ref.get();
+            hRaster = ras;
 
-            if (hRaster == null)  // didn't manage to retrieve it...
+            if (ras == null)  // didn't manage to retrieve it...
             wRaster = null;
 
-            return hRaster;
+            return ras;
         }
 
         public LRUCache.LRUNode lruGet()         { return myNode; }
@@ -21,7 +21,7 @@ package org.apache.batik.ext.awt.image.rendered;
 import java.awt.Point;
 import java.awt.image.Raster;
 import java.lang.ref.SoftReference;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.batik.util.CleanerThread;
 import org.apache.batik.util.HaltingThread;
@@ -34,7 +34,7 @@ public class TileMap implements TileStore {
     private static final boolean DEBUG = false;
     private static final boolean COUNT = false;
 
-    private HashMap rasters=new HashMap();
+    private ConcurrentHashMap rasters=new ConcurrentHashMap();
 
     static class TileMapLRUMember extends TileLRUMember {
         public Point   pt;
@@ -86,7 +86,11 @@ public class TileMap implements TileStore {
         TileMapLRUMember item;
         if (o == null) {
             item = new TileMapLRUMember(this, pt, ras);
-            rasters.put(pt, item);
+            Object prev = rasters.putIfAbsent(pt, item);
+            if (prev != null) {
+                item = (TileMapLRUMember)prev;
+                item.setRaster(ras);
+            }
         } else {
             item = (TileMapLRUMember)o;
             item.setRaster(ras);
@@ -129,6 +133,7 @@ public class TileMap implements TileStore {
             if (DEBUG) System.out.println("Generating: ("+(x)+", "+
                                           (y) + ")");
             if (COUNT) synchronized (TileMap.class) { misses++; }
+            cache.recordMiss();
             ras = source.genTile(x, y);
 
             // In all likelyhood the contents of this tile is junk!
@@ -141,8 +146,15 @@ public class TileMap implements TileStore {
                 item.setRaster(ras);
             else  {
                 item = new TileMapLRUMember(this, pt, ras);
-                rasters.put(pt, item);
+                Object prev = rasters.putIfAbsent(pt, item);
+                if (prev != null) {
+                    // Another thread generated it concurrently.
+                    item = (TileMapLRUMember)prev;
+                    item.setRaster(ras);
+                }
             }
+        } else {
+            cache.recordHit();
         }
 
         // Update the item's position in the cache..
@@ -19,6 +19,7 @@
 
 package org.apache.batik.ext.awt.image.rendered;
 
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.color.ColorSpace;
 import java.awt.geom.AffineTransform;
@@ -27,8 +28,18 @@ import java.awt.image.ColorModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferInt;
 import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+
 /**
  * This class creates a RenderedImage in conformance to the one
  * defined for the feTurbulence filter of the SVG specification.  What
@@ -58,10 +69,19 @@ import java.awt.image.WritableRaster;
  * The S curve function get's it's name because it looks a bit like as
  * 'S' from 0-&gt;1.
  *
+ * Large rasters are generated a few rows at a time over a
+ * <code>ForkJoinPool</code>.  When the transform keeps the axes
+ * aligned the parts of the computation that only depend on the column
+ * or on the row are done once per column or row.  The generated tiles
+ * are kept in a cache shared by all the images that generate the same
+ * pattern, so rendering the same turbulence again, or another part of
+ * it, does not generate the noise again.
+ *
  * @author     <a href="mailto:vincent.hardy@eng.sun.com">Vincent Hardy</a>
  * @author     <a href="mailto:DeWeese@apache.org">Thomas DeWeese</a>
  * @version $Id$ */
-public final class TurbulencePatternRed extends AbstractRed {
+public final class TurbulencePatternRed extends AbstractRed
+    implements TileGenerator {
     /**
      * Inner class to store tile stitching info.
      * #see
@@ -213,6 +233,154 @@ public final class TurbulencePatternRed extends AbstractRed {
     private final int[] latticeSelector = new int[BSize + 1];
     private final double[] gradient = new double[(BSize+1)*8];
 
+    /**
+     * The pool the rows of large rasters are split over, see
+     * <code>getTurbulencePool</code>.
+     */
+    private static ForkJoinPool turbulencePool;
+    private static boolean      turbulencePoolSet;
+
+    /**
+     * The default byte budget of the pattern cache.
+     */
+    private static final long DEFAULT_PATTERN_CACHE_BYTES = 16L<<20;
+
+    /**
+     * The maximum number of patterns whose tiles are kept.
+     */
+    private static final int MAX_CACHED_PATTERNS = 32;
+
+    /**
+     * The cache partition holding the tiles of the patterns.
+     */
+    private static final StripedLRUCache patternCache =
+        TileCache.createPartition(DEFAULT_PATTERN_CACHE_BYTES);
+
+    /**
+     * The tiles of each pattern, by <code>PatternKey</code>, least
+     * recently used first.
+     */
+    private static final Map patterns = new LinkedHashMap(16, .75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > MAX_CACHED_PATTERNS;
+            }
+        };
+
+    private static volatile boolean patternCacheEnabled = true;
+
+    /**
+     * Identifies the pattern generated by this image.
+     */
+    private PatternKey patternKey;
+
+    /**
+     * Returns the pool the rows of large rasters are split over when
+     * they are not generated from a thread that is already part of a
+     * <code>ForkJoinPool</code>.  Unless one was set this is the pool
+     * of <code>GaussianBlurRed8Bit</code>.
+     */
+    public static synchronized ForkJoinPool getTurbulencePool() {
+        if (!turbulencePoolSet)
+            return GaussianBlurRed8Bit.getBlurPool();
+        return turbulencePool;
+    }
+
+    /**
+     * Sets the pool the rows of large rasters are split over.  If
+     * <code>pool</code> is null the rasters are generated on the
+     * calling thread.
+     */
+    public static synchronized void setTurbulencePool(ForkJoinPool pool) {
+        turbulencePool    = pool;
+        turbulencePoolSet = true;
+    }
+
+    /**
+     * Returns the cache partition holding the tiles of the patterns,
+     * mostly so its byte budget can be changed and its statistics
+     * read.
+     */
+    public static StripedLRUCache getPatternCache() {
+        return patternCache;
+    }
+
+    /**
+     * Returns true if the tiles of the patterns are cached.
+     */
+    public static boolean isPatternCacheEnabled() {
+        return patternCacheEnabled;
+    }
+
+    /**
+     * Turns the pattern cache on or off.  When it is on the tiles of
+     * a pattern are shared by all the images that generate that
+     * pattern, that is the images with the same base frequencies,
+     * number of octaves, seed, stitching, noise type, output channels
+     * and transform from device space, whatever region of the pattern
+     * they cover.  Turning it off flushes the cache.
+     */
+    public static void setPatternCacheEnabled(boolean enabled) {
+        patternCacheEnabled = enabled;
+        if (!enabled)
+            flushPatternCache();
+    }
+
+    /**
+     * Drops all the cached pattern tiles.
+     */
+    public static void flushPatternCache() {
+        synchronized (patterns) {
+            patterns.clear();
+        }
+        patternCache.flush();
+    }
+
+    /**
+     * Returns the shared tiles of the pattern generated by this image,
+     * or null if the pattern cache is off.
+     */
+    private TileStore getPatternTiles() {
+        if (!patternCacheEnabled)
+            return null;
+
+        synchronized (patterns) {
+            TileStore ts = (TileStore)patterns.get(patternKey);
+            if (ts == null) {
+                ts = TileCache.getTileMap(this, patternCache);
+                patterns.put(patternKey, ts);
+            }
+            return ts;
+        }
+    }
+
+    /**
+     * The parameters that determine the pixels of the tiles of a
+     * pattern.
+     */
+    private static final class PatternKey {
+        final double[] d;
+        final int[]    n;
+        final int      hash;
+
+        PatternKey(double[] d, int[] n) {
+            this.d = d;
+            this.n = n;
+            this.hash = Arrays.hashCode(d)*31 + Arrays.hashCode(n);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof PatternKey))
+                return false;
+            PatternKey k = (PatternKey)o;
+            return (hash == k.hash) &&
+                Arrays.equals(d, k.d) && Arrays.equals(n, k.n);
+        }
+    }
+
     public double getBaseFrequencyX(){
         return baseFrequencyX;
     }
@@ -535,8 +703,7 @@ public final class TurbulencePatternRed extends AbstractRed {
                           rx0*gradient[b0+8+0] + ry1*gradient[b0+8+1],
                           rx1*gradient[b1+8+0] + ry1*gradient[b1+8+1]));
 
-            if (n<0) fSum[0] -= (n * ratio);
-            else     fSum[0] += (n * ratio);
+            fSum[0] += Math.abs(n) * ratio;
 
             n = lerp(sy,
                      lerp(sx,
@@ -546,8 +713,7 @@ public final class TurbulencePatternRed extends AbstractRed {
                           rx0*gradient[b0+8+2] + ry1*gradient[b0+8+3],
                           rx1*gradient[b1+8+2] + ry1*gradient[b1+8+3]));
 
-            if (n<0) fSum[1] -= (n * ratio);
-            else     fSum[1] += (n * ratio);
+            fSum[1] += Math.abs(n) * ratio;
 
             n = lerp(sy,
                      lerp(sx,
@@ -557,8 +723,7 @@ public final class TurbulencePatternRed extends AbstractRed {
                           rx0*gradient[b0+8+4] + ry1*gradient[b0+8+5],
                           rx1*gradient[b1+8+4] + ry1*gradient[b1+8+5]));
 
-            if (n<0) fSum[2] -= (n * ratio);
-            else     fSum[2] += (n * ratio);
+            fSum[2] += Math.abs(n) * ratio;
 
             n = lerp(sy,
                      lerp(sx,
@@ -567,8 +732,7 @@ public final class TurbulencePatternRed extends AbstractRed {
                      lerp(sx,
                           rx0*gradient[b0+8+6] + ry1*gradient[b0+8+7],
                           rx1*gradient[b1+8+6] + ry1*gradient[b1+8+7]));
-            if (n<0) fSum[3] -= (n * ratio);
-            else     fSum[3] += (n * ratio);
+            fSum[3] += Math.abs(n) * ratio;
 
             ratio *= .5;
             pointX *= 2;
@@ -618,14 +782,10 @@ public final class TurbulencePatternRed extends AbstractRed {
             for(int nOctave = 0; nOctave < numOctaves; nOctave++){
                 noise2(noise, pointX, pointY);
 
-                if (noise[0]<0) fSum[0] -= (noise[0] * ratio);
-                else            fSum[0] += (noise[0] * ratio);
-                if (noise[1]<0) fSum[1] -= (noise[1] * ratio);
-                else            fSum[1] += (noise[1] * ratio);
-                if (noise[2]<0) fSum[2] -= (noise[2] * ratio);
-                else            fSum[2] += (noise[2] * ratio);
-                if (noise[3]<0) fSum[3] -= (noise[3] * ratio);
-                else            fSum[3] += (noise[3] * ratio);
+                fSum[0] += Math.abs(noise[0]) * ratio;
+                fSum[1] += Math.abs(noise[1]) * ratio;
+                fSum[2] += Math.abs(noise[2]) * ratio;
+                fSum[3] += Math.abs(noise[3]) * ratio;
                 ratio *= .5;
                 pointX *= 2;
                 pointY *= 2;
@@ -648,12 +808,9 @@ public final class TurbulencePatternRed extends AbstractRed {
             for(int nOctave = 0; nOctave < numOctaves; nOctave++){
                 noise2(noise, pointX, pointY);
 
-                if (noise[2]<0) fSum[2] -= (noise[2] * ratio);
-                else            fSum[2] += (noise[2] * ratio);
-                if (noise[1]<0) fSum[1] -= (noise[1] * ratio);
-                else            fSum[1] += (noise[1] * ratio);
-                if (noise[0]<0) fSum[0] -= (noise[0] * ratio);
-                else            fSum[0] += (noise[0] * ratio);
+                fSum[2] += Math.abs(noise[2]) * ratio;
+                fSum[1] += Math.abs(noise[1]) * ratio;
+                fSum[0] += Math.abs(noise[0]) * ratio;
                 ratio *= .5;
                 pointX *= 2;
                 pointY *= 2;
@@ -672,10 +829,8 @@ public final class TurbulencePatternRed extends AbstractRed {
             for(int nOctave = 0; nOctave < numOctaves; nOctave++){
                 noise2(noise, pointX, pointY);
 
-                if (noise[1]<0) fSum[1] -= (noise[1] * ratio);
-                else            fSum[1] += (noise[1] * ratio);
-                if (noise[0]<0) fSum[0] -= (noise[0] * ratio);
-                else            fSum[0] += (noise[0] * ratio);
+                fSum[1] += Math.abs(noise[1]) * ratio;
+                fSum[0] += Math.abs(noise[0]) * ratio;
                 ratio *= .5;
                 pointX *= 2;
                 pointY *= 2;
@@ -692,8 +847,7 @@ public final class TurbulencePatternRed extends AbstractRed {
             for(int nOctave = 0; nOctave < numOctaves; nOctave++){
                 noise2(noise, pointX, pointY);
 
-                if (noise[0]<0) fSum[0] -= (noise[0] * ratio);
-                else            fSum[0] += (noise[0] * ratio);
+                fSum[0] += Math.abs(noise[0]) * ratio;
                 ratio *= .5;
                 pointX *= 2;
                 pointY *= 2;
@@ -731,14 +885,10 @@ public final class TurbulencePatternRed extends AbstractRed {
             for(int nOctave = 0; nOctave < numOctaves; nOctave++){
                 noise2Stitch(noise, pointX, pointY, stitchInfo);
 
-                if (noise[3]<0) fSum[3] -= (noise[3] * ratio);
-                else            fSum[3] += (noise[3] * ratio);
-                if (noise[2]<0) fSum[2] -= (noise[2] * ratio);
-                else            fSum[2] += (noise[2] * ratio);
-                if (noise[1]<0) fSum[1] -= (noise[1] * ratio);
-                else            fSum[1] += (noise[1] * ratio);
-                if (noise[0]<0) fSum[0] -= (noise[0] * ratio);
-                else            fSum[0] += (noise[0] * ratio);
+                fSum[3] += Math.abs(noise[3]) * ratio;
+                fSum[2] += Math.abs(noise[2]) * ratio;
+                fSum[1] += Math.abs(noise[1]) * ratio;
+                fSum[0] += Math.abs(noise[0]) * ratio;
                 ratio  *= .5;
                 pointX *= 2;
                 pointY *= 2;
@@ -761,12 +911,9 @@ public final class TurbulencePatternRed extends AbstractRed {
         case 3:
             for(int nOctave = 0; nOctave < numOctaves; nOctave++){
                 noise2Stitch(noise, pointX, pointY, stitchInfo);
-                if (noise[2]<0) fSum[2] -= (noise[2] * ratio);
-                else            fSum[2] += (noise[2] * ratio);
-                if (noise[1]<0) fSum[1] -= (noise[1] * ratio);
-                else            fSum[1] += (noise[1] * ratio);
-                if (noise[0]<0) fSum[0] -= (noise[0] * ratio);
-                else            fSum[0] += (noise[0] * ratio);
+                fSum[2] += Math.abs(noise[2]) * ratio;
+                fSum[1] += Math.abs(noise[1]) * ratio;
+                fSum[0] += Math.abs(noise[0]) * ratio;
                 ratio  *= .5;
                 pointX *= 2;
                 pointY *= 2;
@@ -786,10 +933,8 @@ public final class TurbulencePatternRed extends AbstractRed {
         case 2:
             for(int nOctave = 0; nOctave < numOctaves; nOctave++){
                 noise2Stitch(noise, pointX, pointY, stitchInfo);
-                if (noise[1]<0) fSum[1] -= (noise[1] * ratio);
-                else            fSum[1] += (noise[1] * ratio);
-                if (noise[0]<0) fSum[0] -= (noise[0] * ratio);
-                else            fSum[0] += (noise[0] * ratio);
+                fSum[1] += Math.abs(noise[1]) * ratio;
+                fSum[0] += Math.abs(noise[0]) * ratio;
                 ratio  *= .5;
                 pointX *= 2;
                 pointY *= 2;
@@ -806,8 +951,7 @@ public final class TurbulencePatternRed extends AbstractRed {
         case 1:
             for(int nOctave = 0; nOctave < numOctaves; nOctave++){
                 noise2Stitch(noise, pointX, pointY, stitchInfo);
-                if (noise[0]<0) fSum[0] -= (noise[0] * ratio);
-                else            fSum[0] += (noise[0] * ratio);
+                fSum[0] += Math.abs(noise[0]) * ratio;
                 ratio  *= .5;
                 pointX *= 2;
                 pointY *= 2;
@@ -1039,7 +1183,9 @@ public final class TurbulencePatternRed extends AbstractRed {
     }
 
     /**
-     * Generates a Perlin noise pattern into dest Raster.
+     * Generates a Perlin noise pattern into dest Raster.  When the
+     * pattern cache is enabled the pixels are copied from the shared
+     * tiles of this pattern, the missing tiles being generated first.
      * @param dest Raster to fill with the pattern.
      */
     public WritableRaster copyData(WritableRaster dest) {
@@ -1050,7 +1196,45 @@ public final class TurbulencePatternRed extends AbstractRed {
             throw new IllegalArgumentException
                 ("Cannot generate a noise pattern into a null raster");
 
+        TileStore tiles = getPatternTiles();
+        if (tiles == null) {
+            generate(dest);
+            return dest;
+        }
+
+        int tx0 = getXTile(dest.getMinX());
+        int ty0 = getYTile(dest.getMinY());
+        int tx1 = getXTile(dest.getMinX()+dest.getWidth() -1);
+        int ty1 = getYTile(dest.getMinY()+dest.getHeight()-1);
+        for (int y=ty0; y<=ty1; y++)
+            for (int x=tx0; x<=tx1; x++)
+                GraphicsUtil.copyData(tiles.getTile(x, y), dest);
 
+        return dest;
+    }
+
+    /**
+     * Generates the tile (x, y) of the tile grid of this pattern.
+     * Unlike the tiles returned by <code>getTile</code> the whole tile
+     * is generated, even where it lies outside the bounds of this
+     * image, so that it can be shared by all the images that generate
+     * the same pattern.
+     */
+    public Raster genTile(int x, int y) {
+        Point pt = new Point(tileGridXOff+x*tileWidth,
+                             tileGridYOff+y*tileHeight);
+        WritableRaster wr = Raster.createWritableRaster(sm, pt);
+        generate(wr);
+        return wr;
+    }
+
+    /**
+     * Generates the pattern into dest, splitting the rows over the
+     * current <code>ForkJoinPool</code> if there is one, otherwise
+     * over the turbulence pool.
+     * @param dest Raster to fill with the pattern.
+     */
+    private void generate(WritableRaster dest) {
         int w = dest.getWidth();
         int h = dest.getHeight();
 
@@ -1064,141 +1248,385 @@ public final class TurbulencePatternRed extends AbstractRed {
             sppsm.getOffset(minX - dest.getSampleModelTranslateX(),
                             minY - dest.getSampleModelTranslateY());
 
-        final int[] destPixels = dstDB.getBankData()[0];
-        int dstAdjust = sppsm.getScanlineStride() - w;
+        Columns cols = null;
+        if ((stitchInfo == null) && (channels.length == 4) &&
+            (tx[1] == 0) && (ty[0] == 0))
+            cols = new Columns(minX, minY, w);
+
+        RowTask task = new RowTask(dstDB.getBankData()[0], dstOff,
+                                   sppsm.getScanlineStride(),
+                                   minX, minY, w, cols, 0, h);
+        if (task.isLeaf()) {
+            task.fillRows();
+        } else if (ForkJoinTask.inForkJoinPool()) {
+            task.invoke();
+        } else {
+            ForkJoinPool pool = getTurbulencePool();
+            if (pool == null)
+                task.fillRows();
+            else
+                pool.invoke(task);
+        }
+    }
 
-        // Generate pixel pattern now
-        int i, end, dp=dstOff;
+    /**
+     * The minimum number of pixel octaves worth handing to a separate
+     * task.
+     */
+    private static final int MIN_TASK_WORK = 1<<16;
+
+    /**
+     * Generates a range of rows of a raster.  The range is split in
+     * halves until it is small enough.  Each row starts from its own
+     * transformed point, so the pixels generated do not depend on how
+     * the rows were split.
+     */
+    private class RowTask extends RecursiveAction {
+        final int [] pixels;
+        final int off, stride;
+        final int minX, minY, w;
+        final Columns cols;
+        final int lo, hi;
+
+        RowTask(int [] pixels, int off, int stride,
+                int minX, int minY, int w, Columns cols, int lo, int hi) {
+            this.pixels = pixels;
+            this.off    = off;
+            this.stride = stride;
+            this.minX   = minX;
+            this.minY   = minY;
+            this.w      = w;
+            this.cols   = cols;
+            this.lo     = lo;
+            this.hi     = hi;
+        }
+
+        boolean isLeaf() {
+            int work = w*Math.max(numOctaves, 1);
+            return ((hi-lo) < 2) || ((long)(hi-lo)*work <= MIN_TASK_WORK);
+        }
+
+        protected void compute() {
+            if (isLeaf()) {
+                fillRows();
+                return;
+            }
+            int mid = (lo+hi)>>>1;
+            invokeAll(new RowTask(pixels, off, stride, minX, minY, w,
+                                  cols, lo, mid),
+                      new RowTask(pixels, off, stride, minX, minY, w,
+                                  cols, mid, hi));
+        }
+
+        void fillRows() {
+            if (cols != null)
+                generateAlignedRows(pixels, off, stride, minX, minY, w,
+                                    cols, lo, hi);
+            else
+                generateRows(pixels, off, stride, minX, minY, w, lo, hi);
+        }
+    }
+
+    /**
+     * Generates the rows lo to hi of a raster one pixel at a time.
+     */
+    private void generateRows(final int[] destPixels, int dstOff,
+                              int stride, int minX, int minY, int w,
+                              int lo, int hi) {
         final int[] rgb = new int[4];
         final double[] fSum = {0, 0, 0, 0};
         final double[] noise = {0, 0, 0, 0};
+        final StitchInfo si = (stitchInfo == null) ? null : new StitchInfo();
+
+        final double tx0 = tx[0];
+        final double tx1 = tx[1];
+        final double[] p = new double[2];
+        for (int i=lo; i<hi; i++) {
+            p[0] = minX;
+            p[1] = minY+i;
+            txf.transform(p, 0, p, 0, 1);
+            double point_0 = p[0];
+            double point_1 = p[1];
+
+            int dp = dstOff + i*stride;
+            for (int end=dp+w; dp<end; dp++) {
+                destPixels[dp] = turbulencePixel(point_0, point_1,
+                                                 rgb, fSum, noise, si);
+                point_0 += tx0;
+                point_1 += tx1;
+            }
+        }
+    }
 
-        final double tx0, tx1, ty0, ty1;
-        tx0 = tx[0];
-        tx1 = tx[1];
-        // Update for y step, (note we substract all the stuff we
-        // added while going across the scan line).
-        ty0 = ty[0]-(w*tx0);
-        ty1 = ty[1]-(w*tx1);
-
-        double[] p = {minX, minY};
-        txf.transform(p, 0, p, 0, 1);
-        double point_0 = p[0];
-        double point_1 = p[1];
-
-        if(isFractalNoise){
-            if(stitchInfo == null){
-                if (channels.length == 4) {
-                    for(i=0; i<h; i++){
-                        for(end=dp+w; dp<end; dp++) {
-                            destPixels[dp] = turbulenceFractal_4
-                                (point_0, point_1, fSum);
-                            point_0 += tx0;
-                            point_1 += tx1;
-                        }
-                        point_0 += ty0;
-                        point_1 += ty1;
-                        dp += dstAdjust;
-                    }
-                } else {
-                    for(i=0; i<h; i++){
-                        for(end=dp+w; dp<end; dp++){
-                            turbulenceFractal(rgb, point_0, point_1, fSum, noise);
-
-                            // Write RGB value.
-                            destPixels[dp] = ((rgb[3]<<24) |
-                                              (rgb[0]<<16) |
-                                              (rgb[1]<<8)  |
-                                              (rgb[2]   ));
-                            point_0 += tx0;
-                            point_1 += tx1;
-                        }
-                        point_0 += ty0;
-                        point_1 += ty1;
-                        dp += dstAdjust;
-                    }
-                }
+    /**
+     * Returns the ARGB pixel of the pattern at pointX, pointY.
+     * @param si The stitching information to use, null when stitching
+     *        is off.
+     */
+    private int turbulencePixel(double pointX, double pointY,
+                                final int[] rgb, final double[] fSum,
+                                final double[] noise, StitchInfo si) {
+        if (isFractalNoise) {
+            if (si != null) {
+                si.assign(this.stitchInfo);
+                turbulenceFractalStitch(rgb, pointX, pointY, fSum, noise, si);
+            } else if (channels.length == 4) {
+                return turbulenceFractal_4(pointX, pointY, fSum);
+            } else {
+                turbulenceFractal(rgb, pointX, pointY, fSum, noise);
             }
-            else{
-                StitchInfo si = new StitchInfo();
-                for(i=0; i<h; i++){
-                    for(end=dp+w; dp<end; dp++){
-                        si.assign(this.stitchInfo);
-                        turbulenceFractalStitch(rgb, point_0, point_1,
-                                                fSum, noise, si);
-
-                        // Write RGB value.
-                        destPixels[dp] = ((rgb[3]<<24) |
-                                          (rgb[0]<<16) |
-                                          (rgb[1]<<8)  |
-                                          (rgb[2]   ));
-                        point_0 += tx0;
-                        point_1 += tx1;
-                    }
-                    point_0 += ty0;
-                    point_1 += ty1;
-                    dp += dstAdjust;
-                }
+        } else {
+            if (si != null) {
+                si.assign(this.stitchInfo);
+                turbulenceStitch(rgb, pointX, pointY, fSum, noise, si);
+            } else if (channels.length == 4) {
+                return turbulence_4(pointX, pointY, fSum);
+            } else {
+                turbulence(rgb, pointX, pointY, fSum, noise);
             }
         }
-        else{ // Loop for turbulence noise
-            if(stitchInfo == null){
-                if (channels.length == 4) {
-                    for(i=0; i<h; i++){
-                        for(end=dp+w; dp<end; dp++){
-                            destPixels[dp] = turbulence_4
-                                (point_0, point_1, fSum);
-
-                            point_0 += tx0;
-                            point_1 += tx1;
-                        }
-                        point_0 += ty0;
-                        point_1 += ty1;
-                        dp += dstAdjust;
-                    }
-                } else {
-                    for(i=0; i<h; i++){
-                        for(end=dp+w; dp<end; dp++){
-                            turbulence(rgb, point_0, point_1, fSum, noise);
-
-                            // Write RGB value.
-                            destPixels[dp] = ((rgb[3]<<24) |
-                                              (rgb[0]<<16) |
-                                              (rgb[1]<<8)  |
-                                              (rgb[2]   ));
-                            point_0 += tx0;
-                            point_1 += tx1;
-                        }
-                        point_0 += ty0;
-                        point_1 += ty1;
-                        dp += dstAdjust;
-                    }
+
+        // Write RGB value.
+        return ((rgb[3]<<24) |
+                (rgb[0]<<16) |
+                (rgb[1]<<8)  |
+                (rgb[2]   ));
+    }
+
+    /**
+     * The x terms of the noise for each column and octave of a raster.
+     * When the pattern is generated without stitching, for four
+     * channels and through a transform that keeps the axes aligned,
+     * these only depend on the column, and the y terms only on the
+     * row, so they are computed once per column and once per row
+     * rather than once per pixel.
+     */
+    private final class Columns {
+        final int[]    i, j;
+        final double[] rx0, sx;
+
+        Columns(int minX, int minY, int w) {
+            int n = Math.max(numOctaves, 0);
+            i   = new int[w*n];
+            j   = new int[w*n];
+            rx0 = new double[w*n];
+            sx  = new double[w*n];
+
+            double[] p = new double[2];
+            for (int c=0, k=0; c<w; c++) {
+                p[0] = minX+c;
+                p[1] = minY;
+                txf.transform(p, 0, p, 0, 1);
+                double pointX = p[0]*baseFrequencyX;
+                for (int o=0; o<n; o++, k++) {
+                    double px = pointX+PerlinN;
+                    int b0 = ((int)px)&BM;
+                    i[k]   = latticeSelector[b0 ];
+                    j[k]   = latticeSelector[b0+1];
+                    rx0[k] = px - (int)px;
+                    sx[k]  = s_curve(rx0[k]);
+                    pointX *= 2;
                 }
             }
-            else{
-                StitchInfo si = new StitchInfo();
-                for(i=0; i<h; i++){
-                    for(end=dp+w; dp<end; dp++){
-                        si.assign(this.stitchInfo);
-                        turbulenceStitch(rgb, point_0, point_1,
-                                         fSum, noise, si);
-
-                        // Write RGB value.
-                        destPixels[dp] = ((rgb[3]<<24) |
-                                          (rgb[0]<<16) |
-                                          (rgb[1]<<8)  |
-                                          (rgb[2]   ));
-                        point_0 += tx0;
-                        point_1 += tx1;
-                    }
-                    point_0 += ty0;
-                    point_1 += ty1;
-                    dp += dstAdjust;
-                }
+        }
+    }
+
+    /**
+     * Generates the rows lo to hi of a raster using the precomputed
+     * x terms of its columns.  This gives the same pixels as
+     * <code>turbulence_4</code> and <code>turbulenceFractal_4</code>.
+     */
+    private void generateAlignedRows(final int[] destPixels, int dstOff,
+                                     int stride, int minX, int minY, int w,
+                                     Columns cols, int lo, int hi) {
+        final int n = Math.max(numOctaves, 0);
+        final int[]    b   = new int[n];
+        final double[] ry0 = new double[n];
+        final double[] sy  = new double[n];
+
+        final double[] p = new double[2];
+        for (int row=lo; row<hi; row++) {
+            p[0] = minX;
+            p[1] = minY+row;
+            txf.transform(p, 0, p, 0, 1);
+            double pointY = p[1]*baseFrequencyY;
+            for (int o=0; o<n; o++) {
+                double py = pointY+PerlinN;
+                b[o]   = ((int)py)&BM;
+                ry0[o] = py - (int)py;
+                sy[o]  = s_curve(ry0[o]);
+                pointY *= 2;
+            }
+
+            int dp = dstOff + row*stride;
+            if (isFractalNoise)
+                turbulenceFractalRow_4(destPixels, dp, w, cols, b, ry0, sy);
+            else
+                turbulenceRow_4(destPixels, dp, w, cols, b, ry0, sy);
+        }
+    }
+
+    /**
+     * Generates one row of turbulence, see <code>turbulence_4</code>.
+     */
+    private void turbulenceRow_4(final int[] destPixels, int dp, int w,
+                                 Columns cols, final int[] yb,
+                                 final double[] yry0, final double[] ysy) {
+        final int n = yb.length;
+        final int[]    ci   = cols.i;
+        final int[]    cj   = cols.j;
+        final double[] crx0 = cols.rx0;
+        final double[] csx  = cols.sx;
+        double f0, f1, f2, f3, v, ratio, rx0, rx1, ry0, ry1, sx, sy;
+        int b0, b1;
+
+        for (int end=dp+w, k=0; dp<end; dp++) {
+            f0 = f1 = f2 = f3 = 0;
+            ratio = 255;
+            for (int o=0; o<n; o++, k++) {
+                b1 = ((cj[k] + yb[o])&BM)<<3;
+                b0 = ((ci[k] + yb[o])&BM)<<3;
+
+                rx0 = crx0[k];
+                rx1 = rx0 - 1.0;
+                sx  = csx[k];
+                ry0 = yry0[o];
+                ry1 = ry0 - 1.0;
+                sy  = ysy[o];
+
+                v = lerp(sy,
+                         lerp(sx,
+                              rx0*gradient[b0+0] + ry0*gradient[b0+1],
+                              rx1*gradient[b1+0] + ry0*gradient[b1+1]),
+                         lerp(sx,
+                              rx0*gradient[b0+8+0] + ry1*gradient[b0+8+1],
+                              rx1*gradient[b1+8+0] + ry1*gradient[b1+8+1]));
+                f0 += Math.abs(v) * ratio;
+
+                v = lerp(sy,
+                         lerp(sx,
+                              rx0*gradient[b0+2] + ry0*gradient[b0+3],
+                              rx1*gradient[b1+2] + ry0*gradient[b1+3]),
+                         lerp(sx,
+                              rx0*gradient[b0+8+2] + ry1*gradient[b0+8+3],
+                              rx1*gradient[b1+8+2] + ry1*gradient[b1+8+3]));
+                f1 += Math.abs(v) * ratio;
+
+                v = lerp(sy,
+                         lerp(sx,
+                              rx0*gradient[b0+4] + ry0*gradient[b0+5],
+                              rx1*gradient[b1+4] + ry0*gradient[b1+5]),
+                         lerp(sx,
+                              rx0*gradient[b0+8+4] + ry1*gradient[b0+8+5],
+                              rx1*gradient[b1+8+4] + ry1*gradient[b1+8+5]));
+                f2 += Math.abs(v) * ratio;
+
+                v = lerp(sy,
+                         lerp(sx,
+                              rx0*gradient[b0+6] + ry0*gradient[b0+7],
+                              rx1*gradient[b1+6] + ry0*gradient[b1+7]),
+                         lerp(sx,
+                              rx0*gradient[b0+8+6] + ry1*gradient[b0+8+7],
+                              rx1*gradient[b1+8+6] + ry1*gradient[b1+8+7]));
+                f3 += Math.abs(v) * ratio;
+
+                ratio *= .5;
             }
+            destPixels[dp] = toARGB(f0, f1, f2, f3);
         }
+    }
 
-        return dest;
+    /**
+     * Generates one row of fractal noise, see
+     * <code>turbulenceFractal_4</code>.
+     */
+    private void turbulenceFractalRow_4(final int[] destPixels, int dp,
+                                        int w, Columns cols,
+                                        final int[] yb,
+                                        final double[] yry0,
+                                        final double[] ysy) {
+        final int n = yb.length;
+        final int[]    ci   = cols.i;
+        final int[]    cj   = cols.j;
+        final double[] crx0 = cols.rx0;
+        final double[] csx  = cols.sx;
+        double f0, f1, f2, f3, ratio, rx0, rx1, ry0, ry1, sx, sy;
+        int b0, b1;
+
+        for (int end=dp+w, k=0; dp<end; dp++) {
+            f0 = f1 = f2 = f3 = 127.5;
+            ratio = 127.5;
+            for (int o=0; o<n; o++, k++) {
+                b1 = ((cj[k] + yb[o])&BM)<<3;
+                b0 = ((ci[k] + yb[o])&BM)<<3;
+
+                rx0 = crx0[k];
+                rx1 = rx0 - 1.0;
+                sx  = csx[k];
+                ry0 = yry0[o];
+                ry1 = ry0 - 1.0;
+                sy  = ysy[o];
+
+                f0 += lerp(sy,
+                           lerp(sx,
+                                rx0*gradient[b0+0] + ry0*gradient[b0+1],
+                                rx1*gradient[b1+0] + ry0*gradient[b1+1]),
+                           lerp(sx,
+                                rx0*gradient[b0+8+0] + ry1*gradient[b0+8+1],
+                                rx1*gradient[b1+8+0] + ry1*gradient[b1+8+1]))*ratio;
+
+                f1 += lerp(sy,
+                           lerp(sx,
+                                rx0*gradient[b0+2] + ry0*gradient[b0+3],
+                                rx1*gradient[b1+2] + ry0*gradient[b1+3]),
+                           lerp(sx,
+                                rx0*gradient[b0+8+2] + ry1*gradient[b0+8+3],
+                                rx1*gradient[b1+8+2] + ry1*gradient[b1+8+3]))*ratio;
+
+                f2 += lerp(sy,
+                           lerp(sx,
+                                rx0*gradient[b0+4] + ry0*gradient[b0+5],
+                                rx1*gradient[b1+4] + ry0*gradient[b1+5]),
+                           lerp(sx,
+                                rx0*gradient[b0+8+4] + ry1*gradient[b0+8+5],
+                                rx1*gradient[b1+8+4] + ry1*gradient[b1+8+5]))*ratio;
+
+                f3 += lerp(sy,
+                           lerp(sx,
+                                rx0*gradient[b0+6] + ry0*gradient[b0+7],
+                                rx1*gradient[b1+6] + ry0*gradient[b1+7]),
+                           lerp(sx,
+                                rx0*gradient[b0+8+6] + ry1*gradient[b0+8+7],
+                                rx1*gradient[b1+8+6] + ry1*gradient[b1+8+7]))*ratio;
+
+                ratio *= .5;
+            }
+            destPixels[dp] = toARGB(f0, f1, f2, f3);
+        }
+    }
+
+    /**
+     * Clamps the four channel sums to [0, 255] and packs them into an
+     * ARGB pixel, a being the sum for the alpha channel.
+     */
+    private static int toARGB(double r, double g, double b, double a) {
+        int i, j;
+        i = (int)r;
+        if ((i & 0xFFFFFF00) == 0) j  = i<<16;
+        else                       j  = ((i & 0x80000000) != 0)?0:0xFF0000;
+
+        i = (int)g;
+        if ((i & 0xFFFFFF00) == 0) j |= i<<8;
+        else                       j |= ((i & 0x80000000) != 0)?0:0xFF00;
+
+        i = (int)b;
+        if ((i & 0xFFFFFF00) == 0) j |= i;
+        else                       j |= ((i & 0x80000000) != 0)?0:0xFF;
+
+        i = (int)a;
+        if ((i & 0xFFFFFF00) == 0) j |= i<<24;
+        else                       j |= ((i & 0x80000000) != 0)?0:0xFF000000;
+        return j;
     }
 
     /**
@@ -1342,6 +1770,21 @@ public final class TurbulencePatternRed extends AbstractRed {
         init((CachableRed)null, devRect, cm,
              cm.createCompatibleSampleModel(tileSize, tileSize),
              0, 0, null);
+
+        double[] m = new double[6];
+        this.txf.getMatrix(m);
+        double[] d = {this.baseFrequencyX, this.baseFrequencyY,
+                      m[0], m[1], m[2], m[3], m[4], m[5]};
+        int[] n = {this.numOctaves, seed, isFractalNoise ? 1 : 0,
+                   channels.length, tileWidth, tileHeight, 0, 0, 0, 0, 0};
+        if (stitchInfo != null) {
+            n[6]  = 1;
+            n[7]  = stitchInfo.width;
+            n[8]  = stitchInfo.height;
+            n[9]  = stitchInfo.wrapX;
+            n[10] = stitchInfo.wrapY;
+        }
+        patternKey = new PatternKey(d, n);
     }
 
 }
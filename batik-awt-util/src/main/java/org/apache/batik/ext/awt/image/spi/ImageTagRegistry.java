@@ -66,6 +66,19 @@ public class ImageTagRegistry implements ErrorConstants {
         this.imgCache= imgCache;
     }
 
+    /** Returns the cache of the images read with their raw data,
+     *  the ones a color profile is applied to.
+     */
+    public URLImageCache getRawCache() {
+        return rawCache;
+    }
+
+    /** Returns the cache of the images read as sRGB.
+     */
+    public URLImageCache getImageCache() {
+        return imgCache;
+    }
+
     /** Removes all decoded raster images from the cache.
      *  All Images will be reloaded from the original source
      *  if decoded again.
@@ -27,6 +27,7 @@ import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -532,29 +533,13 @@ public class BaseScriptingEnvironment {
                 }
             } else {
                 checkCompatibleScriptURL(type, docPURL);
-                DocumentLoader dl = bridgeContext.getDocumentLoader();
-                Element e = script;
-                SVGDocument d = (SVGDocument)e.getOwnerDocument();
-                int line = dl.getLineNumber(script);
-                desc = Messages.formatMessage
-                    (INLINE_SCRIPT_DESCRIPTION,
-                     new Object [] {d.getURL(),
-                                    "<"+script.getNodeName()+">",
-                             line});
+                desc = getInlineScriptDescription(bridgeContext, script);
                 // Inline script.
-                Node n = script.getFirstChild();
-                if (n != null) {
-                    StringBuffer sb = new StringBuffer();
-                    while (n != null) {
-                        if (n.getNodeType() == Node.CDATA_SECTION_NODE
-                            || n.getNodeType() == Node.TEXT_NODE)
-                            sb.append(n.getNodeValue());
-                        n = n.getNextSibling();
-                    }
-                    reader = new StringReader(sb.toString());
-                } else {
+                String text = getInlineScriptText(script);
+                if (text == null) {
                     return;
                 }
+                reader = new StringReader(text);
             }
 
             executedScripts.put(script, null);
@@ -576,6 +561,90 @@ public class BaseScriptingEnvironment {
         }
     }
 
+    /**
+     * Returns the description inline scripts are evaluated with.
+     */
+    protected static String getInlineScriptDescription(BridgeContext ctx,
+                                                       Element script) {
+        DocumentLoader dl = ctx.getDocumentLoader();
+        SVGDocument d = (SVGDocument)script.getOwnerDocument();
+        int line = dl.getLineNumber(script);
+        return Messages.formatMessage
+            (INLINE_SCRIPT_DESCRIPTION,
+             new Object [] {d.getURL(),
+                            "<"+script.getNodeName()+">",
+                            line});
+    }
+
+    /**
+     * Returns the text of an inline script, or null if the script
+     * element has no children.
+     */
+    protected static String getInlineScriptText(Element script) {
+        Node n = script.getFirstChild();
+        if (n == null) {
+            return null;
+        }
+        StringBuffer sb = new StringBuffer();
+        while (n != null) {
+            if (n.getNodeType() == Node.CDATA_SECTION_NODE
+                || n.getNodeType() == Node.TEXT_NODE)
+                sb.append(n.getNodeValue());
+            n = n.getNextSibling();
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Starts compiling the inline ECMAScript &lt;script&gt; elements of
+     * the given document in the background, so that they are compiled
+     * by the time {@link #loadScripts()} runs them.  Does nothing when
+     * {@link CompiledScriptCache#getCompilePool()} returns null.
+     */
+    public static void precompileScripts(BridgeContext ctx, Document doc) {
+        UserAgent ua = ctx.getUserAgent();
+        if ((CompiledScriptCache.getCompilePool() == null) || (ua == null) ||
+            !(doc instanceof SVGDocument)) {
+            return;
+        }
+        NodeList scripts = doc.getElementsByTagNameNS
+            (SVGConstants.SVG_NAMESPACE_URI, SVGConstants.SVG_SCRIPT_TAG);
+        int len = scripts.getLength();
+        if (len == 0) {
+            return;
+        }
+
+        List types = Arrays.asList(RhinoInterpreterFactory.RHINO_MIMETYPES);
+        ParsedURL purl = new ParsedURL(((SVGDocument)doc).getURL());
+        for (int i = 0; i < len; i++) {
+            Element script = (Element)scripts.item(i);
+            String type = script.getAttributeNS
+                (null, SVGConstants.SVG_TYPE_ATTRIBUTE);
+            if (type.length() == 0) {
+                type = SVGConstants.SVG_SCRIPT_TYPE_DEFAULT_VALUE;
+            }
+            if (!types.contains(type) ||
+                XLinkSupport.getXLinkHref(script).length() > 0) {
+                continue;
+            }
+            String text = getInlineScriptText(script);
+            if (text == null) {
+                continue;
+            }
+            try {
+                ua.checkLoadScript(type, purl, purl);
+            } catch (SecurityException se) {
+                // Reported when the script is loaded.
+                continue;
+            }
+            Interpreter interp = ctx.getInterpreter(type);
+            if (interp instanceof RhinoInterpreter) {
+                ((RhinoInterpreter)interp).precompile
+                    (text, getInlineScriptDescription(ctx, script));
+            }
+        }
+    }
+
     /**
      * Checks that the script URLs and the document url are
      * compatible. A SecurityException is thrown if loading
@@ -0,0 +1,348 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.javascript.Script;
+
+/**
+ * A cache of compiled ECMAScript shared by all the
+ * <code>RhinoInterpreter</code>s of the process, so that documents
+ * running the same scripts compile them only once.
+ *
+ * Scripts are looked up by their source, the name they are compiled
+ * under, their security domain and the optimization level they are
+ * compiled at.  Only one thread compiles a given script, the others
+ * wait for it.  The least recently used scripts are dropped once the
+ * cache holds more than {@link #getMaxScripts()} scripts.
+ *
+ * @version $Id$
+ */
+public class CompiledScriptCache {
+
+    /**
+     * The default number of scripts a cache holds.
+     */
+    public static final int DEFAULT_MAX_SCRIPTS = 64;
+
+    private static CompiledScriptCache defaultCache
+        = new CompiledScriptCache();
+
+    /**
+     * The executor scripts are compiled on in the background, see
+     * <code>getCompilePool</code>.
+     */
+    private static Executor compilePool;
+
+    /**
+     * Returns the cache used by the interpreters.
+     */
+    public static CompiledScriptCache getDefaultCache() {
+        return defaultCache;
+    }
+
+    /**
+     * Returns the executor scripts are compiled on ahead of their
+     * evaluation, null if they are only compiled when evaluated, on
+     * the evaluating thread.  There is none unless one was set.
+     */
+    public static synchronized Executor getCompilePool() {
+        return compilePool;
+    }
+
+    /**
+     * Sets the executor scripts are compiled on ahead of their
+     * evaluation.  If <code>pool</code> is null scripts are only
+     * compiled when they are evaluated.
+     */
+    public static synchronized void setCompilePool(Executor pool) {
+        compilePool = pool;
+    }
+
+    /**
+     * What a compiled script is looked up by.
+     */
+    protected static class Key {
+        protected String source;
+        protected String sourceName;
+        protected Object domain;
+        protected int    optimizationLevel;
+        protected int    hash;
+
+        protected Key(String source, String sourceName, Object domain,
+                      int optimizationLevel) {
+            this.source            = source;
+            this.sourceName        = sourceName;
+            this.domain            = domain;
+            this.optimizationLevel = optimizationLevel;
+            hash = source.hashCode();
+            hash = hash * 31 + optimizationLevel;
+            if (sourceName != null) hash = hash * 31 + sourceName.hashCode();
+            if (domain != null)     hash = hash * 31 + domain.hashCode();
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key)o;
+            return (hash == k.hash)
+                && (optimizationLevel == k.optimizationLevel)
+                && eq(sourceName, k.sourceName)
+                && eq(domain, k.domain)
+                && source.equals(k.source);
+        }
+
+        private static boolean eq(Object a, Object b) {
+            return (a == null) ? (b == null) : a.equals(b);
+        }
+    }
+
+    /**
+     * A script being compiled or compiled, which remembers how long it
+     * took to compile.
+     */
+    protected static class Entry implements Callable {
+        protected Callable compiler;
+        protected FutureTask task = new FutureTask(this);
+        protected volatile long compileTime;
+
+        protected Entry(Callable compiler) {
+            this.compiler = compiler;
+        }
+
+        public Object call() throws Exception {
+            long t0 = System.nanoTime();
+            Object ret = compiler.call();
+            compileTime = System.nanoTime() - t0;
+            compiler = null;
+            return ret;
+        }
+    }
+
+    /**
+     * The scripts, least recently used first.  Guarded by this cache.
+     */
+    protected LinkedHashMap scripts = new LinkedHashMap(16, 0.75f, true);
+
+    protected int maxScripts;
+
+    protected final AtomicLong hits        = new AtomicLong();
+    protected final AtomicLong misses      = new AtomicLong();
+    protected final AtomicLong evictions   = new AtomicLong();
+    protected final AtomicLong compileTime = new AtomicLong();
+    protected final AtomicLong savedTime   = new AtomicLong();
+
+    /**
+     * Creates a cache holding at most <code>DEFAULT_MAX_SCRIPTS</code>
+     * scripts.
+     */
+    public CompiledScriptCache() {
+        this(DEFAULT_MAX_SCRIPTS);
+    }
+
+    /**
+     * Creates a cache holding at most <code>maxScripts</code> scripts.
+     */
+    public CompiledScriptCache(int maxScripts) {
+        this.maxScripts = maxScripts;
+    }
+
+    /**
+     * Returns the compiled form of <code>source</code>.  If it is not
+     * in the cache it is compiled by <code>compiler</code> on the
+     * calling thread, unless another thread is already compiling it in
+     * which case this waits for that thread.  Errors thrown by the
+     * compiler are rethrown to all the threads waiting for the script,
+     * and the script is not kept.
+     *
+     * @param source the source of the script
+     * @param sourceName the name the script is compiled under
+     * @param domain the security domain the script is compiled in,
+     *        scripts are only shared within the same domain
+     * @param optimizationLevel the optimization level the script is
+     *        compiled at
+     * @param compiler returns the compiled script
+     */
+    public Script getScript(String source, String sourceName, Object domain,
+                            int optimizationLevel, Callable compiler) {
+        Key key = new Key(source, sourceName, domain, optimizationLevel);
+        Entry e;
+        boolean compile = false;
+        synchronized (this) {
+            e = (Entry)scripts.get(key);
+            if (e == null) {
+                e = new Entry(compiler);
+                scripts.put(key, e);
+                compile = true;
+                evict();
+            }
+        }
+
+        if (compile) {
+            misses.incrementAndGet();
+            e.task.run();
+        }
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    Script ret = (Script)e.task.get();
+                    if (compile) {
+                        compileTime.addAndGet(e.compileTime);
+                    } else {
+                        hits.incrementAndGet();
+                        savedTime.addAndGet(e.compileTime);
+                    }
+                    return ret;
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                } catch (ExecutionException ee) {
+                    synchronized (this) {
+                        if (scripts.get(key) == e)
+                            scripts.remove(key);
+                    }
+                    Throwable t = ee.getCause();
+                    if (t instanceof RuntimeException)
+                        throw (RuntimeException)t;
+                    if (t instanceof Error)
+                        throw (Error)t;
+                    throw new RuntimeException(t);
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns whether the compiled form of <code>source</code> is in
+     * the cache, or being compiled.
+     */
+    public synchronized boolean isPresent(String source, String sourceName,
+                                          Object domain,
+                                          int optimizationLevel) {
+        Key key = new Key(source, sourceName, domain, optimizationLevel);
+        return scripts.containsKey(key);
+    }
+
+    /**
+     * Removes all the scripts from the cache.
+     */
+    public synchronized void flush() {
+        scripts.clear();
+    }
+
+    /**
+     * Returns the maximum number of scripts the cache holds.
+     */
+    public synchronized int getMaxScripts() {
+        return maxScripts;
+    }
+
+    /**
+     * Sets the maximum number of scripts the cache holds, dropping
+     * scripts if needed.
+     */
+    public synchronized void setMaxScripts(int maxScripts) {
+        this.maxScripts = maxScripts;
+        evict();
+    }
+
+    /**
+     * Returns the number of scripts in the cache.
+     */
+    public synchronized int getSize() {
+        return scripts.size();
+    }
+
+    /**
+     * Returns the number of scripts found in the cache.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of scripts compiled.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of scripts dropped to keep the cache within
+     * its size.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the time spent compiling scripts, in milliseconds.
+     */
+    public double getCompileTime() {
+        return compileTime.get() / 1e6;
+    }
+
+    /**
+     * Returns the compile time saved by finding scripts in the cache,
+     * in milliseconds.  This is the time the scripts took to compile
+     * the first time, summed over the hits.
+     */
+    public double getSavedTime() {
+        return savedTime.get() / 1e6;
+    }
+
+    /**
+     * Resets the counters of the cache.
+     */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+        compileTime.set(0);
+        savedTime.set(0);
+    }
+
+    /**
+     * Drops the least recently used scripts until the cache is within
+     * its size.  Must be called with the cache locked.
+     */
+    protected void evict() {
+        Iterator i = scripts.values().iterator();
+        while ((scripts.size() > maxScripts) && i.hasNext()) {
+            i.next();
+            i.remove();
+            evictions.incrementAndGet();
+        }
+    }
+}
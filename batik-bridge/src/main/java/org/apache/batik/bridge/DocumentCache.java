@@ -0,0 +1,383 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.batik.dom.util.DocumentDescriptor;
+import org.apache.batik.util.ParsedURL;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * A cache of parsed external documents that may be shared by the
+ * document loaders of several bridge contexts, for instance by all
+ * the renderings of a server that keep referencing the same sprite
+ * sheets, gradients or fonts.
+ *
+ * Each document is stored along with a validator, a string that
+ * changes when the source of the document changes: the modification
+ * time and length of local files, or a digest of the content for
+ * other sources.  A document is only reused if its validator still
+ * matches.
+ *
+ * The cached documents are never handed out: a loader gets a deep
+ * copy it may modify freely, so the cached copy can be shared by any
+ * number of threads.  The cache is bounded by the number of nodes of
+ * the documents it holds, the least recently used documents are
+ * dropped first.
+ *
+ * There is no shared cache by default, see {@link
+ * #setSharedCache(DocumentCache)}.
+ *
+ * @version $Id$
+ */
+public class DocumentCache {
+
+    /**
+     * The default maximum number of nodes held by a cache.
+     */
+    public static final int DEFAULT_MAX_NODES = 500000;
+
+    private static volatile DocumentCache sharedCache;
+
+    /**
+     * Returns the cache used by new document loaders, null if none.
+     */
+    public static DocumentCache getSharedCache() {
+        return sharedCache;
+    }
+
+    /**
+     * Sets the cache used by the document loaders created from now
+     * on, null disables caching across loaders.
+     */
+    public static void setSharedCache(DocumentCache cache) {
+        sharedCache = cache;
+    }
+
+    /**
+     * A cached document.
+     */
+    protected static class Entry {
+        protected String validator;
+        protected Document document;
+        protected DocumentDescriptor desc;
+        protected int nodes;
+    }
+
+    /**
+     * The entries, from least to most recently used.
+     */
+    protected LinkedHashMap entries = new LinkedHashMap(16, 0.75f, true);
+
+    protected int nodes;
+    protected int maxNodes;
+
+    protected final AtomicLong hits      = new AtomicLong();
+    protected final AtomicLong misses    = new AtomicLong();
+    protected final AtomicLong stale     = new AtomicLong();
+    protected final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a cache holding at most <code>DEFAULT_MAX_NODES</code>
+     * nodes.
+     */
+    public DocumentCache() {
+        this(DEFAULT_MAX_NODES);
+    }
+
+    /**
+     * Creates a cache holding at most <code>maxNodes</code> nodes.
+     */
+    public DocumentCache(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * Returns the maximum number of nodes held by the cache.
+     */
+    public synchronized int getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * Sets the maximum number of nodes held by the cache, dropping
+     * documents if needed.
+     */
+    public synchronized void setMaxNodes(int maxNodes) {
+        this.maxNodes = maxNodes;
+        evict();
+    }
+
+    /**
+     * Returns a copy of the document cached for <code>uri</code>, or
+     * null if there is none or if it was cached with another
+     * validator.
+     * @param uri the document URI, without fragment.
+     * @param validator the current validator of the document.
+     * @param desc if not null, receives the locations of the
+     *        elements of the returned copy.
+     */
+    public Document getDocument(String uri, String validator,
+                                DocumentDescriptor desc) {
+        Entry e;
+        synchronized (this) {
+            e = (Entry)entries.get(uri);
+            if ((e != null) && !e.validator.equals(validator)) {
+                entries.remove(uri);
+                nodes -= e.nodes;
+                stale.incrementAndGet();
+                e = null;
+            }
+        }
+        if (e == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        synchronized (e) {
+            // Reading a node may initialize some of its fields, so
+            // the copies are made one at a time.
+            return copyDocument(e.document, e.desc, desc);
+        }
+    }
+
+    /**
+     * Caches a copy of <code>doc</code> for <code>uri</code>.  The
+     * document is not cached if it is larger than the cache.
+     * @param uri the document URI, without fragment.
+     * @param validator the current validator of the document.
+     * @param doc the document, it is not modified.
+     * @param desc the locations of the elements of <code>doc</code>,
+     *        may be null.
+     */
+    public void putDocument(String uri, String validator,
+                            Document doc, DocumentDescriptor desc) {
+        if (validator == null)
+            return;
+        int n = countNodes(doc);
+        if (n > getMaxNodes())
+            return;
+
+        Entry e = new Entry();
+        e.validator = validator;
+        e.nodes = n;
+        e.desc = (desc == null) ? null : new DocumentDescriptor();
+        e.document = copyDocument(doc, desc, e.desc);
+
+        synchronized (this) {
+            Entry old = (Entry)entries.put(uri, e);
+            if (old != null)
+                nodes -= old.nodes;
+            nodes += n;
+            evict();
+        }
+    }
+
+    /**
+     * Drops the document cached for <code>uri</code>, if any.
+     */
+    public synchronized void remove(String uri) {
+        Entry e = (Entry)entries.remove(uri);
+        if (e != null)
+            nodes -= e.nodes;
+    }
+
+    /**
+     * Drops all the cached documents.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        nodes = 0;
+    }
+
+    /**
+     * Drops least recently used documents until the cache is within
+     * its budget.
+     * Must be called with the lock on this cache held.
+     */
+    protected void evict() {
+        Iterator i = entries.values().iterator();
+        while ((nodes > maxNodes) && i.hasNext()) {
+            Entry e = (Entry)i.next();
+            i.remove();
+            nodes -= e.nodes;
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns a deep copy of <code>doc</code>, and copies the
+     * locations held by <code>src</code> for the elements of
+     * <code>doc</code> into <code>dst</code> for the elements of the
+     * copy.
+     */
+    protected Document copyDocument(Document doc, DocumentDescriptor src,
+                                    DocumentDescriptor dst) {
+        Document ret = (Document)doc.cloneNode(true);
+        if ((src != null) && (dst != null))
+            copyLocations(doc, ret, src, dst);
+        return ret;
+    }
+
+    /**
+     * Copies the locations of the elements under <code>from</code>
+     * to the matching elements under <code>to</code>, a copy of
+     * <code>from</code>.
+     */
+    protected static void copyLocations(Node from, Node to,
+                                        DocumentDescriptor src,
+                                        DocumentDescriptor dst) {
+        Node f = from.getFirstChild();
+        Node t = to.getFirstChild();
+        while ((f != null) && (t != null)) {
+            if (f.getNodeType() == Node.ELEMENT_NODE) {
+                Element fe = (Element)f;
+                int line = src.getLocationLine(fe);
+                if (line != 0)
+                    dst.setLocation((Element)t, line,
+                                    src.getLocationColumn(fe));
+                copyLocations(f, t, src, dst);
+            }
+            f = f.getNextSibling();
+            t = t.getNextSibling();
+        }
+    }
+
+    /**
+     * Returns the number of nodes under and including <code>n</code>,
+     * attributes excluded.
+     */
+    protected static int countNodes(Node n) {
+        int ret = 1;
+        for (Node c = n.getFirstChild(); c != null; c = c.getNextSibling())
+            ret += countNodes(c);
+        return ret;
+    }
+
+    /**
+     * Returns the validator of the document at <code>purl</code> if it
+     * can be computed without reading the document, that is the
+     * modification time and length of local files, null otherwise.
+     */
+    public static String getValidator(ParsedURL purl) {
+        if (!"file".equals(purl.getProtocol()))
+            return null;
+        File f = new File(purl.getPath());
+        if (!f.isFile())
+            return null;
+        return f.lastModified() + ":" + f.length();
+    }
+
+    /**
+     * Returns the validator of a document made of the first
+     * <code>len</code> bytes of <code>data</code>, a digest of its
+     * content.
+     */
+    public static String getValidator(byte[] data, int len) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        md.update(data, 0, len);
+        byte[] d = md.digest();
+        StringBuffer sb = new StringBuffer(d.length * 2 + 12);
+        for (int i = 0; i < d.length; i++) {
+            sb.append(Character.forDigit((d[i] >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(d[i] & 0xF, 16));
+        }
+        sb.append(':').append(len);
+        return sb.toString();
+    }
+
+    /**
+     * Returns the number of documents in the cache.
+     */
+    public synchronized int getDocumentCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of nodes of the documents in the cache.
+     */
+    public synchronized int getNodeCount() {
+        return nodes;
+    }
+
+    /**
+     * Returns the number of lookups that found a document.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that did not find a document,
+     * including the ones that found an out of date document.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of documents dropped because their source
+     * changed.
+     */
+    public long getStaleCount() {
+        return stale.get();
+    }
+
+    /**
+     * Returns the number of documents dropped to stay within the
+     * node budget.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the fraction of lookups that found a document.
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long n = h + misses.get();
+        if (n == 0) return 0;
+        return h / (double)n;
+    }
+
+    /**
+     * Resets the statistics of the cache.
+     */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        stale.set(0);
+        evictions.set(0);
+    }
+}
@@ -18,7 +18,10 @@
  */
 package org.apache.batik.bridge;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.IOException;
 import java.util.HashMap;
 
@@ -26,6 +29,8 @@ import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
 import org.apache.batik.dom.svg.SVGDocumentFactory;
 import org.apache.batik.dom.util.DocumentDescriptor;
 import org.apache.batik.util.CleanerThread;
+import org.apache.batik.util.MimeTypeConstants;
+import org.apache.batik.util.ParsedURL;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -59,6 +64,11 @@ public class DocumentLoader {
      */
     protected UserAgent userAgent;
 
+    /**
+     * The cache shared with other document loaders, null if none.
+     */
+    protected DocumentCache documentCache = DocumentCache.getSharedCache();
+
     /**
      * Constructs a new <code>DocumentLoader</code>.
      */
@@ -103,6 +113,9 @@ public class DocumentLoader {
         if (ret != null)
             return ret;
 
+        if (documentCache != null)
+            return loadSharedDocument(uri);
+
         SVGDocument document = documentFactory.createSVGDocument(uri);
 
         DocumentDescriptor desc = documentFactory.getDocumentDescriptor();
@@ -126,6 +139,13 @@ public class DocumentLoader {
         if (ret != null)
             return ret;
 
+        if (documentCache != null) {
+            byte[] data = readFully(is);
+            return loadSharedDocument
+                (uri, DocumentCache.getValidator(data, data.length),
+                 data, null);
+        }
+
         SVGDocument document = documentFactory.createSVGDocument(uri, is);
 
         DocumentDescriptor desc = documentFactory.getDocumentDescriptor();
@@ -137,6 +157,103 @@ public class DocumentLoader {
         return state.getDocument();
     }
 
+    /**
+     * Returns a document from the specified uri, going through the
+     * shared document cache.
+     */
+    protected Document loadSharedDocument(String uri) throws IOException {
+        ParsedURL purl = new ParsedURL(uri);
+        String validator = DocumentCache.getValidator(purl);
+        if (validator != null)
+            return loadSharedDocument(uri, validator, null, null);
+
+        // The document has to be read to know whether it changed.
+        InputStream is = purl.openStream
+            (MimeTypeConstants.MIME_TYPES_SVG_LIST.iterator());
+        byte[] data;
+        try {
+            data = readFully(is);
+        } finally {
+            is.close();
+        }
+        return loadSharedDocument
+            (uri, DocumentCache.getValidator(data, data.length),
+             data, purl.getContentTypeCharset());
+    }
+
+    /**
+     * Returns the document cached for <code>uri</code> with
+     * <code>validator</code> in the shared document cache, parsing and
+     * caching it if needed.
+     * @param content the content of the document, or null to read it
+     *        from <code>uri</code>.
+     * @param charset the encoding of <code>content</code> if known.
+     */
+    protected Document loadSharedDocument(String uri, String validator,
+                                          byte[] content,
+                                          String charset)
+        throws IOException {
+        String key = uri;
+        int n = key.lastIndexOf('/');
+        if (n == -1)
+            n = 0;
+        n = key.indexOf('#', n);
+        if (n != -1)
+            key = key.substring(0, n);
+
+        DocumentDescriptor desc = new DocumentDescriptor();
+        Document document = documentCache.getDocument(key, validator, desc);
+        if (document == null) {
+            if (content == null) {
+                document = documentFactory.createSVGDocument(uri);
+            } else {
+                InputStream is = new ByteArrayInputStream(content);
+                if (charset == null)
+                    document = documentFactory.createSVGDocument(uri, is);
+                else
+                    document = documentFactory.createSVGDocument
+                        (uri, new InputStreamReader(is, charset));
+            }
+            desc = documentFactory.getDocumentDescriptor();
+            documentCache.putDocument(key, validator, document, desc);
+        }
+
+        DocumentState state = new DocumentState(uri, document, desc);
+        synchronized (cacheMap) {
+            cacheMap.put(uri, state);
+        }
+
+        return state.getDocument();
+    }
+
+    /**
+     * Reads <code>is</code> to the end.
+     */
+    protected static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(8192);
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = is.read(buf)) != -1)
+            bos.write(buf, 0, n);
+        return bos.toByteArray();
+    }
+
+    /**
+     * Returns the cache this loader shares with other document
+     * loaders, null if none.
+     */
+    public DocumentCache getDocumentCache() {
+        return documentCache;
+    }
+
+    /**
+     * Sets the cache this loader shares with other document loaders,
+     * null to only cache documents for this loader.
+     */
+    public void setDocumentCache(DocumentCache documentCache) {
+        this.documentCache = documentCache;
+    }
+
     /**
      * Returns the userAgent used by this DocumentLoader
      */
@@ -57,6 +57,11 @@ public class GVTBuilder implements SVGConstants {
         // inform the bridge context the builder to use
         ctx.setGVTBuilder(this);
 
+        // compile the scripts while the tree is built
+        if (ctx.isDynamic()) {
+            BaseScriptingEnvironment.precompileScripts(ctx, document);
+        }
+
         // build the GVT tree
         DocumentBridge dBridge = ctx.getDocumentBridge();
         RootGraphicsNode rootNode = null;
@@ -0,0 +1,129 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.util.EventObject;
+
+/**
+ * This class represents an event describing one frame repainted by a
+ * RepaintManager: how much of the canvas was dirty, how many regions
+ * it was repainted with and how long it took.
+ *
+ * @version $Id$
+ */
+public class RepaintEvent extends EventObject {
+
+    protected long frame;
+    protected int  dirtyAreaCount;
+    protected long dirtyArea;
+    protected int  regionCount;
+    protected long repaintedArea;
+    protected long canvasArea;
+    protected long paintTime;
+
+    /**
+     * Creates a new RepaintEvent.
+     * @param source the RepaintManager that repainted the frame.
+     * @param frame the number of the frame.
+     * @param dirtyAreaCount the number of dirty areas.
+     * @param dirtyArea the sum of the areas, in pixels, of the bounds
+     *        of the dirty areas.
+     * @param regionCount the number of regions repainted.
+     * @param repaintedArea the sum of the areas, in pixels, of the
+     *        regions repainted.
+     * @param canvasArea the area, in pixels, of the canvas.
+     * @param paintTime the time taken, in nanoseconds.
+     */
+    public RepaintEvent(Object source, long frame,
+                        int dirtyAreaCount, long dirtyArea,
+                        int regionCount, long repaintedArea,
+                        long canvasArea, long paintTime) {
+        super(source);
+        this.frame          = frame;
+        this.dirtyAreaCount = dirtyAreaCount;
+        this.dirtyArea      = dirtyArea;
+        this.regionCount    = regionCount;
+        this.repaintedArea  = repaintedArea;
+        this.canvasArea     = canvasArea;
+        this.paintTime      = paintTime;
+    }
+
+    /**
+     * Returns the number of the frame, counted from the creation of
+     * the RepaintManager.
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * Returns the number of dirty areas the frame was asked to update.
+     */
+    public int getDirtyAreaCount() {
+        return dirtyAreaCount;
+    }
+
+    /**
+     * Returns the sum of the areas, in pixels, of the bounds of the
+     * dirty areas, clipped to the canvas.  Overlapping areas are
+     * counted more than once.
+     */
+    public long getDirtyArea() {
+        return dirtyArea;
+    }
+
+    /**
+     * Returns the number of regions the frame was repainted with.
+     */
+    public int getRegionCount() {
+        return regionCount;
+    }
+
+    /**
+     * Returns the sum of the areas, in pixels, of the regions that
+     * were repainted.
+     */
+    public long getRepaintedArea() {
+        return repaintedArea;
+    }
+
+    /**
+     * Returns the area, in pixels, of the canvas, or 0 if it has
+     * no offscreen buffer.
+     */
+    public long getCanvasArea() {
+        return canvasArea;
+    }
+
+    /**
+     * Returns the part of the canvas that was repainted, between 0
+     * and 1 unless regions overlap.
+     */
+    public double getCoverage() {
+        if (canvasArea == 0) return 0;
+        return repaintedArea / (double)canvasArea;
+    }
+
+    /**
+     * Returns the time taken to repaint the frame, in milliseconds.
+     */
+    public double getPaintTime() {
+        return paintTime / 1e6;
+    }
+}
@@ -24,8 +24,9 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.List;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.batik.gvt.renderer.ImageRenderer;
 import org.apache.batik.ext.awt.geom.RectListManager;
@@ -33,6 +34,12 @@ import org.apache.batik.ext.awt.geom.RectListManager;
 /**
  * This class manages the rendering of a GVT tree.
  *
+ * The dirty areas of an update are turned into device space
+ * rectangles, clipped to the offscreen buffer and merged where
+ * repainting the union is cheaper than repainting each rectangle
+ * separately.  At most {@link #getMaxRegions()} regions are repainted
+ * per frame.  {@link RepaintListener}s are told about each frame.
+ *
  * @author <a href="mailto:stephane@hillion.org">Stephane Hillion</a>
  * @author <a href="mailto:vincent.hardy@sun.com">Vincent Hardy</a>
  * @version $Id$
@@ -41,11 +48,41 @@ public class RepaintManager {
     static final int COPY_OVERHEAD      = 10000;
     static final int COPY_LINE_OVERHEAD = 10;
 
+    /**
+     * The default maximum number of regions repainted per frame.
+     */
+    public static final int DEFAULT_MAX_REGIONS = 32;
+
     /**
      * The renderer used to repaint the buffer.
      */
     protected ImageRenderer renderer;
 
+    /**
+     * The maximum number of regions repainted per frame.
+     */
+    protected int maxRegions = DEFAULT_MAX_REGIONS;
+
+    /**
+     * The cost of repainting one more region, in pixels.
+     */
+    protected int regionOverhead = COPY_OVERHEAD;
+
+    /**
+     * The cost of repainting one more line of a region, in pixels.
+     */
+    protected int lineOverhead = COPY_LINE_OVERHEAD;
+
+    /**
+     * The repaint listeners.
+     */
+    protected List listeners = new CopyOnWriteArrayList();
+
+    /**
+     * The number of frames repainted.
+     */
+    protected long frameCount;
+
     /**
      * Creates a new repaint manager.
      */
@@ -60,10 +97,19 @@ public class RepaintManager {
      */
     public Collection updateRendering(Collection areas)
         throws InterruptedException {
+        long t0 = System.nanoTime();
         renderer.flush(areas);
         List rects = new ArrayList(areas.size());
         AffineTransform at = renderer.getTransform();
 
+        // Nothing outside the offscreen buffer gets painted, don't
+        // let it weigh on the merging.
+        Rectangle clip = null;
+        BufferedImage off = renderer.getOffScreen();
+        if (off != null)
+            clip = new Rectangle(0, 0, off.getWidth(), off.getHeight());
+        long dirtyArea = 0;
+
         for (Object area : areas) {
             Shape s = (Shape) area;
             s = at.createTransformedShape(s);
@@ -75,21 +121,98 @@ public class RepaintManager {
             // This rectangle must be outset one pixel to ensure
             // it includes the effects of anti-aliasing on objects.
             Rectangle r = new Rectangle(x0 - 1, y0 - 1, x1 - x0 + 3, y1 - y0 + 3);
+            if (clip != null) {
+                r = r.intersection(clip);
+                if (r.isEmpty()) continue;
+            }
 
+            dirtyArea += r.width * (long)r.height;
             rects.add(r);
         }
         RectListManager devRLM = null;
         try {
             devRLM = new RectListManager(rects);
-            devRLM.mergeRects(COPY_OVERHEAD, COPY_LINE_OVERHEAD);
+            devRLM.mergeRects(regionOverhead, lineOverhead, maxRegions);
         } catch(Exception e) {
             e.printStackTrace();
         }
 
         renderer.repaint(devRLM);
+
+        frameCount++;
+        if (!listeners.isEmpty()) {
+            long repaintedArea = 0;
+            int regionCount = 0;
+            if (devRLM != null) {
+                for (Object o : devRLM) {
+                    Rectangle r = (Rectangle) o;
+                    repaintedArea += r.width * (long)r.height;
+                }
+                regionCount = devRLM.size();
+            }
+            long canvasArea = 0;
+            if (clip != null)
+                canvasArea = clip.width * (long)clip.height;
+            fireFrameRepainted(new RepaintEvent
+                (this, frameCount, areas.size(), dirtyArea,
+                 regionCount, repaintedArea, canvasArea,
+                 System.nanoTime() - t0));
+        }
         return devRLM;
     }
 
+    /**
+     * Calls the listeners with <code>e</code>.
+     */
+    protected void fireFrameRepainted(RepaintEvent e) {
+        for (Object l : listeners) {
+            ((RepaintListener) l).frameRepainted(e);
+        }
+    }
+
+    /**
+     * Adds a RepaintListener to this RepaintManager.
+     */
+    public void addRepaintListener(RepaintListener l) {
+        listeners.add(l);
+    }
+
+    /**
+     * Removes a RepaintListener from this RepaintManager.
+     */
+    public void removeRepaintListener(RepaintListener l) {
+        listeners.remove(l);
+    }
+
+    /**
+     * Returns the maximum number of regions repainted per frame.
+     */
+    public int getMaxRegions() {
+        return maxRegions;
+    }
+
+    /**
+     * Sets the maximum number of regions repainted per frame.  When
+     * there are more, the ones that are cheapest to merge are merged.
+     * Less than one means no limit.
+     */
+    public void setMaxRegions(int maxRegions) {
+        this.maxRegions = maxRegions;
+    }
+
+    /**
+     * Sets the costs used to decide whether to merge regions, in
+     * pixels: repainting the union of two regions is preferred when
+     * it covers fewer extra pixels than the overhead it saves.
+     * @param regionOverhead the cost of repainting one more region.
+     * @param lineOverhead the cost of repainting one more line of a
+     *        region.
+     */
+    public void setMergeCosts(int regionOverhead, int lineOverhead) {
+        this.regionOverhead = regionOverhead;
+        this.lineOverhead = lineOverhead;
+    }
+
     /**
      * Sets up the renderer so that it is ready to render for the new
      * 'context' defined by the user to device transform, double buffering
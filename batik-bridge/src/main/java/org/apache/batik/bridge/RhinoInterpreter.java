@@ -20,7 +20,6 @@ package org.apache.batik.bridge;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StringReader;
 import java.io.Writer;
 import java.net.URL;
 import java.security.AccessControlContext;
@@ -31,6 +30,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.MissingResourceException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 import org.apache.batik.script.Interpreter;
 import org.apache.batik.script.InterpreterException;
@@ -62,11 +63,6 @@ import org.w3c.dom.events.EventTarget;
  */
 public class RhinoInterpreter implements Interpreter {
 
-    /**
-     * The number of cached compiled scripts to store.
-     */
-    private static final int MAX_CACHED_SCRIPTS = 32;
-
     /**
      * Constant used to describe an SVG source
      */
@@ -94,9 +90,36 @@ public class RhinoInterpreter implements Interpreter {
     protected ScriptableObject globalObject = null;
 
     /**
-     * List of cached compiled scripts.
+     * The number of scripts kept by an interpreter that has no
+     * document URL.
+     */
+    private static final int MAX_CACHED_SCRIPTS = 32;
+
+    /**
+     * The optimization level new interpreters compile scripts at.
+     */
+    private static volatile int defaultOptimizationLevel = 0;
+
+    /**
+     * The cache compiled scripts are shared through.  An interpreter
+     * without a document URL has a cache of its own.
      */
-    protected LinkedList compiledScripts = new LinkedList();
+    protected CompiledScriptCache scriptCache
+        = CompiledScriptCache.getDefaultCache();
+
+    /**
+     * The optimization level scripts are compiled at, when they can be
+     * compiled to classes.
+     */
+    protected int optimizationLevel = defaultOptimizationLevel;
+
+    /**
+     * What identifies the security domain of the scripts in the script
+     * cache: the URL of the document, since the class loaders of two
+     * interpreters for the same URL grant the same permissions.  Null
+     * when there is no document URL.
+     */
+    protected String securityDomainKey;
 
     /**
      * Factory for Java wrapper objects.
@@ -164,6 +187,13 @@ public class RhinoInterpreter implements Interpreter {
     protected void init(URL documentURL,
                         final ImportInfo imports)
     {
+        if (documentURL != null) {
+            securityDomainKey = documentURL.toString();
+        } else {
+            // Nothing tells the security domains of interpreters
+            // without a URL apart, so they do not share scripts.
+            scriptCache = new CompiledScriptCache(MAX_CACHED_SCRIPTS);
+        }
         try {
             rhinoClassLoader = new RhinoClassLoader
                 (documentURL, getClass().getClassLoader());
@@ -214,6 +244,39 @@ public class RhinoInterpreter implements Interpreter {
         return RhinoInterpreterFactory.RHINO_MIMETYPES;
     }
 
+    /**
+     * Returns the optimization level new interpreters compile scripts
+     * at.
+     */
+    public static int getDefaultOptimizationLevel() {
+        return defaultOptimizationLevel;
+    }
+
+    /**
+     * Sets the optimization level new interpreters compile scripts at,
+     * from -1 (interpreted) to 9.
+     */
+    public static void setDefaultOptimizationLevel(int level) {
+        defaultOptimizationLevel = level;
+    }
+
+    /**
+     * Returns the optimization level scripts are compiled at.  Scripts
+     * are always interpreted when the security manager prevents the
+     * interpreter from creating its class loader.
+     */
+    public int getOptimizationLevel() {
+        return (rhinoClassLoader == null) ? -1 : optimizationLevel;
+    }
+
+    /**
+     * Sets the optimization level scripts are compiled at, from -1
+     * (interpreted) to 9.
+     */
+    public void setOptimizationLevel(int level) {
+        optimizationLevel = level;
+    }
+
     /**
      * Returns the window object for this interpreter.
      */
@@ -286,16 +349,18 @@ public class RhinoInterpreter implements Interpreter {
     public Object evaluate(final Reader scriptReader, final String description)
         throws IOException {
 
+        // Read it all so it can be looked up in the script cache.
+        StringBuffer sb = new StringBuffer();
+        char[] buf = new char[4096];
+        int n;
+        while ((n = scriptReader.read(buf)) != -1)
+            sb.append(buf, 0, n);
+        final String scriptStr = sb.toString();
+
         ContextAction evaluateAction = new ContextAction() {
             public Object run(Context cx) {
-                try {
-                    return cx.evaluateReader(globalObject,
-                                             scriptReader,
-                                             description,
-                                             1, rhinoClassLoader);
-                } catch (IOException ioe) {
-                    throw new WrappedException(ioe);
-                }
+                Script script = getScript(cx, scriptStr, description);
+                return script.exec(cx, globalObject);
             }
         };
         try {
@@ -332,56 +397,8 @@ public class RhinoInterpreter implements Interpreter {
     public Object evaluate(final String scriptStr) {
 
         ContextAction evalAction = new ContextAction() {
-            public Object run(final Context cx) {
-                Script script = null;
-                Entry entry = null;
-                Iterator it = compiledScripts.iterator();
-                // between nlog(n) and log(n) because it is
-                // an AbstractSequentialList
-                while (it.hasNext()) {
-                    if ((entry = (Entry) it.next()).str.equals(scriptStr)) {
-                        // if it is not at the end, remove it because
-                        // it will change from place (it is faster
-                        // to remove it now)
-                        script = entry.script;
-                        it.remove();
-                        break;
-                    }
-                }
-
-                if (script == null) {
-                    // this script has not been compiled yet or has been
-                    // forgotten since the compilation:
-                    // compile it and store it for future use.
-
-                    PrivilegedAction compile = new PrivilegedAction() {
-                        public Object run() {
-                            try {
-                                return cx.compileReader
-                                    (new StringReader(scriptStr),
-                                     SOURCE_NAME_SVG, 1, rhinoClassLoader);
-                            } catch (IOException ioEx ) {
-                                // Should never happen: using a string
-                                throw new RuntimeException( ioEx.getMessage() );
-                            }
-                        }
-                    };
-                    script = (Script)AccessController.doPrivileged(compile);
-
-                    if (compiledScripts.size() + 1 > MAX_CACHED_SCRIPTS) {
-                        // too many cached items - we should delete the
-                        // oldest entry.  all of this is very fast on
-                        // linkedlist
-                        compiledScripts.removeFirst();
-                    }
-                    // storing is done here:
-                    compiledScripts.addLast(new Entry(scriptStr, script));
-                } else {
-                    // this script has been compiled before,
-                    // just update its index so it won't get deleted soon.
-                    compiledScripts.addLast(entry);
-                }
-
+            public Object run(Context cx) {
+                Script script = getScript(cx, scriptStr, SOURCE_NAME_SVG);
                 return script.exec(cx, globalObject);
             }
         };
@@ -407,6 +424,61 @@ public class RhinoInterpreter implements Interpreter {
         }
     }
 
+    /**
+     * Returns the compiled form of <code>scriptStr</code> from the
+     * script cache, compiling it with <code>cx</code> if needed.
+     */
+    protected Script getScript(final Context cx, final String scriptStr,
+                               final String sourceName) {
+        Callable compiler = new Callable() {
+                public Object call() {
+                    PrivilegedAction compile = new PrivilegedAction() {
+                        public Object run() {
+                            return cx.compileString
+                                (scriptStr, sourceName, 1, rhinoClassLoader);
+                        }
+                    };
+                    return AccessController.doPrivileged(compile);
+                }
+            };
+        return scriptCache.getScript(scriptStr, sourceName,
+                                     securityDomainKey,
+                                     cx.getOptimizationLevel(), compiler);
+    }
+
+    /**
+     * Starts compiling a piece of ECMAScript in the background, so that
+     * it is already compiled by the time it is evaluated with the same
+     * description.  Nothing is done if there is no compile pool, see
+     * {@link CompiledScriptCache#getCompilePool()}.  Errors are only
+     * reported when the script is evaluated.
+     *
+     * @param scriptStr the piece of script
+     * @param description the description it will be evaluated with
+     */
+    public void precompile(final String scriptStr, final String description) {
+        Executor pool = CompiledScriptCache.getCompilePool();
+        if ((pool == null) ||
+            scriptCache.isPresent(scriptStr, description, securityDomainKey,
+                                  getOptimizationLevel()))
+            return;
+
+        final ContextAction compileAction = new ContextAction() {
+            public Object run(Context cx) {
+                return getScript(cx, scriptStr, description);
+            }
+        };
+        pool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        contextFactory.call(compileAction);
+                    } catch (RuntimeException re) {
+                        // Reported when the script is evaluated.
+                    }
+                }
+            });
+    }
+
     /**
      * For <code>RhinoInterpreter</code> this method flushes the
      * Rhino caches to avoid memory leaks.
@@ -560,30 +632,6 @@ public class RhinoInterpreter implements Interpreter {
         return null;
     }
 
-    /**
-     * Class to store cached compiled scripts.
-     */
-    protected static class Entry {
-
-        /**
-         * The script string.
-         */
-        public String str;
-
-        /**
-         * The compiled script.
-         */
-        public Script script;
-
-        /**
-         * Creates a new script cache entry object.
-         */
-        public Entry(String str, Script script) {
-            this.str = str;
-            this.script = script;
-        }
-    }
-
     /**
      * Factory for Context objects.
      */
@@ -597,9 +645,7 @@ public class RhinoInterpreter implements Interpreter {
             cx.setWrapFactory(wrapFactory);
             cx.setSecurityController(securityController);
             cx.setClassShutter(classShutter);
-            if (rhinoClassLoader == null) {
-                cx.setOptimizationLevel(-1);
-            }
+            cx.setOptimizationLevel(getOptimizationLevel());
             return cx;
         }
     }
@@ -30,6 +30,7 @@ import org.apache.batik.anim.dom.SVGOMPathElement;
 import org.apache.batik.anim.values.AnimatableMotionPointValue;
 import org.apache.batik.anim.values.AnimatableValue;
 import org.apache.batik.ext.awt.geom.ExtendedGeneralPath;
+import org.apache.batik.ext.awt.geom.ExtendedShape;
 import org.apache.batik.dom.svg.SVGAnimatedPathDataSupport;
 import org.apache.batik.dom.util.XLinkSupport;
 import org.apache.batik.parser.AWTPathProducer;
@@ -165,7 +166,7 @@ public class SVGAnimateMotionElementBridge extends SVGAnimateElementBridge {
                 AWTPathProducer app = new AWTPathProducer();
                 SVGAnimatedPathDataSupport.handlePathSegList
                     (pathElt.getPathSegList(), app);
-                return (ExtendedGeneralPath) app.getShape();
+                return toExtendedGeneralPath(app);
             }
             n = n.getNextSibling();
         }
@@ -178,7 +179,7 @@ public class SVGAnimateMotionElementBridge extends SVGAnimateElementBridge {
             PathParser pp = new PathParser();
             pp.setPathHandler(app);
             pp.parse(pathString);
-            return (ExtendedGeneralPath) app.getShape();
+            return toExtendedGeneralPath(app);
         } catch (ParseException pEx ) {
             throw new BridgeException
                 (ctx, element, pEx, ErrorConstants.ERR_ATTRIBUTE_VALUE_MALFORMED,
@@ -186,6 +187,18 @@ public class SVGAnimateMotionElementBridge extends SVGAnimateElementBridge {
         }
     }
 
+    /**
+     * Returns the path built by <code>app</code> as an
+     * ExtendedGeneralPath, as needed by MotionAnimation.
+     */
+    protected ExtendedGeneralPath toExtendedGeneralPath(AWTPathProducer app) {
+        ExtendedShape s = (ExtendedShape) app.getShape();
+        ExtendedGeneralPath path =
+            new ExtendedGeneralPath(app.getWindingRule());
+        path.append(s.getExtendedPathIterator(), false);
+        return path;
+    }
+
     /**
      * Returns the parsed 'keyPoints' attribute from the animation element.
      */
@@ -37,6 +37,7 @@ import org.apache.batik.dom.events.AbstractEvent;
 import org.apache.batik.gvt.GraphicsNode;
 import org.apache.batik.gvt.RootGraphicsNode;
 import org.apache.batik.gvt.UpdateTracker;
+import org.apache.batik.gvt.renderer.DynamicRenderer;
 import org.apache.batik.gvt.renderer.ImageRenderer;
 import org.apache.batik.util.EventDispatcher;
 import org.apache.batik.constants.XMLConstants;
@@ -278,6 +279,10 @@ public class UpdateManager  {
                         running = true;
 
                         updateTracker = new UpdateTracker();
+                        if (r instanceof DynamicRenderer) {
+                            updateTracker.setLayerCache
+                                (((DynamicRenderer)r).getLayerCache());
+                        }
                         RootGraphicsNode root = graphicsNode.getRoot();
                         if (root != null){
                             root.addTreeGraphicsNodeChangeListener
@@ -23,7 +23,6 @@ import java.awt.image.DataBuffer;
 import java.awt.image.PixelInterleavedSampleModel;
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
-import java.awt.image.SinglePixelPackedSampleModel;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -44,7 +43,7 @@ import org.apache.batik.transcoder.image.TIFFTranscoder;
  * @version $Id$
  */
 public class TIFFTranscoderImageIOWriteAdapter 
-    implements TIFFTranscoder.WriteAdapter {
+    implements TIFFTranscoder.RenderedImageWriteAdapter {
 
     /**
      * @throws TranscoderException 
@@ -53,6 +52,17 @@ public class TIFFTranscoderImageIOWriteAdapter
      */
     public void writeImage(TIFFTranscoder transcoder, BufferedImage img,
             TranscoderOutput output) throws TranscoderException {
+        writeImage(transcoder, (RenderedImage)img, output);
+    }
+
+    /**
+     * Writes the specified image to the specified output.  The image is
+     * converted a tile at a time as the Image I/O writer reads it.
+     * @see org.apache.batik.transcoder.image.TIFFTranscoder.RenderedImageWriteAdapter#writeImage(TIFFTranscoder,
+     * java.awt.image.RenderedImage, org.apache.batik.transcoder.TranscoderOutput)
+     */
+    public void writeImage(TIFFTranscoder transcoder, RenderedImage img,
+            TranscoderOutput output) throws TranscoderException {
 
         TranscodingHints hints = transcoder.getTranscodingHints();
 
@@ -82,11 +92,11 @@ public class TIFFTranscoderImageIOWriteAdapter
 
         try {
             OutputStream ostream = output.getOutputStream();
-            int w = img.getWidth();
-            int h = img.getHeight();
-            SinglePixelPackedSampleModel sppsm;
-            sppsm = (SinglePixelPackedSampleModel)img.getSampleModel();
-            int bands = sppsm.getNumBands();
+            // Keep the tiles of the source so a banded image is only
+            // converted one band at a time.
+            int w = img.getTileWidth();
+            int h = img.getTileHeight();
+            int bands = img.getSampleModel().getNumBands();
             int [] off = new int[bands];
             for (int i = 0; i < bands; i++)
                 off[i] = i;
@@ -28,6 +28,7 @@ import java.awt.image.SampleModel;
 import java.util.Date;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.zip.Deflater;
 
 /**
  * An instance of <code>ImageEncodeParam</code> for encoding images in
@@ -587,6 +588,74 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
         return useInterlacing;
     }
 
+    private int compressionLevel = 9;
+
+    /**
+     * Sets the deflate compression level used for the image data,
+     * from 0 (no compression) to 9 (best compression), or -1 for
+     * zlib's default.  The default is 9.
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if ((compressionLevel < -1) || (compressionLevel > 9)) {
+            throw new IllegalArgumentException();
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Returns the deflate compression level used for the image data.
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    private int compressionStrategy = Deflater.DEFAULT_STRATEGY;
+
+    /**
+     * Sets the deflate strategy used for the image data, one of
+     * <code>Deflater.DEFAULT_STRATEGY</code>,
+     * <code>Deflater.FILTERED</code> or
+     * <code>Deflater.HUFFMAN_ONLY</code>.
+     */
+    public void setCompressionStrategy(int compressionStrategy) {
+        if ((compressionStrategy != Deflater.DEFAULT_STRATEGY) &&
+            (compressionStrategy != Deflater.FILTERED) &&
+            (compressionStrategy != Deflater.HUFFMAN_ONLY)) {
+            throw new IllegalArgumentException();
+        }
+        this.compressionStrategy = compressionStrategy;
+    }
+
+    /**
+     * Returns the deflate strategy used for the image data.
+     */
+    public int getCompressionStrategy() {
+        return compressionStrategy;
+    }
+
+    private int compressionThreads = 1;
+
+    /**
+     * Sets the number of threads the image data is compressed on.
+     * With more than one thread the data is cut into independent
+     * chunks that are deflated concurrently, which costs a little
+     * compression ratio.  Interlaced images are always compressed on
+     * a single thread.  The default is 1.
+     */
+    public void setCompressionThreads(int compressionThreads) {
+        if (compressionThreads < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.compressionThreads = compressionThreads;
+    }
+
+    /**
+     * Returns the number of threads the image data is compressed on.
+     */
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
     // bKGD chunk - delegate to subclasses
 
     // In JAI 1.0, 'backgroundSet' was private.  The JDK 1.2 compiler
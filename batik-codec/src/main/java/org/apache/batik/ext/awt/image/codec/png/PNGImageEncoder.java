@@ -31,11 +31,18 @@ import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.LinkedList;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
@@ -257,6 +264,203 @@ class IDATOutputStream extends FilterOutputStream {
     }
 }
 
+/**
+ * A stream that deflates its input into a zlib stream on several
+ * threads.  The input is cut into chunks that are compressed
+ * independently, each one primed with the last 32K of the chunk
+ * before it, and ended with a sync flush so the compressed chunks can
+ * simply be concatenated.
+ */
+class ParallelDeflaterOutputStream extends FilterOutputStream {
+
+    private static final int CHUNK_SIZE = 128*1024;
+    private static final int DICT_SIZE  = 32*1024;
+
+    private final int level;
+    private final int strategy;
+    private final int maxPending;
+    private ForkJoinPool pool;
+
+    private final LinkedList pending = new LinkedList();
+    private final Adler32 adler = new Adler32();
+
+    private byte[] buf = new byte[CHUNK_SIZE];
+    private int count = 0;
+    private byte[] dict = null;
+    private boolean finished = false;
+
+    public ParallelDeflaterOutputStream(OutputStream output, int level,
+                                        int strategy, int threads)
+        throws IOException {
+        super(output);
+        this.level = level;
+        this.strategy = strategy;
+        this.maxPending = 2*threads;
+        this.pool = new ForkJoinPool(threads);
+        writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        // Same header zlib writes for this level and strategy.
+        int flevel;
+        if ((strategy == Deflater.HUFFMAN_ONLY) ||
+            ((level >= 0) && (level < 2))) {
+            flevel = 0;
+        } else if ((level >= 0) && (level < 6)) {
+            flevel = 1;
+        } else if ((level == 6) || (level == -1)) {
+            flevel = 2;
+        } else {
+            flevel = 3;
+        }
+        int header = (0x78 << 8) | (flevel << 6);
+        header += 31 - (header % 31);
+        out.write(header >> 8);
+        out.write(header & 0xff);
+    }
+
+    public void write(int b) throws IOException {
+        buf[count++] = (byte)b;
+        if (count == CHUNK_SIZE) {
+            submit(false);
+        }
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int bytes = Math.min(CHUNK_SIZE - count, len);
+            System.arraycopy(b, off, buf, count, bytes);
+            off += bytes;
+            len -= bytes;
+            count += bytes;
+            if (count == CHUNK_SIZE) {
+                submit(false);
+            }
+        }
+    }
+
+    /**
+     * Hands the buffered input to the pool as one chunk, writing out
+     * completed chunks when too many are outstanding.
+     */
+    private void submit(boolean last) throws IOException {
+        adler.update(buf, 0, count);
+        pending.addLast(pool.submit(new ChunkTask(buf, count, dict, last)));
+
+        if (!last) {
+            // Only the last chunk can be shorter than the window.
+            dict = new byte[DICT_SIZE];
+            System.arraycopy(buf, count - DICT_SIZE, dict, 0, DICT_SIZE);
+        }
+        buf = new byte[CHUNK_SIZE];
+        count = 0;
+
+        while (pending.size() > (last ? 0 : maxPending)) {
+            writeChunk();
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        Future f = (Future)pending.removeFirst();
+        try {
+            out.write((byte[])f.get());
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof IOException) {
+                throw (IOException)t;
+            }
+            throw new IOException(t);
+        }
+    }
+
+    /**
+     * Compresses any remaining input and writes the end of the zlib
+     * stream, without closing the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        finished = true;
+        submit(true);
+
+        int sum = (int)adler.getValue();
+        out.write(sum >>> 24);
+        out.write((sum >> 16) & 0xff);
+        out.write((sum >> 8) & 0xff);
+        out.write(sum & 0xff);
+        shutdown();
+    }
+
+    /**
+     * Releases the compression threads.  Pending chunks are dropped.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+        }
+    }
+
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    /**
+     * Deflates one chunk of input.
+     */
+    private class ChunkTask implements Callable {
+        private final byte[] data;
+        private final int len;
+        private final byte[] dict;
+        private final boolean last;
+
+        ChunkTask(byte[] data, int len, byte[] dict, boolean last) {
+            this.data = data;
+            this.len  = len;
+            this.dict = dict;
+            this.last = last;
+        }
+
+        public Object call() {
+            Deflater deflater = new Deflater(level, true);
+            try {
+                deflater.setStrategy(strategy);
+                if (dict != null) {
+                    deflater.setDictionary(dict);
+                }
+                deflater.setInput(data, 0, len);
+
+                ByteArrayOutputStream bos =
+                    new ByteArrayOutputStream(len/2 + 64);
+                byte[] tmp = new byte[16384];
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        int n = deflater.deflate(tmp);
+                        bos.write(tmp, 0, n);
+                    }
+                } else {
+                    // A sync flush leaves the stream byte aligned
+                    // with no final block, ready for the next chunk.
+                    // A call may also stop early after applying the
+                    // strategy, so go on until all input is used.
+                    int n;
+                    do {
+                        n = deflater.deflate(tmp, 0, tmp.length,
+                                             Deflater.SYNC_FLUSH);
+                        bos.write(tmp, 0, n);
+                    } while ((n == tmp.length) || !deflater.needsInput());
+                }
+                return bos.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+}
+
 /**
  * An ImageEncoder for the PNG file format.
  *
@@ -337,10 +541,58 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         return (val > maxValue) ? maxValue : val;
     }
 
+    /**
+     * Returns the number of bytes in a row of a pass starting at
+     * pixel <code>xOffset</code> and taking every
+     * <code>xSkip</code>'th pixel of a <code>width</code> pixel row.
+     */
+    private int getBytesPerRow(int width, int xOffset, int xSkip) {
+        int numSamples = width*numBands;
+        int pixels = (numSamples - xOffset*numBands + xSkip*numBands - 1)/
+            (xSkip*numBands);
+        int bytesPerRow = pixels*numBands;
+        if (bitDepth < 8) {
+            int samplesPerByte = 8/bitDepth;
+            bytesPerRow = (bytesPerRow + samplesPerByte - 1)/samplesPerByte;
+        } else if (bitDepth == 16) {
+            bytesPerRow *= 2;
+        }
+        return bytesPerRow;
+    }
+
+    /**
+     * Sets up the row buffers for a new pass, the previous row is
+     * all zeros as required for the first row of a pass.
+     */
+    private void startPass(int bytesPerRow) {
+        currRow = new byte[bytesPerRow + bpp];
+        prevRow = new byte[bytesPerRow + bpp];
+
+        filteredRows = new byte[5][bytesPerRow + bpp];
+    }
+
     private void encodePass(OutputStream os, Raster ras,
                             int xOffset,     int yOffset,
                             int xSkip,       int ySkip)
         throws IOException {
+        int bytesPerRow = getBytesPerRow(ras.getWidth(), xOffset, xSkip);
+        if (bytesPerRow == 0) {
+            return;
+        }
+
+        startPass(bytesPerRow);
+        encodeRows(os, ras, xOffset, yOffset, xSkip, ySkip, bytesPerRow);
+    }
+
+    /**
+     * Filters and writes the rows of <code>ras</code> belonging to a
+     * pass, continuing from the rows already written for that pass.
+     */
+    private void encodeRows(OutputStream os, Raster ras,
+                            int xOffset,     int yOffset,
+                            int xSkip,       int ySkip,
+                            int bytesPerRow)
+        throws IOException {
         int minX   = ras.getMinX();
         int minY   = ras.getMinY();
         int width  = ras.getWidth();
@@ -354,23 +606,6 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         int numSamples = width*numBands;
         int[] samples = new int[numSamples];
 
-        int pixels = (numSamples - xOffset + xSkip - 1)/xSkip;
-        int bytesPerRow = pixels*numBands;
-        if (bitDepth < 8) {
-            bytesPerRow = (bytesPerRow + samplesPerByte - 1)/samplesPerByte;
-        } else if (bitDepth == 16) {
-            bytesPerRow *= 2;
-        }
-
-        if (bytesPerRow == 0) {
-            return;
-        }
-
-        currRow = new byte[bytesPerRow + bpp];
-        prevRow = new byte[bytesPerRow + bpp];
-
-        filteredRows = new byte[5][bytesPerRow + bpp];
-
         int maxValue = (1 << bitDepth) - 1;
 
         for (int row = minY + yOffset; row < minY + height; row += ySkip) {
@@ -445,46 +680,26 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         }
     }
 
+    /**
+     * The number of pixels fetched from the image at a time when the
+     * image is not interlaced.
+     */
+    private static final int STRIP_PIXELS = 1 << 20;
+
     private void writeIDAT() throws IOException {
         IDATOutputStream ios = new IDATOutputStream(dataOutput, 8192);
-        DeflaterOutputStream dos =
-            new DeflaterOutputStream(ios, new Deflater(9));
 
-        // Future work - don't convert entire image to a Raster It
-        // might seem that you could just call image.getData() but
-        // 'BufferedImage.subImage' doesn't appear to set the Width
-        // and height properly of the Child Raster, so the Raster
-        // you get back here appears larger than it should.
-        // This solves that problem by bounding the raster to the
-        // image's bounds...
-        Raster ras = image.getData(new Rectangle(image.getMinX(),
-                                                 image.getMinY(),
-                                                 image.getWidth(),
-                                                 image.getHeight()));
-        // System.out.println("Image: [" +
-        //                    image.getMinY()  + ", " +
-        //                    image.getMinX()  + ", " +
-        //                    image.getWidth()  + ", " +
-        //                    image.getHeight() + "]");
-        // System.out.println("Ras: [" +
-        //                    ras.getMinX()  + ", " +
-        //                    ras.getMinY()  + ", " +
-        //                    ras.getWidth()  + ", " +
-        //                    ras.getHeight() + "]");
-
-        if (skipAlpha) {
-            int numBands = ras.getNumBands() - 1;
-            int[] bandList = new int[numBands];
-            for (int i = 0; i < numBands; i++) {
-                bandList[i] = i;
-            }
-            ras = ras.createChild(0, 0,
-                                  ras.getWidth(), ras.getHeight(),
-                                  0, 0,
-                                  bandList);
-        }
+        int level    = param.getCompressionLevel();
+        int strategy = param.getCompressionStrategy();
 
         if (interlace) {
+            Deflater deflater = new Deflater(level);
+            deflater.setStrategy(strategy);
+            DeflaterOutputStream dos = new DeflaterOutputStream(ios, deflater);
+
+            // The passes each need the whole image.
+            Raster ras = getImageData(image.getMinY(), image.getHeight());
+
             // Interlacing pass 1
             encodePass(dos, ras, 0, 0, 8, 8);
             // Interlacing pass 2
@@ -499,16 +714,104 @@ public class PNGImageEncoder extends ImageEncoderImpl {
             encodePass(dos, ras, 1, 0, 2, 2);
             // Interlacing pass 7
             encodePass(dos, ras, 0, 1, 1, 2);
+
+            dos.finish();
+            dos.close();
+            deflater.end();
         } else {
-            encodePass(dos, ras, 0, 0, 1, 1);
+            int threads = param.getCompressionThreads();
+            Deflater deflater = null;
+            DeflaterOutputStream dos = null;
+            ParallelDeflaterOutputStream pdos = null;
+            OutputStream os;
+            if (threads > 1) {
+                os = pdos = new ParallelDeflaterOutputStream
+                    (ios, level, strategy, threads);
+            } else {
+                deflater = new Deflater(level);
+                deflater.setStrategy(strategy);
+                os = dos = new DeflaterOutputStream(ios, deflater);
+            }
+
+            try {
+                // Pull the image a strip at a time rather than
+                // copying all of it into one Raster up front.  The
+                // strips follow the tile grid when the tiles are
+                // small enough.
+                int bytesPerRow = getBytesPerRow(width, 0, 1);
+                startPass(bytesPerRow);
+
+                int minY = image.getMinY();
+                int maxY = minY + height;
+                int th   = image.getTileHeight();
+                int tgy  = image.getTileGridYOffset();
+                boolean tileStrips = ((long)th*width <= STRIP_PIXELS);
+                int stripHeight = Math.max(1, STRIP_PIXELS/width);
+
+                int y = minY;
+                while (y < maxY) {
+                    int end;
+                    if (tileStrips) {
+                        int ty = y - tgy;
+                        ty = (ty >= 0) ? ty/th : (ty - th + 1)/th;
+                        end = (ty+1)*th + tgy;
+                    } else {
+                        end = y + stripHeight;
+                    }
+                    if (end > maxY) end = maxY;
+
+                    Raster ras = getImageData(y, end-y);
+                    encodeRows(os, ras, 0, 0, 1, 1, bytesPerRow);
+                    y = end;
+                }
+
+                if (pdos != null) {
+                    pdos.finish();
+                } else {
+                    dos.finish();
+                }
+                os.close();
+            } finally {
+                if (pdos != null) {
+                    pdos.shutdown();
+                } else {
+                    deflater.end();
+                }
+            }
         }
 
-        dos.finish();
-        dos.close();
         ios.flush();
         ios.close();
     }
 
+    /**
+     * Returns rows <code>y</code> to <code>y+h</code> of the image,
+     * without the alpha band if it is being dropped.
+     */
+    private Raster getImageData(int y, int h) {
+        // It might seem that you could just call image.getData() but
+        // 'BufferedImage.subImage' doesn't appear to set the Width
+        // and height properly of the Child Raster, so the Raster
+        // you get back here appears larger than it should.
+        // This solves that problem by bounding the raster to the
+        // image's bounds...
+        Raster ras = image.getData(new Rectangle(image.getMinX(), y,
+                                                 width, h));
+
+        if (skipAlpha) {
+            int numBands = ras.getNumBands() - 1;
+            int[] bandList = new int[numBands];
+            for (int i = 0; i < numBands; i++) {
+                bandList[i] = i;
+            }
+            ras = ras.createChild(ras.getMinX(), ras.getMinY(),
+                                  ras.getWidth(), ras.getHeight(),
+                                  ras.getMinX(), ras.getMinY(),
+                                  bandList);
+        }
+        return ras;
+    }
+
     private void writeIEND() throws IOException {
         ChunkStream cs = new ChunkStream("IEND");
         cs.writeToStream(dataOutput);
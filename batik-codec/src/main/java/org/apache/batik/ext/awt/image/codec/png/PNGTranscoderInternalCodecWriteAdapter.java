@@ -19,6 +19,7 @@
 package org.apache.batik.ext.awt.image.codec.png;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -35,7 +36,7 @@ import org.apache.batik.transcoder.image.PNGTranscoder;
  * @version $Id$
  */
 public class PNGTranscoderInternalCodecWriteAdapter implements
-        PNGTranscoder.WriteAdapter {
+        PNGTranscoder.RenderedImageWriteAdapter {
 
     /**
      * @throws TranscoderException
@@ -55,6 +56,35 @@ public class PNGTranscoderInternalCodecWriteAdapter implements
                 img = IndexImage.getIndexedImage(img,1<<n);
         }
 
+        encode(transcoder, img, output);
+    }
+
+    /**
+     * Writes the specified image to the specified output.  The encoder
+     * pulls the image a strip at a time, unless it is to be indexed.
+     * @see org.apache.batik.transcoder.image.PNGTranscoder.RenderedImageWriteAdapter#writeImage(
+     * org.apache.batik.transcoder.image.PNGTranscoder, java.awt.image.RenderedImage,
+     * org.apache.batik.transcoder.TranscoderOutput)
+     */
+    public void writeImage(PNGTranscoder transcoder, RenderedImage img,
+            TranscoderOutput output) throws TranscoderException {
+        TranscodingHints hints = transcoder.getTranscodingHints();
+        if (hints.containsKey(PNGTranscoder.KEY_INDEXED)) {
+            // The palette is computed from the whole image.
+            BufferedImage bi = new BufferedImage
+                (img.getColorModel(),
+                 img.copyData(null).createWritableTranslatedChild(0, 0),
+                 img.getColorModel().isAlphaPremultiplied(), null);
+            writeImage(transcoder, bi, output);
+            return;
+        }
+        encode(transcoder, img, output);
+    }
+
+    private void encode(PNGTranscoder transcoder, RenderedImage img,
+            TranscoderOutput output) throws TranscoderException {
+        TranscodingHints hints = transcoder.getTranscodingHints();
+
         PNGEncodeParam params = PNGEncodeParam.getDefaultEncodeParam(img);
         if (params instanceof PNGEncodeParam.RGB) {
             ((PNGEncodeParam.RGB)params).setBackgroundRGB
@@ -78,6 +108,23 @@ public class PNGTranscoderInternalCodecWriteAdapter implements
         }
 
 
+        if (hints.containsKey(PNGTranscoder.KEY_COMPRESSION_LEVEL)) {
+            params.setCompressionLevel
+                ((Integer) hints.get(PNGTranscoder.KEY_COMPRESSION_LEVEL));
+        }
+        if (hints.containsKey(PNGTranscoder.KEY_COMPRESSION_STRATEGY)) {
+            params.setCompressionStrategy
+                ((Integer) hints.get(PNGTranscoder.KEY_COMPRESSION_STRATEGY));
+        }
+        if (hints.containsKey(PNGTranscoder.KEY_COMPRESSION_THREADS)) {
+            int threads =
+                (Integer) hints.get(PNGTranscoder.KEY_COMPRESSION_THREADS);
+            if (threads <= 0) {
+                threads = Runtime.getRuntime().availableProcessors();
+            }
+            params.setCompressionThreads(threads);
+        }
+
         float PixSzMM = transcoder.getUserAgent().getPixelUnitToMillimeter();
         // num Pixs in 1 Meter
         int numPix      = (int)((1000/PixSzMM)+0.5);
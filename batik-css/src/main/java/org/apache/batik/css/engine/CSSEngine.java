@@ -27,6 +27,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
+import org.apache.batik.constants.XMLConstants;
 import org.apache.batik.css.engine.sac.CSSConditionFactory;
 import org.apache.batik.css.engine.sac.CSSSelectorFactory;
 import org.apache.batik.css.engine.sac.ExtendedSelector;
@@ -343,6 +344,47 @@ public abstract class CSSEngine {
      */
     protected CSSConditionFactory cssConditionFactory;
 
+    /**
+     * Whether the matching rules are looked up in the rule index of
+     * the style sheets rather than by trying every selector.
+     */
+    protected boolean indexedMatching = true;
+
+    /**
+     * The element the ancestor filter was computed for, null if none.
+     */
+    protected Element ancestorFilterElement;
+
+    /**
+     * The Bloom filter of the ancestors of
+     * <code>ancestorFilterElement</code>.
+     */
+    protected long[] ancestorFilter = new long[RuleIndex.FILTER_BITS / 64];
+
+    /**
+     * Whether siblings with the same name and style related attributes
+     * share their style map.
+     */
+    protected boolean styleSharing = true;
+
+    /**
+     * The style maps the next elements may share.
+     */
+    protected StyleSharingCache styleSharingCache =
+        new StyleSharingCache(this);
+
+    /**
+     * The names of the attributes that may change the style of the
+     * elements, null if not computed yet.
+     */
+    protected Set styleAttributes;
+
+    /**
+     * The selector attributes <code>styleAttributes</code> was computed
+     * with.
+     */
+    protected Set styleAttributesSelectors;
+
     /**
      * Creates a new CSSEngine.
      * @param doc The associated document.
@@ -511,6 +553,7 @@ public abstract class CSSEngine {
     public void dispose() {
         setCSSEngineUserAgent(null);
         disposeStyleMaps(document.getDocumentElement());
+        styleSharingCache.clear();
         if (document instanceof EventTarget) {
             // Detach the mutation events listeners.
             removeEventListeners((EventTarget) document);
@@ -609,6 +652,7 @@ public abstract class CSSEngine {
      */
     public void setUserAgentStyleSheet(StyleSheet ss) {
         userAgentStyleSheet = ss;
+        styleAttributes = null;
     }
 
     /**
@@ -616,6 +660,31 @@ public abstract class CSSEngine {
      */
     public void setUserStyleSheet(StyleSheet ss) {
         userStyleSheet = ss;
+        styleAttributes = null;
+    }
+
+    /**
+     * Tells whether siblings with the same name and style related
+     * attributes share their style map.
+     */
+    public boolean isStyleSharing() {
+        return styleSharing;
+    }
+
+    /**
+     * Sets whether siblings with the same name and style related
+     * attributes share their style map.
+     */
+    public void setStyleSharing(boolean b) {
+        styleSharing = b;
+        styleSharingCache.clear();
+    }
+
+    /**
+     * Returns the cache of the style maps shared by siblings.
+     */
+    public StyleSharingCache getStyleSharingCache() {
+        return styleSharingCache;
     }
 
     /**
@@ -715,16 +784,19 @@ public abstract class CSSEngine {
         int props = getNumberOfProperties();
         final StyleMap result = new StyleMap(props);
 
+        // The ancestors may have changed since the last cascade.
+        ancestorFilterElement = null;
+
         // Apply the user-agent style-sheet to the result.
         if (userAgentStyleSheet != null) {
-            ArrayList rules = new ArrayList();
+            ArrayList rules = new MatchedRules();
             addMatchingRules(rules, userAgentStyleSheet, elt, pseudo);
             addRules(elt, pseudo, result, rules, StyleMap.USER_AGENT_ORIGIN);
         }
 
         // Apply the user properties style-sheet to the result.
         if (userStyleSheet != null) {
-            ArrayList rules = new ArrayList();
+            ArrayList rules = new MatchedRules();
             addMatchingRules(rules, userStyleSheet, elt, pseudo);
             addRules(elt, pseudo, result, rules, StyleMap.USER_ORIGIN);
         }
@@ -785,7 +857,7 @@ public abstract class CSSEngine {
             List snodes = eng.getStyleSheetNodes();
             int slen = snodes.size();
             if (slen > 0) {
-                ArrayList rules = new ArrayList();
+                ArrayList rules = new MatchedRules();
                 for (Object snode : snodes) {
                     CSSStyleSheetNode ssn = (CSSStyleSheetNode) snode;
                     StyleSheet ss = ssn.getCSSStyleSheet();
@@ -864,7 +936,21 @@ public abstract class CSSEngine {
                                   int propidx) {
         StyleMap sm = elt.getComputedStyleMap(pseudo);
         if (sm == null) {
-            sm = getCascadedStyleMap(elt, pseudo);
+            Node pn = null;
+            StyleMap psm = null;
+            if (styleSharing && pseudo == null) {
+                CSSStylableElement p = getParentCSSStylableElement(elt);
+                if (p != null && isStyleSharingCandidate(elt)) {
+                    pn = getCSSParentNode(elt);
+                    psm = p.getComputedStyleMap(null);
+                    sm = styleSharingCache.get(elt, pn, psm);
+                }
+            }
+            if (sm == null) {
+                sm = getCascadedStyleMap(elt, pseudo);
+                if (psm != null)
+                    styleSharingCache.put(elt, pn, psm, sm);
+            }
             elt.setComputedStyleMap(pseudo, sm);
         }
 
@@ -906,6 +992,134 @@ public abstract class CSSEngine {
         return result;
     }
 
+    /**
+     * Tells whether the style map of <code>elt</code> may be shared
+     * with its siblings.  It may not when the element has override
+     * styles or when some selectors depend on siblings or
+     * pseudo-classes.
+     */
+    protected boolean isStyleSharingCandidate(CSSStylableElement elt) {
+        if (cssContext.getCSSEngineForElement(elt) != this)
+            return false;
+        StyleDeclarationProvider p = elt.getOverrideStyleDeclarationProvider();
+        if (p != null) {
+            StyleDeclaration over = p.getStyleDeclaration();
+            if (over != null && over.size() > 0)
+                return false;
+        }
+
+        List snodes = getStyleSheetNodes();
+        if (hasStructuralSelectors(userAgentStyleSheet) ||
+            hasStructuralSelectors(userStyleSheet))
+            return false;
+        for (Object snode : snodes) {
+            StyleSheet ss = ((CSSStyleSheetNode)snode).getCSSStyleSheet();
+            if (hasStructuralSelectors(ss))
+                return false;
+        }
+
+        if (styleAttributes == null ||
+            styleAttributesSelectors != selectorAttributes) {
+            // The namespaces are ignored, which may prevent some
+            // sharing but keeps the test cheap.
+            Set attrs = new HashSet(selectorAttributes);
+            if (userAgentStyleSheet != null)
+                findSelectorAttributes(attrs, userAgentStyleSheet);
+            if (userStyleSheet != null)
+                findSelectorAttributes(attrs, userStyleSheet);
+            if (nonCSSPresentationalHints != null)
+                attrs.addAll(nonCSSPresentationalHints);
+            if (styleLocalName != null)
+                attrs.add(styleLocalName);
+            styleAttributes = attrs;
+            styleAttributesSelectors = selectorAttributes;
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether <code>elt</code> can use the style map of
+     * <code>candidate</code>, a sibling styled before it.  Both must
+     * have the same name, class and attributes that may change their
+     * style: the style and presentation attributes, the attributes
+     * used in the selectors and the attributes of the XML namespace.
+     */
+    protected boolean canShareStyleMap(CSSStylableElement candidate,
+                                       CSSStylableElement elt) {
+        if (!sameNamespace(candidate.getNamespaceURI(),
+                           elt.getNamespaceURI()) ||
+            !candidate.getLocalName().equals(elt.getLocalName()))
+            return false;
+
+        int count = 0;
+        NamedNodeMap attrs = elt.getAttributes();
+        int len = attrs.getLength();
+        for (int i = 0; i < len; i++) {
+            Node attr = attrs.item(i);
+            String ns = attr.getNamespaceURI();
+            String name = (ns == null) ? attr.getNodeName()
+                                       : attr.getLocalName();
+            if (isStyleAttribute(ns, name)) {
+                Attr other = candidate.getAttributeNodeNS(ns, name);
+                if (other == null ||
+                    !other.getValue().equals(attr.getNodeValue()))
+                    return false;
+                count++;
+            }
+        }
+        attrs = candidate.getAttributes();
+        len = attrs.getLength();
+        for (int i = 0; i < len; i++) {
+            Node attr = attrs.item(i);
+            String ns = attr.getNamespaceURI();
+            String name = (ns == null) ? attr.getNodeName()
+                                       : attr.getLocalName();
+            if (isStyleAttribute(ns, name))
+                count--;
+        }
+        if (count != 0)
+            return false;
+
+        String c1 = candidate.getCSSClass();
+        String c2 = elt.getCSSClass();
+        return (c1 == null) ? c2 == null : c1.equals(c2);
+    }
+
+    /**
+     * Tells whether the given attribute may change the style of the
+     * elements.
+     */
+    protected boolean isStyleAttribute(String ns, String name) {
+        return styleAttributes.contains(name) ||
+               XMLConstants.XML_NAMESPACE_URI.equals(ns);
+    }
+
+    private static boolean sameNamespace(String ns1, String ns2) {
+        return (ns1 == null) ? ns2 == null : ns1.equals(ns2);
+    }
+
+    /**
+     * Tells whether <code>ss</code> has selectors that depend on
+     * siblings or on pseudo-classes.
+     */
+    private static boolean hasStructuralSelectors(StyleSheet ss) {
+        return ss != null && ss.getRuleIndex().hasStructuralSelectors();
+    }
+
+    /**
+     * Makes sure the style map of <code>elt</code> is not shared with
+     * other elements before it gets modified.
+     * @return the style map of <code>elt</code>.
+     */
+    protected StyleMap unshareStyleMap(CSSStylableElement elt) {
+        StyleMap sm = elt.getComputedStyleMap(null);
+        if (sm != null && sm.isShared()) {
+            sm = new StyleMap(sm);
+            elt.setComputedStyleMap(null, sm);
+        }
+        return sm;
+    }
+
     /**
      * Returns the document CSSStyleSheetNodes in a list. This list is
      * updated as the document is modified.
@@ -1305,6 +1519,10 @@ public abstract class CSSEngine {
                                     StyleSheet ss,
                                     Element elt,
                                     String pseudo) {
+        if (indexedMatching) {
+            ss.getRuleIndex().addMatchingRules(this, rules, elt, pseudo);
+            return;
+        }
         int len = ss.getSize();
         for (int i = 0; i < len; i++) {
             Rule r = ss.getRule(i);
@@ -1332,6 +1550,56 @@ public abstract class CSSEngine {
         }
     }
 
+    /**
+     * Returns the Bloom filter of the ids, classes and names of the
+     * ancestors of the given element, see {@link RuleIndex}.  The
+     * filter is computed once per cascade.
+     */
+    protected long[] getAncestorFilter(Element elt) {
+        if (ancestorFilterElement != elt) {
+            RuleIndex.fillAncestorFilter(elt, ancestorFilter);
+            ancestorFilterElement = elt;
+        }
+        return ancestorFilter;
+    }
+
+    /**
+     * A list of matching style rules that also holds the specificity
+     * each rule matched with, so they need not be matched again to
+     * be sorted.
+     */
+    protected static class MatchedRules extends ArrayList {
+        protected int[] specificities = new int[8];
+        protected int count;
+
+        /**
+         * Adds a rule that matched with the given specificity.
+         */
+        public void add(StyleRule r, int specificity) {
+            if (count != size()) {
+                count = -1; // Rules were added without specificity.
+            } else {
+                if (count == specificities.length) {
+                    int[] t = new int[count * 2];
+                    System.arraycopy(specificities, 0, t, 0, count);
+                    specificities = t;
+                }
+                specificities[count++] = specificity;
+            }
+            add(r);
+        }
+
+        /**
+         * Raises the specificity of the last rule added, matched by
+         * several of its selectors.
+         */
+        public void raiseLastSpecificity(int specificity) {
+            if (count > 0 && count == size() &&
+                specificities[count - 1] < specificity)
+                specificities[count - 1] = specificity;
+        }
+    }
+
     /**
      * Adds the rules contained in the given list to a stylemap.
      */
@@ -1377,22 +1645,29 @@ public abstract class CSSEngine {
      */
     protected void sortRules(ArrayList rules, Element elt, String pseudo) {
         int len = rules.size();
-        int[] specificities = new int[len];
-        for (int i = 0; i < len; i++) {
-            StyleRule r = (StyleRule) rules.get(i);
-            SelectorList sl = r.getSelectorList();
-            int spec = 0;
-            int slen = sl.getLength();
-            for (int k = 0; k < slen; k++) {
-                ExtendedSelector s = (ExtendedSelector) sl.item(k);
-                if (s.match(elt, pseudo)) {
-                    int sp = s.getSpecificity();
-                    if (sp > spec) {
-                        spec = sp;
+        int[] specificities;
+        if (rules instanceof MatchedRules &&
+            ((MatchedRules)rules).count == len) {
+            // The specificities were recorded while matching.
+            specificities = ((MatchedRules)rules).specificities;
+        } else {
+            specificities = new int[len];
+            for (int i = 0; i < len; i++) {
+                StyleRule r = (StyleRule) rules.get(i);
+                SelectorList sl = r.getSelectorList();
+                int spec = 0;
+                int slen = sl.getLength();
+                for (int k = 0; k < slen; k++) {
+                    ExtendedSelector s = (ExtendedSelector) sl.item(k);
+                    if (s.match(elt, pseudo)) {
+                        int sp = s.getSpecificity();
+                        if (sp > spec) {
+                            spec = sp;
+                        }
                     }
                 }
+                specificities[i] = spec;
             }
-            specificities[i] = spec;
         }
         for (int i = 1; i < len; i++) {
             Object rule = rules.get(i);
@@ -2077,6 +2352,7 @@ public abstract class CSSEngine {
                          (lh && style.isLineHeightRelative(i)) ||
                          (cl && style.isColorRelative(i))) {
                     updated[i] = true;
+                    style = unshareStyleMap(elt);
                     clearComputedValue(style, i);
                     count++;
                 }
@@ -2315,6 +2591,7 @@ public abstract class CSSEngine {
                     || attrNS != null && attrNS.equals(styleNamespaceURI)) {
                 if (name.equals(styleLocalName)) {
                     // The style declaration attribute has been modified.
+                    style = unshareStyleMap(elt);
                     inlineStyleAttributeUpdated
                         (elt, style, attrChange, prevValue, newValue);
                     return;
@@ -2328,6 +2605,7 @@ public abstract class CSSEngine {
                     if (nonCSSPresentationalHints.contains(name)) {
                         // The 'name' attribute which represents a non CSS
                         // presentational hint has been modified.
+                        style = unshareStyleMap(elt);
                         nonCSSPresentationalHintUpdated
                             (elt, style, name, attrChange, newValue);
                         return;
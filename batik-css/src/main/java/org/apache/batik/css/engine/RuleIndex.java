@@ -0,0 +1,544 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.css.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.batik.css.engine.sac.AbstractCombinatorCondition;
+import org.apache.batik.css.engine.sac.AbstractDescendantSelector;
+import org.apache.batik.css.engine.sac.AbstractSiblingSelector;
+import org.apache.batik.css.engine.sac.CSSAndCondition;
+import org.apache.batik.css.engine.sac.CSSClassCondition;
+import org.apache.batik.css.engine.sac.CSSConditionalSelector;
+import org.apache.batik.css.engine.sac.CSSElementSelector;
+import org.apache.batik.css.engine.sac.CSSIdCondition;
+import org.apache.batik.css.engine.sac.CSSPseudoClassCondition;
+import org.apache.batik.css.engine.sac.ExtendedSelector;
+import org.w3c.css.sac.Condition;
+import org.w3c.css.sac.Selector;
+import org.w3c.css.sac.SelectorList;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * An index of the selectors of a style sheet, used to find the rules
+ * matching an element without trying every selector of the sheet.
+ *
+ * Each selector is put in a bucket keyed on its rightmost compound
+ * selector: its id if it has one, else one of its classes, else its
+ * element name.  Selectors with none of these go in the universal
+ * bucket.  Only the buckets for the id, classes and name of an
+ * element need to be tried against it.
+ *
+ * The ids, classes and names required on the ancestors of an element
+ * by descendant and child selectors are hashed when the index is
+ * built, so most of these selectors are rejected by looking them up
+ * in a Bloom filter of the ancestors of the element rather than by
+ * walking up the tree.
+ *
+ * Rules nested in media rules are indexed along with the media rules
+ * that enclose them, their media are checked at match time.  An index
+ * is built by {@link StyleSheet#getRuleIndex()} and dropped whenever
+ * the sheet or one of its nested sheets changes.
+ *
+ * @version $Id$
+ */
+public class RuleIndex {
+
+    /**
+     * The number of bits of an ancestor filter.
+     */
+    public static final int FILTER_BITS = 512;
+
+    protected static final int ID    = 1;
+    protected static final int CLASS = 2;
+    protected static final int TAG   = 3;
+
+    /**
+     * An indexed selector.
+     */
+    protected static class Entry {
+        protected int order;
+        protected StyleRule rule;
+        protected ExtendedSelector selector;
+        protected int specificity;
+        protected MediaRule[] media;
+        protected int[] ancestorHashes;
+    }
+
+    /**
+     * Sorts entries in style sheet order.
+     */
+    protected static final Comparator ORDER = new Comparator() {
+            public int compare(Object o1, Object o2) {
+                return ((Entry)o1).order - ((Entry)o2).order;
+            }
+        };
+
+    /**
+     * The modification count of the sheet when it was indexed.
+     */
+    protected final int modCount;
+
+    /**
+     * The buckets, from id, class or element name to Entry[].
+     */
+    protected final Map ids     = new HashMap();
+    protected final Map classes = new HashMap();
+    protected final Map tags    = new HashMap();
+    protected final Entry[] universal;
+
+    /**
+     * The number of indexed selectors.
+     */
+    protected int size;
+
+    /**
+     * Whether some selectors depend on the siblings of the elements or
+     * on pseudo-classes.
+     */
+    protected boolean structural;
+
+    /**
+     * Indexes the selectors of <code>ss</code> and of its nested sheets.
+     */
+    public RuleIndex(StyleSheet ss) {
+        modCount = ss.modCount;
+        List univ = new ArrayList();
+        addRules(ss, null, univ);
+        universal = (Entry[])univ.toArray(new Entry[univ.size()]);
+        toArrays(ids);
+        toArrays(classes);
+        toArrays(tags);
+    }
+
+    /**
+     * Returns the number of indexed selectors.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Tells whether some selectors depend on the siblings of the
+     * elements they match or on pseudo-classes, in which case elements
+     * with the same attributes and parent may still match different
+     * rules.
+     */
+    public boolean hasStructuralSelectors() {
+        return structural;
+    }
+
+    /**
+     * Indexes the rules of <code>ss</code>, nested in
+     * <code>media</code>.
+     */
+    protected void addRules(StyleSheet ss, MediaRule[] media, List univ) {
+        int len = ss.getSize();
+        for (int i = 0; i < len; i++) {
+            Rule r = ss.getRule(i);
+            switch (r.getType()) {
+            case StyleRule.TYPE:
+                StyleRule style = (StyleRule)r;
+                SelectorList sl = style.getSelectorList();
+                int slen = sl.getLength();
+                for (int j = 0; j < slen; j++) {
+                    Entry e = new Entry();
+                    e.order = size++;
+                    e.rule = style;
+                    e.selector = (ExtendedSelector)sl.item(j);
+                    e.specificity = e.selector.getSpecificity();
+                    e.media = media;
+                    if (isStructural(e.selector))
+                        structural = true;
+                    List hashes = new ArrayList();
+                    addAncestorHashes(e.selector, hashes);
+                    if (!hashes.isEmpty()) {
+                        e.ancestorHashes = new int[hashes.size()];
+                        for (int k = 0; k < e.ancestorHashes.length; k++)
+                            e.ancestorHashes[k] =
+                                ((Integer)hashes.get(k)).intValue();
+                    }
+                    addEntry(e, univ);
+                }
+                break;
+
+            case MediaRule.TYPE:
+            case ImportRule.TYPE:
+                MediaRule mr = (MediaRule)r;
+                MediaRule[] m;
+                if (media == null) {
+                    m = new MediaRule[] { mr };
+                } else {
+                    m = new MediaRule[media.length + 1];
+                    System.arraycopy(media, 0, m, 0, media.length);
+                    m[media.length] = mr;
+                }
+                addRules(mr, m, univ);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Puts <code>e</code> in the bucket of its rightmost compound
+     * selector.
+     */
+    protected void addEntry(Entry e, List univ) {
+        Selector s = getRightmost(e.selector);
+        String key;
+        if ((key = getKey(s, ID)) != null) {
+            addEntry(ids, key, e);
+        } else if ((key = getKey(s, CLASS)) != null) {
+            addEntry(classes, key, e);
+        } else if ((key = getKey(s, TAG)) != null) {
+            addEntry(tags, key, e);
+        } else {
+            univ.add(e);
+        }
+    }
+
+    protected static void addEntry(Map m, String key, Entry e) {
+        List l = (List)m.get(key);
+        if (l == null) {
+            l = new ArrayList(4);
+            m.put(key, l);
+        }
+        l.add(e);
+    }
+
+    /**
+     * Replaces the lists of entries of <code>m</code> by arrays.
+     */
+    protected static void toArrays(Map m) {
+        Iterator it = m.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry me = (Map.Entry)it.next();
+            List l = (List)me.getValue();
+            me.setValue(l.toArray(new Entry[l.size()]));
+        }
+    }
+
+    /**
+     * Adds the rules of the indexed sheet matching the given
+     * element/pseudo-element to <code>rules</code>, in style sheet
+     * order.  When <code>rules</code> is a
+     * <code>CSSEngine.MatchedRules</code>, the specificity each rule
+     * matched with is recorded along with it.
+     */
+    public void addMatchingRules(CSSEngine eng, List rules,
+                                 Element elt, String pseudo) {
+        List matched = new ArrayList();
+        match(universal, eng, elt, pseudo, matched);
+        if (!tags.isEmpty())
+            match((Entry[])tags.get(getTagName(elt)),
+                  eng, elt, pseudo, matched);
+        if (elt instanceof CSSStylableElement) {
+            CSSStylableElement se = (CSSStylableElement)elt;
+            if (!ids.isEmpty()) {
+                String id = se.getXMLId();
+                if (id != null && id.length() > 0)
+                    match((Entry[])ids.get(id), eng, elt, pseudo, matched);
+            }
+            if (!classes.isEmpty()) {
+                String[] cls = splitClasses(se.getCSSClass());
+                outer: for (int i = 0; i < cls.length; i++) {
+                    for (int j = 0; j < i; j++) {
+                        if (cls[j].equals(cls[i]))
+                            continue outer;
+                    }
+                    match((Entry[])classes.get(cls[i]),
+                          eng, elt, pseudo, matched);
+                }
+            }
+        }
+
+        int len = matched.size();
+        if (len == 0)
+            return;
+        if (len > 1)
+            Collections.sort(matched, ORDER);
+
+        CSSEngine.MatchedRules mr = null;
+        if (rules instanceof CSSEngine.MatchedRules)
+            mr = (CSSEngine.MatchedRules)rules;
+        StyleRule last = null;
+        for (int i = 0; i < len; i++) {
+            Entry e = (Entry)matched.get(i);
+            if (e.rule == last) {
+                // Another selector of the same rule.
+                if (mr != null)
+                    mr.raiseLastSpecificity(e.specificity);
+                continue;
+            }
+            last = e.rule;
+            if (mr != null)
+                mr.add(e.rule, e.specificity);
+            else
+                rules.add(e.rule);
+        }
+    }
+
+    /**
+     * Adds the entries of <code>es</code> matching the given
+     * element/pseudo-element to <code>matched</code>.
+     */
+    protected void match(Entry[] es, CSSEngine eng,
+                         Element elt, String pseudo, List matched) {
+        if (es == null)
+            return;
+        for (int i = 0; i < es.length; i++) {
+            Entry e = es[i];
+            if (e.media != null) {
+                boolean ok = true;
+                for (int j = 0; ok && j < e.media.length; j++)
+                    ok = eng.mediaMatch(e.media[j].getMediaList());
+                if (!ok)
+                    continue;
+            }
+            if (e.ancestorHashes != null) {
+                long[] f = eng.getAncestorFilter(elt);
+                boolean ok = true;
+                for (int j = 0; ok && j < e.ancestorHashes.length; j++)
+                    ok = mayContain(f, e.ancestorHashes[j]);
+                if (!ok)
+                    continue;
+            }
+            if (e.selector.match(elt, pseudo))
+                matched.add(e);
+        }
+    }
+
+    /**
+     * Returns the compound selector <code>s</code> ends with.
+     */
+    protected static Selector getRightmost(Selector s) {
+        if (s instanceof AbstractDescendantSelector)
+            return ((AbstractDescendantSelector)s).getSimpleSelector();
+        if (s instanceof AbstractSiblingSelector)
+            return ((AbstractSiblingSelector)s).getSiblingSelector();
+        return s;
+    }
+
+    /**
+     * Returns the id, a class or the element name, depending on
+     * <code>kind</code>, required by the compound selector
+     * <code>s</code>, or null if there is none.
+     */
+    protected static String getKey(Selector s, int kind) {
+        if (s instanceof CSSConditionalSelector) {
+            CSSConditionalSelector cs = (CSSConditionalSelector)s;
+            String ret = null;
+            if (kind != TAG)
+                ret = getKey(cs.getCondition(), kind);
+            if (ret == null)
+                ret = getKey(cs.getSimpleSelector(), kind);
+            return ret;
+        }
+        if ((kind == TAG) && (s instanceof CSSElementSelector))
+            return ((CSSElementSelector)s).getLocalName();
+        return null;
+    }
+
+    protected static String getKey(Condition c, int kind) {
+        if (c instanceof CSSAndCondition) {
+            CSSAndCondition ac = (CSSAndCondition)c;
+            String ret = getKey(ac.getFirstCondition(), kind);
+            if (ret == null)
+                ret = getKey(ac.getSecondCondition(), kind);
+            return ret;
+        }
+        if ((kind == ID) && (c instanceof CSSIdCondition))
+            return ((CSSIdCondition)c).getValue();
+        if ((kind == CLASS) && (c instanceof CSSClassCondition))
+            return ((CSSClassCondition)c).getValue();
+        return null;
+    }
+
+    /**
+     * Tells whether <code>s</code> depends on siblings or on
+     * pseudo-classes.
+     */
+    protected static boolean isStructural(Selector s) {
+        if (s instanceof AbstractSiblingSelector)
+            return true;
+        if (s instanceof AbstractDescendantSelector) {
+            AbstractDescendantSelector ds = (AbstractDescendantSelector)s;
+            return isStructural(ds.getAncestorSelector())
+                || isStructural(ds.getSimpleSelector());
+        }
+        if (s instanceof CSSConditionalSelector) {
+            CSSConditionalSelector cs = (CSSConditionalSelector)s;
+            return isStructural(cs.getSimpleSelector())
+                || isStructural(cs.getCondition());
+        }
+        return false;
+    }
+
+    protected static boolean isStructural(Condition c) {
+        if (c instanceof AbstractCombinatorCondition) {
+            AbstractCombinatorCondition cc = (AbstractCombinatorCondition)c;
+            return isStructural(cc.getFirstCondition())
+                || isStructural(cc.getSecondCondition());
+        }
+        return c instanceof CSSPseudoClassCondition;
+    }
+
+    /**
+     * Adds the hashes of the ids, classes and element names that
+     * <code>s</code> requires on the ancestors of the elements it
+     * matches.
+     */
+    protected static void addAncestorHashes(Selector s, List hashes) {
+        if (s instanceof AbstractDescendantSelector) {
+            Selector a = ((AbstractDescendantSelector)s).getAncestorSelector();
+            addHashes(getRightmost(a), hashes);
+            addAncestorHashes(a, hashes);
+        } else if (s instanceof AbstractSiblingSelector) {
+            // The ancestors of a sibling are the ancestors of the element.
+            addAncestorHashes(((AbstractSiblingSelector)s).getSelector(),
+                              hashes);
+        }
+    }
+
+    protected static void addHashes(Selector s, List hashes) {
+        if (s instanceof CSSConditionalSelector) {
+            CSSConditionalSelector cs = (CSSConditionalSelector)s;
+            addHashes(cs.getSimpleSelector(), hashes);
+            addHashes(cs.getCondition(), hashes);
+        } else if (s instanceof CSSElementSelector) {
+            String name = ((CSSElementSelector)s).getLocalName();
+            if (name != null)
+                hashes.add(Integer.valueOf(hash(TAG, name)));
+        }
+    }
+
+    protected static void addHashes(Condition c, List hashes) {
+        if (c instanceof CSSAndCondition) {
+            CSSAndCondition ac = (CSSAndCondition)c;
+            addHashes(ac.getFirstCondition(), hashes);
+            addHashes(ac.getSecondCondition(), hashes);
+        } else if (c instanceof CSSIdCondition) {
+            String id = ((CSSIdCondition)c).getValue();
+            hashes.add(Integer.valueOf(hash(ID, id)));
+        } else if (c instanceof CSSClassCondition) {
+            String cls = ((CSSClassCondition)c).getValue();
+            hashes.add(Integer.valueOf(hash(CLASS, cls)));
+        }
+    }
+
+    /**
+     * Fills <code>filter</code> with the ids, classes and element
+     * names of the ancestors of <code>elt</code>.
+     */
+    public static void fillAncestorFilter(Element elt, long[] filter) {
+        for (int i = 0; i < filter.length; i++)
+            filter[i] = 0;
+        for (Node n = elt.getParentNode(); n != null; n = n.getParentNode()) {
+            if (n.getNodeType() != Node.ELEMENT_NODE)
+                continue;
+            Element e = (Element)n;
+            add(filter, hash(TAG, getTagName(e)));
+            if (e instanceof CSSStylableElement) {
+                CSSStylableElement se = (CSSStylableElement)e;
+                String id = se.getXMLId();
+                if (id != null && id.length() > 0)
+                    add(filter, hash(ID, id));
+                String[] cls = splitClasses(se.getCSSClass());
+                for (int i = 0; i < cls.length; i++)
+                    add(filter, hash(CLASS, cls[i]));
+            }
+        }
+    }
+
+    protected static void add(long[] filter, int h) {
+        int a = h & (FILTER_BITS - 1);
+        int b = (h >>> 16) & (FILTER_BITS - 1);
+        filter[a >>> 6] |= 1L << a;
+        filter[b >>> 6] |= 1L << b;
+    }
+
+    protected static boolean mayContain(long[] filter, int h) {
+        int a = h & (FILTER_BITS - 1);
+        int b = (h >>> 16) & (FILTER_BITS - 1);
+        return ((filter[a >>> 6] & (1L << a)) != 0)
+            && ((filter[b >>> 6] & (1L << b)) != 0);
+    }
+
+    protected static int hash(int kind, String s) {
+        int h = s.hashCode() * 31 + kind;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Returns the name element selectors compare with the name of
+     * <code>e</code>.
+     */
+    protected static String getTagName(Element e) {
+        return (e.getPrefix() == null) ? e.getNodeName() : e.getLocalName();
+    }
+
+    protected static final String[] NO_CLASSES = new String[0];
+
+    /**
+     * Returns the classes in <code>cls</code>, separated by space
+     * characters as class conditions expect.
+     */
+    protected static String[] splitClasses(String cls) {
+        if (cls == null || cls.length() == 0)
+            return NO_CLASSES;
+        List l = null;
+        String first = null;
+        int len = cls.length();
+        int i = 0;
+        while (i < len) {
+            while (i < len && Character.isSpaceChar(cls.charAt(i)))
+                i++;
+            int start = i;
+            while (i < len && !Character.isSpaceChar(cls.charAt(i)))
+                i++;
+            if (i > start) {
+                String c = cls.substring(start, i);
+                if (first == null) {
+                    first = c;
+                } else {
+                    if (l == null) {
+                        l = new ArrayList();
+                        l.add(first);
+                    }
+                    l.add(c);
+                }
+            }
+        }
+        if (l != null)
+            return (String[])l.toArray(new String[l.size()]);
+        return (first == null) ? NO_CLASSES : new String[] { first };
+    }
+}
@@ -72,6 +72,12 @@ public class StyleMap {
      */
     protected boolean fixedCascadedValues;
 
+    /**
+     * Whether this map may be used by several elements, in which case
+     * it must be copied before being modified.
+     */
+    protected boolean shared;
+
     /**
      * Creates a new StyleMap.
      */
@@ -80,6 +86,30 @@ public class StyleMap {
         masks = new short[size];
     }
 
+    /**
+     * Creates a new, unshared, StyleMap holding the values of
+     * <code>sm</code>.
+     */
+    public StyleMap(StyleMap sm) {
+        values = (Value[])sm.values.clone();
+        masks = (short[])sm.masks.clone();
+        fixedCascadedValues = sm.fixedCascadedValues;
+    }
+
+    /**
+     * Tells whether this map may be used by several elements.
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Sets whether this map may be used by several elements.
+     */
+    public void setShared(boolean b) {
+        shared = b;
+    }
+
     /**
      * Whether this map has fixed cascaded value.
      */
@@ -0,0 +1,164 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.css.engine;
+
+import org.w3c.dom.Node;
+
+/**
+ * Remembers the style maps of the last few elements styled by a CSS
+ * engine, so that the following siblings with the same name and style
+ * related attributes can use the same style map instead of cascading
+ * and computing their own.  Large charts are typically made of
+ * thousands of such siblings.
+ *
+ * A style map put in the cache is marked as shared, the engine copies
+ * it before any change made to the style of one of its elements.  An
+ * entry is only used while its element still has the cached style map
+ * and its parent still has the style map it had when the entry was
+ * made.
+ *
+ * @version $Id$
+ */
+public class StyleSharingCache {
+
+    /**
+     * The default number of elements remembered.
+     */
+    public static final int DEFAULT_SIZE = 16;
+
+    /**
+     * A remembered element.
+     */
+    protected static class Entry {
+        protected CSSStylableElement element;
+        protected Node parent;
+        protected StyleMap parentStyleMap;
+        protected StyleMap styleMap;
+    }
+
+    /**
+     * The engine the style maps come from.
+     */
+    protected CSSEngine engine;
+
+    protected Entry[] entries;
+    protected int next;
+
+    protected long hits;
+    protected long misses;
+
+    /**
+     * Creates a cache remembering <code>DEFAULT_SIZE</code> elements
+     * styled by <code>engine</code>.
+     */
+    public StyleSharingCache(CSSEngine engine) {
+        this(engine, DEFAULT_SIZE);
+    }
+
+    /**
+     * Creates a cache remembering <code>size</code> elements styled by
+     * <code>engine</code>.
+     */
+    public StyleSharingCache(CSSEngine engine, int size) {
+        this.engine = engine;
+        entries = new Entry[size];
+    }
+
+    /**
+     * Returns a style map <code>elt</code> can share, or null.
+     * @param parent the parent of <code>elt</code>.
+     * @param parentStyleMap the current style map of the parent.
+     */
+    public StyleMap get(CSSStylableElement elt, Node parent,
+                        StyleMap parentStyleMap) {
+        for (int i = 0; i < entries.length; i++) {
+            Entry e = entries[i];
+            if (e != null &&
+                e.parent == parent &&
+                e.parentStyleMap == parentStyleMap &&
+                e.element != elt &&
+                e.element.getComputedStyleMap(null) == e.styleMap &&
+                engine.canShareStyleMap(e.element, elt)) {
+                hits++;
+                return e.styleMap;
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Remembers the style map of <code>elt</code>, which becomes
+     * shared.
+     */
+    public void put(CSSStylableElement elt, Node parent,
+                    StyleMap parentStyleMap, StyleMap sm) {
+        Entry e = entries[next];
+        if (e == null) {
+            e = new Entry();
+            entries[next] = e;
+        }
+        next = (next + 1) % entries.length;
+        e.element = elt;
+        e.parent = parent;
+        e.parentStyleMap = parentStyleMap;
+        e.styleMap = sm;
+        sm.setShared(true);
+    }
+
+    /**
+     * Forgets all the elements.
+     */
+    public void clear() {
+        for (int i = 0; i < entries.length; i++)
+            entries[i] = null;
+        next = 0;
+    }
+
+    /**
+     * Returns the number of elements that got a shared style map.
+     */
+    public long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of elements that had to be styled.
+     */
+    public long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Returns the fraction of the elements that got a shared style map.
+     */
+    public double getHitRatio() {
+        long n = hits + misses;
+        if (n == 0) return 0;
+        return hits / (double)n;
+    }
+
+    /**
+     * Resets the statistics of the cache.
+     */
+    public void resetStatistics() {
+        hits = 0;
+        misses = 0;
+    }
+}
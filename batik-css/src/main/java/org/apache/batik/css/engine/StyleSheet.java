@@ -58,6 +58,17 @@ public class StyleSheet {
      */
     protected String title;
 
+    /**
+     * Incremented each time the rules of this sheet or of one of its
+     * nested sheets change.
+     */
+    protected int modCount;
+
+    /**
+     * The index of the rules, null until needed.
+     */
+    protected volatile RuleIndex ruleIndex;
+
     /**
      * Sets the media to use to compute the styles.
      */
@@ -134,6 +145,7 @@ public class StyleSheet {
     public void clear() {
         size = 0;
         rules = new Rule[10];
+        modified();
     }
 
     /**
@@ -146,6 +158,31 @@ public class StyleSheet {
             rules = t;
         }
         rules[size++] = r;
+        modified();
+    }
+
+    /**
+     * Returns the index of the rules of this sheet and of its nested
+     * sheets, building it if needed.
+     */
+    public RuleIndex getRuleIndex() {
+        RuleIndex ri = ruleIndex;
+        if (ri == null || ri.modCount != modCount) {
+            ri = new RuleIndex(this);
+            ruleIndex = ri;
+        }
+        return ri;
+    }
+
+    /**
+     * Called when the rules of this sheet change.
+     */
+    protected void modified() {
+        modCount++;
+        ruleIndex = null;
+        if (parent != null) {
+            parent.modified();
+        }
     }
 
     /**
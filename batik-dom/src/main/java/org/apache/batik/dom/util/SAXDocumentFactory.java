@@ -160,6 +160,12 @@ public class SAXDocumentFactory
      */
     protected ErrorHandler errorHandler;
 
+    /**
+     * The pool the parsers are taken from, null to create a new parser
+     * for each document.
+     */
+    protected XMLReaderPool readerPool;
+
     protected interface PreInfo {
         Node createNode(Document doc);
     }
@@ -419,6 +425,8 @@ public class SAXDocumentFactory
      */
     protected Document createDocument(InputSource is)
         throws IOException {
+        if (readerPool != null)
+            return createPooledDocument(is);
         try {
             if (parserClassName != null) {
                 parser = XMLReaderFactory.createXMLReader(parserClassName);
@@ -468,6 +476,67 @@ public class SAXDocumentFactory
         return ret;
     }
 
+    /**
+     * Creates a Document with a parser of the pool.
+     * @param is  The document input source.
+     * @exception IOException if an error occured while reading the document.
+     */
+    protected Document createPooledDocument(InputSource is)
+        throws IOException {
+        XMLReaderPool pool = readerPool;
+        try {
+            parser = pool.getXMLReader();
+        } catch (SAXException e) {
+            throw new SAXIOException(e);
+        }
+        try {
+            parser.setContentHandler(this);
+            parser.setDTDHandler(this);
+            parser.setEntityResolver(this);
+            parser.setErrorHandler((errorHandler == null) ?
+                                   this : errorHandler);
+            parser.setFeature("http://xml.org/sax/features/validation",
+                              isValidating);
+            parser.setProperty("http://xml.org/sax/properties/lexical-handler",
+                               this);
+            parser.parse(is);
+        } catch (SAXException e) {
+            Exception ex = e.getException();
+            if (ex != null && ex instanceof InterruptedIOException) {
+                throw (InterruptedIOException)ex;
+            }
+            throw new SAXIOException(e);
+        } finally {
+            pool.releaseXMLReader(parser);
+            parser = null;
+        }
+
+        currentNode  = null;
+        Document ret = document;
+        document     = null;
+        doctype      = null;
+        locator      = null;
+        return ret;
+    }
+
+    /**
+     * Returns the pool the parsers are taken from, or null if a new
+     * parser is created for each document.
+     */
+    public XMLReaderPool getXMLReaderPool() {
+        return readerPool;
+    }
+
+    /**
+     * Sets the pool the parsers are taken from.  The parsers of the
+     * pool are used instead of the parser class given to the
+     * constructor.  Null, the default, creates a new parser for each
+     * document.
+     */
+    public void setXMLReaderPool(XMLReaderPool pool) {
+        readerPool = pool;
+    }
+
     /**
      * Returns the document descriptor associated with the latest created
      * document.
@@ -0,0 +1,205 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.dom.util;
+
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
+
+/**
+ * A pool of configured SAX2 parsers, so that a factory parsing many
+ * documents does not create and set up a new parser for each of them.
+ *
+ * The parsers are confined to the thread that created them: each
+ * thread has its own idle parsers and a parser is only handed out again
+ * to the thread that released it.  A pool may therefore be shared by
+ * several document factories used from different threads.
+ *
+ * The parsers always have the external entities and the external DTD
+ * loading disabled.  A parser released with one of these features
+ * turned back on is dropped instead of being reused.
+ *
+ * @version $Id$
+ */
+public class XMLReaderPool {
+
+    /**
+     * The default number of idle parsers kept by each thread.
+     */
+    public static final int DEFAULT_MAX_IDLE = 2;
+
+    /**
+     * The features that must be off on every parser of the pool.
+     */
+    protected static final String[] DISABLED_FEATURES = {
+        "http://xml.org/sax/features/external-general-entities",
+        "http://xml.org/sax/features/external-parameter-entities",
+        "http://apache.org/xml/features/nonvalidating/load-external-dtd"
+    };
+
+    /**
+     * The handler set on the idle parsers, so they do not keep the last
+     * document they parsed alive.
+     */
+    protected static final DefaultHandler2 IDLE_HANDLER =
+        new DefaultHandler2();
+
+    /**
+     * The SAX2 parser class name or null to use the JAXP default parser.
+     */
+    protected String parserClassName;
+
+    /**
+     * The maximum number of idle parsers per thread.
+     */
+    protected int maxIdle;
+
+    /**
+     * The idle parsers of each thread.
+     */
+    protected ThreadLocal idle = new ThreadLocal() {
+            protected Object initialValue() {
+                return new LinkedList();
+            }
+        };
+
+    protected final AtomicLong created = new AtomicLong();
+    protected final AtomicLong reused  = new AtomicLong();
+
+    /**
+     * Creates a pool of parsers of class <code>parserClassName</code>
+     * keeping <code>DEFAULT_MAX_IDLE</code> idle parsers per thread.
+     * @param parserClassName The SAX2 parser class name, null for the
+     *        JAXP default parser.
+     */
+    public XMLReaderPool(String parserClassName) {
+        this(parserClassName, DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * Creates a pool of parsers of class <code>parserClassName</code>
+     * keeping <code>maxIdle</code> idle parsers per thread.
+     */
+    public XMLReaderPool(String parserClassName, int maxIdle) {
+        this.parserClassName = parserClassName;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Returns the class name of the parsers, null for the JAXP default
+     * parser.
+     */
+    public String getParserClassName() {
+        return parserClassName;
+    }
+
+    /**
+     * Returns a parser for the calling thread, reusing an idle one if
+     * possible.  The parser reports namespaces and namespace prefixes,
+     * and must be handed back with {@link #releaseXMLReader(XMLReader)}
+     * by the same thread.
+     */
+    public XMLReader getXMLReader() throws SAXException {
+        LinkedList l = (LinkedList)idle.get();
+        if (!l.isEmpty()) {
+            reused.incrementAndGet();
+            return (XMLReader)l.removeLast();
+        }
+        XMLReader r = createXMLReader();
+        created.incrementAndGet();
+        return r;
+    }
+
+    /**
+     * Hands back a parser obtained from {@link #getXMLReader()}.  The
+     * caller must not use it afterwards.
+     */
+    public void releaseXMLReader(XMLReader r) {
+        try {
+            for (int i = 0; i < DISABLED_FEATURES.length; i++) {
+                if (r.getFeature(DISABLED_FEATURES[i]))
+                    return;
+            }
+            r.setContentHandler(IDLE_HANDLER);
+            r.setDTDHandler(IDLE_HANDLER);
+            r.setEntityResolver(IDLE_HANDLER);
+            r.setErrorHandler(IDLE_HANDLER);
+            r.setProperty("http://xml.org/sax/properties/lexical-handler",
+                          IDLE_HANDLER);
+        } catch (SAXException e) {
+            // Not a parser to reuse.
+            return;
+        }
+        LinkedList l = (LinkedList)idle.get();
+        if (l.size() < maxIdle)
+            l.addLast(r);
+    }
+
+    /**
+     * Drops the idle parsers of the calling thread.
+     */
+    public void clear() {
+        idle.remove();
+    }
+
+    /**
+     * Returns the number of parsers created by the pool.
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * Returns the number of times an idle parser was reused.
+     */
+    public long getReuseCount() {
+        return reused.get();
+    }
+
+    /**
+     * Creates and sets up a new parser.
+     */
+    @SuppressWarnings("deprecation")
+    protected XMLReader createXMLReader() throws SAXException {
+        XMLReader r;
+        if (parserClassName != null) {
+            // XMLReaderFactory is deprecated, but JAXP has no other way
+            // to create a SAX2 parser of a given class.
+            r = org.xml.sax.helpers.XMLReaderFactory.createXMLReader
+                (parserClassName);
+        } else {
+            try {
+                r = SAXDocumentFactory.saxFactory.newSAXParser()
+                    .getXMLReader();
+            } catch (ParserConfigurationException pce) {
+                throw new SAXException(pce);
+            }
+        }
+        r.setFeature("http://xml.org/sax/features/namespaces", true);
+        r.setFeature("http://xml.org/sax/features/namespace-prefixes", true);
+        for (int i = 0; i < DISABLED_FEATURES.length; i++)
+            r.setFeature(DISABLED_FEATURES[i], false);
+        return r;
+    }
+}
@@ -201,7 +201,7 @@ public abstract class AbstractGraphicsNode implements GraphicsNode {
             inverseTransform = transform;
         }
         if (parent != null)
-            parent.invalidateGeometryCache();
+            parent.invalidateChildGeometryCache(this);
         fireGraphicsNodeChangeCompleted();
     }
 
@@ -443,6 +443,13 @@ public abstract class AbstractGraphicsNode implements GraphicsNode {
         Rectangle2D bounds = getBounds();
         if (bounds == null) return;
 
+        // Paint from a layer rasterized in an earlier frame if any.
+        Object layers =
+            g2d.getRenderingHint(RenderingHintsKeyExt.KEY_LAYER_CACHE);
+        if ((layers instanceof GraphicsNodeLayerCache) &&
+            ((GraphicsNodeLayerCache)layers).paint(this, g2d))
+            return;
+
         // Set up graphic context. It is important to setup the
         // transform first, because the clip is defined in this node's
         // user space.
@@ -748,7 +755,7 @@ public abstract class AbstractGraphicsNode implements GraphicsNode {
         //if (bounds == null) return;
 
         if (parent != null) {
-            parent.invalidateGeometryCache();
+            parent.invalidateChildGeometryCache(this);
         }
         bounds = null;
     }
@@ -90,6 +90,17 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
      */
     private Shape outline;
 
+    /**
+     * The number of children from which the children are painted
+     * and picked through a spatial index.
+     */
+    protected static int spatialIndexThreshold = 1000;
+
+    /**
+     * Internal Cache: the spatial index of the children.
+     */
+    private volatile GraphicsNodeRTree spatialIndex;
+
     /**
      * Constructs a new empty <code>CompositeGraphicsNode</code>.
      */
@@ -106,6 +117,24 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
         return this;
     }
 
+    /**
+     * Returns the number of children from which a composite graphics
+     * node uses a spatial index of its children to paint the ones in
+     * the clip and to find the one hit by a point.
+     */
+    public static int getSpatialIndexThreshold() {
+        return spatialIndexThreshold;
+    }
+
+    /**
+     * Sets the number of children from which a composite graphics
+     * node uses a spatial index of its children.
+     * <code>Integer.MAX_VALUE</code> disables the index.
+     */
+    public static void setSpatialIndexThreshold(int threshold) {
+        spatialIndexThreshold = threshold;
+    }
+
     /**
      * Sets the enable background property to the specified rectangle.
      *
@@ -153,11 +182,23 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
         // Thread.currentThread() is potentially expensive, so reuse my instance in hasBeenHalted()
         Thread currentThread = Thread.currentThread();
 
+        // Only paint the children in the clip if they are indexed.
+        int[] visible = null;
+        GraphicsNodeRTree index = getSpatialIndex();
+        if (index != null) {
+            Shape clip = g2d.getClip();
+            if (clip != null) {
+                visible = index.query(clip.getBounds2D());
+            }
+        }
+
         // Paint children
-        for (int i=0; i < count; ++i) {
+        int n = (visible == null) ? count : visible.length;
+        for (int k=0; k < n; ++k) {
             if (HaltingThread.hasBeenHalted( currentThread ))
                 return;
 
+            int i = (visible == null) ? k : visible[k];
             GraphicsNode node = children[i];
             if (node == null) {
                 continue;
@@ -189,6 +230,42 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
         outline = null;
     }
 
+    /**
+     * Invalidates the cached geometric bounds after the bounds of the
+     * given child changed.
+     *
+     * @param child the child whose bounds changed
+     */
+    protected void invalidateChildGeometryCache(GraphicsNode child) {
+        GraphicsNodeRTree index = spatialIndex;
+        if (index != null) {
+            index.invalidate(child);
+        }
+        invalidateGeometryCache();
+    }
+
+    /**
+     * Returns the spatial index of the children, or null if there are
+     * too few children to use one.  The index is built again when the
+     * children list changed since it was built.
+     */
+    protected GraphicsNodeRTree getSpatialIndex() {
+        if (count < spatialIndexThreshold) {
+            spatialIndex = null;
+            return null;
+        }
+        GraphicsNodeRTree index = spatialIndex;
+        if (index != null &&
+            (index.getModCount() != modCount || !index.update())) {
+            index = null;
+        }
+        if (index == null) {
+            index = new GraphicsNodeRTree(children, count, modCount);
+            spatialIndex = index;
+        }
+        return index;
+    }
+
     /**
      * Returns the bounds of the area covered by this node's primitive paint.
      */
@@ -460,9 +537,12 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
     public boolean contains(Point2D p) {
         Rectangle2D bounds = getSensitiveBounds();
         if (count > 0 && bounds != null && bounds.contains(p)) {
+            int[] hit = getChildrenAt(p);
+            int n = (hit == null) ? count : hit.length;
             Point2D pt = null;
             Point2D cp = null; // Propagated to children
-            for (int i=0; i < count; ++i) {
+            for (int k=0; k < n; ++k) {
+                int i = (hit == null) ? k : hit[k];
                 AffineTransform t = children[i].getInverseTransform();
                 if(t != null){
                     pt = t.transform(p, pt);
@@ -490,9 +570,12 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
         Rectangle2D bounds = getSensitiveBounds();
         if (count > 0 && bounds != null && bounds.contains(p)) {
             // Go backward because the children are in rendering order
+            int[] hit = getChildrenAt(p);
+            int n = (hit == null) ? count : hit.length;
             Point2D pt = null;
             Point2D cp = null; // Propagated to children
-            for (int i=count-1; i >= 0; --i) {
+            for (int k=n-1; k >= 0; --k) {
+                int i = (hit == null) ? k : hit[k];
                 AffineTransform t = children[i].getInverseTransform();
                 if(t != null){
                     pt = t.transform(p, pt);
@@ -510,6 +593,18 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
         return null;
     }
 
+    /**
+     * Returns, in rendering order, the indices of the children that
+     * may contain the given point, or null if they are not indexed.
+     */
+    private int[] getChildrenAt(Point2D p) {
+        GraphicsNodeRTree index = getSpatialIndex();
+        if (index == null) {
+            return null;
+        }
+        return index.query(p.getX(), p.getY(), p.getX(), p.getY());
+    }
+
     /**
      * Returns the outline of this node.
      */
@@ -655,6 +750,7 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
         // Replace the node to the children list
         GraphicsNode oldNode = children[index];
         children[index] = node;
+        spatialIndex = null;
         // Set the parents of the graphics nodes
         ((AbstractGraphicsNode) node).setParent(this);
         ((AbstractGraphicsNode) oldNode).setParent(null);
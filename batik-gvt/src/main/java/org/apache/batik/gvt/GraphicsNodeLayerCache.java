@@ -0,0 +1,527 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.lang.ref.Reference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.util.HaltingThread;
+
+/**
+ * Keeps rasterized copies, or layers, of the graphics nodes that did
+ * not change for a few frames, so that repainting an area they cover
+ * draws the layer instead of painting the node and its descendants
+ * again.
+ *
+ * A renderer hands the cache to the nodes it paints through the
+ * {@link RenderingHintsKeyExt#KEY_LAYER_CACHE} rendering hint, calls
+ * {@link #nextFrame()} before each frame and has an
+ * {@link UpdateTracker} report the changed nodes through
+ * {@link #invalidate(GraphicsNode)}.
+ *
+ * Groups, and other nodes with a filter, are cached once they did not
+ * change for {@link #getMinimumFrames()} frames and their last paint
+ * took at least {@link #getMinimumPaintTime()} nanoseconds.  A layer
+ * is rasterized at the device transform of the frame; it is reused as
+ * long as the transform only moves by whole pixels.  Layers are evicted
+ * in least recently used order to stay within the memory budget.
+ *
+ * The nodes are painted without holding the lock of the cache, so a
+ * node may use the cache from other threads while it paints.
+ *
+ * @version $Id$
+ */
+public class GraphicsNodeLayerCache {
+
+    /**
+     * The default memory budget, in bytes.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 32L * 1024 * 1024;
+
+    /**
+     * The maximum number of nodes whose paint times are tracked.
+     */
+    protected static final int MAX_ENTRIES = 8192;
+
+    /**
+     * The tolerance on the transform components when matching a
+     * layer with a frame.
+     */
+    protected static final double EPSILON = 1e-6;
+
+    /**
+     * What the cache knows of a node.
+     */
+    protected static class NodeEntry {
+
+        /**
+         * The weak reference of the node.
+         */
+        protected Reference node;
+
+        /**
+         * The frame of the last change of the node.
+         */
+        protected long changed;
+
+        /**
+         * Incremented each time the node changes, to notice a change
+         * made while the node was painted.
+         */
+        protected int stamp;
+
+        /**
+         * The time taken by the last paint of the node, in nanoseconds.
+         */
+        protected long paintTime;
+
+        /**
+         * Whether the node is being painted by this cache.
+         */
+        protected boolean painting;
+
+        /**
+         * The layer and the device area it covers, or null.
+         */
+        protected BufferedImage image;
+        protected int x;
+        protected int y;
+
+        /**
+         * The transform the layer was rasterized with.
+         */
+        protected double m00, m10, m01, m11, m02, m12;
+
+        /**
+         * The size of the layer in bytes.
+         */
+        protected long size;
+    }
+
+    /**
+     * The tracked nodes, by weak reference, in access order.
+     */
+    protected Map entries = new LinkedHashMap(64, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                if (size() <= MAX_ENTRIES) {
+                    return false;
+                }
+                dropLayer((NodeEntry)eldest.getValue());
+                return true;
+            }
+        };
+
+    /**
+     * The entries with a layer, in access order.
+     */
+    protected Map layers = new LinkedHashMap(16, 0.75f, true);
+
+    protected long frame;
+    protected int minimumFrames = 3;
+    protected long minimumPaintTime = 200000;
+    protected long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    protected long memoryUsed;
+
+    protected long hits;
+    protected long misses;
+    protected long rasterizations;
+    protected long invalidations;
+    protected long evictions;
+
+    /**
+     * Returns the number of frames a node must stay unchanged before
+     * it gets a layer.
+     */
+    public synchronized int getMinimumFrames() {
+        return minimumFrames;
+    }
+
+    /**
+     * Sets the number of frames a node must stay unchanged before it
+     * gets a layer.
+     */
+    public synchronized void setMinimumFrames(int frames) {
+        minimumFrames = frames;
+    }
+
+    /**
+     * Returns the time, in nanoseconds, the last paint of a node must
+     * have taken for it to get a layer.
+     */
+    public synchronized long getMinimumPaintTime() {
+        return minimumPaintTime;
+    }
+
+    /**
+     * Sets the time, in nanoseconds, the last paint of a node must
+     * have taken for it to get a layer.
+     */
+    public synchronized void setMinimumPaintTime(long nanos) {
+        minimumPaintTime = nanos;
+    }
+
+    /**
+     * Returns the maximum number of bytes taken by the layers.
+     */
+    public synchronized long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Sets the maximum number of bytes taken by the layers.
+     */
+    public synchronized void setMemoryBudget(long bytes) {
+        memoryBudget = bytes;
+        evict(0);
+    }
+
+    /**
+     * Returns the number of bytes taken by the layers.
+     */
+    public synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * Returns the number of layers.
+     */
+    public synchronized int getLayerCount() {
+        return layers.size();
+    }
+
+    /**
+     * Returns the number of times a node was painted from its layer.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of times a node that may be cached was
+     * painted without a layer.
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Returns the ratio of the hits to the hits and misses.
+     */
+    public synchronized double getHitRate() {
+        long n = hits + misses;
+        return (n == 0) ? 0 : (double)hits / n;
+    }
+
+    /**
+     * Returns the number of layers rasterized.
+     */
+    public synchronized long getRasterizationCount() {
+        return rasterizations;
+    }
+
+    /**
+     * Returns the number of layers dropped because their node changed.
+     */
+    public synchronized long getInvalidationCount() {
+        return invalidations;
+    }
+
+    /**
+     * Returns the number of layers dropped to stay within the memory
+     * budget.
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Starts a new frame.
+     */
+    public synchronized void nextFrame() {
+        frame++;
+    }
+
+    /**
+     * Records that the given node changed, which also changes the
+     * rendering of its ancestors.
+     */
+    public synchronized void invalidate(GraphicsNode node) {
+        for (GraphicsNode n = node; n != null; n = n.getParent()) {
+            NodeEntry e = (NodeEntry)entries.get(n.getWeakReference());
+            if (e != null) {
+                e.changed = frame;
+                e.stamp++;
+                if (e.image != null) {
+                    invalidations++;
+                    dropLayer(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all the layers and statistics.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        layers.clear();
+        memoryUsed = 0;
+        hits = 0;
+        misses = 0;
+        rasterizations = 0;
+        invalidations = 0;
+        evictions = 0;
+    }
+
+    /**
+     * Paints the given node, from its layer if it has one or if it is
+     * worth creating it.
+     * @return false if the node must be painted by the caller.
+     */
+    public boolean paint(GraphicsNode node, Graphics2D g2d) {
+        if ((node instanceof ShapeNode) && node.getFilter() == null) {
+            // Single shapes are rarely worth a layer.
+            return false;
+        }
+        AffineTransform at = g2d.getTransform();
+        BufferedImage dest = getDestination(g2d);
+        NodeEntry e;
+        int stamp;
+        boolean cache;
+        synchronized (this) {
+            Reference ref = node.getWeakReference();
+            e = (NodeEntry)entries.get(ref);
+            if (e == null) {
+                e = new NodeEntry();
+                e.node = ref;
+                e.changed = frame;
+                entries.put(ref, e);
+            } else if (e.painting) {
+                return false;
+            }
+            if (dest == null ||
+                !AlphaComposite.SrcOver.equals(g2d.getComposite()) ||
+                !isSrcOver(node.getComposite()) ||
+                g2d.getRenderingHint(RenderingHintsKeyExt.KEY_COLORSPACE) != null) {
+                return false;
+            }
+
+            if (e.image != null && drawLayer(e, at, g2d)) {
+                hits++;
+                layers.get(e);
+                return true;
+            }
+            misses++;
+            if (e.image != null) {
+                // Rasterized with another transform.
+                dropLayer(e);
+            }
+            cache = frame - e.changed >= minimumFrames &&
+                e.paintTime >= minimumPaintTime;
+            stamp = e.stamp;
+            e.painting = true;
+        }
+
+        // The lock is not held while the node paints, which may take
+        // long and reach this cache again for its descendants.
+        try {
+            if (cache &&
+                rasterize(e, stamp, node, at, dest.getColorModel(), g2d)) {
+                return true;
+            }
+            if (HaltingThread.hasBeenHalted()) {
+                return true;
+            }
+
+            long t0 = System.nanoTime();
+            node.paint(g2d);
+            long t = System.nanoTime() - t0;
+            synchronized (this) {
+                e.paintTime = t;
+            }
+        } finally {
+            synchronized (this) {
+                e.painting = false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rasterizes the layer of a node and draws it.  Must be called
+     * without holding the lock of the cache.
+     * @param stamp the stamp of the entry before the node was painted.
+     * @return false if the layer is too large, or the node changed or
+     *         was dropped from the cache while it was rasterized.
+     */
+    protected boolean rasterize(NodeEntry e, int stamp, GraphicsNode node,
+                                AffineTransform at, ColorModel cm,
+                                Graphics2D g2d) {
+        Rectangle2D b = node.getTransformedBounds(at);
+        if (b == null) {
+            return false;
+        }
+        // Outset by a pixel for the anti-aliasing.
+        int x0 = (int)Math.floor(b.getMinX()) - 1;
+        int y0 = (int)Math.floor(b.getMinY()) - 1;
+        int x1 = (int)Math.ceil(b.getMaxX()) + 1;
+        int y1 = (int)Math.ceil(b.getMaxY()) + 1;
+        long size = (long)(x1 - x0) * (y1 - y0) * 4;
+        synchronized (this) {
+            if (size > memoryBudget / 4) {
+                return false;
+            }
+            evict(size);
+        }
+
+        BufferedImage bi = new BufferedImage
+            (cm, cm.createCompatibleWritableRaster(x1 - x0, y1 - y0),
+             cm.isAlphaPremultiplied(), null);
+        RenderingHints rh = g2d.getRenderingHints();
+        rh.remove(RenderingHintsKeyExt.KEY_LAYER_CACHE);
+        rh.remove(RenderingHintsKeyExt.KEY_AREA_OF_INTEREST);
+        Graphics2D g = GraphicsUtil.createGraphics(bi, rh);
+        g.translate(-x0, -y0);
+        g.transform(at);
+        long t0 = System.nanoTime();
+        try {
+            node.paint(g);
+        } finally {
+            g.dispose();
+        }
+        long t = System.nanoTime() - t0;
+
+        synchronized (this) {
+            e.paintTime = t;
+            if (HaltingThread.hasBeenHalted()) {
+                // The layer may be incomplete.
+                return false;
+            }
+            if (e.stamp != stamp || entries.get(e.node) != e) {
+                return false;
+            }
+
+            e.image = bi;
+            e.x = x0;
+            e.y = y0;
+            e.m00 = at.getScaleX();
+            e.m10 = at.getShearY();
+            e.m01 = at.getShearX();
+            e.m11 = at.getScaleY();
+            e.m02 = at.getTranslateX();
+            e.m12 = at.getTranslateY();
+            e.size = size;
+            memoryUsed += size;
+            layers.put(e, e);
+            rasterizations++;
+            return drawLayer(e, at, g2d);
+        }
+    }
+
+    /**
+     * Draws the layer of a node if it was rasterized with the given
+     * transform, up to a translation by whole pixels.
+     */
+    protected boolean drawLayer(NodeEntry e, AffineTransform at, Graphics2D g2d) {
+        double dx = at.getTranslateX() - e.m02;
+        double dy = at.getTranslateY() - e.m12;
+        long ix = Math.round(dx);
+        long iy = Math.round(dy);
+        if (Math.abs(dx - ix) > EPSILON || Math.abs(dy - iy) > EPSILON ||
+            Math.abs(at.getScaleX() - e.m00) > EPSILON ||
+            Math.abs(at.getShearY() - e.m10) > EPSILON ||
+            Math.abs(at.getShearX() - e.m01) > EPSILON ||
+            Math.abs(at.getScaleY() - e.m11) > EPSILON) {
+            return false;
+        }
+        g2d.setTransform(new AffineTransform());
+        try {
+            g2d.drawImage(e.image, (int)(e.x + ix), (int)(e.y + iy), null);
+        } finally {
+            g2d.setTransform(at);
+        }
+        return true;
+    }
+
+    /**
+     * Evicts the least recently used layers until the given number of
+     * bytes fits in the memory budget.
+     */
+    protected void evict(long size) {
+        Iterator it = layers.keySet().iterator();
+        while (memoryUsed + size > memoryBudget && it.hasNext()) {
+            NodeEntry e = (NodeEntry)it.next();
+            it.remove();
+            memoryUsed -= e.size;
+            e.image = null;
+            e.size = 0;
+            evictions++;
+        }
+    }
+
+    /**
+     * Drops the layer of an entry.
+     */
+    protected void dropLayer(NodeEntry e) {
+        if (e.image != null) {
+            layers.remove(e);
+            memoryUsed -= e.size;
+            e.image = null;
+            e.size = 0;
+        }
+    }
+
+    /**
+     * Returns the image the given graphics draws into, if known.
+     */
+    protected static BufferedImage getDestination(Graphics2D g2d) {
+        Object o = g2d.getRenderingHint(RenderingHintsKeyExt.KEY_BUFFERED_IMAGE);
+        if (o instanceof Reference) {
+            o = ((Reference)o).get();
+        }
+        return (o instanceof BufferedImage) ? (BufferedImage)o : null;
+    }
+
+    /**
+     * Whether the given composite of a node can be applied within its
+     * layer.
+     */
+    protected static boolean isSrcOver(Composite c) {
+        if (c == null) {
+            return true;
+        }
+        if (!(c instanceof AlphaComposite)) {
+            return false;
+        }
+        AlphaComposite ac = (AlphaComposite)c;
+        return ac.getRule() == AlphaComposite.SRC_OVER;
+    }
+}
@@ -0,0 +1,432 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An R-tree of the children of a composite graphics node, used to
+ * find the children that may be painted in an area or hit at a point
+ * without testing all of them.
+ *
+ * The tree is packed once from the bounds of the children, in the
+ * user space of the composite, using the Sort-Tile-Recursive method.
+ * The bounds of a child are the union of its painted and sensitive
+ * bounds, so a query returns a superset of the children that actually
+ * paint in or are hit in the queried area.  A child whose bounds
+ * changed is reported with {@link #invalidate(GraphicsNode)} and its
+ * entry is enlarged on the next query; the index must be built again
+ * when the children list changes or when too many entries were
+ * updated, see {@link #update()}.
+ *
+ * @version $Id$
+ */
+public class GraphicsNodeRTree {
+
+    /**
+     * The maximum number of entries of a tree node.
+     */
+    protected static final int NODE_SIZE = 16;
+
+    /**
+     * The indexed children.  Entry <code>i</code> is the child at
+     * index <code>i</code> in the children list.
+     */
+    protected GraphicsNode[] nodes;
+
+    /**
+     * The number of entries.
+     */
+    protected int count;
+
+    /**
+     * The bounds of the entries, four values (x0, y0, x1, y1) each.
+     */
+    protected double[] bounds;
+
+    /**
+     * The leaf holding each entry or -1 for the entries with no
+     * bounds, which are returned by all the queries.
+     */
+    protected int[] leaves;
+
+    /**
+     * The entries with no bounds.
+     */
+    protected int[] unbounded;
+    protected int unboundedCount;
+
+    /**
+     * The bounds of the tree nodes, four values each.  The leaves
+     * come first and the root is the last tree node.
+     */
+    protected double[] treeBounds;
+
+    /**
+     * The parent of each tree node, -1 for the root.
+     */
+    protected int[] parents;
+
+    /**
+     * The range in <code>refs</code> of the entries of each tree
+     * node: entry indices for the leaves, tree nodes otherwise.
+     */
+    protected int[] firstRef;
+    protected int[] lastRef;
+    protected int[] refs;
+
+    /**
+     * The number of leaves and of tree nodes.
+     */
+    protected int leafCount;
+    protected int treeSize;
+
+    /**
+     * The modification count of the children list the index was
+     * built from.
+     */
+    protected int modCount;
+
+    /**
+     * The children whose bounds changed since the last query.
+     */
+    protected Set invalid = new HashSet();
+
+    /**
+     * Maps the children to their entry, created on the first update.
+     */
+    protected Map entries;
+
+    /**
+     * The number of entries updated since the index was built.
+     */
+    protected int updateCount;
+
+    /**
+     * Builds the index of the given children.
+     * @param children The children.
+     * @param count The number of children.
+     * @param modCount The modification count of the children list.
+     */
+    public GraphicsNodeRTree(GraphicsNode[] children, int count,
+                             int modCount) {
+        this.count = count;
+        this.modCount = modCount;
+        nodes = new GraphicsNode[count];
+        System.arraycopy(children, 0, nodes, 0, count);
+        bounds = new double[count * 4];
+        leaves = new int[count];
+        unbounded = new int[4];
+
+        int[] ids = new int[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            leaves[i] = -1;
+            if (getBounds(nodes[i], bounds, i)) {
+                ids[n++] = i;
+            } else {
+                if (unboundedCount == unbounded.length) {
+                    int[] t = new int[unboundedCount * 2];
+                    System.arraycopy(unbounded, 0, t, 0, unboundedCount);
+                    unbounded = t;
+                }
+                unbounded[unboundedCount++] = i;
+            }
+        }
+        if (n > 0) {
+            build(ids, n);
+        }
+    }
+
+    /**
+     * Returns the modification count of the children list the index
+     * was built from.
+     */
+    public int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Records that the bounds of the given child changed.
+     */
+    public synchronized void invalidate(GraphicsNode child) {
+        invalid.add(child);
+    }
+
+    /**
+     * Updates the entries of the children whose bounds changed.
+     * @return false if the index must be built again.
+     */
+    public synchronized boolean update() {
+        if (invalid.isEmpty()) {
+            return true;
+        }
+        if (entries == null) {
+            entries = new HashMap(count * 2);
+            for (int i = 0; i < count; i++) {
+                entries.put(nodes[i], Integer.valueOf(i));
+            }
+        }
+        double[] b = new double[4];
+        Iterator it = invalid.iterator();
+        while (it.hasNext()) {
+            Integer e = (Integer)entries.get(it.next());
+            if (e == null) {
+                continue;
+            }
+            int i = e.intValue();
+            int leaf = leaves[i];
+            if (leaf < 0 || !getBounds(nodes[i], b, 0)) {
+                // The entry moves in or out of the tree.
+                return false;
+            }
+            System.arraycopy(b, 0, bounds, i * 4, 4);
+            // Enlarge the tree nodes up to the root, they are never
+            // shrunk so they still hold the other entries.
+            for (int t = leaf; t >= 0; t = parents[t]) {
+                int o = t * 4;
+                if (b[0] >= treeBounds[o] && b[1] >= treeBounds[o + 1] &&
+                    b[2] <= treeBounds[o + 2] && b[3] <= treeBounds[o + 3]) {
+                    break;
+                }
+                treeBounds[o]     = Math.min(treeBounds[o],     b[0]);
+                treeBounds[o + 1] = Math.min(treeBounds[o + 1], b[1]);
+                treeBounds[o + 2] = Math.max(treeBounds[o + 2], b[2]);
+                treeBounds[o + 3] = Math.max(treeBounds[o + 3], b[3]);
+            }
+            if (++updateCount > Math.max(64, count / 4)) {
+                // The tree nodes have grown too much.
+                return false;
+            }
+        }
+        invalid.clear();
+        return true;
+    }
+
+    /**
+     * Returns, in increasing order, the indices of the children whose
+     * bounds intersect the given rectangle.
+     */
+    public int[] query(Rectangle2D r) {
+        return query(r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY());
+    }
+
+    /**
+     * Returns, in increasing order, the indices of the children whose
+     * bounds intersect the given area.
+     */
+    public synchronized int[] query(double x0, double y0,
+                                    double x1, double y1) {
+        int[] result = new int[unboundedCount + 16];
+        int n = unboundedCount;
+        System.arraycopy(unbounded, 0, result, 0, n);
+
+        if (treeSize > 0) {
+            int[] stack = new int[64];
+            int sp = 0;
+            stack[sp++] = treeSize - 1;
+            while (sp > 0) {
+                int t = stack[--sp];
+                if (!intersects(treeBounds, t, x0, y0, x1, y1)) {
+                    continue;
+                }
+                int last = lastRef[t];
+                if (t < leafCount) {
+                    for (int k = firstRef[t]; k < last; k++) {
+                        int e = refs[k];
+                        if (intersects(bounds, e, x0, y0, x1, y1)) {
+                            if (n == result.length) {
+                                int[] a = new int[n * 2];
+                                System.arraycopy(result, 0, a, 0, n);
+                                result = a;
+                            }
+                            result[n++] = e;
+                        }
+                    }
+                } else {
+                    for (int k = firstRef[t]; k < last; k++) {
+                        if (sp == stack.length) {
+                            int[] a = new int[sp * 2];
+                            System.arraycopy(stack, 0, a, 0, sp);
+                            stack = a;
+                        }
+                        stack[sp++] = refs[k];
+                    }
+                }
+            }
+        }
+
+        int[] a = new int[n];
+        System.arraycopy(result, 0, a, 0, n);
+        Arrays.sort(a);
+        return a;
+    }
+
+    /**
+     * Packs the tree from the given entries.
+     */
+    protected void build(int[] ids, int n) {
+        int leafNodes = (n + NODE_SIZE - 1) / NODE_SIZE;
+        int size = leafNodes;
+        for (int l = leafNodes; l > 1; ) {
+            l = (l + NODE_SIZE - 1) / NODE_SIZE;
+            size += l;
+        }
+        treeBounds = new double[size * 4];
+        parents = new int[size];
+        firstRef = new int[size];
+        lastRef = new int[size];
+        refs = new int[n + size - 1];
+
+        // The leaves, over the entries.
+        int r = pack(ids, n, bounds, true, 0);
+        leafCount = treeSize;
+
+        // The upper levels, over the tree nodes of the level below.
+        int first = 0;
+        int last = treeSize;
+        while (last - first > 1) {
+            int[] level = new int[last - first];
+            for (int i = 0; i < level.length; i++) {
+                level[i] = first + i;
+            }
+            r = pack(level, level.length, treeBounds, false, r);
+            first = last;
+            last = treeSize;
+        }
+        parents[treeSize - 1] = -1;
+    }
+
+    /**
+     * Sorts the given items in Sort-Tile-Recursive order and groups
+     * them into new tree nodes.
+     * @param items The entries or tree nodes to group.
+     * @param n The number of items.
+     * @param b The bounds of the items.
+     * @param leaf Whether the new tree nodes are leaves.
+     * @param r The first free slot in <code>refs</code>.
+     * @return The next free slot in <code>refs</code>.
+     */
+    protected int pack(int[] items, int n, final double[] b,
+                       boolean leaf, int r) {
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = Integer.valueOf(items[i]);
+        }
+        Comparator byX = new Comparator() {
+                public int compare(Object o1, Object o2) {
+                    int i1 = ((Integer)o1).intValue() * 4;
+                    int i2 = ((Integer)o2).intValue() * 4;
+                    return Double.compare(b[i1] + b[i1 + 2],
+                                          b[i2] + b[i2 + 2]);
+                }
+            };
+        Comparator byY = new Comparator() {
+                public int compare(Object o1, Object o2) {
+                    int i1 = ((Integer)o1).intValue() * 4 + 1;
+                    int i2 = ((Integer)o2).intValue() * 4 + 1;
+                    return Double.compare(b[i1] + b[i1 + 2],
+                                          b[i2] + b[i2 + 2]);
+                }
+            };
+
+        // Vertical slices of about sqrt(n / NODE_SIZE) nodes, each
+        // sorted along y.
+        int groups = (n + NODE_SIZE - 1) / NODE_SIZE;
+        int slices = (int)Math.ceil(Math.sqrt(groups));
+        int sliceSize = ((groups + slices - 1) / slices) * NODE_SIZE;
+        Arrays.sort(order, byX);
+        for (int s = 0; s < n; s += sliceSize) {
+            Arrays.sort(order, s, Math.min(n, s + sliceSize), byY);
+        }
+
+        for (int s = 0; s < n; s += NODE_SIZE) {
+            int t = treeSize++;
+            int e = Math.min(n, s + NODE_SIZE);
+            int o = t * 4;
+            treeBounds[o]     = Double.POSITIVE_INFINITY;
+            treeBounds[o + 1] = Double.POSITIVE_INFINITY;
+            treeBounds[o + 2] = Double.NEGATIVE_INFINITY;
+            treeBounds[o + 3] = Double.NEGATIVE_INFINITY;
+            firstRef[t] = r;
+            for (int k = s; k < e; k++) {
+                int i = order[k].intValue();
+                int io = i * 4;
+                treeBounds[o]     = Math.min(treeBounds[o],     b[io]);
+                treeBounds[o + 1] = Math.min(treeBounds[o + 1], b[io + 1]);
+                treeBounds[o + 2] = Math.max(treeBounds[o + 2], b[io + 2]);
+                treeBounds[o + 3] = Math.max(treeBounds[o + 3], b[io + 3]);
+                refs[r++] = i;
+                if (leaf) {
+                    leaves[i] = t;
+                } else {
+                    parents[i] = t;
+                }
+            }
+            lastRef[t] = r;
+        }
+        return r;
+    }
+
+    /**
+     * Whether the given bounds intersect the given area, edges
+     * included.
+     */
+    protected static boolean intersects(double[] b, int i,
+                                        double x0, double y0,
+                                        double x1, double y1) {
+        int o = i * 4;
+        return b[o] <= x1 && b[o + 2] >= x0 && b[o + 1] <= y1 && b[o + 3] >= y0;
+    }
+
+    /**
+     * Stores the bounds of the given child, in the user space of its
+     * parent, in <code>b</code> at entry <code>i</code>.
+     * @return false if the child has no bounds.
+     */
+    protected static boolean getBounds(GraphicsNode node, double[] b, int i) {
+        if (node == null) {
+            return false;
+        }
+        Rectangle2D r = node.getTransformedBounds(GraphicsNode.IDENTITY);
+        Rectangle2D s =
+            node.getTransformedSensitiveBounds(GraphicsNode.IDENTITY);
+        if (r == null) {
+            r = s;
+        } else if (s != null) {
+            r = r.createUnion(s);
+        }
+        if (r == null) {
+            return false;
+        }
+        int o = i * 4;
+        b[o]     = r.getMinX();
+        b[o + 1] = r.getMinY();
+        b[o + 2] = r.getMaxX();
+        b[o + 3] = r.getMaxY();
+        return true;
+    }
+}
@@ -26,6 +26,7 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.ColorModel;
 import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 
 import org.apache.batik.ext.awt.image.PadMode;
 import org.apache.batik.ext.awt.image.renderable.Filter;
@@ -70,7 +71,7 @@ public class PatternPaint implements Paint {
      */
     private boolean overflow;
 
-    private PatternPaintContext lastContext;
+    private volatile PatternPaintContext lastContext;
 
     /**
      * Constructs a new <code>PatternPaint</code>.
@@ -162,33 +163,35 @@ public class PatternPaint implements Paint {
             xform.concatenate(patternTransform);
         }
 
-        if ((lastContext!= null) &&
-            lastContext.getColorModel().equals(cm)) {
+        // The cached context is shared with any thread painting with
+        // this paint, so it is only handed out through a wrapper
+        // that has its own working raster.
+        PatternPaintContext last = lastContext;
+        if ((last != null) &&
+            last.getColorModel().equals(cm)) {
 
             double[] p = new double[6];
             double[] q = new double[6];
             xform.getMatrix(p);
-            lastContext.getUsr2Dev().getMatrix(q);
+            last.getUsr2Dev().getMatrix(q);
             if ((p[0] == q[0]) && (p[1] == q[1]) &&
                 (p[2] == q[2]) && (p[3] == q[3])) {
-                if ((p[4] == q[4]) && (p[5] == q[5]))
-                    return lastContext;
-                else
-                    return new PatternPaintContextWrapper
-                        (lastContext,
-                         (int)(q[4]-p[4]+0.5),
-                         (int)(q[5]-p[5]+0.5));
+                return new PatternPaintContextWrapper
+                    (last,
+                     (int)Math.floor(q[4]-p[4]+0.5),
+                     (int)Math.floor(q[5]-p[5]+0.5));
             }
         }
         // System.out.println("CreateContext Called: " + this);
         // System.out.println("CM : " + cm);
         // System.out.println("xForm : " + xform);
 
-        lastContext = new PatternPaintContext(cm, xform,
+        last = new PatternPaintContext(cm, xform,
                                        hints, tile,
                                        patternRegion,
                                        overflow);
-        return lastContext;
+        lastContext = last;
+        return new PatternPaintContextWrapper(last, 0, 0);
     }
 
     /**
@@ -201,6 +204,7 @@ public class PatternPaint implements Paint {
     static class PatternPaintContextWrapper implements PaintContext {
         PatternPaintContext ppc;
         int xShift, yShift;
+        WritableRaster raster;
         PatternPaintContextWrapper(PatternPaintContext ppc,
                             int xShift, int yShift) {
             this.ppc = ppc;
@@ -208,13 +212,21 @@ public class PatternPaint implements Paint {
             this.yShift = yShift;
         }
 
-        public void dispose(){ }
+        public void dispose(){
+            raster = null;
+        }
 
         public ColorModel getColorModel(){
             return ppc.getColorModel();
         }
         public Raster getRaster(int x, int y, int width, int height){
-            return ppc.getRaster(x+xShift, y+yShift, width, height);
+            if ((raster == null)             ||
+                (raster.getWidth() < width)  ||
+                (raster.getHeight() < height)) {
+                raster = ppc.getColorModel().createCompatibleWritableRaster
+                    (width, height);
+            }
+            return ppc.getRaster(raster, x+xShift, y+yShift, width, height);
         }
     }
 }
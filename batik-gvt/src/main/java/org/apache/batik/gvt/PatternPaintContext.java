@@ -152,17 +152,30 @@ public class PatternPaintContext implements PaintContext {
     }
 
     public Raster getRaster(int x, int y, int width, int height){
-
-        // System.out.println("GetRaster: [" + x + ", " + y + ", " 
-        //                    + width + ", " + height + "]");
         if ((raster == null)             ||
             (raster.getWidth() < width)  ||
             (raster.getHeight() < height)) {
             raster = rasterCM.createCompatibleWritableRaster(width, height);
         }
+        return getRaster(raster, x, y, width, height);
+    }
 
+    /**
+     * Fills <code>scratch</code> with the pattern data for the
+     * requested area.  This only reads the state of this context so
+     * it is safe to call from several threads as long as each one
+     * uses its own scratch raster.
+     *
+     * @param scratch working raster, at least width by height pixels
+     *                and compatible with <code>getColorModel()</code>.
+     */
+    Raster getRaster(WritableRaster scratch,
+                     int x, int y, int width, int height){
+
+        // System.out.println("GetRaster: [" + x + ", " + y + ", " 
+        //                    + width + ", " + height + "]");
         WritableRaster wr
-            = raster.createWritableChild(0, 0, width, height, x, y, null);
+            = scratch.createWritableChild(0, 0, width, height, x, y, null);
 
         tiled.copyData(wr);
         GraphicsUtil.coerceData(wr, tiled.getColorModel(), 
@@ -172,9 +185,9 @@ public class PatternPaintContext implements PaintContext {
         // requested width and height matches raster we can just
         // return it.  Otherwise we create a translated child that
         // lives at 0,0.
-        if ((raster.getWidth()  == width) &&
-            (raster.getHeight() == height))
-            return raster;
+        if ((scratch.getWidth()  == width) &&
+            (scratch.getHeight() == height))
+            return scratch;
 
         return wr.createTranslatedChild(0,0);
     }
@@ -46,9 +46,29 @@ public class UpdateTracker extends GraphicsNodeChangeAdapter {
     Map fromBounds = new HashMap();
     protected static Rectangle2D NULL_RECT = new Rectangle();
 
+    /**
+     * The layer cache told about the changed nodes, if any.
+     */
+    protected GraphicsNodeLayerCache layerCache;
+
     public UpdateTracker(){
     }
 
+    /**
+     * Returns the layer cache the changed nodes are reported to.
+     */
+    public GraphicsNodeLayerCache getLayerCache() {
+        return layerCache;
+    }
+
+    /**
+     * Sets the layer cache the changed nodes are reported to, so the
+     * layers of the nodes and of their ancestors get dropped.
+     */
+    public void setLayerCache(GraphicsNodeLayerCache layerCache) {
+        this.layerCache = layerCache;
+    }
+
     /**
      * Tells whether the GVT tree has changed.
      */
@@ -231,6 +251,9 @@ public class UpdateTracker extends GraphicsNodeChangeAdapter {
         GraphicsNode gn = gnce.getGraphicsNode();
         WeakReference gnWRef = gn.getWeakReference();
 
+        if (layerCache != null)
+            layerCache.invalidate(gn);
+
         boolean doPut = false;
         if (dirtyNodes == null) {
             dirtyNodes = new HashMap();
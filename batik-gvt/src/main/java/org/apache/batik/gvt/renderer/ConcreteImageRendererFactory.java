@@ -18,6 +18,8 @@
  */
 package org.apache.batik.gvt.renderer;
 
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.batik.util.Platform;
 
 /**
@@ -28,6 +30,41 @@ import org.apache.batik.util.Platform;
  */
 public class ConcreteImageRendererFactory implements ImageRendererFactory {
 
+    /**
+     * The pool static renderers rasterize on, or null to render on
+     * the calling thread.
+     */
+    protected ForkJoinPool renderPool;
+
+    /**
+     * Creates a factory for single threaded renderers.
+     */
+    public ConcreteImageRendererFactory() {
+    }
+
+    /**
+     * Creates a factory whose static renderers rasterize on
+     * <code>renderPool</code>.
+     * @param renderPool the pool to render tiles on, or null.
+     */
+    public ConcreteImageRendererFactory(ForkJoinPool renderPool) {
+        this.renderPool = renderPool;
+    }
+
+    /**
+     * Returns the pool static renderers rasterize on.
+     */
+    public ForkJoinPool getRenderPool() {
+        return renderPool;
+    }
+
+    /**
+     * Sets the pool static renderers rasterize on.
+     */
+    public void setRenderPool(ForkJoinPool renderPool) {
+        this.renderPool = renderPool;
+    }
+
     /**
      * Creates a new renderer.
      */
@@ -39,6 +76,8 @@ public class ConcreteImageRendererFactory implements ImageRendererFactory {
      * Creates a new static image renderer.
      */
     public ImageRenderer createStaticImageRenderer() {
+        if (renderPool != null)
+            return new ParallelStaticRenderer(renderPool);
         if (Platform.isOSX)
             return new MacRenderer();
         return new StaticRenderer();
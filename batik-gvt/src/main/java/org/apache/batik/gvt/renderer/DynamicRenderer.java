@@ -29,11 +29,13 @@ import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
 import java.util.Collection;
 
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
 import org.apache.batik.ext.awt.geom.RectListManager;
 import org.apache.batik.ext.awt.image.GraphicsUtil;
 import org.apache.batik.ext.awt.image.PadMode;
 import org.apache.batik.ext.awt.image.rendered.CachableRed;
 import org.apache.batik.ext.awt.image.rendered.PadRed;
+import org.apache.batik.gvt.GraphicsNodeLayerCache;
 import org.apache.batik.util.HaltingThread;
 
 /**
@@ -61,6 +63,49 @@ public class DynamicRenderer extends StaticRenderer {
 
     RectListManager damagedAreas;
 
+    /**
+     * The layers of the nodes that did not change for a few frames.
+     */
+    protected GraphicsNodeLayerCache layerCache =
+        new GraphicsNodeLayerCache();
+
+    /**
+     * Whether the nodes are painted from the layer cache.
+     */
+    protected boolean layerCacheEnabled;
+
+    /**
+     * Returns the layer cache of this renderer, which also gives its
+     * hit rate and memory use.  The cache must be told about the
+     * changes of the GVT tree, see
+     * {@link org.apache.batik.gvt.UpdateTracker#setLayerCache}.
+     */
+    public GraphicsNodeLayerCache getLayerCache() {
+        return layerCache;
+    }
+
+    /**
+     * Returns whether the nodes are painted from the layer cache.
+     */
+    public boolean isLayerCacheEnabled() {
+        return layerCacheEnabled;
+    }
+
+    /**
+     * Sets whether the nodes that did not change for a few frames are
+     * rasterized once and painted from their layer afterwards.
+     */
+    public void setLayerCacheEnabled(boolean enabled) {
+        layerCacheEnabled = enabled;
+        if (!enabled)
+            layerCache.clear();
+    }
+
+    public void dispose() {
+        super.dispose();
+        layerCache.clear();
+    }
+
     protected CachableRed setupCache(CachableRed img) {
         // Don't do any caching of content for dynamic case
         return img;
@@ -155,6 +200,16 @@ public class DynamicRenderer extends StaticRenderer {
         WritableRaster syncRaster;
         WritableRaster copyRaster;
 
+        if (renderingHints != null) {
+            if (layerCacheEnabled) {
+                layerCache.nextFrame();
+                renderingHints.put(RenderingHintsKeyExt.KEY_LAYER_CACHE,
+                                   layerCache);
+            } else {
+                renderingHints.remove(RenderingHintsKeyExt.KEY_LAYER_CACHE);
+            }
+        }
+
         updateWorkingBuffers();
         if ((rootCR == null)           ||
             (workingBaseRaster == null)) {
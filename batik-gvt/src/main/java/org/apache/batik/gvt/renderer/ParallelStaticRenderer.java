@@ -0,0 +1,103 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.renderer;
+
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.batik.ext.awt.image.rendered.CachableRed;
+import org.apache.batik.ext.awt.image.rendered.ParallelTileCacheRed;
+import org.apache.batik.ext.awt.image.rendered.TileCacheRed;
+
+/**
+ * A StaticRenderer that rasterizes the GVT tree on a
+ * <code>ForkJoinPool</code>.
+ *
+ * The area being repainted is split into the same blocks of tiles as
+ * <code>StaticRenderer</code> splits it, and the blocks are rendered
+ * by separate tasks.  Since the same regions are rasterized the
+ * result is pixel identical to the one of <code>StaticRenderer</code>.
+ * An area with none of its tiles cached is a single block though, so
+ * only repaints of partly cached areas are spread over the threads.
+ *
+ * @version $Id$
+ */
+public class ParallelStaticRenderer extends StaticRenderer {
+
+    /**
+     * The pool the tiles are rendered on.
+     */
+    protected ForkJoinPool pool;
+
+    /**
+     * Creates a new ParallelStaticRenderer that renders on
+     * <code>pool</code>.
+     */
+    public ParallelStaticRenderer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @param pool The pool to render on.
+     * @param rh Hints for rendering.
+     * @param at Starting user to device coordinate system transform.
+     */
+    public ParallelStaticRenderer(ForkJoinPool pool,
+                                  RenderingHints rh,
+                                  AffineTransform at) {
+        super(rh, at);
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the pool this renderer renders on.
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Sets the pool this renderer renders on.  If <code>pool</code>
+     * is null rendering happens on the calling thread.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        lastCache = null;
+        rootCR    = null;
+    }
+
+    /**
+     * Disposes all resources of this renderer.  The pool is not shut
+     * down since it may be shared with other renderers.
+     */
+    public void dispose() {
+        super.dispose();
+        pool = null;
+    }
+
+    /**
+     * Returns a cache that computes its blocks of tiles on the pool.
+     */
+    protected TileCacheRed createTileCacheRed(CachableRed img) {
+        if (tileCache != null)
+            return new ParallelTileCacheRed(img, tileCache, pool);
+        return new ParallelTileCacheRed(img, pool);
+    }
+}
@@ -40,6 +40,7 @@ import org.apache.batik.ext.awt.image.GraphicsUtil;
 import org.apache.batik.ext.awt.image.PadMode;
 import org.apache.batik.ext.awt.image.renderable.Filter;
 import org.apache.batik.ext.awt.image.rendered.CachableRed;
+import org.apache.batik.ext.awt.image.rendered.LRUCache;
 import org.apache.batik.ext.awt.image.rendered.PadRed;
 import org.apache.batik.ext.awt.image.rendered.TileCacheRed;
 import org.apache.batik.ext.awt.image.rendered.TranslateRed;
@@ -64,6 +65,12 @@ public class StaticRenderer implements ImageRenderer {
     protected SoftReference     lastCR;
     protected SoftReference     lastCache;
 
+    /**
+     * Cache partition holding the tiles of the rendering, null for the
+     * shared tile cache.
+     */
+    protected LRUCache tileCache;
+
     /**
      * Flag for double buffering.
      */
@@ -184,6 +191,25 @@ public class StaticRenderer implements ImageRenderer {
         currentRaster = null;
     }
 
+    /**
+     * Returns the cache partition holding the tiles of the rendering,
+     * or null if they go to the shared tile cache.
+     */
+    public LRUCache getTileCache() {
+        return tileCache;
+    }
+
+    /**
+     * Sets the cache partition holding the tiles of the rendering.
+     * This lets a renderer keep its tiles from being pushed out by
+     * other renderers.  If null the shared tile cache is used.
+     */
+    public void setTileCache(LRUCache tileCache) {
+        this.tileCache = tileCache;
+        lastCache = null;
+        rootCR    = null;
+    }
+
     /**
      * @return the RenderingHints which the Renderer is using for its
      *         rendering
@@ -462,11 +488,22 @@ public class StaticRenderer implements ImageRenderer {
         if (o != null)
             return (CachableRed)o;
 
-        img       = new TileCacheRed(img);
+        img       = createTileCacheRed(img);
         lastCache = new SoftReference(img);
         return img;
     }
 
+    /**
+     * Wraps the rendering of the GVT tree in the cache its tiles are
+     * computed through.  Subclasses may override it to change how the
+     * work is scheduled.
+     */
+    protected TileCacheRed createTileCacheRed(CachableRed img) {
+        if (tileCache != null)
+            return new TileCacheRed(img, tileCache);
+        return new TileCacheRed(img);
+    }
+
     protected CachableRed renderGNR() {
         AffineTransform at, rcAT;
         at = usr2dev;
@@ -19,25 +19,26 @@
 package org.apache.batik.parser;
 
 import java.awt.Shape;
-import java.awt.geom.Point2D;
 import java.io.IOException;
 import java.io.Reader;
 
-import org.apache.batik.ext.awt.geom.ExtendedGeneralPath;
+import org.apache.batik.ext.awt.geom.ExtendedFloatPath;
 
 /**
  * This class provides an implementation of the PathHandler that initializes
  * a Shape from the value of a path's 'd' attribute.
  *
+ * The segments are stored straight into an {@link ExtendedFloatPath}.
+ *
  * @author <a href="mailto:stephane@hillion.org">Stephane Hillion</a>
  * @version $Id$
  */
 public class AWTPathProducer implements PathHandler, ShapeProducer {
 
     /**
-     * The temporary value of extendedGeneralPath.
+     * The path being built.
      */
-    protected ExtendedGeneralPath path;
+    protected ExtendedFloatPath path;
 
     /**
      * The current x position.
@@ -65,7 +66,7 @@ public class AWTPathProducer implements PathHandler, ShapeProducer {
     protected int windingRule;
 
     /**
-     * Utility method for creating an ExtendedGeneralPath.
+     * Utility method for creating an ExtendedFloatPath.
      * @param r The reader used to read the path specification.
      * @param wr The winding rule to use for creating the path.
      */
@@ -113,13 +114,14 @@ public class AWTPathProducer implements PathHandler, ShapeProducer {
         currentY = 0;
         xCenter = 0;
         yCenter = 0;
-        path = new ExtendedGeneralPath(windingRule);
+        path = new ExtendedFloatPath(windingRule);
     }
 
     /**
      * Implements {@link PathHandler#endPath()}.
      */
     public void endPath() throws ParseException {
+        path.trimToSize();
     }
 
     /**
@@ -141,9 +143,8 @@ public class AWTPathProducer implements PathHandler, ShapeProducer {
      */
     public void closePath() throws ParseException {
         path.closePath();
-        Point2D pt = path.getCurrentPoint();
-        currentX = (float)pt.getX();
-        currentY = (float)pt.getY();
+        currentX = path.getCurrentX();
+        currentY = path.getCurrentY();
     }
 
     /**
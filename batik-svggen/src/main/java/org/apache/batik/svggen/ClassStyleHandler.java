@@ -0,0 +1,187 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.batik.util.CSSConstants;
+import org.w3c.dom.Element;
+
+/**
+ * The <code>ClassStyleHandler</code> class styles SVG elements with
+ * CSS classes instead of presentation attributes.
+ *
+ * Each distinct set of styling properties gets a class, whose rule is
+ * added to a style sheet, and the elements reference the class
+ * through their <code>class</code> attribute. Elements drawn with the
+ * same graphic context therefore share a single rule instead of
+ * repeating the same properties. The properties of a rule are sorted
+ * by name, and the class names are generated in the order the
+ * classes are first used, with the ID generator of the generator
+ * context, so drawing the same content produces the same output.
+ *
+ * The style sheet is placed by the {@link DOMTreeManager} in a
+ * <code>style</code> element among the definitions, see
+ * {@link #getStyleSheet}. When the output is streamed, the rules
+ * created since the previous definitions were written are written in
+ * a new <code>style</code> element along with the next definitions.
+ *
+ * Attributes which are not styling properties are set as with the
+ * {@link DefaultStyleHandler}.
+ *
+ * @version $Id$
+ */
+public class ClassStyleHandler extends DefaultStyleHandler {
+
+    /**
+     * The default prefix of the generated class names.
+     */
+    public static final String DEFAULT_CLASS_PREFIX = "c";
+
+    /**
+     * The prefix of the generated class names.
+     */
+    protected String classPrefix;
+
+    /**
+     * The class names, keyed by the declarations of their rule.
+     */
+    protected Map classNames = new HashMap();
+
+    /**
+     * The rules of the style sheet, in the order they were created.
+     */
+    protected List rules = new ArrayList();
+
+    /**
+     * Creates a handler whose class names start with
+     * {@link #DEFAULT_CLASS_PREFIX}.
+     */
+    public ClassStyleHandler() {
+        this(DEFAULT_CLASS_PREFIX);
+    }
+
+    /**
+     * Creates a handler whose class names start with
+     * <code>classPrefix</code>.
+     */
+    public ClassStyleHandler(String classPrefix) {
+        if (classPrefix == null || classPrefix.length() == 0)
+            throw new IllegalArgumentException();
+        this.classPrefix = classPrefix;
+    }
+
+    /**
+     * Sets the style described by <code>styleMap</code> on the given
+     * <code>element</code>. The styling properties are replaced by a
+     * reference to the class holding them.
+     * @param element the SVG <code>Element</code> to be styled.
+     * @param styleMap the <code>Map</code> containing pairs of style
+     * property names, style values.
+     */
+    public void setStyle(Element element, Map styleMap,
+                         SVGGeneratorContext generatorContext) {
+        String tagName = element.getTagName();
+        Map properties = new TreeMap();
+        for (Object o : styleMap.keySet()) {
+            String styleName = (String) o;
+            if (element.getAttributeNS(null, styleName).length() == 0) {
+                if (appliesTo(styleName, tagName)) {
+                    String value = (String) styleMap.get(styleName);
+                    if (SVGStylingAttributes.set.contains(styleName)) {
+                        properties.put(styleName, value);
+                    } else {
+                        element.setAttributeNS(null, styleName, value);
+                    }
+                }
+            }
+        }
+        if (properties.isEmpty())
+            return;
+
+        StringBuffer declarations = new StringBuffer();
+        for (Object o : properties.entrySet()) {
+            Map.Entry e = (Map.Entry) o;
+            declarations.append(e.getKey());
+            declarations.append(':');
+            declarations.append(e.getValue());
+            declarations.append(';');
+        }
+        String key = declarations.toString();
+
+        String className = (String) classNames.get(key);
+        if (className == null) {
+            className = generatorContext.idGenerator.generateID(classPrefix);
+            classNames.put(key, className);
+            rules.add('.' + className + " {" + key + '}');
+        }
+
+        String classes = element.getAttributeNS(null, SVG_CLASS_ATTRIBUTE);
+        if (classes.length() > 0)
+            className = classes + ' ' + className;
+        element.setAttributeNS(null, SVG_CLASS_ATTRIBUTE, className);
+    }
+
+    /**
+     * Returns the number of rules created since the handler was
+     * created or last reset.
+     */
+    public int getRuleCount() {
+        return rules.size();
+    }
+
+    /**
+     * Returns a <code>style</code> element holding the rules created
+     * from the <code>first</code> one on, or null if there are none.
+     */
+    public Element getStyleSheet(int first,
+                                 SVGGeneratorContext generatorContext) {
+        int n = rules.size();
+        if (first >= n)
+            return null;
+
+        StringBuffer sheet = new StringBuffer();
+        sheet.append('\n');
+        for (int i = first; i < n; i++) {
+            sheet.append((String) rules.get(i));
+            sheet.append('\n');
+        }
+
+        Element style = generatorContext.domFactory.
+            createElementNS(SVG_NAMESPACE_URI, SVG_STYLE_TAG);
+        style.setAttributeNS(null, SVG_TYPE_ATTRIBUTE,
+                             CSSConstants.CSS_MIME_TYPE);
+        style.appendChild(generatorContext.domFactory.
+                          createCDATASection(sheet.toString()));
+        return style;
+    }
+
+    /**
+     * Forgets the classes created so far. The elements styled from
+     * then on get new classes, for use in a new set of definitions.
+     */
+    public void reset() {
+        classNames.clear();
+        rules.clear();
+    }
+}
@@ -18,16 +18,22 @@
  */
 package org.apache.batik.svggen;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Set;
 
 import org.apache.batik.ext.awt.g2d.GraphicContext;
 import org.w3c.dom.Comment;
 import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 /**
@@ -56,6 +62,13 @@ import org.w3c.dom.NodeList;
  *        +-- ...
  *        +-- [g]    Group n
  *
+ * The tree can also be streamed, see {@link #startStream}. Each
+ * group is then written out as soon as the next one is appended, and
+ * dropped from the tree, so that the memory used does not grow with
+ * the number of elements drawn. The definitions are written in a
+ * [defs] element placed before the first group written after they
+ * are created.
+ *
  * @author <a href="mailto:cjolif">Christophe Jolif</a>
  * @author <a href="mailto:vincent.hardy@eng.sun.com">Vincent Hardy</a>
  * @version $Id$
@@ -115,6 +128,40 @@ public class DOMTreeManager implements SVGSyntax, ErrorConstants {
      */
     protected List otherDefs;
 
+    /**
+     * The writer the tree is streamed to, or null when it is not
+     * streamed.
+     */
+    XmlWriter.IndentWriter streamWriter;
+
+    /**
+     * The root element of the streamed document.
+     */
+    protected Element streamRoot;
+
+    /**
+     * Whether the streamed document uses CSS style properties and
+     * escapes non ASCII characters.
+     */
+    protected boolean streamUseCss, streamEscaped;
+
+    /**
+     * Whether the start of the streamed document has been written.
+     */
+    protected boolean streamStarted;
+
+    /**
+     * The definitions of the converters that have already been
+     * streamed.
+     */
+    protected Set streamedDefs;
+
+    /**
+     * The number of style sheet rules of a {@link ClassStyleHandler}
+     * that have already been streamed.
+     */
+    protected int streamedRules;
+
     /**
      * Constructor
      * @param gc default graphic context state
@@ -172,6 +219,20 @@ public class DOMTreeManager implements SVGSyntax, ErrorConstants {
      */
     public void appendGroup(Element group, DOMGroupManager groupManager){
         topLevelGroup.appendChild(group);
+        if (streamWriter != null) {
+            // All the groups but the new one are complete.
+            try {
+                streamGroups(false);
+            } catch (SVGGraphics2DIOException e) {
+                try {
+                    generatorContext.errorHandler.handleError(e);
+                } catch (SVGGraphics2DIOException io) {
+                    // we need a runtime exception because
+                    // java.awt.Graphics2D method doesn't throw exceptions..
+                    throw new SVGGraphics2DRuntimeException(io);
+                }
+            }
+        }
         synchronized( groupManagers ){
             // we want to prevent that the groupManagers-list changes while
             // we iterate over it. If that would happen, we might skip entries
@@ -258,6 +319,17 @@ public class DOMTreeManager implements SVGSyntax, ErrorConstants {
                 createElementNS(SVG_NAMESPACE_URI, SVG_SVG_TAG);
         }
 
+        initRoot(svg);
+        svg.appendChild(getTopLevelGroup());
+
+        return svg;
+    }
+
+    /**
+     * Sets the attributes of the root element and appends the
+     * generator comment and the generic definitions to it.
+     */
+    protected void initRoot(Element svg) {
         // Enable background if required by AlphaComposite convertion
         if (gcConverter.getCompositeConverter().
             getAlphaCompositeConverter().requiresBackgroundAccess())
@@ -274,9 +346,229 @@ public class DOMTreeManager implements SVGSyntax, ErrorConstants {
         applyDefaultRenderingStyle(svg);
 
         svg.appendChild(getGenericDefinitions());
-        svg.appendChild(getTopLevelGroup());
+    }
 
-        return svg;
+    /**
+     * Starts streaming the tree to <code>writer</code>. From then on,
+     * each group is written out and removed from the top level group
+     * as soon as the next group is appended, and the definitions
+     * created meanwhile are written before it. SVG fonts are written
+     * at the end, as glyphs are added to them as long as text is
+     * drawn. The document is completed by {@link #endStream()}.
+     *
+     * The attributes of the root element are written along with the
+     * first group, so whether the alpha composite rules used require
+     * background access is only known up to that point.
+     *
+     * @param svgRoot the root element of the document, or null to
+     *        create a new one
+     * @param writer the output
+     * @param useCss whether style properties are used rather than
+     *        presentation attributes
+     * @param escaped whether non ASCII characters are escaped
+     */
+    public void startStream(Element svgRoot, Writer writer,
+                            boolean useCss, boolean escaped)
+        throws SVGGraphics2DIOException {
+        if (streamWriter != null)
+            throw new SVGGraphics2DRuntimeException(ERR_STREAM_STARTED);
+
+        if (svgRoot == null) {
+            svgRoot = generatorContext.domFactory.
+                createElementNS(SVG_NAMESPACE_URI, SVG_SVG_TAG);
+        }
+        if (writer instanceof XmlWriter.IndentWriter) {
+            streamWriter = (XmlWriter.IndentWriter)writer;
+        } else {
+            streamWriter = new XmlWriter.IndentWriter(writer);
+        }
+        streamRoot = svgRoot;
+        streamUseCss = useCss;
+        streamEscaped = escaped;
+        streamStarted = false;
+        streamedDefs = new HashSet();
+        streamedRules = 0;
+
+        // What was drawn before is part of the streamed document.
+        streamGroups(false);
+    }
+
+    /**
+     * Returns whether the tree is being streamed.
+     */
+    public boolean isStreaming() {
+        return streamWriter != null;
+    }
+
+    /**
+     * Writes the groups and definitions that have not been written
+     * yet, completes the streamed document and flushes the writer.
+     * The tree manager then starts a new top level group.
+     */
+    public void endStream() throws SVGGraphics2DIOException {
+        if (streamWriter == null)
+            return;
+
+        XmlWriter.IndentWriter out = streamWriter;
+        try {
+            if (!streamStarted) {
+                // Nothing was written so far, write the whole tree.
+                Element svg = getRoot(streamRoot);
+                setNamespaceAttributes(svg);
+                DocumentFragment svgDocument =
+                    generatorContext.domFactory.createDocumentFragment();
+                svgDocument.appendChild(svg);
+                if (streamUseCss)
+                    SVGCSSStyler.style(svgDocument);
+                XmlWriter.writeXml(svgDocument, out, streamEscaped);
+            } else {
+                streamGroups(true);
+                XmlWriter.writeEndTag(topLevelGroup, out);
+                XmlWriter.writeDocumentEnd(streamRoot, out);
+                recycleTopLevelGroup();
+            }
+            out.flush();
+        } catch (SVGGraphics2DIOException e) {
+            throw e;
+        } catch (IOException io) {
+            throw new SVGGraphics2DIOException(io);
+        } finally {
+            streamWriter = null;
+            streamRoot = null;
+            streamedDefs = null;
+        }
+    }
+
+    /**
+     * Writes the complete children of the top level group, along with
+     * the definitions they may use, and removes them from the tree.
+     * @param all whether the last child is complete too
+     */
+    protected void streamGroups(boolean all)
+        throws SVGGraphics2DIOException {
+        Node last = all ? null : topLevelGroup.getLastChild();
+        if (!all && (topLevelGroup.getFirstChild() == last))
+            return;
+
+        if (!streamStarted) {
+            writeStreamStart();
+        }
+
+        Element defs = getStreamedDefinitions(all);
+        if (defs != null) {
+            topLevelGroup.insertBefore(defs, topLevelGroup.getFirstChild());
+        }
+        Element style = getStreamedStyleSheet();
+        if (style != null) {
+            topLevelGroup.insertBefore(style, topLevelGroup.getFirstChild());
+        }
+
+        Node n;
+        while ((n = topLevelGroup.getFirstChild()) != last) {
+            if (streamUseCss)
+                SVGCSSStyler.style(n);
+            XmlWriter.writeXml(n, streamWriter, streamEscaped);
+            topLevelGroup.removeChild(n);
+        }
+    }
+
+    /**
+     * Writes the start of the streamed document, up to the start tag
+     * of the top level group.
+     */
+    protected void writeStreamStart() throws SVGGraphics2DIOException {
+        Element svg = streamRoot;
+        initRoot(svg);
+        setNamespaceAttributes(svg);
+        if (streamUseCss)
+            SVGCSSStyler.style(svg);
+
+        DocumentFragment svgDocument =
+            generatorContext.domFactory.createDocumentFragment();
+        svgDocument.appendChild(svg);
+        svg.appendChild(topLevelGroup);
+
+        XmlWriter.IndentWriter out = streamWriter;
+        XmlWriter.writeDocumentStart(svg, out, streamEscaped);
+        for (Node n = svg.getFirstChild(); n != topLevelGroup;
+             n = n.getNextSibling()) {
+            XmlWriter.writeXml(n, out, streamEscaped);
+        }
+        XmlWriter.writeStartTag(topLevelGroup, out, streamEscaped);
+        streamStarted = true;
+    }
+
+    /**
+     * Returns a defs element holding the definitions not streamed yet,
+     * or null if there are none.
+     * @param fonts whether the SVG fonts are included
+     */
+    protected Element getStreamedDefinitions(boolean fonts) {
+        List defSet = gcConverter.getDefinitionSet();
+        defSet.addAll(filterConverter.getDefinitionSet());
+        if (!fonts) {
+            defSet.removeAll(gcConverter.getFontConverter().
+                             getDefinitionSet());
+        }
+
+        Element defs = null;
+        for (Object aDefSet : defSet) {
+            if (streamedDefs.add(aDefSet)) {
+                if (defs == null)
+                    defs = createStreamedDefinitions();
+                defs.appendChild((Element)aDefSet);
+            }
+        }
+        if (otherDefs != null) {
+            // These are not kept by the converters, nor here.
+            for (Object otherDef : otherDefs) {
+                if (defs == null)
+                    defs = createStreamedDefinitions();
+                defs.appendChild((Element)otherDef);
+            }
+            otherDefs = null;
+        }
+        return defs;
+    }
+
+    /**
+     * Returns a style element holding the rules of a
+     * {@link ClassStyleHandler} not streamed yet, or null if there
+     * are none.
+     */
+    protected Element getStreamedStyleSheet() {
+        if (!(generatorContext.styleHandler instanceof ClassStyleHandler))
+            return null;
+
+        ClassStyleHandler classHandler =
+            (ClassStyleHandler)generatorContext.styleHandler;
+        Element style =
+            classHandler.getStyleSheet(streamedRules, generatorContext);
+        streamedRules = classHandler.getRuleCount();
+        return style;
+    }
+
+    private Element createStreamedDefinitions() {
+        Element defs = generatorContext.domFactory.
+            createElementNS(SVG_NAMESPACE_URI, SVG_DEFS_TAG);
+        defs.setAttributeNS(null, SVG_ID_ATTRIBUTE,
+                            generatorContext.idGenerator.
+                            generateID(ID_PREFIX_DEFS));
+        return defs;
+    }
+
+    /**
+     * Enforces that the default and xlink namespace declarations
+     * appear on the root element.
+     */
+    void setNamespaceAttributes(Element svgRoot) {
+        svgRoot.setAttributeNS(XMLNS_NAMESPACE_URI,
+                               XMLNS_PREFIX,
+                               SVG_NAMESPACE_URI);
+
+        svgRoot.setAttributeNS(XMLNS_NAMESPACE_URI,
+                               XMLNS_PREFIX + ":" + XLINK_PREFIX,
+                               XLINK_NAMESPACE_URI);
     }
 
     public void applyDefaultRenderingStyle(Element element) {
@@ -321,7 +613,8 @@ public class DOMTreeManager implements SVGSyntax, ErrorConstants {
     /**
      * Invoking this method will return a set of definition element that
      * contain all the definitions referenced by the attributes generated by
-     * the various converters. This also resets the converters.
+     * the various converters. This also resets the converters, and the
+     * style sheet of a {@link ClassStyleHandler}.
      */
     public List getDefinitionSet(){
         //
@@ -335,6 +628,14 @@ public class DOMTreeManager implements SVGSyntax, ErrorConstants {
             defSet.addAll(otherDefs);
             otherDefs = null;
         }
+        if (generatorContext.styleHandler instanceof ClassStyleHandler) {
+            ClassStyleHandler classHandler =
+                (ClassStyleHandler)generatorContext.styleHandler;
+            Element style = classHandler.getStyleSheet(0, generatorContext);
+            if (style != null)
+                defSet.add(0, style);
+            classHandler.reset();
+        }
 
         // Build new converters
         filterConverter = new SVGBufferedImageOp(generatorContext);
@@ -96,11 +96,11 @@ public class SVGBasicStroke extends AbstractSVGConverter{
     private final String dashArrayToSVG(float[] dashArray){
         StringBuffer dashArrayBuf = new StringBuffer( dashArray.length * 8 );
         if(dashArray.length > 0)
-            dashArrayBuf.append(doubleString(dashArray[0]));
+            appendDouble(dashArrayBuf, dashArray[0]);
 
         for(int i=1; i<dashArray.length; i++){
             dashArrayBuf.append(COMMA);
-            dashArrayBuf.append(doubleString(dashArray[i]));
+            appendDouble(dashArrayBuf, dashArray[i]);
         }
 
         return dashArrayBuf.toString();
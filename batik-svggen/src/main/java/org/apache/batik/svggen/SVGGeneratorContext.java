@@ -28,6 +28,7 @@ import java.awt.Stroke;
 
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.text.FieldPosition;
 
 import java.util.Locale;
 
@@ -432,7 +433,65 @@ public class SVGGeneratorContext implements ErrorConstants {
         }
         // under 10e-3 we have to put decimals
         else {
-            return decimalFormat.format(value);
+            StringBuffer sb = new StringBuffer(16);
+            appendDecimal(sb, value);
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Appends the input double value to <code>sb</code>, as
+     * {@link #doubleString(double)} converts it but without creating
+     * any intermediate object.
+     */
+    public final void appendDouble(StringBuffer sb, double value) {
+        double absvalue = Math.abs(value);
+        if (absvalue >= 10e7 || (int)value == value) {
+            sb.append((int)value);
+        } else {
+            appendDecimal(sb, value);
+        }
+    }
+
+    /**
+     * Appends a value that is not an integer, rounded half even to
+     * <code>precision</code> decimal places with the trailing zeros
+     * removed, like <code>decimalFormat</code> does.
+     */
+    private void appendDecimal(StringBuffer sb, double value) {
+        // The scaled value is within half an ulp of the exact one, so
+        // its rounding is the exact one unless it is close to a tie.
+        // Ties, large values and NaN go through decimalFormat.
+        double x = Math.abs(value) * doublePowersOfTen[precision];
+        if (x < 0x1p52) {
+            double floor = Math.floor(x);
+            double frac = x - floor;
+            if (Math.abs(frac - 0.5) > x * 0x1p-52) {
+                long n = (long)floor;
+                if (frac > 0.5)
+                    n++;
+                if (value < 0)
+                    sb.append('-');
+                long pow = longPowersOfTen[precision];
+                sb.append(n / pow);
+                long fraction = n % pow;
+                if (fraction != 0) {
+                    int digits = precision;
+                    while (fraction % 10 == 0) {
+                        fraction /= 10;
+                        digits--;
+                    }
+                    sb.append('.');
+                    for (long d = longPowersOfTen[digits-1]; d > 0; d /= 10) {
+                        sb.append((char)('0' + fraction / d));
+                        fraction %= d;
+                    }
+                }
+                return;
+            }
+        }
+        synchronized (decimalFormat) {
+            decimalFormat.format(value, sb, new FieldPosition(0));
         }
     }
 
@@ -441,7 +500,20 @@ public class SVGGeneratorContext implements ErrorConstants {
 
     protected static DecimalFormat[] decimalFormats = new DecimalFormat[13];
 
+    protected static double[] doublePowersOfTen
+        = new double[decimalFormats.length];
+
+    protected static long[] longPowersOfTen
+        = new long[decimalFormats.length];
+
     static {
+        doublePowersOfTen[0] = 1;
+        longPowersOfTen[0] = 1;
+        for (int i=1; i<decimalFormats.length; i++) {
+            doublePowersOfTen[i] = doublePowersOfTen[i-1] * 10;
+            longPowersOfTen[i] = longPowersOfTen[i-1] * 10;
+        }
+
         decimalFormats[0] = new DecimalFormat("#", dsf);
 
         String format = "#.";
@@ -77,6 +77,11 @@ import org.w3c.dom.Node;
  * The various graphic context attributes (e.g., AffineTransform,
  * Paint) are managed by a GraphicContext object.
  *
+ * For drawings with a very large number of elements, the SVG content
+ * can instead be written while it is drawn, see the startStream
+ * method: the memory used then does not grow with the number of
+ * elements.
+ *
  *
  * @author <a href="mailto:vincent.hardy@eng.sun.com">Vincent Hardy</a>
  * @version $Id$
@@ -510,6 +515,60 @@ public class SVGGraphics2D extends AbstractGraphics2D
         }
     }
 
+    /**
+     * Starts writing the SVG content to <code>writer</code> as it is
+     * drawn, rather than building the whole tree in memory.  Each
+     * group of elements is written as soon as the next one starts, and
+     * the definitions it uses are written before it.  The document is
+     * completed by {@link #endStream()}.  The SVG canvas size must be
+     * set before, and the tree must not be accessed through
+     * getRoot or getTopLevelGroup until the stream ends.
+     *
+     * @param writer used to write out the SVG content
+     * @param useCss defines whether the output SVG should use CSS
+     * style properties as opposed to plain attributes.
+     * @param escaped defines if the characters will be escaped
+     * @see DOMTreeManager#startStream
+     */
+    public void startStream(Writer writer, boolean useCss, boolean escaped)
+        throws SVGGraphics2DIOException {
+        Element svgRoot = getDOMFactory().
+            createElementNS(SVG_NAMESPACE_URI, SVG_SVG_TAG);
+        if (svgCanvasSize != null){
+            svgRoot.setAttributeNS(null, SVG_WIDTH_ATTRIBUTE,  String.valueOf( svgCanvasSize.width ) );
+            svgRoot.setAttributeNS(null, SVG_HEIGHT_ATTRIBUTE, String.valueOf( svgCanvasSize.height) );
+        }
+        domTreeManager.startStream(svgRoot, writer, useCss, escaped);
+    }
+
+    /**
+     * @param writer used to write out the SVG content
+     * @see #startStream(Writer, boolean, boolean)
+     */
+    public void startStream(Writer writer) throws SVGGraphics2DIOException {
+        startStream(writer, false, false);
+    }
+
+    /**
+     * Writes the rest of the SVG content started with
+     * {@link #startStream(Writer, boolean, boolean)} and flushes the
+     * writer.
+     */
+    public void endStream() throws SVGGraphics2DIOException {
+        try {
+            domTreeManager.endStream();
+        } catch (SVGGraphics2DIOException e) {
+            generatorCtx.errorHandler.handleError(e);
+        }
+    }
+
+    /**
+     * Returns whether the SVG content is written as it is drawn.
+     */
+    public boolean isStreaming() {
+        return domTreeManager.isStreaming();
+    }
+
     /**
      * Invoking this method will return a set of definition element that
      * contain all the definitions referenced by the attributes generated by
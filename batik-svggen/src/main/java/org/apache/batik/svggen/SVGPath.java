@@ -137,9 +137,9 @@ public class SVGPath extends SVGGraphicObjectConverter {
      * Appends a coordinate to the path data
      */
     private static void appendPoint(StringBuffer d, float x, float y, SVGGeneratorContext gc) {
-        d.append(gc.doubleString(x));
+        gc.appendDouble(d, x);
         d.append(SPACE);
-        d.append(gc.doubleString(y));
+        gc.appendDouble(d, y);
         d.append(SPACE);
     }
 }
@@ -78,9 +78,9 @@ public class SVGPolygon extends SVGGraphicObjectConverter {
      *  Appends a coordinate to the path data
      */
     private void appendPoint(StringBuffer points, float x, float y){
-        points.append(doubleString(x));
+        appendDouble(points, x);
         points.append(SPACE);
-        points.append(doubleString(y));
+        appendDouble(points, y);
         points.append(SPACE);
     }
 }
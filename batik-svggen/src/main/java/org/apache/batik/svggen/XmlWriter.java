@@ -360,9 +360,10 @@ class XmlWriter implements SVGConstants {
         out.write ("]]>");
     }
 
-    private static void writeXml(Element element, IndentWriter out,
-                                 boolean escaped)
-        throws IOException, SVGGraphics2DIOException {
+    private static void writeTagAndAttributes(Element element,
+                                              IndentWriter out,
+                                              boolean escaped)
+        throws IOException {
         out.write (TAG_START, 0, 1);    // "<"
         out.write (element.getTagName());
 
@@ -375,6 +376,12 @@ class XmlWriter implements SVGConstants {
                 writeXml(attr, out, escaped);
             }
         }
+    }
+
+    private static void writeXml(Element element, IndentWriter out,
+                                 boolean escaped)
+        throws IOException, SVGGraphics2DIOException {
+        writeTagAndAttributes(element, out, escaped);
 
         boolean lastElem = (element.getParentNode().getLastChild()==element);
 
@@ -468,6 +475,74 @@ class XmlWriter implements SVGConstants {
         }
     }
 
+    /**
+     * Writes the document header and the start tag of
+     * <code>root</code>, whose children are then written one at a time
+     * with {@link #writeXml(Node,Writer,boolean)}, or with
+     * {@link #writeStartTag} and {@link #writeEndTag} for the ones
+     * that are themselves streamed.  The output is the same as the
+     * one of writing a document fragment holding <code>root</code>.
+     */
+    static void writeDocumentStart(Element root, IndentWriter out,
+                                   boolean escaped)
+        throws SVGGraphics2DIOException {
+        try {
+            writeDocumentHeader(out);
+        } catch (IOException io) {
+            throw new SVGGraphics2DIOException(io);
+        }
+        writeStartTag(root, out, escaped);
+    }
+
+    /**
+     * Writes the end tag of the document root.
+     */
+    static void writeDocumentEnd(Element root, IndentWriter out)
+        throws SVGGraphics2DIOException {
+        writeEndTag(root, out);
+        try {
+            out.write(EOL);
+        } catch (IOException io) {
+            throw new SVGGraphics2DIOException(io);
+        }
+    }
+
+    /**
+     * Writes the start tag of an element whose children are written
+     * separately.
+     */
+    static void writeStartTag(Element element, IndentWriter out,
+                              boolean escaped)
+        throws SVGGraphics2DIOException {
+        try {
+            writeTagAndAttributes(element, out, escaped);
+            out.printIndent ();
+            out.write(TAG_END, 1, 1);   // ">"
+            out.setIndentLevel(out.getIndentLevel()+2);
+        } catch (IOException io) {
+            throw new SVGGraphics2DIOException(io);
+        }
+    }
+
+    /**
+     * Writes the end tag of an element whose start tag was written
+     * with {@link #writeStartTag}.
+     */
+    static void writeEndTag(Element element, IndentWriter out)
+        throws SVGGraphics2DIOException {
+        try {
+            out.write (TAG_START, 0, 2);        // "</"
+            out.write (element.getTagName());
+            Node parent = element.getParentNode();
+            if ((parent == null) || (parent.getLastChild() == element))
+                out.setIndentLevel(out.getIndentLevel()-2);
+            out.printIndent ();
+            out.write (TAG_END, 1, 1);  // ">"
+        } catch (IOException io) {
+            throw new SVGGraphics2DIOException(io);
+        }
+    }
+
     static String java2std(String encodingName) {
         if (encodingName == null)
             return null;
@@ -516,6 +516,16 @@ public class Main implements SVGConverterController {
     public static String CL_OPTION_SECURITY_OFF_DESCRIPTION
         = Messages.get("Main.cl.option.security.off.description", "No description");
 
+    /**
+     * Option to specify the number of threads the files are
+     * converted on
+     */
+    public static String CL_OPTION_THREADS
+        = Messages.get("Main.cl.option.threads", "-threads");
+
+    public static String CL_OPTION_THREADS_DESCRIPTION
+        = Messages.get("Main.cl.option.threads.description", "No description");
+
     /**
      * Static map containing all the option handlers able to analyze the
      * various options.
@@ -836,6 +846,23 @@ public class Main implements SVGConverterController {
                           }
                       });
 
+        optionMap.put(CL_OPTION_THREADS,
+                      new FloatOptionHandler(){
+                              public void handleOption(float optionValue,
+                                                       SVGConverter c){
+                                  if (optionValue < 0 ||
+                                      optionValue != (int)optionValue){
+                                      throw new IllegalArgumentException();
+                                  }
+
+                                  c.setThreads((int)optionValue);
+                              }
+
+                              public String getOptionDescription(){
+                                  return CL_OPTION_THREADS_DESCRIPTION;
+                              }
+                          });
+
         optionMap.put(CL_OPTION_BLOCK_EXTERNAL_RESOURCES,
                 new NoValueOptionHandler(){
                     public void handleOption(SVGConverter c){
@@ -952,6 +979,7 @@ public class Main implements SVGConverterController {
 
         try {
             c.execute();
+            printStatistics(c.getStatistics());
         } catch(SVGConverterException e){
             error(ERROR_WHILE_CONVERTING_FILES,
                   new Object[] { e.getMessage() });
@@ -961,6 +989,25 @@ public class Main implements SVGConverterController {
         }
     }
 
+    /**
+     * Prints the timings of a run which transcoded more than one file.
+     */
+    protected void printStatistics(SVGConverterStatistics s){
+        if (s.getFileCount() < 2){
+            return;
+        }
+        System.out.println(Messages.formatMessage
+                           (MESSAGE_CONVERSION_SUMMARY,
+                            new Object[]{ s.getFileCount(),
+                                          s.getFailureCount(),
+                                          s.getElapsedTime(),
+                                          s.getThroughput(),
+                                          s.getMinTime(),
+                                          s.getAverageTime(),
+                                          s.getPercentileTime(95),
+                                          s.getMaxTime() }));
+    }
+
     protected String toString( String[] v){
         StringBuffer sb = new StringBuffer();
         int n = v != null ? v.length:0;
@@ -1023,6 +1070,9 @@ public class Main implements SVGConverterController {
     public static final String MESSAGE_CONVERSION_SUCCESS
         = "Main.message.conversion.success";
 
+    public static final String MESSAGE_CONVERSION_SUMMARY
+        = "Main.message.conversion.summary";
+
     public boolean proceedWithComputedTask(Transcoder transcoder,
                                            Map hints,
                                            List sources,
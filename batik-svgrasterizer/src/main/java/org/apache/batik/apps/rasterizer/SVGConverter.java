@@ -20,6 +20,7 @@ package org.apache.batik.apps.rasterizer;
 
 import java.awt.Color;
 import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileNotFoundException;
@@ -32,7 +33,14 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
-
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.batik.transcoder.ErrorHandler;
 import org.apache.batik.transcoder.Transcoder;
 import org.apache.batik.transcoder.TranscoderInput;
 import org.apache.batik.transcoder.TranscoderOutput;
@@ -92,6 +100,15 @@ import org.apache.batik.util.ParsedURL;
  *     to use when processing the SVG documents.</li>
  * </ul>
  *
+ * <hr>
+ *
+ * The sources are converted one after the other unless a number of
+ * threads is set with <code>setThreads</code>, in which case they are
+ * transcoded on a pool of worker threads.  Either way the
+ * <code>SVGConverterController</code> is only called from the thread
+ * running <code>execute</code> and sees the sources in order, and the
+ * timings of the run are available from <code>getStatistics</code>.
+ *
  * @version $Id$
  * @author <a href="mailto:Henri.Ruini@nokia.com">Henri Ruini</a>
  * @author <a href="mailto:vhardy@apache.org">Vincent Hardy</a>
@@ -249,6 +266,12 @@ public class SVGConverter {
     /** Set of allowed script types. */
     protected String allowedScriptTypes = null;
 
+    /** Number of threads the sources are transcoded on */
+    protected int threads = 1;
+
+    /** Timings of the last run */
+    protected SVGConverterStatistics statistics = new SVGConverterStatistics();
+
     /** Controls whether scripts can only have the same origin as
         the document which references them. */
     protected boolean constrainScriptOrigin = true;
@@ -651,6 +674,30 @@ public class SVGConverter {
         return securityOff;
     }
 
+    /**
+     * Sets the number of threads the sources are transcoded on.
+     * 0 means one thread per available processor.  With more than
+     * one thread, the transcoded images are kept in memory until
+     * they are written, in the order of the sources.
+     */
+    public void setThreads(int threads) throws IllegalArgumentException {
+        if (threads < 0) {
+            throw new IllegalArgumentException("" + threads);
+        }
+        this.threads = threads;
+    }
+
+    public int getThreads(){
+        return threads;
+    }
+
+    /**
+     * Returns the timings of the last call to <code>execute</code>.
+     */
+    public SVGConverterStatistics getStatistics(){
+        return statistics;
+    }
+
     /**
      * Returns true if f is a File. <code>f</code> is found to be a file if
      * it exists and is a file. If it does not exist, it is declared
@@ -708,15 +755,179 @@ public class SVGConverter {
             return;
         }
 
-        // Convert files one by one
-        for(int i = 0 ; i < sources.size() ; i++) {
-            // Get the file from the vector.
-            SVGConverterSource currentFile
-                = (SVGConverterSource)sources.get(i);
-            File outputFile  = (File)dstFiles.get(i);
+        int nThreads = threads;
+        if (nThreads == 0) {
+            nThreads = Runtime.getRuntime().availableProcessors();
+        }
+        nThreads = Math.min(nThreads, sources.size());
+
+        statistics = new SVGConverterStatistics();
+        long start = System.nanoTime();
+        try {
+            if (nThreads > 1) {
+                executeInParallel(sources, dstFiles, transcoder, nThreads);
+                return;
+            }
+
+            // Convert files one by one
+            for(int i = 0 ; i < sources.size() ; i++) {
+                // Get the file from the vector.
+                SVGConverterSource currentFile
+                    = (SVGConverterSource)sources.get(i);
+                File outputFile  = (File)dstFiles.get(i);
+
+                createOutputDir(outputFile);
+                transcode(currentFile, outputFile, transcoder);
+            }
+        } finally {
+            statistics.setElapsedTime(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Converts <code>sources</code> on <code>nThreads</code> worker
+     * threads.  Each source gets its own transcoder, set up like
+     * <code>transcoder</code>, and is transcoded into memory.  The
+     * calling thread asks the controller about each source and checks
+     * it can be read before handing it to a worker, so a source that
+     * is skipped or fails these checks is never transcoded.  The
+     * results are then written in the order of the sources on the
+     * calling thread.  At most two sources per thread are accepted
+     * ahead of the one being written, so the controller may be asked
+     * about a source before the result of an earlier one is reported.
+     */
+    protected void executeInParallel(List sources,
+                                     List dstFiles,
+                                     Transcoder transcoder,
+                                     int nThreads)
+        throws SVGConverterException {
+        Map hints = transcoder.getTranscodingHints();
+        ErrorHandler errorHandler = transcoder.getErrorHandler();
+
+        int n = sources.size();
+        int ahead = 2 * nThreads;
+        LinkedList pending = new LinkedList();
+        Future[] results = new Future[n];
+        SVGConverterException[] errors = new SVGConverterException[n];
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            int next = 0;
+            for (;;) {
+                while (next < n && pending.size() < ahead) {
+                    SVGConverterSource source
+                        = (SVGConverterSource)sources.get(next);
+                    File outputFile = (File)dstFiles.get(next);
+                    if (controller.proceedWithSourceTranscoding(source,
+                                                                outputFile)) {
+                        Transcoder t = createTranscoder(hints, errorHandler);
+                        try {
+                            checkSource(source, outputFile);
+                            results[next] = executor.submit
+                                (new TranscodeTask(t, source));
+                        } catch (SVGConverterException e) {
+                            // Reported in order with the other results.
+                            errors[next] = e;
+                        }
+                        pending.add(Integer.valueOf(next));
+                    }
+                    next++;
+                }
+                if (pending.isEmpty()) {
+                    break;
+                }
+
+                int i = ((Integer)pending.removeFirst()).intValue();
+                SVGConverterSource currentFile
+                    = (SVGConverterSource)sources.get(i);
+                File outputFile = (File)dstFiles.get(i);
+                if (errors[i] != null) {
+                    SVGConverterException e = errors[i];
+                    errors[i] = null;
+                    handleSourceFailure(currentFile, outputFile, e);
+                    continue;
+                }
+
+                TranscodeTask.Result result;
+                try {
+                    result = (TranscodeTask.Result)results[i].get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SVGConverterException
+                        (ERROR_WHILE_RASTERIZING_FILE,
+                         new Object[] {outputFile.getName(), e.toString()},
+                         true /* fatal error */);
+                } catch (ExecutionException e) {
+                    Throwable t = e.getCause();
+                    if (t instanceof Error) {
+                        throw (Error)t;
+                    }
+                    result = new TranscodeTask.Result();
+                    result.error = (Exception)t;
+                }
+                results[i] = null;
+
+                createOutputDir(outputFile);
+                transcode(currentFile, outputFile, result);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates a new transcoder of the destination type, with the given
+     * hints and error handler.
+     */
+    protected Transcoder createTranscoder(Map hints,
+                                          ErrorHandler errorHandler)
+        throws SVGConverterException {
+        Transcoder t = destinationType.getTranscoder();
+        if (t == null) {
+            throw new SVGConverterException(ERROR_CANNOT_ACCESS_TRANSCODER,
+                                             new Object[]{destinationType.toString()},
+                                             true /* fatal error */);
+        }
+        t.setTranscodingHints(hints);
+        t.setErrorHandler(errorHandler);
+        return t;
+    }
+
+    /**
+     * Transcodes one source into memory on a worker thread.
+     */
+    protected static class TranscodeTask implements Callable {
+
+        /**
+         * The outcome of a <code>TranscodeTask</code>.
+         */
+        protected static class Result {
+            protected byte[] data;
+            protected Exception error;
+            protected long time;
+        }
+
+        protected Transcoder transcoder;
+        protected SVGConverterSource source;
 
-            createOutputDir(outputFile);
-            transcode(currentFile, outputFile, transcoder);
+        public TranscodeTask(Transcoder transcoder,
+                             SVGConverterSource source) {
+            this.transcoder = transcoder;
+            this.source = source;
+        }
+
+        public Object call() {
+            Result result = new Result();
+            long t0 = System.nanoTime();
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                transcoder.transcode(new TranscoderInput(source.getURI()),
+                                     new TranscoderOutput(out));
+                result.data = out.toByteArray();
+            } catch (Exception e) {
+                result.error = e;
+            }
+            result.time = System.nanoTime() - t0;
+            return result;
         }
     }
 
@@ -946,38 +1157,45 @@ public class SVGConverter {
                              File outputFile,
                              Transcoder transcoder)
         throws SVGConverterException {
-        TranscoderInput input = null;
-        TranscoderOutput output = null;
-        OutputStream outputStream = null;
-
         if (!controller.proceedWithSourceTranscoding(inputFile,
                                                      outputFile)){
             return;
         }
 
         try {
-            if (inputFile.isSameAs(outputFile.getPath())) {
-                throw new SVGConverterException(ERROR_SOURCE_SAME_AS_DESTINATION,
-                                                 true /* fatal error */);
-            }
+            checkSource(inputFile, outputFile);
+        } catch(SVGConverterException e){
+            handleSourceFailure(inputFile, outputFile, e);
+            return;
+        }
 
-            // Compute transcoder input.
-            if (!inputFile.isReadable()) {
-                throw new SVGConverterException(ERROR_CANNOT_READ_SOURCE,
-                                                 new Object[]{inputFile.getName()});
-            }
+        transcode(inputFile, outputFile, transcoder, null);
+    }
 
-            try {
-                InputStream in = inputFile.openStream();
-                in.close();
-            } catch(IOException ioe) {
-                throw new SVGConverterException(ERROR_CANNOT_OPEN_SOURCE,
-                                                 new Object[] {inputFile.getName(),
-                                                               ioe.toString()});
-                                                               }
+    /**
+     * Writes the image a <code>TranscodeTask</code> produced for
+     * <code>inputFile</code> to <code>outputFile</code>, reporting to
+     * the controller as <code>transcode</code> does.  The controller
+     * must already have accepted <code>inputFile</code>, and
+     * <code>checkSource</code> passed for it.
+     */
+    protected void transcode(SVGConverterSource inputFile,
+                             File outputFile,
+                             TranscodeTask.Result result)
+        throws SVGConverterException {
+        transcode(inputFile, outputFile, null, result);
+    }
 
-            input = new TranscoderInput(inputFile.getURI());
+    private void transcode(SVGConverterSource inputFile,
+                           File outputFile,
+                           Transcoder transcoder,
+                           TranscodeTask.Result result)
+        throws SVGConverterException {
+        TranscoderInput input = new TranscoderInput(inputFile.getURI());
+        TranscoderOutput output = null;
+        OutputStream outputStream = null;
 
+        try {
             // Compute transcoder output.
             if (!isWriteable(outputFile)) {
                 throw new SVGConverterException(ERROR_OUTPUT_NOT_WRITEABLE,
@@ -992,22 +1210,26 @@ public class SVGConverter {
 
             output = new TranscoderOutput(outputStream);
         } catch(SVGConverterException e){
-            boolean proceed = controller.proceedOnSourceTranscodingFailure
-                (inputFile, outputFile, e.getErrorCode());
-            if (proceed){
-                e.printStackTrace();
-                return;
-            } else {
-                throw e;
-            }
+            handleSourceFailure(inputFile, outputFile, e);
+            return;
         }
 
         // Transcode now
         boolean success = false;
+        long t0 = System.nanoTime();
         try {
-            transcoder.transcode(input, output);
+            if (result == null) {
+                transcoder.transcode(input, output);
+            } else {
+                t0 -= result.time;
+                if (result.error != null) {
+                    throw result.error;
+                }
+                outputStream.write(result.data);
+            }
             success = true;
         } catch(Exception te) {
+            statistics.addFile(System.nanoTime() - t0, false);
             te.printStackTrace();
             try {
                 outputStream.flush();
@@ -1035,10 +1257,55 @@ public class SVGConverter {
         }
 
         if (success){
+            statistics.addFile(System.nanoTime() - t0, true);
             controller.onSourceTranscodingSuccess(inputFile, outputFile);
         }
     }
 
+    /**
+     * Checks that <code>inputFile</code> can be read and is not
+     * <code>outputFile</code>.
+     */
+    protected void checkSource(SVGConverterSource inputFile,
+                               File outputFile)
+        throws SVGConverterException {
+        if (inputFile.isSameAs(outputFile.getPath())) {
+            throw new SVGConverterException(ERROR_SOURCE_SAME_AS_DESTINATION,
+                                             true /* fatal error */);
+        }
+
+        if (!inputFile.isReadable()) {
+            throw new SVGConverterException(ERROR_CANNOT_READ_SOURCE,
+                                             new Object[]{inputFile.getName()});
+        }
+
+        try {
+            InputStream in = inputFile.openStream();
+            in.close();
+        } catch(IOException ioe) {
+            throw new SVGConverterException(ERROR_CANNOT_OPEN_SOURCE,
+                                             new Object[] {inputFile.getName(),
+                                                           ioe.toString()});
+        }
+    }
+
+    /**
+     * Reports a failure to the controller and throws <code>e</code>
+     * if it decides to stop.
+     */
+    private void handleSourceFailure(SVGConverterSource inputFile,
+                                     File outputFile,
+                                     SVGConverterException e)
+        throws SVGConverterException {
+        boolean proceed = controller.proceedOnSourceTranscodingFailure
+            (inputFile, outputFile, e.getErrorCode());
+        if (proceed){
+            e.printStackTrace();
+        } else {
+            throw e;
+        }
+    }
+
     /**
      * Get the name of the result image file.
      *
@@ -0,0 +1,151 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.apps.rasterizer;
+
+import java.util.Arrays;
+
+/**
+ * Timings of the files converted by one run of an
+ * <code>SVGConverter</code>.
+ *
+ * Only the sources that were actually transcoded are accounted for,
+ * sources skipped by the <code>SVGConverterController</code> or
+ * rejected before transcoding (unreadable source, unwritable
+ * destination...) are not.
+ *
+ * @version $Id$
+ */
+public class SVGConverterStatistics {
+
+    /**
+     * The transcoding time of each file, in nanoseconds.
+     */
+    protected long[] times = new long[16];
+
+    protected int count;
+    protected int failures;
+
+    /**
+     * The wall clock time of the whole run, in nanoseconds.
+     */
+    protected long elapsed;
+
+    /**
+     * Records a file that took <code>time</code> nanoseconds to
+     * transcode.
+     */
+    public synchronized void addFile(long time, boolean success) {
+        if (count == times.length) {
+            long[] t = new long[count * 2];
+            System.arraycopy(times, 0, t, 0, count);
+            times = t;
+        }
+        times[count++] = time;
+        if (!success) {
+            failures++;
+        }
+    }
+
+    /**
+     * Sets the wall clock time of the whole run, in nanoseconds.
+     */
+    public synchronized void setElapsedTime(long elapsed) {
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * Returns the number of files transcoded, including the ones that
+     * failed.
+     */
+    public synchronized int getFileCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of files that failed to transcode.
+     */
+    public synchronized int getFailureCount() {
+        return failures;
+    }
+
+    /**
+     * Returns the wall clock time of the whole run, in milliseconds.
+     */
+    public synchronized double getElapsedTime() {
+        return elapsed / 1e6;
+    }
+
+    /**
+     * Returns the number of files transcoded per second.
+     */
+    public synchronized double getThroughput() {
+        if (elapsed <= 0) return 0;
+        return count * 1e9 / elapsed;
+    }
+
+    /**
+     * Returns the shortest time taken by a file, in milliseconds.
+     */
+    public synchronized double getMinTime() {
+        if (count == 0) return 0;
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, times[i]);
+        }
+        return min / 1e6;
+    }
+
+    /**
+     * Returns the longest time taken by a file, in milliseconds.
+     */
+    public synchronized double getMaxTime() {
+        long max = 0;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, times[i]);
+        }
+        return max / 1e6;
+    }
+
+    /**
+     * Returns the average time taken by a file, in milliseconds.
+     */
+    public synchronized double getAverageTime() {
+        if (count == 0) return 0;
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += times[i];
+        }
+        return sum / (count * 1e6);
+    }
+
+    /**
+     * Returns the time, in milliseconds, within which
+     * <code>percent</code> percent of the files were transcoded.
+     */
+    public synchronized double getPercentileTime(double percent) {
+        if (count == 0) return 0;
+        long[] t = new long[count];
+        System.arraycopy(times, 0, t, 0, count);
+        Arrays.sort(t);
+        int i = (int)Math.ceil(percent / 100 * count) - 1;
+        if (i < 0) i = 0;
+        if (i >= count) i = count - 1;
+        return t[i] / 1e6;
+    }
+}
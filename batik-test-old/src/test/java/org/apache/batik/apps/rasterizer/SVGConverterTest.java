@@ -415,6 +415,28 @@ public class SVGConverterTest extends DefaultTestSuite {
         addTest(t);
         t.setId("OutputTest.reference");
 
+        // Several files on several threads
+        t = new ParallelConverterOutputTest
+            (new String[] { "samples/anne.svg",
+                            "test-resources/org/apache/batik/apps/rasterizer/invalidSVG.svg",
+                            "samples/batikFX.svg",
+                            "samples/tests/spec/styling/smiley.svg",
+                            "samples/gradients.svg" },
+             3);
+        addTest(t);
+        t.setId("OutputTest.parallel");
+
+        // Sources the controller rejects are not transcoded ahead
+        t = new ParallelConverterOutputTest
+            (new String[] { "samples/anne.svg",
+                            "test-resources/org/apache/batik/apps/rasterizer/invalidSVG.svg",
+                            "samples/batikFX.svg",
+                            "samples/tests/spec/styling/smiley.svg",
+                            "samples/gradients.svg" },
+             3, "batikFX.svg");
+        addTest(t);
+        t.setId("OutputTest.parallelRejected");
+
     }
 }
 
@@ -1089,3 +1111,170 @@ class ConverterOutputTest extends AbstractTest {
         return r;
     }
 }
+
+/**
+ * Converts a set of files on one thread and then on several threads,
+ * and checks that the controller is asked about the same sources and
+ * sees the same outcomes in the same order, and that the same images
+ * are produced.  If a source is rejected by the controller, checks
+ * that it is never read.
+ */
+class ParallelConverterOutputTest extends AbstractTest
+    implements SVGConverterController {
+    String[] sources;
+    int threads;
+    String rejected;
+    List starts;
+    List events;
+    Set touched;
+
+    public ParallelConverterOutputTest(String[] sources, int threads){
+        this(sources, threads, null);
+    }
+
+    public ParallelConverterOutputTest(String[] sources, int threads,
+                                       String rejected){
+        this.sources = sources;
+        this.threads = threads;
+        this.rejected = rejected;
+    }
+
+    public TestReport runImpl() throws Exception {
+        String dir = rejected == null ? "parallel" : "parallelRejected";
+        File serialDir = new File("test-reports/" + dir + "/serial");
+        File parallelDir = new File("test-reports/" + dir + "/threads");
+
+        List serialEvents = convert(serialDir, 1);
+        List serialStarts = starts;
+        if (rejected != null && touched.contains(rejected)){
+            return reportError("Rejected source read on one thread");
+        }
+        List parallelEvents = convert(parallelDir, threads);
+        if (rejected != null && touched.contains(rejected)){
+            return reportError("Rejected source read on several threads");
+        }
+
+        if (!serialStarts.equals(starts)){
+            TestReport report = reportError("unexpected.controller.events");
+            report.addDescriptionEntry("expected.events", serialStarts.toString());
+            report.addDescriptionEntry("got.events", starts.toString());
+            return report;
+        }
+        if (!serialEvents.equals(parallelEvents)){
+            TestReport report = reportError("unexpected.controller.events");
+            report.addDescriptionEntry("expected.events", serialEvents.toString());
+            report.addDescriptionEntry("got.events", parallelEvents.toString());
+            return report;
+        }
+
+        for (String source : sources) {
+            String name = new File(source).getName();
+            name = name.substring(0, name.lastIndexOf('.')) + ".png";
+            File f1 = new File(serialDir, name);
+            File f2 = new File(parallelDir, name);
+            if (!f1.exists() || f1.length() == 0){
+                // File that failed to convert.
+                continue;
+            }
+            ImageCompareTest t = new ImageCompareTest(f1.getPath(),
+                                                      f2.getPath());
+            TestReport r = t.run();
+            if (!r.hasPassed()){
+                return r;
+            }
+        }
+        return reportSuccess();
+    }
+
+    protected List convert(File dst, int nThreads) throws Exception {
+        starts = new ArrayList();
+        events = new ArrayList();
+        touched = Collections.synchronizedSet(new HashSet());
+        SVGConverter c = new SVGConverter(this) {
+                protected List computeSources() throws SVGConverterException {
+                    List l = super.computeSources();
+                    for (int i = 0; i < l.size(); i++) {
+                        l.set(i, new TouchedSource
+                              ((SVGConverterSource)l.get(i), touched));
+                    }
+                    return l;
+                }
+            };
+        c.setSources(sources);
+        c.setDst(dst);
+        c.setThreads(nThreads);
+        c.execute();
+
+        SVGConverterStatistics s = c.getStatistics();
+        int n = sources.length;
+        if (rejected != null) {
+            n--;
+        }
+        assertEquals(n, s.getFileCount());
+        assertEquals(1, s.getFailureCount());
+        return events;
+    }
+
+    public boolean proceedWithComputedTask(Transcoder transcoder,
+                                           Map hints,
+                                           List sources,
+                                           List dest){
+        return true;
+    }
+
+    public boolean proceedWithSourceTranscoding(SVGConverterSource source,
+                                                File dest) {
+        starts.add(source.getName());
+        return !source.getName().equals(rejected);
+    }
+
+    public boolean proceedOnSourceTranscodingFailure(SVGConverterSource source,
+                                                     File dest,
+                                                     String errorCode){
+        events.add("failure " + source.getName() + " " + errorCode);
+        return true;
+    }
+
+    public void onSourceTranscodingSuccess(SVGConverterSource source,
+                                           File dest){
+        events.add("success " + source.getName());
+    }
+}
+
+/**
+ * A source that records the name of the source in a set when
+ * it is read or checked.
+ */
+class TouchedSource implements SVGConverterSource {
+    SVGConverterSource source;
+    Set touched;
+
+    public TouchedSource(SVGConverterSource source, Set touched){
+        this.source = source;
+        this.touched = touched;
+    }
+
+    public String getName(){
+        return source.getName();
+    }
+
+    public InputStream openStream() throws IOException {
+        touched.add(getName());
+        return source.openStream();
+    }
+
+    public boolean isSameAs(String srcStr){
+        touched.add(getName());
+        return source.isSameAs(srcStr);
+    }
+
+    public boolean isReadable(){
+        touched.add(getName());
+        return source.isReadable();
+    }
+
+    public String getURI(){
+        touched.add(getName());
+        return source.getURI();
+    }
+}
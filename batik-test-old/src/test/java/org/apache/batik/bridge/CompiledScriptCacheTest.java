@@ -0,0 +1,145 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.net.URL;
+import java.util.concurrent.Callable;
+
+import org.apache.batik.script.InterpreterException;
+import org.apache.batik.test.AbstractTest;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Checks that compiled scripts are shared between interpreters of the
+ * same document through a <code>CompiledScriptCache</code>, kept apart
+ * between documents, including documents without a URL, not kept when
+ * they fail to compile and evicted in least recently used order.
+ *
+ * @version $Id$
+ */
+public class CompiledScriptCacheTest extends AbstractTest {
+
+    public boolean runImplBasic() throws Exception {
+        return checkSharing() && checkNoURL() && checkEviction();
+    }
+
+    protected boolean checkSharing() throws Exception {
+        URL doc = new URL("file:/cached.svg");
+        CompiledScriptCache cache = new CompiledScriptCache();
+
+        RhinoInterpreter i1 = newInterpreter(doc, cache);
+        RhinoInterpreter i2 = newInterpreter(doc, cache);
+        RhinoInterpreter i3 = newInterpreter(new URL("file:/other.svg"),
+                                             cache);
+        String src = "var x = 20; x * 2 + 2";
+        if (((Number)i1.evaluate(src)).intValue() != 42)
+            return false;
+        if (((Number)i2.evaluate(src)).intValue() != 42)
+            return false;
+        if (cache.getMissCount() != 1 || cache.getHitCount() != 1)
+            return false;
+
+        // Another document does not get the compiled script.
+        i3.evaluate(src);
+        if (cache.getMissCount() != 2 || cache.getSize() != 2)
+            return false;
+
+        // Neither does another optimization level.
+        i2.setOptimizationLevel(-1);
+        i2.evaluate(src);
+        if (cache.getMissCount() != 3)
+            return false;
+
+        // Scripts that do not compile are not kept.
+        try {
+            i1.evaluate("var = ;");
+            return false;
+        } catch (InterpreterException ie) {
+        }
+        return cache.getSize() == 3;
+    }
+
+    protected boolean checkNoURL() throws Exception {
+        CompiledScriptCache shared = CompiledScriptCache.getDefaultCache();
+        long sharedMisses = shared.getMissCount();
+
+        RhinoInterpreter i1 = new RhinoInterpreter((URL)null);
+        RhinoInterpreter i2 = new RhinoInterpreter((URL)null);
+        if (i1.scriptCache == shared || i2.scriptCache == shared ||
+            i1.scriptCache == i2.scriptCache)
+            return false;
+
+        String src = "var y = 20; y * 2 + 2";
+        if (((Number)i1.evaluate(src)).intValue() != 42)
+            return false;
+        if (((Number)i2.evaluate(src)).intValue() != 42)
+            return false;
+        i1.evaluate(src);
+
+        // Each interpreter compiled the script and reused it itself.
+        if (i1.scriptCache.getMissCount() != 1 ||
+            i1.scriptCache.getHitCount() != 1 ||
+            i2.scriptCache.getMissCount() != 1 ||
+            i2.scriptCache.getHitCount() != 0)
+            return false;
+        return shared.getMissCount() == sharedMisses;
+    }
+
+    protected boolean checkEviction() {
+        CompiledScriptCache cache = new CompiledScriptCache(2);
+        final int[] compiles = new int[1];
+        Callable compiler = new Callable() {
+                public Object call() {
+                    compiles[0]++;
+                    return new Script() {
+                            public Object exec(Context cx, Scriptable s) {
+                                return null;
+                            }
+                        };
+                }
+            };
+
+        Script a = cache.getScript("a", "test", null, 0, compiler);
+        cache.getScript("b", "test", null, 0, compiler);
+        if (cache.getScript("a", "test", null, 0, compiler) != a)
+            return false;
+        cache.getScript("c", "test", null, 0, compiler);
+
+        // 'b' was the least recently used script.
+        if (!cache.isPresent("a", "test", null, 0) ||
+            cache.isPresent("b", "test", null, 0) ||
+            !cache.isPresent("c", "test", null, 0))
+            return false;
+        if (compiles[0] != 3 || cache.getEvictionCount() != 1)
+            return false;
+
+        cache.setMaxScripts(1);
+        return cache.getSize() == 1 && cache.getEvictionCount() == 2;
+    }
+
+    protected RhinoInterpreter newInterpreter(URL doc,
+                                              CompiledScriptCache cache) {
+        RhinoInterpreter ret = new RhinoInterpreter(doc);
+        ret.scriptCache = cache;
+        return ret;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.batik.test.AbstractTest;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Checks that documents loaded through a shared
+ * <code>DocumentCache</code> are reused across document loaders,
+ * copied rather than shared, reloaded when their file changes and
+ * evicted by node count.
+ *
+ * @version $Id$
+ */
+public class DocumentCacheTest extends AbstractTest {
+
+    protected static final String SPRITES =
+        "<svg xmlns=\"http://www.w3.org/2000/svg\">\n" +
+        "  <circle id=\"dot\" r=\"5\"/>\n" +
+        "  <rect id=\"box\" width=\"10\" height=\"10\"/>\n" +
+        "</svg>\n";
+
+    public boolean runImplBasic() throws Exception {
+        File f = File.createTempFile("sprites", ".svg");
+        try {
+            write(f, SPRITES);
+            String uri = f.toURI().toURL().toString();
+
+            DocumentCache cache = new DocumentCache();
+            Document d1 = newLoader(cache).loadDocument(uri + "#dot");
+            DocumentLoader dl = newLoader(cache);
+            Document d2 = dl.loadDocument(uri + "#dot");
+            if (cache.getMissCount() != 1 || cache.getHitCount() != 1)
+                return false;
+            if (d1 == d2)
+                return false;
+
+            Element dot = d2.getElementById("dot");
+            if (dot == null || dot == d1.getElementById("dot"))
+                return false;
+            if (dl.getLineNumber(dot) != 2)
+                return false;
+
+            // Modifying a copy must not affect the cache.
+            dot.setAttributeNS(null, "r", "7");
+            Document d3 = newLoader(cache).loadDocument(uri);
+            if (!"5".equals(d3.getElementById("dot").getAttributeNS(null, "r")))
+                return false;
+
+            // A modified file is parsed again.
+            write(f, SPRITES.replace("r=\"5\"", "r=\"6\""));
+            f.setLastModified(f.lastModified() + 2000);
+            Document d4 = newLoader(cache).loadDocument(uri);
+            if (!"6".equals(d4.getElementById("dot").getAttributeNS(null, "r")))
+                return false;
+            if (cache.getStaleCount() != 1 || cache.getDocumentCount() != 1)
+                return false;
+
+            // Nothing fits once the budget is smaller than the document.
+            cache.setMaxNodes(cache.getNodeCount() - 1);
+            return cache.getDocumentCount() == 0
+                && cache.getEvictionCount() == 1
+                && cache.getNodeCount() == 0;
+        } finally {
+            f.delete();
+        }
+    }
+
+    protected DocumentLoader newLoader(DocumentCache cache) {
+        DocumentLoader ret = new DocumentLoader(new UserAgentAdapter());
+        ret.setDocumentCache(cache);
+        return ret;
+    }
+
+    protected void write(File f, String s) throws Exception {
+        Writer w = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
+        try {
+            w.write(s);
+        } finally {
+            w.close();
+        }
+    }
+}
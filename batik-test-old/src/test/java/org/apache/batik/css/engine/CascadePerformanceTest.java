@@ -0,0 +1,125 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.css.engine;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.anim.dom.SVGOMDocument;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.dom.ExtensibleDOMImplementation;
+import org.apache.batik.test.PerformanceTest;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+import org.w3c.dom.Node;
+
+/**
+ * Measures the time taken to cascade the styles of a document of
+ * <code>Elements</code> rectangles styled by a style sheet of
+ * <code>Rules</code> class rules, a third of them descendant
+ * selectors, as exported by design tools.  <code>Indexed</code>
+ * selects whether the rules are looked up in the rule index or
+ * matched one by one.
+ *
+ * @version $Id$
+ */
+public class CascadePerformanceTest extends PerformanceTest {
+
+    protected int rules = 2000;
+    protected int elements = 5000;
+    protected boolean indexed = true;
+
+    protected CSSEngine engine;
+    protected List stylable;
+
+    public void setRules(int rules) {
+        this.rules = rules;
+    }
+
+    public void setElements(int elements) {
+        this.elements = elements;
+    }
+
+    public void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+    }
+
+    protected String createDocument() {
+        StringBuffer sb = new StringBuffer();
+        sb.append("<svg xmlns=\"http://www.w3.org/2000/svg\">\n");
+        sb.append("<style type=\"text/css\"><![CDATA[\n");
+        for (int i = 0; i < rules; i++) {
+            if (i % 3 == 0)
+                sb.append(".layer").append(i % 10).append(' ');
+            sb.append(".s").append(i).append(" { fill: #")
+                .append(Integer.toHexString(0x100000 + i * 7)).append(" }\n");
+        }
+        sb.append("]]></style>\n");
+        for (int i = 0; i < elements; i++) {
+            if (i % 100 == 0) {
+                if (i > 0)
+                    sb.append("</g>\n");
+                sb.append("<g class=\"layer").append(i / 100 % 10)
+                    .append("\">\n");
+            }
+            sb.append("<rect class=\"s").append(i % rules)
+                .append(" s").append((i * 31) % rules)
+                .append("\" width=\"1\" height=\"1\"/>\n");
+        }
+        sb.append("</g>\n</svg>\n");
+        return sb.toString();
+    }
+
+    protected void setup() throws Exception {
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory(parser);
+        SVGOMDocument doc = (SVGOMDocument)f.createDocument
+            ("http://example.org/cascade.svg",
+             new StringReader(createDocument()));
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        ExtensibleDOMImplementation impl =
+            (ExtensibleDOMImplementation)doc.getImplementation();
+        engine = impl.createCSSEngine(doc, ctx);
+        doc.setCSSEngine(engine);
+        stylable = new ArrayList();
+        collect(doc.getDocumentElement());
+    }
+
+    protected void collect(Node n) {
+        if (n instanceof CSSStylableElement)
+            stylable.add(n);
+        for (Node c = n.getFirstChild(); c != null; c = c.getNextSibling())
+            collect(c);
+    }
+
+    protected void runOp() throws Exception {
+        if (engine == null)
+            setup();
+
+        engine.indexedMatching = indexed;
+        int len = stylable.size();
+        for (int i = 0; i < len; i++) {
+            CSSStylableElement e = (CSSStylableElement)stylable.get(i);
+            engine.getCascadedStyleMap(e, null);
+        }
+    }
+}
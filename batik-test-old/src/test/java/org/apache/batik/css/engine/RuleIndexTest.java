@@ -0,0 +1,143 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.css.engine;
+
+import java.io.StringReader;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.anim.dom.SVGOMDocument;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.css.engine.value.Value;
+import org.apache.batik.dom.ExtensibleDOMImplementation;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Checks that looking up the matching rules in the rule index of the
+ * style sheets gives the same cascaded styles as trying every
+ * selector.
+ *
+ * @version $Id$
+ */
+public class RuleIndexTest extends AbstractTest {
+
+    public static final String ERROR_STYLE_MISMATCH =
+        "RuleIndexTest.error.style.mismatch";
+
+    public static final String ENTRY_KEY_ELEMENT =
+        "RuleIndexTest.entry.key.element";
+
+    public static final String ENTRY_KEY_PROPERTY =
+        "RuleIndexTest.entry.key.property";
+
+    protected static final String DOCUMENT =
+        "<svg xmlns=\"http://www.w3.org/2000/svg\" id=\"root\" class=\"chart\">\n" +
+        "<style type=\"text/css\"><![CDATA[\n" +
+        "  rect { fill: red }\n" +
+        "  .bar { fill: green; stroke: black }\n" +
+        "  #b2 { fill: blue }\n" +
+        "  rect.bar.big { stroke-width: 4 }\n" +
+        "  .chart .bar { opacity: 0.5 }\n" +
+        "  g > rect { stroke-opacity: 0.3 }\n" +
+        "  .legend rect, .axis line { stroke: gray }\n" +
+        "  #axes line { stroke-width: 2 }\n" +
+        "  .nowhere rect { fill: yellow }\n" +
+        "  rect + rect { stroke-dasharray: 1 }\n" +
+        "  .bar:first-child { fill-opacity: 0.8 }\n" +
+        "  [class~=big] { display: inline }\n" +
+        "  * { color: black }\n" +
+        "  @media print { .bar { fill: white } }\n" +
+        "  @media screen { .legend text { font-size: 8px } }\n" +
+        "]]></style>\n" +
+        "<g class=\"bars\">\n" +
+        "  <rect class=\"bar\" id=\"b1\"/>\n" +
+        "  <rect class=\"bar big\" id=\"b2\"/>\n" +
+        "  <rect class=\"bar  bar\" style=\"fill: pink\"/>\n" +
+        "  <rect fill=\"orange\"/>\n" +
+        "</g>\n" +
+        "<g class=\"legend\"><rect class=\"key\"/><text>Legend</text></g>\n" +
+        "<g id=\"axes\" class=\"axis\"><line/><line class=\"bar\"/></g>\n" +
+        "<rect class=\"bar\"/>\n" +
+        "</svg>\n";
+
+    public TestReport runImpl() throws Exception {
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory(parser);
+        SVGOMDocument doc = (SVGOMDocument)f.createDocument
+            ("http://example.org/rules.svg", new StringReader(DOCUMENT));
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        ExtensibleDOMImplementation impl =
+            (ExtensibleDOMImplementation)doc.getImplementation();
+        CSSEngine eng = impl.createCSSEngine(doc, ctx);
+        eng.setMedia("screen");
+        doc.setCSSEngine(eng);
+
+        TestReport r = check(eng, doc.getDocumentElement());
+        return (r != null) ? r : reportSuccess();
+    }
+
+    /**
+     * Compares the two ways of cascading the styles of the elements
+     * under and including <code>n</code>.
+     */
+    protected TestReport check(CSSEngine eng, Node n) {
+        if (n instanceof CSSStylableElement) {
+            CSSStylableElement elt = (CSSStylableElement)n;
+            eng.indexedMatching = true;
+            StyleMap indexed = eng.getCascadedStyleMap(elt, null);
+            eng.indexedMatching = false;
+            StyleMap linear = eng.getCascadedStyleMap(elt, null);
+            int np = eng.getNumberOfProperties();
+            for (int i = 0; i < np; i++) {
+                if (!toString(indexed.getValue(i)).equals
+                        (toString(linear.getValue(i))) ||
+                    indexed.isImportant(i) != linear.isImportant(i) ||
+                    indexed.getOrigin(i) != linear.getOrigin(i)) {
+                    DefaultTestReport report = new DefaultTestReport(this);
+                    report.setErrorCode(ERROR_STYLE_MISMATCH);
+                    report.addDescriptionEntry
+                        (ENTRY_KEY_ELEMENT, ((Element)n).getTagName() +
+                         " " + elt.getCSSClass() + " " + elt.getXMLId());
+                    report.addDescriptionEntry
+                        (ENTRY_KEY_PROPERTY, eng.getPropertyName(i) + ": " +
+                         toString(indexed.getValue(i)) + " instead of " +
+                         toString(linear.getValue(i)));
+                    report.setPassed(false);
+                    return report;
+                }
+            }
+        }
+        for (Node c = n.getFirstChild(); c != null; c = c.getNextSibling()) {
+            TestReport r = check(eng, c);
+            if (r != null)
+                return r;
+        }
+        return null;
+    }
+
+    protected static String toString(Value v) {
+        return (v == null) ? "null" : v.getCssText();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.css.engine;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.anim.dom.SVGOMDocument;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.dom.ExtensibleDOMImplementation;
+import org.apache.batik.test.PerformanceTest;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+import org.w3c.dom.Node;
+
+/**
+ * Measures the time taken to compute a few properties of each element
+ * of a chart made of <code>Elements</code> bars, grouped by series of
+ * a hundred bars of a few classes.  <code>Shared</code> selects whether
+ * the siblings share their style maps.
+ *
+ * @version $Id$
+ */
+public class StyleSharingPerformanceTest extends PerformanceTest {
+
+    protected int elements = 100000;
+    protected boolean shared = true;
+
+    protected CSSEngine engine;
+    protected SVGOMDocument document;
+    protected List stylable;
+    protected int[] properties;
+
+    public void setElements(int elements) {
+        this.elements = elements;
+    }
+
+    public void setShared(boolean shared) {
+        this.shared = shared;
+    }
+
+    protected String createDocument() {
+        StringBuffer sb = new StringBuffer();
+        sb.append("<svg xmlns=\"http://www.w3.org/2000/svg\">\n");
+        sb.append("<style type=\"text/css\"><![CDATA[\n");
+        sb.append("  .series rect { stroke: black; stroke-width: 0.5 }\n");
+        sb.append("  .up { fill: green }\n");
+        sb.append("  .down { fill: red }\n");
+        sb.append("  .flat { fill: gray; opacity: 0.5 }\n");
+        sb.append("]]></style>\n");
+        String[] classes = { "up", "down", "flat" };
+        for (int i = 0; i < elements; i++) {
+            if (i % 100 == 0) {
+                if (i > 0)
+                    sb.append("</g>\n");
+                sb.append("<g class=\"series\" font-size=\"")
+                    .append(10 + i / 100 % 5).append("\">\n");
+            }
+            sb.append("<rect class=\"").append(classes[(i * 7) % 3])
+                .append("\" x=\"").append(i % 100)
+                .append("\" y=\"").append(i % 37)
+                .append("\" width=\"1\" height=\"").append(100 - i % 37)
+                .append("\"/>\n");
+        }
+        sb.append("</g>\n</svg>\n");
+        return sb.toString();
+    }
+
+    protected void setup() throws Exception {
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory(parser);
+        final SVGOMDocument doc = (SVGOMDocument)f.createDocument
+            ("http://example.org/sharing.svg",
+             new StringReader(createDocument()));
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter()) {
+                {
+                    setDocument(doc);
+                }
+            };
+        document = doc;
+        ExtensibleDOMImplementation impl =
+            (ExtensibleDOMImplementation)document.getImplementation();
+        engine = impl.createCSSEngine(document, ctx);
+        document.setCSSEngine(engine);
+        stylable = new ArrayList();
+        collect(document.getDocumentElement());
+        String[] names = { "fill", "stroke", "stroke-width", "opacity",
+                           "font-size", "display", "visibility" };
+        properties = new int[names.length];
+        for (int i = 0; i < names.length; i++)
+            properties[i] = engine.getPropertyIndex(names[i]);
+    }
+
+    protected void collect(Node n) {
+        if (n instanceof CSSStylableElement)
+            stylable.add(n);
+        for (Node c = n.getFirstChild(); c != null; c = c.getNextSibling())
+            collect(c);
+    }
+
+    protected void runOp() throws Exception {
+        if (engine == null)
+            setup();
+
+        engine.setStyleSharing(shared);
+        engine.disposeStyleMaps(document.getDocumentElement());
+        int len = stylable.size();
+        for (int i = 0; i < len; i++) {
+            CSSStylableElement e = (CSSStylableElement)stylable.get(i);
+            for (int j = 0; j < properties.length; j++)
+                engine.getComputedStyle(e, null, properties[j]);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.css.engine;
+
+import java.io.StringReader;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.anim.dom.SVGOMDocument;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.css.engine.value.Value;
+import org.apache.batik.dom.ExtensibleDOMImplementation;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Checks that the siblings sharing their style map get the same
+ * computed styles as when each element has its own, and that changing
+ * the style of one of them does not change the others.
+ *
+ * @version $Id$
+ */
+public class StyleSharingTest extends AbstractTest {
+
+    public static final String ERROR_STYLE_MISMATCH =
+        "StyleSharingTest.error.style.mismatch";
+
+    public static final String ERROR_NOT_SHARED =
+        "StyleSharingTest.error.not.shared";
+
+    public static final String ERROR_SHARED_UPDATE =
+        "StyleSharingTest.error.shared.update";
+
+    public static final String ENTRY_KEY_ELEMENT =
+        "StyleSharingTest.entry.key.element";
+
+    public static final String ENTRY_KEY_PROPERTY =
+        "StyleSharingTest.entry.key.property";
+
+    protected static final String STYLE =
+        "  rect { fill: red }\n" +
+        "  .bar { fill: green; stroke: black }\n" +
+        "  #b2 { fill: blue }\n" +
+        "  .chart .bar { opacity: 0.5 }\n" +
+        "  g > rect { stroke-opacity: 0.3 }\n" +
+        "  [width='2'] { stroke-width: 2 }\n" +
+        "  .small { font-size: 50% }\n" +
+        "  text { font-size: 2em }\n";
+
+    protected static final String CONTENT =
+        "<g class=\"bars\" font-size=\"12\">\n" +
+        "  <rect class=\"bar\" id=\"b1\"/>\n" +
+        "  <rect class=\"bar\" id=\"b2\"/>\n" +
+        "  <rect class=\"bar\" width=\"2\"/>\n" +
+        "  <rect class=\"bar\" width=\"3\"/>\n" +
+        "  <rect class=\"bar\" fill=\"orange\"/>\n" +
+        "  <rect class=\"bar\" style=\"fill: pink\"/>\n" +
+        "  <rect class=\"bar\"/>\n" +
+        "  <rect/>\n" +
+        "  <rect/>\n" +
+        "  <text class=\"small\">a</text><text class=\"small\">b</text>\n" +
+        "  <text xml:lang=\"fr\">c</text><text>d</text>\n" +
+        "</g>\n" +
+        "<g class=\"bars\" font-size=\"20\">\n" +
+        "  <rect class=\"bar\"/><rect class=\"bar\"/>\n" +
+        "  <text class=\"small\">e</text><text class=\"small\">f</text>\n" +
+        "</g>\n";
+
+    protected static final String DOCUMENT =
+        "<svg xmlns=\"http://www.w3.org/2000/svg\" class=\"chart\">\n" +
+        "<style type=\"text/css\"><![CDATA[\n" + STYLE + "]]></style>\n" +
+        CONTENT + "</svg>\n";
+
+    protected static final String STRUCTURAL_DOCUMENT =
+        "<svg xmlns=\"http://www.w3.org/2000/svg\" class=\"chart\">\n" +
+        "<style type=\"text/css\"><![CDATA[\n" + STYLE +
+        "  rect:first-child { fill: yellow }\n" +
+        "  rect + rect { stroke: white }\n" +
+        "]]></style>\n" +
+        CONTENT + "</svg>\n";
+
+    public TestReport runImpl() throws Exception {
+        CSSEngine shared = createEngine(DOCUMENT, true);
+        CSSEngine unshared = createEngine(DOCUMENT, false);
+        TestReport r = compare(shared, unshared);
+        if (r != null)
+            return r;
+        if (shared.getStyleSharingCache().getHitCount() == 0)
+            return reportError(ERROR_NOT_SHARED);
+
+        shared = createEngine(STRUCTURAL_DOCUMENT, true);
+        unshared = createEngine(STRUCTURAL_DOCUMENT, false);
+        r = compare(shared, unshared);
+        if (r != null)
+            return r;
+
+        // Changing the style of an element must not change the style
+        // of the siblings it shares its style map with.
+        shared = createEngine(DOCUMENT, true);
+        unshared = createEngine(DOCUMENT, false);
+        compare(shared, unshared);
+        Element g1 = getChild(shared.getDocument().getDocumentElement(), 1);
+        Element g2 = getChild(unshared.getDocument().getDocumentElement(), 1);
+        CSSStylableElement a = (CSSStylableElement)getChild(g1, 7);
+        CSSStylableElement b = (CSSStylableElement)getChild(g1, 8);
+        if (a.getComputedStyleMap(null) != b.getComputedStyleMap(null))
+            return reportError(ERROR_NOT_SHARED);
+        getChild(g1, 7).setAttributeNS(null, "style", "fill: olive");
+        getChild(g2, 7).setAttributeNS(null, "style", "fill: olive");
+        if (a.getComputedStyleMap(null) == b.getComputedStyleMap(null))
+            return reportError(ERROR_SHARED_UPDATE);
+        r = compare(shared, unshared);
+        if (r != null)
+            return r;
+        getChild(g1, 9).setAttributeNS(null, "fill", "navy");
+        getChild(g2, 9).setAttributeNS(null, "fill", "navy");
+        g1.setAttributeNS(null, "font-size", "30");
+        g2.setAttributeNS(null, "font-size", "30");
+        r = compare(shared, unshared);
+        return (r != null) ? r : reportSuccess();
+    }
+
+    protected CSSEngine createEngine(String content, boolean sharing)
+        throws Exception {
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory(parser);
+        final SVGOMDocument doc = (SVGOMDocument)f.createDocument
+            ("http://example.org/sharing.svg", new StringReader(content));
+        // The context needs the document to compute the default font
+        // family of the root element, and must be dynamic for the
+        // engine to follow the changes made to the document.
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter()) {
+                {
+                    setDocument(doc);
+                    setDynamicState(DYNAMIC);
+                }
+            };
+        doc.setEventsEnabled(true);
+        ExtensibleDOMImplementation impl =
+            (ExtensibleDOMImplementation)doc.getImplementation();
+        CSSEngine eng = impl.createCSSEngine(doc, ctx);
+        eng.setStyleSharing(sharing);
+        doc.setCSSEngine(eng);
+        return eng;
+    }
+
+    /**
+     * Returns the <code>index</code>th element child of <code>n</code>.
+     */
+    protected static Element getChild(Node n, int index) {
+        for (Node c = n.getFirstChild(); c != null; c = c.getNextSibling()) {
+            if (c.getNodeType() == Node.ELEMENT_NODE && index-- == 0)
+                return (Element)c;
+        }
+        return null;
+    }
+
+    /**
+     * Compares the computed styles of the two documents.
+     */
+    protected TestReport compare(CSSEngine e1, CSSEngine e2) {
+        return compare(e1, e1.getDocument().getDocumentElement(),
+                       e2, e2.getDocument().getDocumentElement());
+    }
+
+    protected TestReport compare(CSSEngine e1, Node n1,
+                                 CSSEngine e2, Node n2) {
+        if (n1 instanceof CSSStylableElement) {
+            CSSStylableElement elt1 = (CSSStylableElement)n1;
+            CSSStylableElement elt2 = (CSSStylableElement)n2;
+            int np = e1.getNumberOfProperties();
+            for (int i = 0; i < np; i++) {
+                String v1 = toString(e1.getComputedStyle(elt1, null, i));
+                String v2 = toString(e2.getComputedStyle(elt2, null, i));
+                if (!v1.equals(v2)) {
+                    DefaultTestReport report = new DefaultTestReport(this);
+                    report.setErrorCode(ERROR_STYLE_MISMATCH);
+                    report.addDescriptionEntry
+                        (ENTRY_KEY_ELEMENT, ((Element)n1).getTagName() +
+                         " " + elt1.getCSSClass() + " " + elt1.getXMLId());
+                    report.addDescriptionEntry
+                        (ENTRY_KEY_PROPERTY, e1.getPropertyName(i) + ": " +
+                         v1 + " instead of " + v2);
+                    report.setPassed(false);
+                    return report;
+                }
+            }
+        }
+        Node c2 = n2.getFirstChild();
+        for (Node c1 = n1.getFirstChild();
+             c1 != null;
+             c1 = c1.getNextSibling(), c2 = c2.getNextSibling()) {
+            TestReport r = compare(e1, c1, e2, c2);
+            if (r != null)
+                return r;
+        }
+        return null;
+    }
+
+    protected static String toString(Value v) {
+        return (v == null) ? "null" : v.getCssText();
+    }
+}
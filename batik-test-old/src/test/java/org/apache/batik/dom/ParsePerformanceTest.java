@@ -0,0 +1,73 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.dom;
+
+import java.io.StringReader;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.dom.util.XMLReaderPool;
+import org.apache.batik.test.PerformanceTest;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+/**
+ * Measures the time taken to parse <code>Documents</code> small SVG
+ * documents in turn, as done when transcoding many icons.
+ * <code>Pooled</code> selects whether the parsers are taken from an
+ * <code>XMLReaderPool</code> or created for each document.
+ *
+ * @version $Id$
+ */
+public class ParsePerformanceTest extends PerformanceTest {
+
+    protected static final String DOCUMENT =
+        "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"24\" height=\"24\"" +
+        " viewBox=\"0 0 24 24\">\n" +
+        "  <g fill=\"none\" stroke=\"currentColor\" stroke-width=\"2\">\n" +
+        "    <circle cx=\"12\" cy=\"12\" r=\"10\"/>\n" +
+        "    <path d=\"M12 6v6l4 2\"/>\n" +
+        "  </g>\n" +
+        "</svg>\n";
+
+    protected int documents = 1000;
+    protected boolean pooled = true;
+
+    protected SAXSVGDocumentFactory factory;
+
+    public void setDocuments(int documents) {
+        this.documents = documents;
+    }
+
+    public void setPooled(boolean pooled) {
+        this.pooled = pooled;
+    }
+
+    protected void runOp() throws Exception {
+        if (factory == null) {
+            String parser = XMLResourceDescriptor.getXMLParserClassName();
+            if (pooled)
+                factory = new SAXSVGDocumentFactory
+                    (new XMLReaderPool(parser), false);
+            else
+                factory = new SAXSVGDocumentFactory(parser);
+        }
+        for (int i = 0; i < documents; i++)
+            factory.createDocument("http://example.org/icon.svg",
+                                   new StringReader(DOCUMENT));
+    }
+}
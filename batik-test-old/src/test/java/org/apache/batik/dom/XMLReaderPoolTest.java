@@ -0,0 +1,115 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.dom;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringReader;
+import java.io.Writer;
+
+import org.apache.batik.dom.util.SAXDocumentFactory;
+import org.apache.batik.dom.util.XMLReaderPool;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+import org.w3c.dom.Document;
+import org.xml.sax.XMLReader;
+
+/**
+ * Checks that the parsers of an <code>XMLReaderPool</code> are reused
+ * by the documents parsed in turn and never load external entities.
+ *
+ * @version $Id$
+ */
+public class XMLReaderPoolTest extends AbstractTest {
+
+    public static final String ERROR_NOT_REUSED =
+        "XMLReaderPoolTest.error.not.reused";
+
+    public static final String ERROR_ENTITY_LOADED =
+        "XMLReaderPoolTest.error.entity.loaded";
+
+    public static final String ENTRY_KEY_COUNTS =
+        "XMLReaderPoolTest.entry.key.counts";
+
+    protected static final String SECRET = "secret";
+
+    public TestReport runImpl() throws Exception {
+        File ent = File.createTempFile("XMLReaderPoolTest", ".txt");
+        ent.deleteOnExit();
+        Writer w = new FileWriter(ent);
+        w.write(SECRET);
+        w.close();
+        String doc =
+            "<!DOCTYPE doc [\n" +
+            "<!ENTITY e SYSTEM \"" + ent.toURI() + "\">\n" +
+            "]>\n" +
+            "<doc>&e;</doc>\n";
+
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        XMLReaderPool pool = new XMLReaderPool(parser);
+        SAXDocumentFactory f = new SAXDocumentFactory
+            (GenericDOMImplementation.getDOMImplementation(), parser);
+        f.setXMLReaderPool(pool);
+
+        for (int i = 0; i < 3; i++) {
+            TestReport r = check(f, doc);
+            if (r != null)
+                return r;
+        }
+        if (pool.getCreatedCount() != 1 || pool.getReuseCount() != 2)
+            return report(ERROR_NOT_REUSED, pool);
+
+        // A parser released with external entities turned on must not
+        // be reused.
+        XMLReader xr = pool.getXMLReader();
+        xr.setFeature
+            ("http://xml.org/sax/features/external-general-entities", true);
+        pool.releaseXMLReader(xr);
+        TestReport r = check(f, doc);
+        if (r != null)
+            return r;
+        if (pool.getCreatedCount() != 2)
+            return report(ERROR_NOT_REUSED, pool);
+
+        return reportSuccess();
+    }
+
+    protected TestReport check(SAXDocumentFactory f, String doc)
+        throws Exception {
+        Document d = f.createDocument("http://example.org/doc.xml",
+                                      new StringReader(doc));
+        String text = d.getDocumentElement().getTextContent();
+        if (text.indexOf(SECRET) != -1)
+            return reportError(ERROR_ENTITY_LOADED);
+        return null;
+    }
+
+    protected TestReport report(String code, XMLReaderPool pool) {
+        DefaultTestReport report = new DefaultTestReport(this);
+        report.setErrorCode(code);
+        report.addDescriptionEntry
+            (ENTRY_KEY_COUNTS, "created " + pool.getCreatedCount() +
+             ", reused " + pool.getReuseCount());
+        report.setPassed(false);
+        return report;
+    }
+}
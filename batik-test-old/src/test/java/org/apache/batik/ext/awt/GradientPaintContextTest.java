@@ -0,0 +1,129 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.batik.test.AbstractTest;
+
+/**
+ * Checks that the contexts of a gradient paint share their gradient
+ * tables and paint the same pixels, and that the row lookup of
+ * <code>MultipleGradientPaintContext</code> gives the same colors as
+ * the lookup of a single position.
+ *
+ * @version $Id$
+ */
+public class GradientPaintContextTest extends AbstractTest {
+
+    protected static final MultipleGradientPaint.CycleMethodEnum[] CYCLES = {
+        MultipleGradientPaint.NO_CYCLE,
+        MultipleGradientPaint.REFLECT,
+        MultipleGradientPaint.REPEAT
+    };
+
+    protected static final float[] EDGES = {
+        0f, 1f, -1f, 2f, 0.5f, -1e-9f, 1e-9f, 0.99999994f, -0.99999994f,
+        Float.NaN
+    };
+
+    protected Random rnd = new Random(5);
+
+    public boolean runImplBasic() throws Exception {
+        ColorModel cm = new BufferedImage
+            (1, 1, BufferedImage.TYPE_INT_ARGB_PRE).getColorModel();
+        Rectangle r = new Rectangle(0, 0, 64, 48);
+        RenderingHints hints = new RenderingHints(null);
+
+        for (int n = 0; n < 200; n++) {
+            MultipleGradientPaint paint = createPaint(n % 6 == 0);
+
+            MultipleGradientPaintContext c1 = (MultipleGradientPaintContext)
+                paint.createContext(cm, r, r, new AffineTransform(), hints);
+            MultipleGradientPaintContext c2 = (MultipleGradientPaintContext)
+                paint.createContext(cm, r, r, new AffineTransform(), hints);
+            assertTrue(c1.gradient == c2.gradient);
+            assertTrue(c1.gradients == c2.gradients);
+            assertTrue(Arrays.equals(getPixels(c1, r), getPixels(c2, r)));
+            c1.dispose();
+            c2.dispose();
+
+            float[] positions = new float[256];
+            for (int i = 0; i < positions.length; i++) {
+                if (i < EDGES.length)
+                    positions[i] = EDGES[i];
+                else
+                    positions[i] = rnd.nextFloat() * 6 - 3;
+            }
+            int[] row = new int[positions.length + 3];
+            c1.indexIntoGradientsArrays(positions, row, 3, positions.length);
+            for (int i = 0; i < positions.length; i++)
+                assertEquals(c1.indexIntoGradientsArrays(positions[i]),
+                             row[i + 3]);
+        }
+        return true;
+    }
+
+    /**
+     * Returns a random gradient paint, whose stops are far enough
+     * apart for the single array lookup unless <code>slow</code>.
+     */
+    protected MultipleGradientPaint createPaint(boolean slow) {
+        int n = 2 + rnd.nextInt(4);
+        float[] fractions = new float[n];
+        Color[] colors = new Color[n];
+        for (int i = 0; i < n; i++) {
+            fractions[i] = (i + rnd.nextFloat() * 0.5f) / n;
+            colors[i] = new Color(rnd.nextInt(), rnd.nextBoolean());
+        }
+        if (slow)
+            fractions[1] = fractions[0] + 0.0001f;
+
+        MultipleGradientPaint.CycleMethodEnum cycle =
+            CYCLES[rnd.nextInt(CYCLES.length)];
+        MultipleGradientPaint.ColorSpaceEnum space = rnd.nextBoolean()
+            ? MultipleGradientPaint.SRGB : MultipleGradientPaint.LINEAR_RGB;
+
+        if (rnd.nextBoolean())
+            return new LinearGradientPaint
+                (new Point2D.Float(rnd.nextInt(64), rnd.nextInt(48)),
+                 new Point2D.Float(rnd.nextInt(64) + 64, rnd.nextInt(48)),
+                 fractions, colors, cycle, space, new AffineTransform());
+        Point2D center = new Point2D.Float(rnd.nextInt(64), rnd.nextInt(48));
+        return new RadialGradientPaint
+            (center, 5 + rnd.nextInt(40), center, fractions, colors,
+             cycle, space, new AffineTransform());
+    }
+
+    protected int[] getPixels(MultipleGradientPaintContext c, Rectangle r) {
+        Raster ras = c.getRaster(r.x, r.y, r.width, r.height);
+        int[] pixels = new int[r.width * r.height];
+        ras.getDataElements(0, 0, r.width, r.height, pixels);
+        return pixels;
+    }
+}
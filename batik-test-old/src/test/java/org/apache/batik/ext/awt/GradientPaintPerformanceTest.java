@@ -0,0 +1,105 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Measures the time taken to fill a 1920x1080 image with a linear or
+ * radial gradient.  The image is filled with <code>Tiles</code> by
+ * <code>Tiles</code> rectangles, so that large values measure the
+ * cost of setting up the gradient for each fill rather than the fill
+ * rate.  <code>CycleMethod</code> is one of "pad", "reflect" or
+ * "repeat".
+ *
+ * @version $Id$
+ */
+public class GradientPaintPerformanceTest extends PerformanceTest {
+
+    protected static final int WIDTH  = 1920;
+    protected static final int HEIGHT = 1080;
+
+    protected boolean radial;
+    protected String cycleMethod = "pad";
+    protected int tiles = 1;
+
+    protected BufferedImage image;
+    protected Paint paint;
+
+    public void setRadial(boolean radial) {
+        this.radial = radial;
+    }
+
+    public void setCycleMethod(String cycleMethod) {
+        this.cycleMethod = cycleMethod;
+    }
+
+    public void setTiles(int tiles) {
+        this.tiles = tiles;
+    }
+
+    protected void setup() {
+        image = new BufferedImage(WIDTH, HEIGHT,
+                                  BufferedImage.TYPE_INT_ARGB_PRE);
+
+        MultipleGradientPaint.CycleMethodEnum cm
+            = MultipleGradientPaint.NO_CYCLE;
+        if ("reflect".equals(cycleMethod))
+            cm = MultipleGradientPaint.REFLECT;
+        else if ("repeat".equals(cycleMethod))
+            cm = MultipleGradientPaint.REPEAT;
+
+        float[] fractions = { 0f, .3f, .7f, 1f };
+        Color[] colors = { Color.red, new Color(0, 255, 0, 128),
+                           Color.blue, Color.white };
+        if (radial) {
+            Point2D center = new Point2D.Float(WIDTH / 2f, HEIGHT / 2f);
+            paint = new RadialGradientPaint
+                (center, HEIGHT / 3f, center, fractions, colors, cm,
+                 MultipleGradientPaint.SRGB);
+        } else {
+            paint = new LinearGradientPaint
+                (new Point2D.Float(WIDTH / 4f, 0),
+                 new Point2D.Float(WIDTH / 2f, HEIGHT / 2f),
+                 fractions, colors, cm, MultipleGradientPaint.SRGB,
+                 new AffineTransform());
+        }
+    }
+
+    protected void runOp() {
+        if (image == null)
+            setup();
+
+        Graphics2D g = image.createGraphics();
+        g.setPaint(paint);
+        int tw = (WIDTH + tiles - 1) / tiles;
+        int th = (HEIGHT + tiles - 1) / tiles;
+        for (int y = 0; y < HEIGHT; y += th)
+            for (int x = 0; x < WIDTH; x += tw)
+                g.fillRect(x, y, tw, th);
+        g.dispose();
+    }
+}
@@ -223,7 +223,12 @@ public class RectListManagerTest extends AbstractTest {
                     if (currRLM == null) continue;
                     int overhead     = Integer.parseInt(st.nextToken());
                     int lineOverhead = Integer.parseInt(st.nextToken());
-                    currRLM.mergeRects(overhead, lineOverhead);
+                    if (st.hasMoreTokens()) {
+                        int maxRects = Integer.parseInt(st.nextToken());
+                        currRLM.mergeRects(overhead, lineOverhead, maxRects);
+                    } else {
+                        currRLM.mergeRects(overhead, lineOverhead);
+                    }
                 }
                 else if (ADD_PREF.equals(pref)) {
                     if (currRLM == null) continue;
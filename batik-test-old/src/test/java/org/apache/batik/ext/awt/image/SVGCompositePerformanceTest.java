@@ -0,0 +1,148 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image;
+
+import java.awt.CompositeContext;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Measures the time taken by <code>SVGComposite</code> to composite
+ * two premultiplied square images of <code>ImageSize</code> pixels
+ * with the rule named <code>Rule</code>.  With <code>Generic</code>
+ * the images are byte interleaved, so they go through the generic
+ * contexts.  The rows are split over <code>Threads</code> threads, 0
+ * keeps the default composite pool.
+ *
+ * @version $Id$
+ */
+public class SVGCompositePerformanceTest extends PerformanceTest {
+
+    protected String rule = "over";
+    protected int imageSize = 1024;
+    protected boolean generic = false;
+    protected int threads = 0;
+
+    protected CompositeContext ctx;
+    protected Raster src;
+    protected WritableRaster dst;
+    protected WritableRaster out;
+    protected ForkJoinPool pool;
+
+    public void setRule(String rule) {
+        this.rule = rule;
+    }
+
+    public void setImageSize(int imageSize) {
+        this.imageSize = imageSize;
+    }
+
+    public void setGeneric(boolean generic) {
+        this.generic = generic;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    protected CompositeRule getCompositeRule() {
+        if (rule.equals("over"))     return CompositeRule.OVER;
+        if (rule.equals("in"))       return CompositeRule.IN;
+        if (rule.equals("out"))      return CompositeRule.OUT;
+        if (rule.equals("atop"))     return CompositeRule.ATOP;
+        if (rule.equals("xor"))      return CompositeRule.XOR;
+        if (rule.equals("multiply")) return CompositeRule.MULTIPLY;
+        if (rule.equals("screen"))   return CompositeRule.SCREEN;
+        if (rule.equals("darken"))   return CompositeRule.DARKEN;
+        if (rule.equals("lighten"))  return CompositeRule.LIGHTEN;
+        if (rule.equals("arithmetic"))
+            return CompositeRule.ARITHMETIC(.5f, .25f, .75f, -.1f);
+        throw new IllegalArgumentException(rule);
+    }
+
+    protected void setup() {
+        ColorModel cm = new BufferedImage
+            (1, 1, BufferedImage.TYPE_INT_ARGB_PRE).getColorModel();
+        ctx = new SVGComposite(getCompositeRule()).createContext
+            (cm, cm, null);
+        src = createRaster(cm, new Random(1));
+        dst = createRaster(cm, new Random(2));
+
+        if (threads > 1)
+            pool = new ForkJoinPool(threads);
+    }
+
+    protected WritableRaster createRaster(ColorModel cm, Random rnd) {
+        WritableRaster wr = cm.createCompatibleWritableRaster
+            (imageSize, imageSize);
+        int[] pixel = new int[4];
+        for (int y = 0; y < imageSize; y++) {
+            for (int x = 0; x < imageSize; x++) {
+                pixel[3] = rnd.nextInt(256);
+                pixel[0] = rnd.nextInt(pixel[3]+1);
+                pixel[1] = rnd.nextInt(pixel[3]+1);
+                pixel[2] = rnd.nextInt(pixel[3]+1);
+                wr.setPixel(x, y, pixel);
+            }
+        }
+        if (!generic)
+            return wr;
+
+        WritableRaster bytes = Raster.createInterleavedRaster
+            (DataBuffer.TYPE_BYTE, imageSize, imageSize, 4, null);
+        bytes.setRect(wr);
+        return bytes;
+    }
+
+    protected static Object getData(Raster r) {
+        DataBuffer db = r.getDataBuffer();
+        if (db instanceof DataBufferInt)
+            return ((DataBufferInt)db).getData();
+        return ((DataBufferByte)db).getData();
+    }
+
+    protected void runOp() {
+        if (ctx == null)
+            setup();
+
+        ForkJoinPool old = SVGComposite.getCompositePool();
+        if (threads > 0)
+            SVGComposite.setCompositePool(pool);
+        try {
+            // Compositing into a scratch copy keeps the destination
+            // the same from one run to the next.
+            if (out == null)
+                out = dst.createCompatibleWritableRaster();
+            System.arraycopy(getData(dst), 0, getData(out), 0,
+                             out.getDataBuffer().getSize());
+            ctx.compose(src, out, out);
+        } finally {
+            SVGComposite.setCompositePool(old);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image;
+
+import java.awt.CompositeContext;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.batik.test.AbstractTest;
+
+/**
+ * Checks that the int packed contexts of <code>SVGComposite</code>
+ * give the same pixels whether the rows are split over several
+ * threads or not, that they match the generic contexts on premultiplied
+ * data, and that rasters that are not int packed are composited by
+ * the generic contexts.
+ *
+ * @version $Id$
+ */
+public class SVGCompositeTest extends AbstractTest {
+
+    protected static final CompositeRule[] RULES = {
+        CompositeRule.OVER, CompositeRule.IN, CompositeRule.OUT,
+        CompositeRule.ATOP, CompositeRule.XOR,
+        CompositeRule.ARITHMETIC(.5f, .25f, .75f, -.1f),
+        CompositeRule.MULTIPLY, CompositeRule.SCREEN,
+        CompositeRule.DARKEN, CompositeRule.LIGHTEN
+    };
+
+    protected Random rnd = new Random(3);
+
+    public boolean runImplBasic() throws Exception {
+        ForkJoinPool oldPool = SVGComposite.getCompositePool();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int t = 0; t < 2; t++) {
+                int type = (t == 0) ? BufferedImage.TYPE_INT_ARGB_PRE
+                                    : BufferedImage.TYPE_INT_ARGB;
+                ColorModel cm = new BufferedImage(1, 1, type).getColorModel();
+                for (int r = 0; r < RULES.length; r++) {
+                    SVGComposite comp = new SVGComposite(RULES[r]);
+                    CompositeContext ctx = comp.createContext(cm, cm, null);
+
+                    // Large enough to be split in several tasks.
+                    WritableRaster src = createRaster(cm, 300, 250);
+                    WritableRaster dst = createRaster(cm, 300, 250);
+
+                    SVGComposite.setCompositePool(null);
+                    WritableRaster ref = copy(cm, dst);
+                    ctx.compose(copy(cm, src), ref, ref);
+
+                    SVGComposite.setCompositePool(pool);
+                    WritableRaster par = copy(cm, dst);
+                    ctx.compose(copy(cm, src), par, par);
+                    assertTrue(Arrays.equals(getPixels(ref), getPixels(par)));
+
+                    // Rasters that are not int packed go through the
+                    // generic context.
+                    WritableRaster gen = toBytes(dst);
+                    ctx.compose(toBytes(src), gen, gen);
+                    CompositeContext generic = new SVGComposite(RULES[r])
+                        .createContext(cm, cm, false);
+                    WritableRaster exp = toBytes(dst);
+                    generic.compose(toBytes(src), exp, exp);
+                    int[] expPixels = exp.getPixels(0, 0, 300, 250,
+                                                    (int[])null);
+                    assertTrue(Arrays.equals
+                               (gen.getPixels(0, 0, 300, 250, (int[])null),
+                                expPixels));
+
+                    // On premultiplied data the int packed contexts
+                    // give exactly the pixels of the generic ones.
+                    if (cm.isAlphaPremultiplied())
+                        assertTrue(Arrays.equals
+                                   (ref.getPixels(0, 0, 300, 250,
+                                                  (int[])null),
+                                    expPixels));
+                    ctx.dispose();
+                }
+            }
+        } finally {
+            SVGComposite.setCompositePool(oldPool);
+            pool.shutdown();
+        }
+        return true;
+    }
+
+    /**
+     * Returns an int packed raster with random pixels, valid for the
+     * alpha premultiplication of <code>cm</code>.
+     */
+    protected WritableRaster createRaster(ColorModel cm, int w, int h) {
+        WritableRaster wr = cm.createCompatibleWritableRaster(w, h);
+        int[] pixels = getPixels(wr);
+        for (int i = 0; i < pixels.length; i++) {
+            int a = rnd.nextInt(256);
+            int max = cm.isAlphaPremultiplied() ? a : 255;
+            pixels[i] = (a << 24) |
+                (rnd.nextInt(max+1) << 16) |
+                (rnd.nextInt(max+1) << 8) |
+                rnd.nextInt(max+1);
+        }
+        return wr;
+    }
+
+    protected WritableRaster copy(ColorModel cm, Raster r) {
+        WritableRaster wr = cm.createCompatibleWritableRaster
+            (r.getWidth(), r.getHeight());
+        wr.setRect(r);
+        return wr;
+    }
+
+    /**
+     * Returns a copy of r with one byte per sample.
+     */
+    protected WritableRaster toBytes(Raster r) {
+        WritableRaster wr = Raster.createInterleavedRaster
+            (DataBuffer.TYPE_BYTE,
+             r.getWidth(), r.getHeight(), 4, null);
+        wr.setRect(r);
+        return wr;
+    }
+
+    protected int[] getPixels(Raster r) {
+        return ((DataBufferInt)r.getDataBuffer()).getData();
+    }
+}
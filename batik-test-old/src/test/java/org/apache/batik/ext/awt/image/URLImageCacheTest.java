@@ -0,0 +1,114 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image;
+
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+import org.apache.batik.ext.awt.image.renderable.DeferRable;
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.ext.awt.image.renderable.RedRable;
+import org.apache.batik.ext.awt.image.rendered.BufferedImageCachableRed;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.util.ParsedURL;
+
+/**
+ * Checks that <code>URLImageCache</code> lets one thread at a time
+ * load an image while the others wait for it, that clearing an entry
+ * puts a waiting thread on the hook, and that the least recently
+ * requested images are evicted once the cache holds more than its
+ * size in bytes.
+ *
+ * @version $Id$
+ */
+public class URLImageCacheTest extends AbstractTest {
+
+    public boolean runImplBasic() throws Exception {
+        final URLImageCache cache = new URLImageCache(3 * 100 * 100 * 4);
+        final ParsedURL a = new ParsedURL("http://example.org/a.png");
+        ParsedURL b = new ParsedURL("http://example.org/b.png");
+        ParsedURL c = new ParsedURL("http://example.org/c.png");
+        ParsedURL d = new ParsedURL("http://example.org/d.png");
+
+        // Single flight: the second request waits for the first put.
+        assertNull(cache.request(a));
+        final Filter[] got = new Filter[1];
+        Thread t = new Thread() {
+                public void run() {
+                    got[0] = cache.request(a);
+                }
+            };
+        t.start();
+        t.join(200);
+        assertTrue(t.isAlive());
+        Filter fa = createImage(100, 100);
+        cache.put(a, fa);
+        t.join();
+        assertTrue(got[0] == fa);
+        assertTrue(cache.isDone(a));
+        assertEquals(1, (int)cache.getMissCount());
+        assertEquals(1, (int)cache.getHitCount());
+
+        // Clearing an entry being loaded hands it to a waiting thread.
+        assertNull(cache.request(b));
+        got[0] = fa;
+        t = new Thread() {
+                public void run() {
+                    got[0] = cache.request
+                        (new ParsedURL("http://example.org/b.png"));
+                }
+            };
+        t.start();
+        t.join(200);
+        cache.clear(b);
+        t.join();
+        assertNull(got[0]);
+        assertTrue(cache.isPresent(b));
+        cache.put(b, createImage(100, 100));
+
+        // An image still being decoded is counted once its size is known.
+        assertNull(cache.request(c));
+        DeferRable dr = new DeferRable();
+        cache.put(c, dr);
+        assertEquals(2 * 100 * 100 * 4, (int)cache.getBytes());
+        dr.setBounds(new Rectangle2D.Double(0, 0, 100, 100));
+        assertEquals(3 * 100 * 100 * 4, (int)cache.getBytes());
+        assertEquals(0, (int)cache.getEvictionCount());
+
+        // a is requested again so b is the least recently used.
+        assertTrue(cache.request(a) == fa);
+        assertNull(cache.request(d));
+        cache.put(d, createImage(100, 100));
+        assertEquals(1, (int)cache.getEvictionCount());
+        assertEquals(3, cache.getSize());
+        assertTrue(!cache.isPresent(b));
+        assertTrue(cache.isDone(a));
+
+        cache.flush();
+        assertEquals(0, cache.getSize());
+        assertEquals(0, (int)cache.getBytes());
+        assertTrue(!cache.isPresent(a));
+        return true;
+    }
+
+    protected Filter createImage(int w, int h) {
+        return new RedRable(new BufferedImageCachableRed
+            (new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB)));
+    }
+}
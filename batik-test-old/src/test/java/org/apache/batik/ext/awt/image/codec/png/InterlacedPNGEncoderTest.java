@@ -0,0 +1,109 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.codec.png;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+/**
+ * This test validates the PNGEncoder operation on Adam7 interlaced
+ * images, either palette images with less than 8 bits per pixel or
+ * RGBA images.  The image size is not a multiple of 8, so the passes
+ * have partial rows and columns.
+ *
+ * @version $Id$
+ */
+public class InterlacedPNGEncoderTest extends PNGEncoderTest {
+    /**
+     * The bit depth of the palette image, or 8 for an RGBA image.
+     */
+    protected int bitDepth;
+
+    public InterlacedPNGEncoderTest(Integer bitDepth) {
+        this.bitDepth = bitDepth.intValue();
+    }
+
+    public String getName() {
+        return super.getName() + "(" + bitDepth + ")";
+    }
+
+    /**
+     * Template method for building the image to encode.
+     */
+    public BufferedImage createImage(){
+        int w = 37;
+        int h = 23;
+        Random r = new Random(bitDepth);
+        if (bitDepth == 8) {
+            BufferedImage image
+                = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            for (int y=0; y<h; y++) {
+                for (int x=0; x<w; x++) {
+                    image.setRGB(x, y, r.nextInt());
+                }
+            }
+            return image;
+        }
+
+        int size = 1 << bitDepth;
+        byte[] reds   = new byte[size];
+        byte[] greens = new byte[size];
+        byte[] blues  = new byte[size];
+        for (int i=0; i<size; i++) {
+            reds[i]   = (byte)(i*255/(size-1));
+            greens[i] = (byte)(255-i*255/(size-1));
+            blues[i]  = (byte)(i*0x35);
+        }
+        IndexColorModel cm = new IndexColorModel(bitDepth, size,
+                                                 reds, greens, blues);
+        BufferedImage image = new BufferedImage
+            (w, h, BufferedImage.TYPE_BYTE_BINARY, cm);
+        WritableRaster wr = image.getRaster();
+        for (int y=0; y<h; y++) {
+            for (int x=0; x<w; x++) {
+                wr.setSample(x, y, 0, r.nextInt(size));
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Template method for converting the decoded image to a
+     * BufferedImage.  The decoded samples are used as they are, as
+     * drawing the translucent pixels would round them.
+     */
+    public BufferedImage toBufferedImage(RenderedImage decodedRenderedImage){
+        ColorModel cm = decodedRenderedImage.getColorModel();
+        return new BufferedImage(cm, decodedRenderedImage.copyData(null),
+                                 cm.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Template method for building the encoding parameters.
+     */
+    public PNGEncodeParam buildEncodeParam(BufferedImage image){
+        PNGEncodeParam params = PNGEncodeParam.getDefaultEncodeParam(image);
+        params.setInterlacing(true);
+        return params;
+    }
+}
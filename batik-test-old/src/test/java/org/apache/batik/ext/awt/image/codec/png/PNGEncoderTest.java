@@ -56,24 +56,7 @@ public class PNGEncoderTest extends AbstractTest {
 
     public TestReport runImpl() throws Exception {
         // Create a BufferedImage to be encoded
-        BufferedImage image = new BufferedImage(100, 75, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D ig = image.createGraphics();
-        ig.scale(.5, .5);
-        ig.setPaint(new Color(128,0,0));
-        ig.fillRect(0, 0, 100, 50);
-        ig.setPaint(Color.orange);
-        ig.fillRect(100, 0, 100, 50);
-        ig.setPaint(Color.yellow);
-        ig.fillRect(0, 50, 100, 50);
-        ig.setPaint(Color.red);
-        ig.fillRect(100, 50, 100, 50);
-        ig.setPaint(new Color(255, 127, 127));
-        ig.fillRect(0, 100, 100, 50);
-        ig.setPaint(Color.black);
-        ig.draw(new Rectangle2D.Double(0.5, 0.5, 199, 149));
-        ig.dispose();
-
-        image = image.getSubimage(50, 0, 50, 25);
+        BufferedImage image = createImage();
 
         // Create an output stream where the PNG data
         // will be stored.
@@ -81,8 +64,7 @@ public class PNGEncoderTest extends AbstractTest {
         OutputStream os = buildOutputStream(bos);
 
         // Now, try to encode image
-        PNGEncodeParam params =
-            PNGEncodeParam.getDefaultEncodeParam(image);
+        PNGEncodeParam params = buildEncodeParam(image);
         PNGImageEncoder pngImageEncoder = new PNGImageEncoder(os, params);
 
         try{
@@ -107,19 +89,7 @@ public class PNGEncoderTest extends AbstractTest {
                             e);
         }
 
-        BufferedImage decodedImage = null;
-        if(decodedRenderedImage instanceof BufferedImage){
-            decodedImage = (BufferedImage)decodedRenderedImage;
-        }
-        else{
-            decodedImage = new BufferedImage(decodedRenderedImage.getWidth(),
-                                             decodedRenderedImage.getHeight(),
-                                             BufferedImage.TYPE_INT_ARGB);
-            ig = decodedImage.createGraphics();
-            ig.drawRenderedImage(decodedRenderedImage,
-                                 new AffineTransform());
-            ig.dispose();
-        }
+        BufferedImage decodedImage = toBufferedImage(decodedRenderedImage);
 
         // Compare images
         if( ! checkIdentical(image, decodedImage) ){
@@ -129,6 +99,58 @@ public class PNGEncoderTest extends AbstractTest {
         return reportSuccess();
     }
 
+    /**
+     * Template method for building the image to encode.
+     */
+    public BufferedImage createImage(){
+        BufferedImage image = new BufferedImage(100, 75, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D ig = image.createGraphics();
+        ig.scale(.5, .5);
+        ig.setPaint(new Color(128,0,0));
+        ig.fillRect(0, 0, 100, 50);
+        ig.setPaint(Color.orange);
+        ig.fillRect(100, 0, 100, 50);
+        ig.setPaint(Color.yellow);
+        ig.fillRect(0, 50, 100, 50);
+        ig.setPaint(Color.red);
+        ig.fillRect(100, 50, 100, 50);
+        ig.setPaint(new Color(255, 127, 127));
+        ig.fillRect(0, 100, 100, 50);
+        ig.setPaint(Color.black);
+        ig.draw(new Rectangle2D.Double(0.5, 0.5, 199, 149));
+        ig.dispose();
+
+        image = image.getSubimage(50, 0, 50, 25);
+        return image;
+    }
+
+    /**
+     * Template method for converting the decoded image to a
+     * BufferedImage the original image can be compared with.
+     */
+    public BufferedImage toBufferedImage(RenderedImage decodedRenderedImage){
+        if(decodedRenderedImage instanceof BufferedImage){
+            return (BufferedImage)decodedRenderedImage;
+        }
+
+        BufferedImage decodedImage
+            = new BufferedImage(decodedRenderedImage.getWidth(),
+                                decodedRenderedImage.getHeight(),
+                                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D ig = decodedImage.createGraphics();
+        ig.drawRenderedImage(decodedRenderedImage,
+                             new AffineTransform());
+        ig.dispose();
+        return decodedImage;
+    }
+
+    /**
+     * Template method for building the encoding parameters.
+     */
+    public PNGEncodeParam buildEncodeParam(BufferedImage image){
+        return PNGEncodeParam.getDefaultEncodeParam(image);
+    }
+
     /**
      * Template method for building the PNG output stream. This gives a
      * chance to sub-classes (e.g., Base64PNGEncoderTest) to add an
@@ -0,0 +1,62 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.codec.png;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.zip.Deflater;
+
+/**
+ * This test validates the PNGEncoder operation when the image data
+ * is compressed on several threads.  The image is large enough to be
+ * split into several compressed chunks.
+ *
+ * @version $Id$
+ */
+public class ParallelPNGEncoderTest extends PNGEncoderTest {
+    /**
+     * Template method for building the image to encode.
+     */
+    public BufferedImage createImage(){
+        BufferedImage image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D ig = image.createGraphics();
+        ig.setPaint(new GradientPaint(0, 0, Color.red,
+                                      400, 300, new Color(0, 0, 255, 64)));
+        ig.fillRect(0, 0, 400, 300);
+        for (int i=0; i<40; i++) {
+            ig.setPaint(new Color((i*0x3F1F7) & 0xFFFFFF));
+            ig.drawLine(i*10, 0, 400-i*10, 300);
+        }
+        ig.dispose();
+        return image;
+    }
+
+    /**
+     * Template method for building the encoding parameters.
+     */
+    public PNGEncodeParam buildEncodeParam(BufferedImage image){
+        PNGEncodeParam params = PNGEncodeParam.getDefaultEncodeParam(image);
+        params.setCompressionThreads(3);
+        params.setCompressionLevel(6);
+        params.setCompressionStrategy(Deflater.FILTERED);
+        return params;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Kernel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.test.AbstractTest;
+
+/**
+ * Checks <code>GaussianBlurRed8Bit</code> against the implementation
+ * it replaced, over random images and several standard deviations.
+ *
+ * With high quality rendering the result must be within one level of
+ * the horizontal then vertical <code>ConvolveOp</code> used before.
+ * Otherwise standard deviations of two and more use the box blur
+ * approximation, which must give exactly the same result as before.
+ * In both cases splitting the passes over several threads must not
+ * change the result.
+ *
+ * @version $Id$
+ */
+public class GaussianBlurAccuracyTest extends AbstractTest {
+
+    protected static final double[] STD_DEVS = { 0.75, 1.5, 2, 3, 5, 10 };
+
+    protected static final int WIDTH  = 300;
+    protected static final int HEIGHT = 200;
+
+    public boolean runImplBasic() throws Exception {
+        RenderingHints quality = new RenderingHints
+            (RenderingHints.KEY_RENDERING,
+             RenderingHints.VALUE_RENDER_QUALITY);
+        ForkJoinPool oldPool = GaussianBlurRed8Bit.getBlurPool();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int type = 0; type < 3; type++) {
+                BufferedImage src = createImage(type);
+                for (int i = 0; i < STD_DEVS.length; i++) {
+                    double stdDev = STD_DEVS[i];
+                    int rad = GaussianBlurRed8Bit.surroundPixels
+                        (stdDev, quality);
+                    float[] data = kernelData(2*rad+1, stdDev);
+                    int[] blur = blur(src, stdDev, quality, rad, pool);
+                    int[] old = convolveOp(src, data, rad);
+                    for (int j = 0; j < blur.length; j++) {
+                        int d = blur[j] - old[j];
+                        assertTrue((d >= -1) && (d <= 1));
+                    }
+
+                    if (stdDev < 2)
+                        continue;
+
+                    rad = GaussianBlurRed8Bit.surroundPixels(stdDev, null);
+                    blur = blur(src, stdDev, null, rad, pool);
+                    assertTrue(Arrays.equals
+                               (blur, boxBlur(src, stdDev, rad)));
+                }
+            }
+        } finally {
+            GaussianBlurRed8Bit.setBlurPool(oldPool);
+            pool.shutdown();
+        }
+        return true;
+    }
+
+    /**
+     * Creates a premultiplied test image: random translucent pixels,
+     * random opaque pixels or a flat color.
+     */
+    protected BufferedImage createImage(int type) {
+        BufferedImage img = new BufferedImage
+            (WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] pix = ((DataBufferInt)img.getRaster().getDataBuffer())
+            .getData();
+        Random r = new Random(type);
+        for (int i = 0; i < pix.length; i++) {
+            switch (type) {
+            case 0: {
+                int a = r.nextInt(256);
+                int p = a << 24;
+                for (int s = 0; s < 24; s += 8)
+                    p |= r.nextInt(a + 1) << s;
+                pix[i] = p;
+                break;
+            }
+            case 1:
+                pix[i] = 0xFF000000 | r.nextInt(1 << 24);
+                break;
+            default:
+                pix[i] = 0xFF8899AA;
+            }
+        }
+        return img;
+    }
+
+    /**
+     * Returns the samples of the interior of the blurred image, checking
+     * that blurring on <code>pool</code> gives the same samples as
+     * blurring on the calling thread.
+     */
+    protected int[] blur(BufferedImage src, double stdDev,
+                         RenderingHints hints, int rad, ForkJoinPool pool)
+        throws Exception {
+        GaussianBlurRed8Bit.setBlurPool(null);
+        int[] ret = blur(src, stdDev, hints, rad);
+        GaussianBlurRed8Bit.setBlurPool(pool);
+        assertTrue(Arrays.equals(ret, blur(src, stdDev, hints, rad)));
+        return ret;
+    }
+
+    /**
+     * Returns the samples of the interior of the blurred image.
+     */
+    protected int[] blur(BufferedImage src, double stdDev,
+                         RenderingHints hints, int rad) {
+        CachableRed cr = new GaussianBlurRed8Bit
+            (GraphicsUtil.wrap(src), stdDev, hints);
+        Raster ras = cr.getData();
+        return interior(ras, rad);
+    }
+
+    /**
+     * Blurs <code>src</code> the way the previous implementation did,
+     * with a horizontal then a vertical <code>ConvolveOp</code>.
+     */
+    protected int[] convolveOp(BufferedImage src, float[] data, int rad) {
+        int len = data.length;
+        Raster ras = src.getRaster();
+        WritableRaster tmp = ras.createCompatibleWritableRaster();
+        new ConvolveOp(new Kernel(len, 1, data)).filter(ras, tmp);
+        WritableRaster dst = ras.createCompatibleWritableRaster();
+        new ConvolveOp(new Kernel(1, len, data)).filter(tmp, dst);
+        return interior(dst, rad);
+    }
+
+    /**
+     * Blurs <code>src</code> the way the previous implementation did
+     * for standard deviations of two and more: three horizontal box
+     * filters followed by three vertical ones, each pass truncating
+     * the average of its window in 8.24 fixed point.
+     */
+    protected int[] boxBlur(BufferedImage src, double stdDev, int rad) {
+        float dsqrt2pi = (float)Math.sqrt(2*Math.PI)*3f/4f;
+        int d = (int)Math.floor(dsqrt2pi*stdDev+0.5f);
+        int[][] passes;
+        if ((d&0x01) == 0)
+            passes = new int[][] { { 0, d, d/2 }, { d/2, d, d/2-1 },
+                                   { d-1, d+1, d/2 } };
+        else
+            passes = new int[][] { { 0, d, d/2 }, { d/2, d, d/2 },
+                                   { d-2, d, d/2 } };
+        int skipX = passes[2][0] + d/2;
+
+        int w = WIDTH-2*rad, h = HEIGHT-2*rad;
+        int[] ret = new int[w*h*4];
+        for (int b = 0; b < 4; b++) {
+            int[][] img = new int[HEIGHT][WIDTH];
+            for (int y = 0; y < HEIGHT; y++)
+                for (int x = 0; x < WIDTH; x++)
+                    img[y][x] = sample(src, x, y, b);
+
+            for (int p = 0; p < 3; p++) {
+                int skip = passes[p][0], boxSz = passes[p][1];
+                int loc = passes[p][2], scale = (1<<24)/boxSz;
+                int[][] out = new int[HEIGHT][];
+                for (int y = 0; y < HEIGHT; y++) {
+                    out[y] = (int[])img[y].clone();
+                    for (int x = skip; x+boxSz <= WIDTH-skip; x++) {
+                        int sum = 0;
+                        for (int i = 0; i < boxSz; i++)
+                            sum += img[y][x+i];
+                        out[y][x+loc] = (sum*scale)>>>24;
+                    }
+                }
+                img = out;
+            }
+
+            for (int p = 0; p < 3; p++) {
+                int skip = passes[p][0], boxSz = passes[p][1];
+                int loc = passes[p][2], scale = (1<<24)/boxSz;
+                int[][] out = new int[HEIGHT][];
+                for (int y = 0; y < HEIGHT; y++)
+                    out[y] = (int[])img[y].clone();
+                for (int x = skipX; x < WIDTH-skipX; x++) {
+                    for (int y = skip; y+boxSz <= HEIGHT-skip; y++) {
+                        int sum = 0;
+                        for (int i = 0; i < boxSz; i++)
+                            sum += img[y+i][x];
+                        out[y+loc][x] = (sum*scale)>>>24;
+                    }
+                }
+                img = out;
+            }
+
+            for (int y = 0; y < h; y++)
+                for (int x = 0; x < w; x++)
+                    ret[(y*w+x)*4+b] = img[y+rad][x+rad];
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the samples of <code>ras</code> more than
+     * <code>rad</code> pixels away from the image edges, in the order
+     * red, green, blue, alpha.
+     */
+    protected static int[] interior(Raster ras, int rad) {
+        Rectangle r = new Rectangle(rad, rad, WIDTH-2*rad, HEIGHT-2*rad);
+        return ras.getPixels(r.x, r.y, r.width, r.height, (int[])null);
+    }
+
+    /**
+     * Returns band <code>b</code> of pixel (x, y), the bands being in
+     * the order red, green, blue, alpha.
+     */
+    protected static int sample(BufferedImage img, int x, int y, int b) {
+        return img.getRaster().getSample(x, y, b);
+    }
+
+    /**
+     * Computes the kernel data the same way
+     * <code>GaussianBlurRed8Bit</code> does.
+     */
+    protected static float[] kernelData(int len, double stdDev) {
+        float sqrt2pi = (float)Math.sqrt(2*Math.PI);
+        float[] data = new float[len];
+        int mid = len/2;
+        float sum = 0;
+        for (int i = 0; i < len; i++) {
+            data[i] = (float)(Math.pow(Math.E, -(i-mid)*(i-mid)/
+                                       (2*stdDev*stdDev)) /
+                              (sqrt2pi*stdDev));
+            sum += data[i];
+        }
+        for (int i = 0; i < len; i++)
+            data[i] /= sum;
+        return data;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Measures the time taken by <code>GaussianBlurRed8Bit</code> to blur
+ * a square image of <code>ImageSize</code> pixels with a standard
+ * deviation of <code>StdDev</code>.  The blur passes are split over
+ * <code>Threads</code> threads, 0 keeps the default blur pool.
+ *
+ * @version $Id$
+ */
+public class GaussianBlurPerformanceTest extends PerformanceTest {
+
+    protected double stdDev = 10;
+    protected int imageSize = 1024;
+    protected int threads = 0;
+    protected boolean highQuality = false;
+
+    protected GaussianBlurRed8Bit blur;
+    protected WritableRaster dest;
+    protected ForkJoinPool pool;
+
+    public void setStdDev(double stdDev) {
+        this.stdDev = stdDev;
+    }
+
+    public void setImageSize(int imageSize) {
+        this.imageSize = imageSize;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void setHighQuality(boolean highQuality) {
+        this.highQuality = highQuality;
+    }
+
+    protected void setup() {
+        BufferedImage bi = new BufferedImage
+            (imageSize, imageSize, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = bi.createGraphics();
+        Random rnd = new Random(42);
+        for (int i=0; i<64; i++) {
+            g.setColor(new Color(rnd.nextInt(), true));
+            g.fillOval(rnd.nextInt(imageSize), rnd.nextInt(imageSize),
+                       rnd.nextInt(imageSize/2+1), rnd.nextInt(imageSize/2+1));
+        }
+        g.dispose();
+
+        RenderingHints rh = null;
+        if (highQuality)
+            rh = new RenderingHints(RenderingHints.KEY_RENDERING,
+                                    RenderingHints.VALUE_RENDER_QUALITY);
+        blur = new GaussianBlurRed8Bit(new BufferedImageCachableRed(bi),
+                                       stdDev, rh);
+        Rectangle r = blur.getBounds();
+        dest = blur.getColorModel().createCompatibleWritableRaster
+            (r.width, r.height);
+        dest = dest.createWritableTranslatedChild(r.x, r.y);
+
+        if (threads > 1)
+            pool = new ForkJoinPool(threads);
+    }
+
+    protected void runOp() {
+        if (blur == null)
+            setup();
+
+        ForkJoinPool old = GaussianBlurRed8Bit.getBlurPool();
+        if (threads > 0)
+            GaussianBlurRed8Bit.setBlurPool(pool);
+        try {
+            blur.copyData(dest);
+        } finally {
+            GaussianBlurRed8Bit.setBlurPool(old);
+        }
+    }
+}
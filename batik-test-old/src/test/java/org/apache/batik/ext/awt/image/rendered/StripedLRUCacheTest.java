@@ -0,0 +1,97 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Point;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+import org.apache.batik.test.AbstractTest;
+
+/**
+ * Checks that the striped tile cache stays within its byte budget,
+ * counts hits and misses through the tile stores and keeps its
+ * partitions independent.
+ *
+ * @version $Id$
+ */
+public class StripedLRUCacheTest extends AbstractTest {
+
+    static final int TILE = 16;
+
+    static class Gen implements TileGenerator {
+        int generated;
+        public Raster genTile(int x, int y) {
+            generated++;
+            SinglePixelPackedSampleModel sm = new SinglePixelPackedSampleModel
+                (DataBuffer.TYPE_INT, TILE, TILE,
+                 new int[] { 0xFF0000, 0xFF00, 0xFF, 0xFF000000 });
+            WritableRaster wr = Raster.createWritableRaster
+                (sm, new Point(x*TILE, y*TILE));
+            return wr;
+        }
+    }
+
+    public boolean runImplBasic() throws Exception {
+        long tileBytes = TILE*TILE*4;
+
+        // One stripe so the budget is exact.
+        StripedLRUCache cache = new StripedLRUCache(10*tileBytes, 1);
+        Gen gen = new Gen();
+        TileStore store = TileCache.getTileGrid(0, 0, 8, 8, gen, cache);
+
+        for (int y=0; y<4; y++)
+            for (int x=0; x<8; x++)
+                store.getTile(x, y);
+        assertEquals(32, gen.generated);
+        assertEquals(32, (int)cache.getMisses());
+        assertTrue(cache.getBytes() <= 10*tileBytes);
+        assertEquals(10, cache.getUsed());
+        assertEquals(22, (int)cache.getEvictions());
+
+        // The most recently used tile is still there.
+        store.getTile(7, 3);
+        assertEquals(32, gen.generated);
+        assertEquals(1, (int)cache.getHits());
+
+        // Shrinking the budget evicts.
+        cache.setMaxBytes(2*tileBytes);
+        assertEquals(2, cache.getUsed());
+
+        // Clearing a tile gives its bytes back.
+        store.setTile(7, 3, null);
+        assertEquals(1, cache.getUsed());
+        assertEquals(tileBytes, cache.getBytes());
+
+        // A separate partition is not affected by the first one.
+        StripedLRUCache other = TileCache.createPartition(100*tileBytes);
+        TileStore map = TileCache.getTileMap(gen, other);
+        for (int i=0; i<20; i++)
+            map.getTile(i, 0);
+        assertEquals(20, other.getUsed());
+        assertEquals(1, cache.getUsed());
+
+        other.flush();
+        assertEquals(0, other.getUsed());
+        assertTrue(other.getBytes() == 0);
+        return true;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.batik.test.AbstractTest;
+
+/**
+ * Checks that <code>TurbulencePatternRed</code> generates the same
+ * pixels whether the rows are split over several threads or not, and
+ * whether they come from the pattern cache or not, and that the
+ * patterns generated through an axis aligned transform match the ones
+ * generated one pixel at a time.
+ *
+ * @version $Id$
+ */
+public class TurbulencePatternRedTest extends AbstractTest {
+
+    protected static final AffineTransform[] TRANSFORMS = {
+        new AffineTransform(),
+        new AffineTransform(.5, 0, 0, .25, -13.3, 7.1),
+        AffineTransform.getRotateInstance(.3)
+    };
+
+    protected static final Rectangle BOUNDS = new Rectangle(-20, 10, 301, 203);
+
+    public boolean runImplBasic() throws Exception {
+        ForkJoinPool oldPool = TurbulencePatternRed.getTurbulencePool();
+        boolean oldEnabled = TurbulencePatternRed.isPatternCacheEnabled();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int t = 0; t < TRANSFORMS.length; t++) {
+                for (int type = 0; type < 4; type++) {
+                    boolean fractal = (type & 1) != 0;
+                    Rectangle2D tile = null;
+                    if ((type & 2) != 0)
+                        tile = new Rectangle2D.Double(0, 0, 57, 43);
+
+                    TurbulencePatternRed.setPatternCacheEnabled(false);
+                    TurbulencePatternRed.setTurbulencePool(null);
+                    int[] ref = generate(TRANSFORMS[t], fractal, tile,
+                                         true, BOUNDS);
+
+                    TurbulencePatternRed.setTurbulencePool(pool);
+                    assertTrue(Arrays.equals
+                               (ref, generate(TRANSFORMS[t], fractal, tile,
+                                              true, BOUNDS)));
+
+                    TurbulencePatternRed.setPatternCacheEnabled(true);
+                    long misses = TurbulencePatternRed.getPatternCache()
+                        .getMisses();
+                    assertTrue(Arrays.equals
+                               (ref, generate(TRANSFORMS[t], fractal, tile,
+                                              true, BOUNDS)));
+                    assertTrue(TurbulencePatternRed.getPatternCache()
+                               .getMisses() > misses);
+
+                    // A second image of the same pattern reuses the
+                    // tiles of the first one.
+                    misses = TurbulencePatternRed.getPatternCache()
+                        .getMisses();
+                    assertTrue(Arrays.equals
+                               (ref, generate(TRANSFORMS[t], fractal, tile,
+                                              true, BOUNDS)));
+                    assertEquals(misses, TurbulencePatternRed
+                                 .getPatternCache().getMisses());
+
+                    // The red, green and blue channels do not depend on
+                    // the alpha channel, which sends the patterns
+                    // generated without it down the per pixel path.
+                    int[] rgb = generate(TRANSFORMS[t], fractal, tile,
+                                         false, BOUNDS);
+                    for (int i = 0; i < ref.length; i++)
+                        assertEquals(ref[i] & 0xFFFFFF, rgb[i]);
+                }
+            }
+        } finally {
+            TurbulencePatternRed.setTurbulencePool(oldPool);
+            TurbulencePatternRed.setPatternCacheEnabled(oldEnabled);
+            pool.shutdown();
+        }
+        return true;
+    }
+
+    protected int[] generate(AffineTransform txf, boolean fractal,
+                             Rectangle2D tile, boolean alpha,
+                             Rectangle bounds) {
+        TurbulencePatternRed red = new TurbulencePatternRed
+            (.05, .07, 5, 7, fractal, tile, txf, bounds,
+             ColorSpace.getInstance(ColorSpace.CS_sRGB), alpha);
+        WritableRaster wr = red.getColorModel().createCompatibleWritableRaster
+            (bounds.width, bounds.height);
+        wr = wr.createWritableTranslatedChild(bounds.x, bounds.y);
+        red.copyData(wr);
+        return ((DataBufferInt)wr.getDataBuffer()).getData();
+    }
+}
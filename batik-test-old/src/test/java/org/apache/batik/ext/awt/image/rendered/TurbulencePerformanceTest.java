@@ -0,0 +1,98 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.awt.geom.AffineTransform;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Measures the time taken by <code>TurbulencePatternRed</code> to
+ * generate a square pattern of <code>ImageSize</code> pixels with
+ * <code>NumOctaves</code> octaves.  The rows are split over
+ * <code>Threads</code> threads, 0 keeps the default turbulence pool.
+ * With <code>Cached</code> the pattern is generated once and then
+ * copied out of the pattern cache.
+ *
+ * @version $Id$
+ */
+public class TurbulencePerformanceTest extends PerformanceTest {
+
+    protected int imageSize = 512;
+    protected int numOctaves = 4;
+    protected boolean fractalNoise = false;
+    protected boolean cached = false;
+    protected int threads = 0;
+
+    protected Rectangle bounds;
+    protected WritableRaster dest;
+    protected ForkJoinPool pool;
+
+    public void setImageSize(int imageSize) {
+        this.imageSize = imageSize;
+    }
+
+    public void setNumOctaves(int numOctaves) {
+        this.numOctaves = numOctaves;
+    }
+
+    public void setFractalNoise(boolean fractalNoise) {
+        this.fractalNoise = fractalNoise;
+    }
+
+    public void setCached(boolean cached) {
+        this.cached = cached;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    protected void runOp() {
+        if (bounds == null) {
+            bounds = new Rectangle(0, 0, imageSize, imageSize);
+            if (threads > 1)
+                pool = new ForkJoinPool(threads);
+        }
+
+        ForkJoinPool oldPool = TurbulencePatternRed.getTurbulencePool();
+        boolean old = TurbulencePatternRed.isPatternCacheEnabled();
+        if (threads > 0)
+            TurbulencePatternRed.setTurbulencePool(pool);
+        TurbulencePatternRed.setPatternCacheEnabled(cached);
+        try {
+            // Small base frequencies so that all the octaves are kept.
+            TurbulencePatternRed red = new TurbulencePatternRed
+                (.005, .005, numOctaves, 0, fractalNoise, null,
+                 new AffineTransform(), bounds,
+                 ColorSpace.getInstance(ColorSpace.CS_sRGB), true);
+            if (dest == null)
+                dest = red.getColorModel().createCompatibleWritableRaster
+                    (imageSize, imageSize);
+            red.copyData(dest);
+        } finally {
+            TurbulencePatternRed.setTurbulencePool(oldPool);
+            TurbulencePatternRed.setPatternCacheEnabled(old);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.batik.bridge.RepaintManager;
+import org.apache.batik.gvt.renderer.DynamicRenderer;
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Measures the time taken by a <code>DynamicRenderer</code> to repaint
+ * a frame where a small shape moves over a static group of
+ * <code>Shapes</code> shapes, with the layer cache of the renderer
+ * enabled or not, see <code>LayerCache</code>.
+ *
+ * @version $Id$
+ */
+public class LayerCachePerformanceTest extends PerformanceTest {
+
+    protected static final int SIZE = 600;
+
+    protected int shapes = 5000;
+    protected boolean layerCache = true;
+
+    protected ShapeNode sprite;
+    protected UpdateTracker tracker;
+    protected RepaintManager manager;
+    protected int frame;
+
+    public void setShapes(int shapes) {
+        this.shapes = shapes;
+    }
+
+    public void setLayerCache(boolean layerCache) {
+        this.layerCache = layerCache;
+    }
+
+    protected void setup() throws Exception {
+        Random rnd = new Random(3);
+        RootGraphicsNode root = new RootGraphicsNode();
+        CompositeGraphicsNode background = new CompositeGraphicsNode();
+        for (int i = 0; i < shapes; i++)
+            background.add(createShape(rnd, 5 + rnd.nextInt(60)));
+        root.add(background);
+        sprite = createShape(rnd, 40);
+        root.add(sprite);
+
+        DynamicRenderer renderer = new DynamicRenderer();
+        renderer.setLayerCacheEnabled(layerCache);
+        tracker = new UpdateTracker();
+        tracker.setLayerCache(renderer.getLayerCache());
+        root.addTreeGraphicsNodeChangeListener(tracker);
+
+        renderer.setTree(root);
+        manager = new RepaintManager(renderer);
+        manager.setupRenderer(new AffineTransform(), false, null, SIZE, SIZE);
+        renderer.repaint(new Rectangle2D.Double(0, 0, SIZE, SIZE));
+    }
+
+    protected ShapeNode createShape(Random rnd, int size) {
+        ShapeNode n = new ShapeNode();
+        n.setShape(new Ellipse2D.Double(rnd.nextInt(SIZE - size),
+                                        rnd.nextInt(SIZE - size),
+                                        size, size));
+        FillShapePainter p = new FillShapePainter(n.getShape());
+        p.setPaint(new Color(rnd.nextInt(), true));
+        n.setShapePainter(p);
+        return n;
+    }
+
+    protected void runOp() throws Exception {
+        if (manager == null)
+            setup();
+
+        frame++;
+        sprite.setTransform(AffineTransform.getTranslateInstance
+                            ((frame * 7) % (SIZE - 60),
+                             (frame * 5) % (SIZE - 60)));
+        List areas = tracker.getDirtyAreas();
+        tracker.clear();
+        manager.updateRendering(areas);
+    }
+}
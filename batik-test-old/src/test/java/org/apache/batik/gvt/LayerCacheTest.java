@@ -0,0 +1,226 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.batik.bridge.RepaintManager;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.gvt.renderer.DynamicRenderer;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that a <code>DynamicRenderer</code> painting from its layer
+ * cache renders the same frames as one painting all the nodes, while a
+ * small shape moves over a large static group that changes once.
+ *
+ * @version $Id$
+ */
+public class LayerCacheTest extends AbstractTest {
+
+    public static final String ERROR_DIFFERENT_FRAME =
+        "LayerCacheTest.error.different.frame";
+
+    public static final String ERROR_NO_HIT =
+        "LayerCacheTest.error.no.hit";
+
+    public static final String ERROR_STATISTICS_NOT_CLEARED =
+        "LayerCacheTest.error.statistics.not.cleared";
+
+    public static final String ERROR_LOCKED_WHILE_PAINTING =
+        "LayerCacheTest.error.locked.while.painting";
+
+    public static final String ENTRY_KEY_FRAME =
+        "LayerCacheTest.entry.key.frame";
+
+    protected static final int SIZE = 300;
+
+    /**
+     * The largest difference allowed on a color component, for the
+     * rounding of the blending through the layer.
+     */
+    protected static final int TOLERANCE = 2;
+
+    public TestReport runImpl() throws Exception {
+        // Each renderer gets its own copy of the tree, the renderings
+        // of a tree are shared by its renderers.
+        Scene cachedScene = new Scene();
+        Scene plainScene = new Scene();
+
+        DynamicRenderer cached = new DynamicRenderer();
+        cached.setLayerCacheEnabled(true);
+        GraphicsNodeLayerCache cache = cached.getLayerCache();
+        cache.setMinimumPaintTime(0);
+        cache.setMinimumFrames(2);
+        cachedScene.tracker.setLayerCache(cache);
+        DynamicRenderer plain = new DynamicRenderer();
+
+        RepaintManager cachedManager = setup(cached, cachedScene.root);
+        RepaintManager plainManager = setup(plain, plainScene.root);
+
+        for (int f = 0; f < 12; f++) {
+            cachedManager.updateRendering(cachedScene.nextFrame(f));
+            plainManager.updateRendering(plainScene.nextFrame(f));
+
+            if (!same(cached.getOffScreen(), plain.getOffScreen())) {
+                DefaultTestReport report = new DefaultTestReport(this);
+                report.setErrorCode(ERROR_DIFFERENT_FRAME);
+                report.addDescriptionEntry(ENTRY_KEY_FRAME,
+                                           Integer.toString(f));
+                report.setPassed(false);
+                return report;
+            }
+        }
+
+        if (cache.getHitCount() == 0)
+            return reportError(ERROR_NO_HIT);
+
+        cache.clear();
+        if (cache.getHitCount() != 0 || cache.getMissCount() != 0 ||
+            cache.getRasterizationCount() != 0 ||
+            cache.getInvalidationCount() != 0 ||
+            cache.getEvictionCount() != 0)
+            return reportError(ERROR_STATISTICS_NOT_CLEARED);
+
+        if (!paintsUnlocked(cache))
+            return reportError(ERROR_LOCKED_WHILE_PAINTING);
+        return reportSuccess();
+    }
+
+    /**
+     * Checks that another thread can use the cache while a node
+     * painted through it is painting.
+     */
+    protected boolean paintsUnlocked(final GraphicsNodeLayerCache cache)
+        throws InterruptedException {
+        final boolean[] done = new boolean[1];
+        CompositeGraphicsNode node = new CompositeGraphicsNode() {
+                public void paint(Graphics2D g2d) {
+                    Thread t = new Thread() {
+                            public void run() {
+                                cache.getHitCount();
+                                synchronized (done) {
+                                    done[0] = true;
+                                }
+                            }
+                        };
+                    t.start();
+                    try {
+                        t.join(5000);
+                    } catch (InterruptedException e) {
+                    }
+                }
+            };
+        BufferedImage bi =
+            new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = GraphicsUtil.createGraphics(bi);
+        try {
+            cache.paint(node, g);
+        } finally {
+            g.dispose();
+        }
+        synchronized (done) {
+            return done[0];
+        }
+    }
+
+    /**
+     * A large static group under a small moving shape.
+     */
+    protected class Scene {
+        RootGraphicsNode root = new RootGraphicsNode();
+        CompositeGraphicsNode background = new CompositeGraphicsNode();
+        ShapeNode sprite;
+        UpdateTracker tracker = new UpdateTracker();
+
+        Scene() {
+            Random rnd = new Random(5);
+            for (int i = 0; i < 500; i++)
+                background.add(createShape(rnd, 10 + rnd.nextInt(40)));
+            root.add(background);
+            sprite = createShape(rnd, 30);
+            root.add(sprite);
+            root.addTreeGraphicsNodeChangeListener(tracker);
+        }
+
+        /**
+         * Moves the shape, changes the group at the 8th frame and
+         * returns the dirty areas.
+         */
+        List nextFrame(int f) {
+            if (f == 7) {
+                ShapeNode n =
+                    (ShapeNode)background.get(background.size() - 1);
+                n.setShape(new Rectangle(100, 100, 80, 60));
+                FillShapePainter p = new FillShapePainter(n.getShape());
+                p.setPaint(Color.black);
+                n.setShapePainter(p);
+            }
+            sprite.setTransform(AffineTransform.getTranslateInstance
+                                (f * 17, f * 11));
+            List areas = tracker.getDirtyAreas();
+            tracker.clear();
+            return areas;
+        }
+    }
+
+    protected ShapeNode createShape(Random rnd, int size) {
+        ShapeNode n = new ShapeNode();
+        n.setShape(new Ellipse2D.Double(rnd.nextInt(SIZE - size),
+                                        rnd.nextInt(SIZE - size),
+                                        size, size));
+        FillShapePainter p = new FillShapePainter(n.getShape());
+        p.setPaint(new Color(rnd.nextInt(), true));
+        n.setShapePainter(p);
+        return n;
+    }
+
+    protected RepaintManager setup(DynamicRenderer r, GraphicsNode root) {
+        r.setTree(root);
+        RepaintManager rm = new RepaintManager(r);
+        rm.setupRenderer(new AffineTransform(), false, null, SIZE, SIZE);
+        r.repaint(new Rectangle2D.Double(0, 0, SIZE, SIZE));
+        return rm;
+    }
+
+    protected boolean same(BufferedImage a, BufferedImage b) {
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int p = a.getRGB(x, y);
+                int q = b.getRGB(x, y);
+                for (int s = 0; s < 32; s += 8) {
+                    int d = ((p >>> s) & 0xff) - ((q >>> s) & 0xff);
+                    if (d > TOLERANCE || d < -TOLERANCE)
+                        return false;
+                }
+            }
+        }
+        return true;
+    }
+}
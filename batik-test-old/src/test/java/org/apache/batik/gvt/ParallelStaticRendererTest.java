@@ -0,0 +1,166 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Rectangle;
+import java.awt.geom.Dimension2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.GVTBuilder;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.ext.awt.image.rendered.AbstractTiledRed;
+import org.apache.batik.ext.awt.image.rendered.LRUCache;
+import org.apache.batik.gvt.renderer.ParallelStaticRenderer;
+import org.apache.batik.gvt.renderer.StaticRenderer;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.w3c.dom.Document;
+
+/**
+ * Checks that a <code>ParallelStaticRenderer</code> renders a document
+ * with exactly the pixels of a <code>StaticRenderer</code>, both from
+ * scratch and after every other tile was flushed, so the repaint is
+ * split into several blocks that are rendered concurrently.
+ *
+ * @version $Id$
+ */
+public class ParallelStaticRendererTest extends AbstractTest {
+
+    public static final String ERROR_IMAGE_DIFFER =
+        "ParallelStaticRendererTest.error.image.differ";
+
+    public static final String ENTRY_KEY_PASS =
+        "ParallelStaticRendererTest.entry.key.pass";
+
+    public static final String ENTRY_KEY_PIXELS =
+        "ParallelStaticRendererTest.entry.key.pixels";
+
+    /**
+     * The number of threads of the pool.
+     */
+    protected static final int THREADS = 4;
+
+    /**
+     * The number of tiles each renderer may keep.
+     */
+    protected static final int CACHE_TILES = 1000;
+
+    protected String inputURI;
+
+    /**
+     * @param inputURI the URI of the document to render
+     */
+    public ParallelStaticRendererTest(String inputURI) {
+        this.inputURI = inputURI;
+    }
+
+    public String getName() {
+        return inputURI;
+    }
+
+    public TestReport runImpl() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        try {
+            StaticRenderer plain = new StaticRenderer();
+            StaticRenderer parallel = new ParallelStaticRenderer(pool);
+            Rectangle r = setup(plain);
+            setup(parallel);
+
+            for (int pass = 0; pass < 2; pass++) {
+                if (pass == 1) {
+                    flushCheckerboard(plain, r);
+                    flushCheckerboard(parallel, r);
+                }
+                plain.repaint(r);
+                parallel.repaint(r);
+
+                int differ = compare(plain.getOffScreen(),
+                                     parallel.getOffScreen());
+                if (differ != 0) {
+                    DefaultTestReport report = new DefaultTestReport(this);
+                    report.setErrorCode(ERROR_IMAGE_DIFFER);
+                    report.addDescriptionEntry(ENTRY_KEY_PASS,
+                                               Integer.toString(pass));
+                    report.addDescriptionEntry(ENTRY_KEY_PIXELS,
+                                               Integer.toString(differ));
+                    report.setPassed(false);
+                    return report;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Gives the renderer its own tree and tile cache, and returns the
+     * area of the document.
+     */
+    protected Rectangle setup(StaticRenderer renderer) throws Exception {
+        String uri = new File(inputURI).getAbsoluteFile().toURI().toString();
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        Document doc = new SAXSVGDocumentFactory(parser).createDocument(uri);
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        GraphicsNode gn = new GVTBuilder().build(ctx, doc);
+        Dimension2D d = ctx.getDocumentSize();
+        Rectangle r = new Rectangle(0, 0, (int)Math.ceil(d.getWidth()),
+                                    (int)Math.ceil(d.getHeight()));
+
+        renderer.setTileCache(new LRUCache(CACHE_TILES));
+        renderer.setTree(gn);
+        renderer.updateOffScreen(r.width, r.height);
+        return r;
+    }
+
+    /**
+     * Flushes every other tile of the rendering.
+     */
+    protected void flushCheckerboard(StaticRenderer renderer, Rectangle r) {
+        int ts = AbstractTiledRed.getDefaultTileSize();
+        for (int y = 0; y * ts < r.height; y++) {
+            for (int x = (y & 1); x * ts < r.width; x += 2) {
+                renderer.flush(new Rectangle(x * ts + ts / 2,
+                                             y * ts + ts / 2, 1, 1));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of pixels that differ between a and b.
+     */
+    protected int compare(BufferedImage a, BufferedImage b) {
+        int w = a.getWidth();
+        int h = a.getHeight();
+        int[] p = a.getRGB(0, 0, w, h, null, 0, w);
+        int[] q = b.getRGB(0, 0, w, h, null, 0, w);
+        int differ = 0;
+        for (int i = 0; i < p.length; i++) {
+            if (p[i] != q[i])
+                differ++;
+        }
+        return differ;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Color;
+import java.awt.PaintContext;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.util.Arrays;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that a <code>PatternPaint</code> reusing its last context for
+ * a translated transform, including negative shifts, produces the same
+ * pixels as a new paint creating its context for that transform.
+ *
+ * @version $Id$
+ */
+public class PatternPaintTest extends AbstractTest {
+
+    public static final String ERROR_DIFFERENT_PIXELS =
+        "PatternPaintTest.error.different.pixels";
+
+    public static final String ENTRY_KEY_OFFSET =
+        "PatternPaintTest.entry.key.offset";
+
+    protected static final int SIZE = 64;
+
+    /**
+     * The translations the reused context is asked for, the first one
+     * creates it.
+     */
+    protected static final int[][] OFFSETS = {
+        { 0, 0 }, { -37, 0 }, { 0, -53 }, { 128, 256 }, { -300, -41 },
+    };
+
+    public TestReport runImpl() throws Exception {
+        PatternPaint reused = createPaint();
+        ColorModel cm = ColorModel.getRGBdefault();
+        Rectangle r = new Rectangle(0, 0, SIZE, SIZE);
+
+        for (int[] offset : OFFSETS) {
+            AffineTransform at = AffineTransform.getTranslateInstance
+                (offset[0] + 0.25, offset[1] - 0.5);
+            PaintContext a = reused.createContext(cm, r, r, at, null);
+            PaintContext b = createPaint().createContext(cm, r, r, at, null);
+            Raster ra = a.getRaster(0, 0, SIZE, SIZE);
+            Raster rb = b.getRaster(0, 0, SIZE, SIZE);
+            int[] pa = ra.getPixels(ra.getMinX(), ra.getMinY(),
+                                    SIZE, SIZE, (int[])null);
+            int[] pb = rb.getPixels(rb.getMinX(), rb.getMinY(),
+                                    SIZE, SIZE, (int[])null);
+            a.dispose();
+            b.dispose();
+            if (!Arrays.equals(pa, pb)) {
+                DefaultTestReport report = new DefaultTestReport(this);
+                report.setErrorCode(ERROR_DIFFERENT_PIXELS);
+                report.addDescriptionEntry(ENTRY_KEY_OFFSET,
+                                           offset[0] + "," + offset[1]);
+                report.setPassed(false);
+                return report;
+            }
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Returns a paint of circles on a 13 by 11 pixel grid.
+     */
+    protected PatternPaint createPaint() {
+        ShapeNode n = new ShapeNode();
+        n.setShape(new Ellipse2D.Double(1.5, 2.25, 9, 7));
+        FillShapePainter p = new FillShapePainter(n.getShape());
+        p.setPaint(Color.red);
+        n.setShapePainter(p);
+        return new PatternPaint(n, new Rectangle2D.Double(0, 0, 13, 11),
+                                false, null);
+    }
+}
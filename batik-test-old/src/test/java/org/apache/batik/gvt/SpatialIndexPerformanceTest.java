@@ -0,0 +1,97 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Measures the time taken to pick the nodes under 100 points and to
+ * paint a small area of a group of <code>Nodes</code> shapes, with or
+ * without the spatial index of the children, see
+ * <code>Indexed</code>.
+ *
+ * @version $Id$
+ */
+public class SpatialIndexPerformanceTest extends PerformanceTest {
+
+    protected static final int SIZE = 4000;
+
+    protected int nodes = 200000;
+    protected boolean indexed = true;
+
+    protected CompositeGraphicsNode root;
+    protected Point2D[] points;
+    protected BufferedImage image;
+
+    public void setNodes(int nodes) {
+        this.nodes = nodes;
+    }
+
+    public void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+    }
+
+    protected void setup() {
+        Random rnd = new Random(7);
+        root = new CompositeGraphicsNode();
+        for (int i = 0; i < nodes; i++) {
+            ShapeNode n = new ShapeNode();
+            n.setShape(new Rectangle2D.Double(rnd.nextInt(SIZE),
+                                              rnd.nextInt(SIZE),
+                                              1 + rnd.nextInt(10),
+                                              1 + rnd.nextInt(10)));
+            FillShapePainter p = new FillShapePainter(n.getShape());
+            p.setPaint(Color.black);
+            n.setShapePainter(p);
+            root.add(n);
+        }
+        points = new Point2D[100];
+        for (int i = 0; i < points.length; i++)
+            points[i] = new Point2D.Double(rnd.nextDouble() * SIZE,
+                                           rnd.nextDouble() * SIZE);
+        image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    protected void runOp() {
+        if (root == null)
+            setup();
+
+        int threshold = CompositeGraphicsNode.getSpatialIndexThreshold();
+        CompositeGraphicsNode.setSpatialIndexThreshold
+            (indexed ? 1000 : Integer.MAX_VALUE);
+        try {
+            for (int i = 0; i < points.length; i++)
+                root.nodeHitAt(points[i]);
+            Graphics2D g = image.createGraphics();
+            g.translate(-SIZE / 2, -SIZE / 2);
+            g.clipRect(SIZE / 2, SIZE / 2, 100, 100);
+            root.paint(g);
+            g.dispose();
+        } finally {
+            CompositeGraphicsNode.setSpatialIndexThreshold(threshold);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that a composite graphics node with a spatial index of its
+ * children picks and paints the same children as a plain scan of the
+ * children, also after children moved, were added or removed.
+ *
+ * @version $Id$
+ */
+public class SpatialIndexTest extends AbstractTest {
+
+    public static final String ERROR_DIFFERENT_HIT =
+        "SpatialIndexTest.error.different.hit";
+
+    public static final String ERROR_DIFFERENT_RENDERING =
+        "SpatialIndexTest.error.different.rendering";
+
+    public static final String ENTRY_KEY_POINT =
+        "SpatialIndexTest.entry.key.point";
+
+    protected static final int SIZE = 400;
+
+    public TestReport runImpl() throws Exception {
+        int threshold = CompositeGraphicsNode.getSpatialIndexThreshold();
+        // Index the top group only, the small groups are scanned.
+        CompositeGraphicsNode.setSpatialIndexThreshold(10);
+        try {
+            Random rnd = new Random(17);
+            CompositeGraphicsNode root = createTree(rnd, 3000);
+
+            TestReport r = check(root, rnd, "initial");
+            if (r != null)
+                return r;
+
+            // Move, resize and hide some of the children.
+            for (int i = 0; i < 200; i++) {
+                GraphicsNode n = (GraphicsNode)root.get(rnd.nextInt(root.size()));
+                switch (i % 3) {
+                case 0:
+                    n.setTransform(AffineTransform.getTranslateInstance
+                                   (rnd.nextInt(SIZE), rnd.nextInt(SIZE)));
+                    break;
+                case 1:
+                    if (n instanceof ShapeNode)
+                        ((ShapeNode)n).setShape(createShape(rnd));
+                    break;
+                default:
+                    n.setVisible(!n.isVisible());
+                }
+            }
+            r = check(root, rnd, "updated");
+            if (r != null)
+                return r;
+
+            // Change the children list.
+            for (int i = 0; i < 50; i++) {
+                root.remove(rnd.nextInt(root.size()));
+                root.add(rnd.nextInt(root.size()), createNode(rnd));
+            }
+            return (r = check(root, rnd, "modified")) != null
+                ? r : reportSuccess();
+        } finally {
+            CompositeGraphicsNode.setSpatialIndexThreshold(threshold);
+        }
+    }
+
+    protected CompositeGraphicsNode createTree(Random rnd, int n) {
+        CompositeGraphicsNode root = new CompositeGraphicsNode();
+        for (int i = 0; i < n; i++) {
+            if (i % 100 == 0) {
+                // A group that holds a few shapes of its own.
+                CompositeGraphicsNode g = new CompositeGraphicsNode();
+                g.setTransform(AffineTransform.getRotateInstance
+                               (rnd.nextDouble(), SIZE / 2, SIZE / 2));
+                for (int j = 0; j < 5; j++)
+                    g.add(createNode(rnd));
+                root.add(g);
+            } else {
+                root.add(createNode(rnd));
+            }
+        }
+        return root;
+    }
+
+    protected ShapeNode createNode(Random rnd) {
+        ShapeNode n = new ShapeNode();
+        n.setShape(createShape(rnd));
+        FillShapePainter p = new FillShapePainter(n.getShape());
+        p.setPaint(new Color(rnd.nextInt() | 0xff000000));
+        n.setShapePainter(p);
+        return n;
+    }
+
+    protected java.awt.Shape createShape(Random rnd) {
+        int w = 2 + rnd.nextInt(20);
+        int h = 2 + rnd.nextInt(20);
+        return new Ellipse2D.Double(rnd.nextInt(SIZE), rnd.nextInt(SIZE), w, h);
+    }
+
+    /**
+     * Compares the picked nodes and a clipped rendering with the ones
+     * of a plain scan of the children.
+     */
+    protected TestReport check(CompositeGraphicsNode root, Random rnd,
+                               String step) {
+        for (int i = 0; i < 2000; i++) {
+            Point2D p = new Point2D.Double(rnd.nextDouble() * SIZE,
+                                           rnd.nextDouble() * SIZE);
+            GraphicsNode plain = null;
+            for (int j = root.size() - 1; plain == null && j >= 0; j--) {
+                GraphicsNode n = (GraphicsNode)root.get(j);
+                Point2D cp = p;
+                if (n.getInverseTransform() != null)
+                    cp = n.getInverseTransform().transform(p, null);
+                plain = n.nodeHitAt(cp);
+            }
+            if (root.nodeHitAt(p) != plain ||
+                root.contains(p) != (plain != null))
+                return report(ERROR_DIFFERENT_HIT, step + " " + p);
+        }
+
+        Rectangle clip = new Rectangle(SIZE / 4, SIZE / 3, SIZE / 3, SIZE / 4);
+        BufferedImage indexed = paint(root, clip, false);
+        BufferedImage plain = paint(root, clip, true);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                if (indexed.getRGB(x, y) != plain.getRGB(x, y))
+                    return report(ERROR_DIFFERENT_RENDERING,
+                                  step + " " + x + "," + y);
+            }
+        }
+        return null;
+    }
+
+    protected BufferedImage paint(CompositeGraphicsNode root,
+                                  Rectangle2D clip, boolean scan) {
+        BufferedImage bi = new BufferedImage(SIZE, SIZE,
+                                             BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = bi.createGraphics();
+        g.clip(clip);
+        if (scan) {
+            for (int i = 0; i < root.size(); i++)
+                ((GraphicsNode)root.get(i)).paint(g);
+        } else {
+            root.paint(g);
+        }
+        g.dispose();
+        return bi;
+    }
+
+    protected TestReport report(String code, String where) {
+        DefaultTestReport report = new DefaultTestReport(this);
+        report.setErrorCode(code);
+        report.addDescriptionEntry(ENTRY_KEY_POINT, where);
+        report.setPassed(false);
+        return report;
+    }
+}
@@ -0,0 +1,380 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.parser;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.apache.batik.ext.awt.geom.ExtendedFloatPath;
+import org.apache.batik.ext.awt.geom.ExtendedGeneralPath;
+import org.apache.batik.ext.awt.geom.ExtendedPathIterator;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that the <code>ExtendedFloatPath</code> built by
+ * <code>AWTPathProducer</code> behaves like the
+ * <code>ExtendedGeneralPath</code> built from the same path data.
+ *
+ * The current point is compared after every command, then the
+ * segments of both path iterators, the bounds and the results of
+ * <code>contains</code> on a grid of points.
+ *
+ * @version $Id$
+ */
+public class ExtendedFloatPathTest extends AbstractTest {
+
+    protected String sourcePath;
+
+    /**
+     * Creates a new ExtendedFloatPathTest.
+     * @param spath The path to parse.
+     */
+    public ExtendedFloatPathTest(String spath) {
+        sourcePath = spath;
+    }
+
+    public TestReport runImpl() throws Exception {
+        AWTPathProducer producer = new AWTPathProducer();
+        producer.setWindingRule(PathIterator.WIND_NON_ZERO);
+        TestHandler handler = new TestHandler(producer);
+        PathParser pp = new PathParser();
+        pp.setPathHandler(handler);
+        pp.parse(new StringReader(sourcePath));
+
+        if (handler.error != null) {
+            return reportError("current.point", handler.error);
+        }
+
+        ExtendedFloatPath floatPath = (ExtendedFloatPath)producer.getShape();
+        ExtendedGeneralPath generalPath = handler.path;
+
+        String expected = toString(generalPath.getExtendedPathIterator());
+        String generated = toString(floatPath.getExtendedPathIterator());
+        if (!expected.equals(generated)) {
+            return reportError("extended.path.iterator", expected, generated);
+        }
+
+        AffineTransform at = new AffineTransform(0.5, 0.25, -0.75, 2, 3, -7);
+        AffineTransform[] transforms = { null, at };
+        for (int i = 0; i < transforms.length; i++) {
+            expected = toString(generalPath.getPathIterator(transforms[i]));
+            generated = toString(floatPath.getPathIterator(transforms[i]));
+            if (!expected.equals(generated)) {
+                return reportError("path.iterator", expected, generated);
+            }
+            expected = toString
+                (generalPath.getPathIterator(transforms[i], 0.5));
+            generated = toString
+                (floatPath.getPathIterator(transforms[i], 0.5));
+            if (!expected.equals(generated)) {
+                return reportError("flattened.path.iterator",
+                                   expected, generated);
+            }
+        }
+
+        Rectangle2D bounds = generalPath.getBounds2D();
+        if (!bounds.equals(floatPath.getBounds2D())) {
+            return reportError("bounds", bounds.toString(),
+                               floatPath.getBounds2D().toString());
+        }
+
+        double x0 = bounds.getX() - 5;
+        double y0 = bounds.getY() - 5;
+        double dx = (bounds.getWidth()  + 10) / 37;
+        double dy = (bounds.getHeight() + 10) / 37;
+        for (int i = 0; i <= 37; i++) {
+            for (int j = 0; j <= 37; j++) {
+                double x = x0 + i * dx;
+                double y = y0 + j * dy;
+                if (generalPath.contains(x, y) != floatPath.contains(x, y)) {
+                    return reportError("contains", x + " " + y);
+                }
+            }
+        }
+
+        return reportSuccess();
+    }
+
+    /**
+     * Returns a failed report with the given error code and entries.
+     */
+    protected TestReport reportError(String code, String expected,
+                                     String generated) {
+        DefaultTestReport report = new DefaultTestReport(this);
+        report.setErrorCode(code);
+        report.addDescriptionEntry("path", sourcePath);
+        report.addDescriptionEntry("expected.text", expected);
+        report.addDescriptionEntry("generated.text", generated);
+        report.setPassed(false);
+        return report;
+    }
+
+    /**
+     * Returns a failed report with the given error code and message.
+     */
+    protected TestReport reportError(String code, String message) {
+        DefaultTestReport report = new DefaultTestReport(this);
+        report.setErrorCode(code);
+        report.addDescriptionEntry("path", sourcePath);
+        report.addDescriptionEntry("message", message);
+        report.setPassed(false);
+        return report;
+    }
+
+    /**
+     * Returns the segments of a path iterator as a string.
+     */
+    protected static String toString(PathIterator pi) {
+        StringBuffer sb = new StringBuffer();
+        sb.append(pi.getWindingRule());
+        float[] coords = new float[6];
+        while (!pi.isDone()) {
+            int type = pi.currentSegment(coords);
+            sb.append(' ');
+            sb.append(type);
+            sb.append(Arrays.toString(coords));
+            Arrays.fill(coords, 0);
+            pi.next();
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the segments of an extended path iterator as a string.
+     */
+    protected static String toString(ExtendedPathIterator epi) {
+        StringBuffer sb = new StringBuffer();
+        sb.append(epi.getWindingRule());
+        float[] coords = new float[7];
+        while (!epi.isDone()) {
+            int type = epi.currentSegment(coords);
+            sb.append(' ');
+            sb.append(type);
+            sb.append(Arrays.toString(coords));
+            Arrays.fill(coords, 0);
+            epi.next();
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Builds an <code>ExtendedGeneralPath</code> the way
+     * <code>AWTPathProducer</code> used to, passes each command on to
+     * an <code>AWTPathProducer</code> and compares the current points
+     * of the two paths after each command.
+     */
+    protected static class TestHandler implements PathHandler {
+        protected AWTPathProducer producer;
+        protected ExtendedGeneralPath path;
+        protected float currentX, currentY;
+        protected float xCenter, yCenter;
+        protected String error;
+
+        public TestHandler(AWTPathProducer producer) {
+            this.producer = producer;
+        }
+
+        protected void check(String command) {
+            if (error != null) {
+                return;
+            }
+            Point2D expected = path.getCurrentPoint();
+            Shape s = producer.getShape();
+            Point2D generated = ((ExtendedFloatPath)s).getCurrentPoint();
+            if (expected == null ? generated != null
+                                 : !expected.equals(generated)) {
+                error = command + ": " + expected + " " + generated;
+            }
+        }
+
+        public void startPath() throws ParseException {
+            currentX = 0;
+            currentY = 0;
+            xCenter = 0;
+            yCenter = 0;
+            path = new ExtendedGeneralPath(PathIterator.WIND_NON_ZERO);
+            producer.startPath();
+            check("start");
+        }
+
+        public void endPath() throws ParseException {
+            producer.endPath();
+            check("end");
+        }
+
+        public void movetoRel(float x, float y) throws ParseException {
+            path.moveTo(xCenter = currentX += x, yCenter = currentY += y);
+            producer.movetoRel(x, y);
+            check("m");
+        }
+
+        public void movetoAbs(float x, float y) throws ParseException {
+            path.moveTo(xCenter = currentX = x, yCenter = currentY = y);
+            producer.movetoAbs(x, y);
+            check("M");
+        }
+
+        public void closePath() throws ParseException {
+            path.closePath();
+            Point2D pt = path.getCurrentPoint();
+            currentX = (float)pt.getX();
+            currentY = (float)pt.getY();
+            producer.closePath();
+            check("z");
+        }
+
+        public void linetoRel(float x, float y) throws ParseException {
+            path.lineTo(xCenter = currentX += x, yCenter = currentY += y);
+            producer.linetoRel(x, y);
+            check("l");
+        }
+
+        public void linetoAbs(float x, float y) throws ParseException {
+            path.lineTo(xCenter = currentX = x, yCenter = currentY = y);
+            producer.linetoAbs(x, y);
+            check("L");
+        }
+
+        public void linetoHorizontalRel(float x) throws ParseException {
+            path.lineTo(xCenter = currentX += x, yCenter = currentY);
+            producer.linetoHorizontalRel(x);
+            check("h");
+        }
+
+        public void linetoHorizontalAbs(float x) throws ParseException {
+            path.lineTo(xCenter = currentX = x, yCenter = currentY);
+            producer.linetoHorizontalAbs(x);
+            check("H");
+        }
+
+        public void linetoVerticalRel(float y) throws ParseException {
+            path.lineTo(xCenter = currentX, yCenter = currentY += y);
+            producer.linetoVerticalRel(y);
+            check("v");
+        }
+
+        public void linetoVerticalAbs(float y) throws ParseException {
+            path.lineTo(xCenter = currentX, yCenter = currentY = y);
+            producer.linetoVerticalAbs(y);
+            check("V");
+        }
+
+        public void curvetoCubicRel(float x1, float y1,
+                                    float x2, float y2,
+                                    float x, float y) throws ParseException {
+            path.curveTo(currentX + x1, currentY + y1,
+                         xCenter = currentX + x2, yCenter = currentY + y2,
+                         currentX += x, currentY += y);
+            producer.curvetoCubicRel(x1, y1, x2, y2, x, y);
+            check("c");
+        }
+
+        public void curvetoCubicAbs(float x1, float y1,
+                                    float x2, float y2,
+                                    float x, float y) throws ParseException {
+            path.curveTo(x1, y1, xCenter = x2, yCenter = y2,
+                         currentX = x, currentY = y);
+            producer.curvetoCubicAbs(x1, y1, x2, y2, x, y);
+            check("C");
+        }
+
+        public void curvetoCubicSmoothRel(float x2, float y2,
+                                          float x, float y)
+            throws ParseException {
+            path.curveTo(currentX * 2 - xCenter, currentY * 2 - yCenter,
+                         xCenter = currentX + x2, yCenter = currentY + y2,
+                         currentX += x, currentY += y);
+            producer.curvetoCubicSmoothRel(x2, y2, x, y);
+            check("s");
+        }
+
+        public void curvetoCubicSmoothAbs(float x2, float y2,
+                                          float x, float y)
+            throws ParseException {
+            path.curveTo(currentX * 2 - xCenter, currentY * 2 - yCenter,
+                         xCenter = x2, yCenter = y2,
+                         currentX = x, currentY = y);
+            producer.curvetoCubicSmoothAbs(x2, y2, x, y);
+            check("S");
+        }
+
+        public void curvetoQuadraticRel(float x1, float y1,
+                                        float x, float y)
+            throws ParseException {
+            path.quadTo(xCenter = currentX + x1, yCenter = currentY + y1,
+                        currentX += x, currentY += y);
+            producer.curvetoQuadraticRel(x1, y1, x, y);
+            check("q");
+        }
+
+        public void curvetoQuadraticAbs(float x1, float y1,
+                                        float x, float y)
+            throws ParseException {
+            path.quadTo(xCenter = x1, yCenter = y1,
+                        currentX = x, currentY = y);
+            producer.curvetoQuadraticAbs(x1, y1, x, y);
+            check("Q");
+        }
+
+        public void curvetoQuadraticSmoothRel(float x, float y)
+            throws ParseException {
+            path.quadTo(xCenter = currentX * 2 - xCenter,
+                        yCenter = currentY * 2 - yCenter,
+                        currentX += x, currentY += y);
+            producer.curvetoQuadraticSmoothRel(x, y);
+            check("t");
+        }
+
+        public void curvetoQuadraticSmoothAbs(float x, float y)
+            throws ParseException {
+            path.quadTo(xCenter = currentX * 2 - xCenter,
+                        yCenter = currentY * 2 - yCenter,
+                        currentX = x, currentY = y);
+            producer.curvetoQuadraticSmoothAbs(x, y);
+            check("T");
+        }
+
+        public void arcRel(float rx, float ry, float xAxisRotation,
+                           boolean largeArcFlag, boolean sweepFlag,
+                           float x, float y) throws ParseException {
+            path.arcTo(rx, ry, xAxisRotation, largeArcFlag, sweepFlag,
+                       xCenter = currentX += x, yCenter = currentY += y);
+            producer.arcRel(rx, ry, xAxisRotation, largeArcFlag, sweepFlag,
+                            x, y);
+            check("a");
+        }
+
+        public void arcAbs(float rx, float ry, float xAxisRotation,
+                           boolean largeArcFlag, boolean sweepFlag,
+                           float x, float y) throws ParseException {
+            path.arcTo(rx, ry, xAxisRotation, largeArcFlag, sweepFlag,
+                       xCenter = currentX = x, yCenter = currentY = y);
+            producer.arcAbs(rx, ry, xAxisRotation, largeArcFlag, sweepFlag,
+                            x, y);
+            check("A");
+        }
+    }
+}
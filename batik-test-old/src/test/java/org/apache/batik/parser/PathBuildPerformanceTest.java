@@ -0,0 +1,135 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.parser;
+
+import java.util.Random;
+
+import org.apache.batik.ext.awt.geom.ExtendedGeneralPath;
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Measures the time taken to parse a path of <code>Segments</code>
+ * segments and build its shape, either with
+ * <code>AWTPathProducer</code> into an <code>ExtendedFloatPath</code>
+ * or, when <code>Compact</code> is false, into an
+ * <code>ExtendedGeneralPath</code>.  The path mixes lines, cubic and
+ * quadratic curves and elliptical arcs, as found in map data.
+ *
+ * @version $Id$
+ */
+public class PathBuildPerformanceTest extends PerformanceTest {
+
+    protected int segments = 100000;
+    protected boolean compact = true;
+
+    protected String data;
+
+    public void setSegments(int segments) {
+        this.segments = segments;
+    }
+
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * Returns a path of absolute commands.
+     */
+    protected String createPathData() {
+        Random rnd = new Random(42);
+        StringBuffer sb = new StringBuffer(segments * 24);
+        sb.append("M 0 0");
+        for (int i = 0; i < segments; i++) {
+            float x = rnd.nextInt(100000) / 100f;
+            float y = rnd.nextInt(100000) / 100f;
+            int r = rnd.nextInt(100);
+            if (r < 70) {
+                sb.append(" L ").append(x).append(' ').append(y);
+            } else if (r < 85) {
+                sb.append(" C ").append(x + 3).append(' ').append(y - 2)
+                    .append(' ').append(x - 1).append(' ').append(y + 4)
+                    .append(' ').append(x).append(' ').append(y);
+            } else if (r < 93) {
+                sb.append(" Q ").append(x + 2).append(' ').append(y + 2)
+                    .append(' ').append(x).append(' ').append(y);
+            } else if (r < 98) {
+                sb.append(" A 5 3 30 0 1 ").append(x).append(' ').append(y);
+            } else {
+                sb.append(" Z M ").append(x).append(' ').append(y);
+            }
+        }
+        return sb.toString();
+    }
+
+    protected void runOp() throws Exception {
+        if (data == null)
+            data = createPathData();
+
+        PathParser pp = new PathParser();
+        if (compact) {
+            AWTPathProducer app = new AWTPathProducer();
+            pp.setPathHandler(app);
+            pp.parse(data);
+            app.getShape();
+        } else {
+            GeneralPathHandler gph = new GeneralPathHandler();
+            pp.setPathHandler(gph);
+            pp.parse(data);
+        }
+    }
+
+    /**
+     * Builds an ExtendedGeneralPath from absolute commands, the way
+     * AWTPathProducer used to.
+     */
+    protected static class GeneralPathHandler extends DefaultPathHandler {
+        protected ExtendedGeneralPath path;
+
+        public void startPath() throws ParseException {
+            path = new ExtendedGeneralPath();
+        }
+        public void movetoAbs(float x, float y) throws ParseException {
+            path.moveTo(x, y);
+        }
+        public void closePath() throws ParseException {
+            path.closePath();
+            path.getCurrentPoint();
+        }
+        public void linetoAbs(float x, float y) throws ParseException {
+            path.lineTo(x, y);
+        }
+        public void curvetoCubicAbs(float x1, float y1,
+                                    float x2, float y2,
+                                    float x, float y) throws ParseException {
+            path.curveTo(x1, y1, x2, y2, x, y);
+        }
+        public void curvetoQuadraticAbs(float x1, float y1,
+                                        float x, float y)
+            throws ParseException {
+            path.quadTo(x1, y1, x, y);
+        }
+        public void arcAbs(float rx, float ry,
+                           float xAxisRotation,
+                           boolean largeArcFlag, boolean sweepFlag,
+                           float x, float y) throws ParseException {
+            path.arcTo(rx, ry, xAxisRotation, largeArcFlag, sweepFlag,
+                       x, y);
+        }
+    }
+}
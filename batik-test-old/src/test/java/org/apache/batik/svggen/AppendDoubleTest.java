@@ -0,0 +1,75 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Random;
+
+import org.w3c.dom.Document;
+
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.test.AbstractTest;
+
+/**
+ * Checks that <code>SVGGeneratorContext</code> formats doubles the same
+ * way as the <code>DecimalFormat</code> it used to go through, at all
+ * precisions, including halfway values.
+ *
+ * @version $Id$
+ */
+public class AppendDoubleTest extends AbstractTest {
+
+    public boolean runImplBasic() throws Exception {
+        Document doc = GenericDOMImplementation.getDOMImplementation().
+            createDocument(null, "svg", null);
+        SVGGeneratorContext ctx = SVGGeneratorContext.createDefault(doc);
+        DecimalFormatSymbols dfs = new DecimalFormatSymbols(Locale.US);
+        Random rand = new Random(20);
+        String format = "#.";
+        for (int p = 0; p <= 12; p++) {
+            ctx.setPrecision(p);
+            DecimalFormat df = new DecimalFormat(p == 0 ? "#" : format, dfs);
+            format += "#";
+            for (int i = 0; i < 20000; i++) {
+                double v;
+                switch (i % 5) {
+                case 0:  v = rand.nextDouble() * 2000 - 1000;        break;
+                case 1:  v = (float)(rand.nextGaussian() * 100);     break;
+                case 2:  v = (rand.nextInt(20000) - 10000) / 16.0;   break;
+                case 3:  v = rand.nextDouble() * 1e-5;               break;
+                default: v = Double.longBitsToDouble(rand.nextLong());
+                }
+                String expected;
+                if (Math.abs(v) >= 10e7 || (int)v == v)
+                    expected = Integer.toString((int)v);
+                else
+                    expected = df.format(v);
+                if (!expected.equals(ctx.doubleString(v)))
+                    return false;
+                StringBuffer sb = new StringBuffer("x");
+                ctx.appendDouble(sb, v);
+                if (!sb.toString().equals("x" + expected))
+                    return false;
+            }
+        }
+        return true;
+    }
+}
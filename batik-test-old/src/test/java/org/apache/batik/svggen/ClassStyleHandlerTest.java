@@ -0,0 +1,126 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.geom.Ellipse2D;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.svggen.SVGGeneratorContext.GraphicContextDefaults;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.util.SVGConstants;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+/**
+ * Checks that the ClassStyleHandler shares a class between the
+ * elements drawn with the same style, that each class used has a rule
+ * written before it, and that the output does not depend on the run.
+ *
+ * @version $Id$
+ */
+public class ClassStyleHandlerTest extends AbstractTest implements SVGConstants {
+
+    public static final Dimension CANVAS_SIZE = new Dimension(300, 400);
+
+    public static final int N = 1000;
+
+    public boolean runImplBasic() throws Exception {
+        String svg = paint(false);
+        if (!svg.equals(paint(false)))
+            return false;
+        if (!check(svg))
+            return false;
+
+        String streamed = paint(true);
+        if (!streamed.equals(paint(true)))
+            return false;
+        return check(streamed);
+    }
+
+    protected boolean check(String svg) throws Exception {
+        if (count(svg, "<circle ") != N)
+            return false;
+        if (svg.indexOf(" fill=\"") != -1 || svg.indexOf(" stroke=\"") != -1)
+            return false;
+
+        // Few rules, each written before the class is used.
+        if (count(svg, " {") > 10)
+            return false;
+        Matcher m = Pattern.compile("class=\"([^\"]*)\"").matcher(svg);
+        while (m.find()) {
+            int rule = svg.indexOf("." + m.group(1) + " {");
+            if (rule == -1 || (m.start() > svg.indexOf("<g") && rule > m.start()))
+                return false;
+        }
+
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        Document doc = new SAXSVGDocumentFactory(parser).createDocument
+            ("file:/classes.svg", new StringReader(svg));
+        return doc.getElementsByTagNameNS(SVG_NAMESPACE_URI, SVG_STYLE_TAG).
+            getLength() > 0;
+    }
+
+    protected String paint(boolean stream) throws Exception {
+        SVGGraphics2D g = createGraphics();
+        StringWriter sw = new StringWriter();
+        if (stream)
+            g.startStream(sw);
+        for (int i = 0; i < N; i++) {
+            g.setColor((i % 2 == 0) ? Color.black : Color.green);
+            g.fill(new Ellipse2D.Double(i % 300, i % 400, 2, 2));
+        }
+        if (stream)
+            g.endStream();
+        else
+            g.stream(sw);
+        return sw.toString();
+    }
+
+    protected SVGGraphics2D createGraphics() {
+        DOMImplementation impl =
+            GenericDOMImplementation.getDOMImplementation();
+        Document domFactory =
+            impl.createDocument(SVG_NAMESPACE_URI, SVG_SVG_TAG, null);
+        SVGGeneratorContext ctx = SVGGeneratorContext.createDefault(domFactory);
+        GraphicContextDefaults defaults = new GraphicContextDefaults();
+        defaults.font = new Font("Arial", Font.PLAIN, 12);
+        ctx.setGraphicContextDefaults(defaults);
+        ctx.setStyleHandler(new ClassStyleHandler());
+        SVGGraphics2D g2d = new SVGGraphics2D(ctx, false);
+        g2d.setSVGCanvasSize(CANVAS_SIZE);
+        return g2d;
+    }
+
+    protected static int count(String s, String sub) {
+        int ret = 0;
+        for (int i = s.indexOf(sub); i != -1; i = s.indexOf(sub, i + 1))
+            ret++;
+        return ret;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.awt.geom.GeneralPath;
+import java.awt.geom.PathIterator;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Random;
+
+import org.w3c.dom.Document;
+
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Compares the conversion of a long path to path data by
+ * <code>SVGPath</code> with the same conversion done through a
+ * <code>DecimalFormat</code>.
+ *
+ * @version $Id$
+ */
+public class PathPerformanceTest extends PerformanceTest {
+
+    protected GeneralPath path = new GeneralPath();
+
+    protected SVGGeneratorContext ctx;
+
+    protected DecimalFormat format =
+        new DecimalFormat("#.####", new DecimalFormatSymbols(Locale.US));
+
+    public PathPerformanceTest() {
+        Random rand = new Random(4);
+        path.moveTo(rand.nextFloat() * 500, rand.nextFloat() * 500);
+        for (int i = 0; i < 20000; i++) {
+            if (i % 4 == 0) {
+                path.curveTo(rand.nextFloat() * 500, rand.nextFloat() * 500,
+                             rand.nextFloat() * 500, rand.nextFloat() * 500,
+                             rand.nextFloat() * 500, rand.nextFloat() * 500);
+            } else {
+                path.lineTo(rand.nextFloat() * 500, rand.nextFloat() * 500);
+            }
+        }
+        Document doc = GenericDOMImplementation.getDOMImplementation().
+            createDocument(null, "svg", null);
+        ctx = SVGGeneratorContext.createDefault(doc);
+    }
+
+    public void runRef() {
+        StringBuffer d = new StringBuffer(40);
+        PathIterator pi = path.getPathIterator(null);
+        float[] seg = new float[6];
+        while (!pi.isDone()) {
+            int n = 2;
+            switch (pi.currentSegment(seg)) {
+            case PathIterator.SEG_MOVETO:  d.append('M'); break;
+            case PathIterator.SEG_LINETO:  d.append('L'); break;
+            case PathIterator.SEG_CUBICTO: d.append('C'); n = 6; break;
+            }
+            for (int i = 0; i < n; i++) {
+                double v = seg[i];
+                if ((int)v == v)
+                    d.append(Integer.toString((int)v));
+                else
+                    d.append(format.format(v));
+                d.append(' ');
+            }
+            pi.next();
+        }
+        d.toString().trim();
+    }
+
+    public void runOp() {
+        SVGPath.toSVGPathData(path, ctx);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.geom.Ellipse2D;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.svggen.SVGGeneratorContext.GraphicContextDefaults;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.util.SVGConstants;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+/**
+ * Checks that streaming the SVGGraphics2D output while drawing gives
+ * the same document as streaming it at the end, that the definitions
+ * used are written along, and that the groups written are not kept in
+ * the tree.
+ *
+ * @version $Id$
+ */
+public class StreamTest extends AbstractTest implements SVGConstants {
+
+    public static final Dimension CANVAS_SIZE = new Dimension(300, 400);
+
+    public boolean runImplBasic() throws Exception {
+        // Without definitions the output is the same.
+        SVGGraphics2D g = createGraphics();
+        new BasicShapes().paint(g);
+        StringWriter swA = new StringWriter();
+        g.stream(swA);
+
+        g = createGraphics();
+        StringWriter swB = new StringWriter();
+        g.startStream(swB);
+        new BasicShapes().paint(g);
+        g.endStream();
+        if (!swA.toString().equals(swB.toString()))
+            return false;
+
+        // A scatter plot: the tree holds at most two groups, the one
+        // being drawn and a new empty one.
+        g = createGraphics();
+        StringWriter swC = new StringWriter();
+        g.startStream(swC);
+        g.setPaint(new GradientPaint(0, 0, Color.red, 300, 0, Color.blue));
+        g.fill(new Ellipse2D.Double(0, 0, 300, 400));
+        int n = 5000;
+        for (int i = 0; i < n; i++) {
+            g.setColor((i % 2 == 0) ? Color.black : Color.green);
+            g.fill(new Ellipse2D.Double(i % 300, i % 400, 2, 2));
+            if (g.getDOMTreeManager().topLevelGroup.getChildNodes().
+                getLength() > 2)
+                return false;
+        }
+        g.endStream();
+
+        String svg = swC.toString();
+        if (count(svg, "<circle ") != n)
+            return false;
+
+        // The gradient is defined once, and the document parses.
+        if (count(svg, "<linearGradient ") != 1)
+            return false;
+        Matcher m = Pattern.compile("url\\(#([^)]*)\\)").matcher(svg);
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        Document doc = new SAXSVGDocumentFactory(parser).createDocument
+            ("file:/stream.svg", new StringReader(svg));
+        while (m.find()) {
+            if (doc.getElementById(m.group(1)) == null)
+                return false;
+        }
+        return true;
+    }
+
+    protected SVGGraphics2D createGraphics() {
+        DOMImplementation impl =
+            GenericDOMImplementation.getDOMImplementation();
+        Document domFactory =
+            impl.createDocument(SVG_NAMESPACE_URI, SVG_SVG_TAG, null);
+        SVGGeneratorContext ctx = SVGGeneratorContext.createDefault(domFactory);
+        GraphicContextDefaults defaults = new GraphicContextDefaults();
+        defaults.font = new Font("Arial", Font.PLAIN, 12);
+        ctx.setGraphicContextDefaults(defaults);
+        SVGGraphics2D g2d = new SVGGraphics2D(ctx, false);
+        g2d.setSVGCanvasSize(CANVAS_SIZE);
+        return g2d;
+    }
+
+    protected static int count(String s, String sub) {
+        int ret = 0;
+        for (int i = s.indexOf(sub); i != -1; i = s.indexOf(sub, i + 1))
+            ret++;
+        return ret;
+    }
+}
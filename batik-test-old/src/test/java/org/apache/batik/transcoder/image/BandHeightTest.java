@@ -0,0 +1,137 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+
+/**
+ * Checks that a document rendered in bands of <code>bandHeight</code>
+ * rows with <code>KEY_BAND_HEIGHT</code> decodes to the same pixels as
+ * when it is rendered at once, and that no image taller than a band is
+ * created on the way.  The encoded files themselves may differ, the
+ * TIFF strips follow the bands.
+ *
+ * @version $Id$
+ */
+public class BandHeightTest extends AbstractTest {
+
+    public static final String ERROR_IMAGE_DIFFER =
+        "BandHeightTest.error.image.differ";
+
+    public static final String ERROR_IMAGE_TOO_TALL =
+        "BandHeightTest.error.image.too.tall";
+
+    protected String inputURI;
+    protected String format;
+    protected int bandHeight;
+
+    /**
+     * @param inputURI the URI of the document to transcode
+     * @param format "png" or "tiff"
+     * @param bandHeight the number of rows rendered at a time
+     */
+    public BandHeightTest(String inputURI, String format,
+                          Integer bandHeight) {
+        this.inputURI = inputURI;
+        this.format = format;
+        this.bandHeight = bandHeight;
+    }
+
+    public String getName() {
+        return inputURI + " " + format + " " + bandHeight;
+    }
+
+    public TestReport runImpl() throws Exception {
+        int[] tallest = new int[1];
+        byte[] ref = transcode(null, tallest);
+        int height = tallest[0];
+
+        tallest[0] = 0;
+        byte[] data = transcode(bandHeight, tallest);
+
+        DefaultTestReport report = new DefaultTestReport(this);
+        if (tallest[0] > bandHeight) {
+            report.setErrorCode(ERROR_IMAGE_TOO_TALL);
+            report.addDescriptionEntry("height", Integer.toString(height));
+            report.addDescriptionEntry("tallest", Integer.toString(tallest[0]));
+            report.setPassed(false);
+        } else if (!Arrays.equals(decode(ref), decode(data))) {
+            report.setErrorCode(ERROR_IMAGE_DIFFER);
+            report.setPassed(false);
+        } else {
+            report.setPassed(true);
+        }
+        return report;
+    }
+
+    /**
+     * Transcodes the document, recording the height of the tallest
+     * image the transcoder created in <code>tallest[0]</code>.
+     */
+    protected byte[] transcode(Integer band, final int[] tallest)
+            throws Exception {
+        ImageTranscoder t;
+        if ("tiff".equals(format)) {
+            t = new TIFFTranscoder() {
+                    public BufferedImage createImage(int w, int h) {
+                        tallest[0] = Math.max(tallest[0], h);
+                        return super.createImage(w, h);
+                    }
+                };
+        } else {
+            t = new PNGTranscoder() {
+                    public BufferedImage createImage(int w, int h) {
+                        tallest[0] = Math.max(tallest[0], h);
+                        return super.createImage(w, h);
+                    }
+                };
+        }
+        t.addTranscodingHint(ImageTranscoder.KEY_WIDTH, 1200f);
+        if (band != null)
+            t.addTranscodingHint(ImageTranscoder.KEY_BAND_HEIGHT, band);
+
+        String uri = new File(inputURI).getAbsoluteFile().toURI().toString();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        t.transcode(new TranscoderInput(uri), new TranscoderOutput(out));
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the pixels of an encoded image.
+     */
+    protected int[] decode(byte[] data) throws IOException {
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
+        int w = img.getWidth();
+        int h = img.getHeight();
+        return img.getRGB(0, 0, w, h, null, 0, w);
+    }
+}
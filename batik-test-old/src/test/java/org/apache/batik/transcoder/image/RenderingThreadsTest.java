@@ -0,0 +1,107 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder.image;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+
+/**
+ * Checks that a document rendered with <code>KEY_RENDERING_THREADS</code>
+ * set to <code>threads</code> has exactly the pixels of the single
+ * threaded rendering, done by a <code>StaticRenderer</code>.
+ *
+ * @version $Id$
+ */
+public class RenderingThreadsTest extends AbstractTest {
+
+    public static final String ERROR_IMAGE_DIFFER =
+        "RenderingThreadsTest.error.image.differ";
+
+    public static final String ENTRY_KEY_PIXELS =
+        "RenderingThreadsTest.entry.key.pixels";
+
+    protected String inputURI;
+    protected int threads;
+
+    /**
+     * @param inputURI the URI of the document to transcode
+     * @param threads the number of rendering threads, 0 for one per
+     *        processor
+     */
+    public RenderingThreadsTest(String inputURI, Integer threads) {
+        this.inputURI = inputURI;
+        this.threads = threads;
+    }
+
+    public String getName() {
+        return inputURI + " " + threads;
+    }
+
+    public TestReport runImpl() throws Exception {
+        int[] ref = transcode(null);
+        int[] data = transcode(threads);
+
+        int differ = 0;
+        for (int i = 0; i < ref.length; i++) {
+            if (ref[i] != data[i])
+                differ++;
+        }
+        if (differ != 0) {
+            DefaultTestReport report = new DefaultTestReport(this);
+            report.setErrorCode(ERROR_IMAGE_DIFFER);
+            report.addDescriptionEntry(ENTRY_KEY_PIXELS,
+                                       Integer.toString(differ));
+            report.setPassed(false);
+            return report;
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Transcodes the document and returns its pixels.
+     */
+    protected int[] transcode(Integer n) throws Exception {
+        final BufferedImage[] result = new BufferedImage[1];
+        ImageTranscoder t = new ImageTranscoder() {
+                public BufferedImage createImage(int w, int h) {
+                    return new BufferedImage
+                        (w, h, BufferedImage.TYPE_INT_ARGB);
+                }
+                public void writeImage(BufferedImage img,
+                                       TranscoderOutput output) {
+                    result[0] = img;
+                }
+            };
+        if (n != null)
+            t.addTranscodingHint(ImageTranscoder.KEY_RENDERING_THREADS, n);
+
+        String uri = new File(inputURI).getAbsoluteFile().toURI().toString();
+        t.transcode(new TranscoderInput(uri), new TranscoderOutput());
+        BufferedImage img = result[0];
+        int w = img.getWidth();
+        int h = img.getHeight();
+        return img.getRGB(0, 0, w, h, null, 0, w);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.xml;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that <code>XMLScanner</code> reads decimal and hexadecimal
+ * character references of any length, and rejects empty or
+ * unterminated ones.
+ *
+ * @version $Id$
+ */
+public class XMLScannerCharacterReferenceTest extends AbstractTest {
+
+    public static final String[] VALID = {
+        "9", "65", "8364", "x9", "xA", "x41", "x20AC", "x1F63F"
+    };
+
+    public static final String[] INVALID = {
+        "&#;", "&#x;", "&#9 ", "&#x9 ", "&#a;"
+    };
+
+    public TestReport runImpl() throws Exception {
+        for (int i = 0; i < VALID.length; i++) {
+            String ref = scanReference("&#" + VALID[i] + ";");
+            if (!VALID[i].equals(ref)) {
+                return reportError("&#" + VALID[i] + "; read as " + ref);
+            }
+        }
+        for (int i = 0; i < INVALID.length; i++) {
+            try {
+                String ref = scanReference(INVALID[i]);
+                return reportError(INVALID[i] + " read as " + ref);
+            } catch (XMLException e) {
+            }
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Scans an element whose content is <code>ref</code> and returns
+     * the value of the character reference found in it, or null.
+     */
+    protected String scanReference(String ref) throws XMLException {
+        XMLScanner s = new XMLScanner("<a>" + ref + "</a>");
+        String result = null;
+        int t;
+        while ((t = s.next()) != LexicalUnits.EOF) {
+            if (t == LexicalUnits.CHARACTER_REFERENCE) {
+                int start = s.getStart() + s.getStartOffset();
+                int end = s.getEnd() + s.getEndOffset();
+                result = new String(s.getBuffer(), start, end - start);
+            }
+        }
+        return result;
+    }
+}
@@ -21,14 +21,22 @@ package org.apache.batik.transcoder.image;
 import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
 import java.awt.Paint;
+import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
 import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.ext.awt.image.rendered.AbstractRed;
+import org.apache.batik.ext.awt.image.rendered.CachableRed;
 import org.apache.batik.gvt.renderer.ConcreteImageRendererFactory;
 import org.apache.batik.gvt.renderer.ImageRenderer;
 import org.apache.batik.gvt.renderer.ImageRendererFactory;
@@ -37,6 +45,7 @@ import org.apache.batik.transcoder.TranscoderException;
 import org.apache.batik.transcoder.TranscoderOutput;
 import org.apache.batik.transcoder.TranscodingHints;
 import org.apache.batik.transcoder.keys.BooleanKey;
+import org.apache.batik.transcoder.keys.IntegerKey;
 import org.apache.batik.transcoder.keys.PaintKey;
 import org.w3c.dom.Document;
 
@@ -64,11 +73,23 @@ import org.w3c.dom.Document;
  * stylesheet, and <code>KEY_MM_PER_PIXEL</code> to specify the number of
  * millimeters in each pixel .
  *
+ * <p>The <code>KEY_RENDERING_THREADS</code> key selects the number of
+ * threads used to rasterize the document.
+ *
+ * <p>The <code>KEY_BAND_HEIGHT</code> key makes the transcoder render
+ * the document one band of rows at a time, as the image is written,
+ * instead of into a single image of the output size.
+ *
  * @author <a href="mailto:Thierry.Kormann@sophia.inria.fr">Thierry Kormann</a>
  * @version $Id$
  */
 public abstract class ImageTranscoder extends SVGAbstractTranscoder {
 
+    /**
+     * The pool the current document is rendered on, if any.
+     */
+    protected ForkJoinPool renderPool;
+
     /**
      * Constructs a new <code>ImageTranscoder</code>.
      */
@@ -97,6 +118,31 @@ public abstract class ImageTranscoder extends SVGAbstractTranscoder {
 
         // paint the SVG document using the bridge package
         // create the appropriate renderer
+        renderPool = createRenderPool();
+        try {
+            renderImage(w, h, output);
+        } finally {
+            if (renderPool != null) {
+                renderPool.shutdown();
+                renderPool = null;
+            }
+        }
+    }
+
+    /**
+     * Renders the GVT tree to a <code>w</code> by <code>h</code> image
+     * and writes it to <code>output</code>.
+     */
+    private void renderImage(int w, int h, TranscoderOutput output)
+            throws TranscoderException {
+        int bandHeight = 0;
+        if (hints.containsKey(KEY_BAND_HEIGHT))
+            bandHeight = (Integer)hints.get(KEY_BAND_HEIGHT);
+        if ((bandHeight > 0) && (bandHeight < h)) {
+            renderBands(w, h, bandHeight, output);
+            return;
+        }
+
         ImageRenderer renderer = createRenderer();
         renderer.updateOffScreen(w, h);
         // curTxf.translate(0.5, 0.5);
@@ -133,15 +179,180 @@ public abstract class ImageTranscoder extends SVGAbstractTranscoder {
         }
     }
 
+    /**
+     * Renders the GVT tree in bands of <code>bandHeight</code> rows,
+     * each band being rendered when the image writer first asks for
+     * it.
+     */
+    private void renderBands(int w, int h, int bandHeight,
+                             TranscoderOutput output)
+            throws TranscoderException {
+        ImageRenderer renderer = createRenderer();
+        renderer.setTree(this.root);
+        this.root = null; // We're done with it...
+
+        try {
+            writeRenderedImage(new BandRed(renderer, w, h, bandHeight),
+                               output);
+        } catch (TranscoderException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new TranscoderException(ex);
+        } finally {
+            renderer.dispose();
+        }
+    }
+
+    /**
+     * An image whose tiles are full width bands of the document, each
+     * one rendered on demand.  Only the last band rendered is kept, so
+     * the bands should be read in order.
+     */
+    private class BandRed extends AbstractRed {
+
+        private ImageRenderer renderer;
+        private Paint background;
+        private boolean forceWhite;
+
+        private int lastBand = -1;
+        private Raster lastTile;
+
+        BandRed(ImageRenderer renderer, int w, int h, int bandHeight) {
+            this.renderer = renderer;
+            if (hints.containsKey(KEY_BACKGROUND_COLOR))
+                background = (Paint)hints.get(KEY_BACKGROUND_COLOR);
+
+            BufferedImage bi = createImage(1, 1);
+            if (hints.containsKey(KEY_FORCE_TRANSPARENT_WHITE))
+                forceWhite = (Boolean)hints.get(KEY_FORCE_TRANSPARENT_WHITE)
+                    && bi.getColorModel().hasAlpha()
+                    && (bi.getRaster().getDataBuffer()
+                        instanceof DataBufferInt)
+                    && (bi.getSampleModel()
+                        instanceof SinglePixelPackedSampleModel);
+
+            init((CachableRed)null, new Rectangle(0, 0, w, h),
+                 bi.getColorModel(),
+                 bi.getSampleModel().createCompatibleSampleModel
+                 (w, bandHeight),
+                 0, 0, null);
+        }
+
+        public synchronized Raster getTile(int tileX, int tileY) {
+            if (tileY != lastBand) {
+                lastTile = null; // Let it go before rendering the next.
+                lastTile = renderBand(tileY);
+                lastBand = tileY;
+            }
+            return lastTile;
+        }
+
+        public WritableRaster copyData(WritableRaster wr) {
+            copyToRaster(wr);
+            return wr;
+        }
+
+        /**
+         * Renders band <code>band</code> through a renderer whose
+         * transform is moved up to the first row of the band.
+         */
+        private Raster renderBand(int band) {
+            int y  = band*tileHeight;
+            int bh = Math.min(tileHeight, bounds.height - y);
+            int w  = bounds.width;
+
+            AffineTransform at = AffineTransform.getTranslateInstance(0, -y);
+            at.concatenate(curTxf);
+            renderer.setTransform(at);
+            renderer.updateOffScreen(w, bh);
+
+            Shape raoi = new Rectangle2D.Float
+                (0, 0, width, Math.min(bh, height - y));
+            try {
+                // Warning: the renderer's AOI must be in user space
+                renderer.repaint(at.createInverse().
+                                 createTransformedShape(raoi));
+            } catch (NoninvertibleTransformException ex) {
+                throw new IllegalStateException(ex.getMessage());
+            }
+            BufferedImage rend = renderer.getOffScreen();
+
+            BufferedImage dest = createImage(w, bh);
+            Graphics2D g2d = GraphicsUtil.createGraphics(dest);
+            if (background != null) {
+                g2d.setComposite(AlphaComposite.SrcOver);
+                g2d.setPaint(background);
+                g2d.fillRect(0, 0, w, bh);
+            }
+            if (rend != null) { // might be null if the svg document is empty
+                g2d.drawRenderedImage(rend, new AffineTransform());
+            }
+            g2d.dispose();
+            if (forceWhite)
+                forceTransparentWhite
+                    (dest, (SinglePixelPackedSampleModel)dest.getSampleModel());
+
+            return dest.getRaster().createTranslatedChild(0, y);
+        }
+    }
+
+    /**
+     * Writes an image that is rendered as it is read, which happens
+     * when <code>KEY_BAND_HEIGHT</code> is set.  The image has already
+     * been converted according to <code>KEY_FORCE_TRANSPARENT_WHITE</code>.
+     * Subclasses whose encoders pull the image a strip at a time
+     * override this method so that the whole image is never held in
+     * memory; by default the image is copied into an image from
+     * {@link #createImage(int,int)} which is passed to
+     * {@link #writeImage(BufferedImage,TranscoderOutput)}.
+     *
+     * @param img the image to write
+     * @param output the output where to store the image
+     * @throws TranscoderException if an error occured while storing the image
+     */
+    protected void writeRenderedImage(RenderedImage img,
+                                      TranscoderOutput output)
+            throws TranscoderException {
+        writeImage(copyImage(img), output);
+    }
+
+    /**
+     * Copies <code>img</code> into an image from
+     * {@link #createImage(int,int)}.
+     */
+    protected BufferedImage copyImage(RenderedImage img) {
+        BufferedImage dest = createImage(img.getWidth(), img.getHeight());
+        img.copyData(dest.getRaster().createWritableTranslatedChild
+                     (img.getMinX(), img.getMinY()));
+        return dest;
+    }
+
     /**
      * Method so subclasses can modify the Renderer used to render document.
      */
     protected ImageRenderer createRenderer() {
-        ImageRendererFactory rendFactory = new ConcreteImageRendererFactory();
+        ImageRendererFactory rendFactory
+            = new ConcreteImageRendererFactory(renderPool);
         // ImageRenderer renderer = rendFactory.createDynamicImageRenderer();
         return rendFactory.createStaticImageRenderer();
     }
 
+    /**
+     * Creates the pool used to render the document according to
+     * <code>KEY_RENDERING_THREADS</code>, or returns null if the
+     * document should be rendered on the calling thread.
+     */
+    protected ForkJoinPool createRenderPool() {
+        if (!hints.containsKey(KEY_RENDERING_THREADS))
+            return null;
+        int n = (Integer)hints.get(KEY_RENDERING_THREADS);
+        if (n <= 0)
+            n = Runtime.getRuntime().availableProcessors();
+        if (n == 1)
+            return null;
+        return new ForkJoinPool(n);
+    }
+
     /**
      * Converts an image so that viewers which do not support the
      * alpha channel will see a white background (and not a black
@@ -275,4 +486,75 @@ public abstract class ImageTranscoder extends SVGAbstractTranscoder {
      */
     public static final TranscodingHints.Key KEY_FORCE_TRANSPARENT_WHITE
         = new BooleanKey();
+
+    /**
+     * The rendering threads key.
+     *
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_RENDERING_THREADS</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Integer</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">1</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">The number of threads the document is
+     *       rasterized on.  The image is split into the same blocks
+     *       of tiles as the single threaded rendering, so the result
+     *       is identical, and the blocks are rendered in parallel.
+     *       The tiles of an area rendered from scratch form a single
+     *       block, so this only helps when part of the rendering is
+     *       already cached.  A value of 0 uses one thread per available
+     *       processor.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_RENDERING_THREADS
+        = new IntegerKey();
+
+    /**
+     * The band height key.
+     *
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_BAND_HEIGHT</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Integer</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">0</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">The number of rows rendered at a time.  When
+     *       set the document is rendered band by band as the image is
+     *       encoded, so the memory used depends on the band height
+     *       rather than on the image height.  The PNG and TIFF
+     *       transcoders encode the bands as they come, other formats
+     *       may still need the whole image.  0 renders the whole image
+     *       at once.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_BAND_HEIGHT
+        = new IntegerKey();
 }
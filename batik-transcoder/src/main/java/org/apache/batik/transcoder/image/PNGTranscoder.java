@@ -19,6 +19,7 @@
 package org.apache.batik.transcoder.image;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
@@ -112,6 +113,35 @@ public class PNGTranscoder extends ImageTranscoder {
             forceTransparentWhite(img, sppsm);
         }
 
+        getWriteAdapter().writeImage(this, img, output);
+    }
+
+    /**
+     * Writes the specified image to the specified output, a strip at a
+     * time if the write adapter supports it.
+     * @param img the image to write
+     * @param output the output where to store the image
+     * @throws TranscoderException if an error occured while storing the image
+     */
+    protected void writeRenderedImage(RenderedImage img,
+                                      TranscoderOutput output)
+            throws TranscoderException {
+        if (output.getOutputStream() == null) {
+            throw new TranscoderException(
+                Messages.formatMessage("png.badoutput", null));
+        }
+        WriteAdapter adapter = getWriteAdapter();
+        if (adapter instanceof RenderedImageWriteAdapter) {
+            ((RenderedImageWriteAdapter)adapter).writeImage(this, img, output);
+        } else {
+            adapter.writeImage(this, copyImage(img), output);
+        }
+    }
+
+    /**
+     * Returns the adapter used to write the images.
+     */
+    private WriteAdapter getWriteAdapter() throws TranscoderException {
         WriteAdapter adapter = getWriteAdapter(
                 "org.apache.batik.ext.awt.image.codec.png.PNGTranscoderInternalCodecWriteAdapter");
         if (adapter == null) {
@@ -122,7 +152,7 @@ public class PNGTranscoder extends ImageTranscoder {
             throw new TranscoderException(
                     "Could not write PNG file because no WriteAdapter is availble");
         }
-        adapter.writeImage(this, img, output);
+        return adapter;
     }
     
     // --------------------------------------------------------------------
@@ -148,6 +178,27 @@ public class PNGTranscoder extends ImageTranscoder {
                 TranscoderOutput output) throws TranscoderException;
 
     }
+
+    /**
+     * A <code>WriteAdapter</code> whose codec pulls the image to write
+     * a strip at a time, so that the image does not need to be held in
+     * memory as a whole.
+     *
+     * @version $Id$
+     */
+    public interface RenderedImageWriteAdapter extends WriteAdapter {
+
+        /**
+         * Writes the specified image to the specified output.
+         * @param transcoder the calling PNGTranscoder
+         * @param img the image to write
+         * @param output the output where to store the image
+         * @throws TranscoderException if an error occured while storing the image
+         */
+        void writeImage(PNGTranscoder transcoder, RenderedImage img,
+                TranscoderOutput output) throws TranscoderException;
+
+    }
     
 
     // --------------------------------------------------------------------
@@ -225,4 +276,99 @@ public class PNGTranscoder extends ImageTranscoder {
      */
     public static final TranscodingHints.Key KEY_INDEXED
         = new IntegerKey();
+
+    /**
+     * The deflate compression level key.
+     *
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_COMPRESSION_LEVEL</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Integer</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">9</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">The zlib compression level of the image data,
+     *       from 0 (none) to 9 (best).  Lower levels write larger
+     *       files faster.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_COMPRESSION_LEVEL
+        = new IntegerKey();
+
+    /**
+     * The deflate compression strategy key.
+     *
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_COMPRESSION_STRATEGY</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Integer</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">java.util.zip.Deflater.DEFAULT_STRATEGY</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">The zlib strategy used for the image data, one
+     *       of the <code>DEFAULT_STRATEGY</code>, <code>FILTERED</code>
+     *       or <code>HUFFMAN_ONLY</code> constants of
+     *       <code>java.util.zip.Deflater</code>.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_COMPRESSION_STRATEGY
+        = new IntegerKey();
+
+    /**
+     * The compression threads key.
+     *
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_COMPRESSION_THREADS</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Integer</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">1</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">The number of threads the image data is
+     *       compressed on.  A value of zero or less uses one thread per
+     *       processor.  Compressing on several threads makes the file
+     *       slightly larger.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_COMPRESSION_THREADS
+        = new IntegerKey();
 }
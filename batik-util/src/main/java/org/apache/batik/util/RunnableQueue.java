@@ -20,11 +20,18 @@ package org.apache.batik.util;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * This class represents an object which queues Runnable objects for
  * invocation in a single thread.
  *
+ * Runnables are queued without locking, so threads posting runnables
+ * never block each other or the queue thread.  Only the queue thread
+ * takes runnables off the queue, under the iterator lock.
+ *
  * @author <a href="mailto:stephane@hillion.org">Stephane Hillion</a>
  * @version $Id$
  */
@@ -84,16 +91,34 @@ public class RunnableQueue implements Runnable {
     protected boolean wasResumed;
 
     /**
-     * The Runnable objects list, also used as synchronization point
-     * for pushing/poping runables.
+     * The queued Runnable objects.
+     */
+    private final LinkQueue queue = new LinkQueue();
+
+    /**
+     * The preempting Runnable objects, always run before the ones
+     * in <code>queue</code>.
+     */
+    private final LinkQueue preemptQueue = new LinkQueue();
+
+    /**
+     * Held by the queue thread while it takes a runnable off the
+     * queues, so other threads can look at the queued runnables.
+     */
+    private final Object iteratorLock = new Object();
+
+    /**
+     * Set while the queue thread is, or is about to be, parked waiting
+     * for a runnable.  Cleared by the first thread waking it up, so it
+     * is only unparked once.
      */
-    private final DoublyLinkedList list = new DoublyLinkedList();
+    private final AtomicBoolean waiting = new AtomicBoolean();
 
     /**
-     * Count of preempt entries in queue, so preempt entries
-     * can be kept properly ordered.
+     * The number of times the queue thread yields, looking for a new
+     * runnable, before parking.
      */
-    protected int preemptCount;
+    private static final int SPINS = 16;
 
     /**
      * The object which handle run events.
@@ -108,7 +133,7 @@ public class RunnableQueue implements Runnable {
     /**
      * The {@link IdleRunnable} to run if the queue is empty.
      */
-    private IdleRunnable idleRunnable;
+    private volatile IdleRunnable idleRunnable;
 
     /**
      * The time (in milliseconds) that the idle runnable should be run next.
@@ -199,39 +224,28 @@ public class RunnableQueue implements Runnable {
                 //     Thread.sleep(1);
                 // } catch (InterruptedException ie) { }
 
-                synchronized (list) {
+                synchronized (iteratorLock) {
                     if (state == SUSPENDING)
                         continue;
-                    l = (Link)list.pop();
-                    if (preemptCount != 0) preemptCount--;
-                    if (l == null) {
-                        // No item to run, see if there is an idle runnable
-                        // to run instead.
-                        if (idleRunnable != null &&
-                                (idleRunnableWaitTime = idleRunnable.getWaitTime())
-                                    < System.currentTimeMillis()) {
-                            rable = idleRunnable;
-                        } else {
-                            // Wait for a runnable.
-                            try {
-                                if (idleRunnable != null && idleRunnableWaitTime
-                                        != Long.MAX_VALUE) {
-                                    long t = idleRunnableWaitTime
-                                        - System.currentTimeMillis();
-                                    if (t > 0) {
-                                        list.wait(t);
-                                    }
-                                } else {
-                                    list.wait();
-                                }
-                            } catch (InterruptedException ie) {
-                                // just loop again.
-                            }
-                            continue; // start loop over again...
-                        }
+                    l = preemptQueue.poll();
+                    if (l == null)
+                        l = queue.poll();
+                }
+                if (l == null) {
+                    // No item to run, see if there is an idle runnable
+                    // to run instead.
+                    IdleRunnable ir = idleRunnable;
+                    if (ir != null &&
+                            (idleRunnableWaitTime = ir.getWaitTime())
+                                < System.currentTimeMillis()) {
+                        rable = ir;
                     } else {
-                        rable = l.runnable;
+                        // Wait for a runnable.
+                        waitForRunnable(ir);
+                        continue; // start loop over again...
                     }
+                } else {
+                    rable = l.runnable;
                 }
 
                 try {
@@ -269,8 +283,10 @@ public class RunnableQueue implements Runnable {
                 // invokeAndWait will return).
                 // It's up to the runnables to check if the runnable actually
                 // ran, if that is important.
-                synchronized (list) {
-                    l = (Link)list.pop();
+                synchronized (iteratorLock) {
+                    l = preemptQueue.poll();
+                    if (l == null)
+                        l = queue.poll();
                 }
                 if (l == null) break;
                 else           l.unlock();
@@ -282,6 +298,57 @@ public class RunnableQueue implements Runnable {
         }
     }
 
+    /**
+     * Parks the queue thread until a runnable is queued, the state or
+     * the idle runnable changes, or the idle runnable is due.
+     * @param ir The idle runnable seen by the caller.
+     */
+    private void waitForRunnable(IdleRunnable ir) {
+        // Runnables often come in bursts, give the posting threads a
+        // chance to queue the next one before paying for a park.
+        for (int i = 0; i < SPINS; i++) {
+            if (!preemptQueue.isEmpty() || !queue.isEmpty() ||
+                state != RUNNING || idleRunnable != ir) {
+                return;
+            }
+            Thread.yield();
+        }
+
+        // Producers check 'waiting' after queuing, so once it is set
+        // either we see their runnable below or they unpark us.
+        waiting.set(true);
+        try {
+            if (!preemptQueue.isEmpty() || !queue.isEmpty() ||
+                state != RUNNING || idleRunnable != ir) {
+                return;
+            }
+            if (ir != null && idleRunnableWaitTime != Long.MAX_VALUE) {
+                long t = idleRunnableWaitTime - System.currentTimeMillis();
+                if (t > 0) {
+                    LockSupport.parkNanos(this, t * 1000000L);
+                }
+            } else {
+                LockSupport.park(this);
+            }
+            // As with an interrupted wait, just loop again.
+            Thread.interrupted();
+        } finally {
+            waiting.set(false);
+        }
+    }
+
+    /**
+     * Wakes up the queue thread if it is waiting for a runnable.
+     */
+    private void signal() {
+        if (waiting.get() && waiting.getAndSet(false)) {
+            Thread t = runnableQueueThread;
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
+        }
+    }
+
     /**
      * Returns the thread in which the RunnableQueue is currently running.
      * @return null if the RunnableQueue has not entered his
@@ -302,10 +369,8 @@ public class RunnableQueue implements Runnable {
             throw new IllegalStateException
                 ("RunnableQueue not started or has exited");
         }
-        synchronized (list) {
-            list.push(new Link(r));
-            list.notify();
-        }
+        queue.push(new Link(r));
+        signal();
     }
 
     /**
@@ -327,10 +392,8 @@ public class RunnableQueue implements Runnable {
         }
 
         LockableLink l = new LockableLink(r);
-        synchronized (list) {
-            list.push(l);
-            list.notify();
-        }
+        queue.push(l);
+        signal();
         l.lock();           // todo: the 'other side' of list may retrieve the l before it is locked...
     }
 
@@ -348,11 +411,8 @@ public class RunnableQueue implements Runnable {
             throw new IllegalStateException
                 ("RunnableQueue not started or has exited");
         }
-        synchronized (list) {
-            list.add(preemptCount, new Link(r));
-            preemptCount++;
-            list.notify();
-        }
+        preemptQueue.push(new Link(r));
+        signal();
     }
 
     /**
@@ -376,11 +436,8 @@ public class RunnableQueue implements Runnable {
         }
 
         LockableLink l = new LockableLink(r);
-        synchronized (list) {
-            list.add(preemptCount, l);
-            preemptCount++;
-            list.notify();
-        }
+        preemptQueue.push(l);
+        signal();
         l.lock();               // todo: the 'other side' of list may retrieve the l before it is locked...
     }
 
@@ -419,12 +476,10 @@ public class RunnableQueue implements Runnable {
 
             if (state == RUNNING) {
                 state = SUSPENDING;
-                synchronized (list) {
-                    // Wake up run thread if it is waiting for jobs,
-                    // so we go into the suspended case (notifying
-                    // run-handler etc...)
-                    list.notify();
-                }
+                // Wake up run thread if it is waiting for jobs,
+                // so we go into the suspended case (notifying
+                // run-handler etc...)
+                signal();
             }
 
             if (waitTillSuspended) {
@@ -460,39 +515,38 @@ public class RunnableQueue implements Runnable {
 
     /**
      * Returns iterator lock to use to work with the iterator
-     * returned by iterator().
+     * returned by iterator().  While it is held no runnable is
+     * taken off the queue, runnables may still be added.
      */
     public Object getIteratorLock() {
-        return list;
+        return iteratorLock;
     }
 
     /**
-     * Returns an iterator over the runnables.
+     * Returns an iterator over the runnables, in the order they will
+     * be run.
      */
     public Iterator iterator() {
         return new Iterator() {
-                Link head = (Link)list.getHead();
-                Link link;
-                public boolean hasNext() {
-                    if (head == null) {
-                        return false;
-                    }
-                    if (link == null) {
-                        return true;
+                Link link = preemptQueue.peek();
+                boolean preempt = true;
+                private Link current() {
+                    if (link == null && preempt) {
+                        preempt = false;
+                        link = queue.peek();
                     }
-                    return link != head;
+                    return link;
+                }
+                public boolean hasNext() {
+                    return current() != null;
                 }
                 public Object next() {
-                    if (head == null || head == link) {
+                    Link l = current();
+                    if (l == null) {
                         throw new NoSuchElementException();
                     }
-                    if (link == null) {
-                        link = (Link)head.getNext();
-                        return head.runnable;
-                    }
-                    Object result = link.runnable;
-                    link = (Link)link.getNext();
-                    return result;
+                    link = l.next;
+                    return l.runnable;
                 }
                 public void remove() {
                     throw new UnsupportedOperationException();
@@ -518,11 +572,8 @@ public class RunnableQueue implements Runnable {
      * Sets a Runnable to be run whenever the queue is empty.
      */
     public void setIdleRunnable(IdleRunnable r) {
-        synchronized (list) {
-            idleRunnable = r;
-            idleRunnableWaitTime = 0;
-            list.notify();
-        }
+        idleRunnable = r;
+        signal();
     }
 
     /**
@@ -642,10 +693,74 @@ public class RunnableQueue implements Runnable {
         public void executionResumed(RunnableQueue rq) { }
     }
 
+    /**
+     * A queue of links with any number of threads adding links and a
+     * single thread taking them off.  Adding a link takes no lock.
+     */
+    protected static class LinkQueue {
+
+        /**
+         * The link before the first queued one.  Only moved by the
+         * thread taking links off.
+         */
+        private volatile Link head = new Link(null);
+
+        /**
+         * The last queued link.
+         */
+        private final AtomicReference tail = new AtomicReference(head);
+
+        /**
+         * Adds a link at the end of the queue.  May be called from
+         * any thread.
+         */
+        public void push(Link l) {
+            Link prev = (Link)tail.getAndSet(l);
+            // Until this write l can not be reached from the head,
+            // the queue just looks one link shorter.
+            prev.next = l;
+        }
+
+        /**
+         * Removes and returns the first link, or returns null if the
+         * queue is empty.  Must only be called by one thread at a
+         * time.
+         */
+        public Link poll() {
+            Link l = head.next;
+            if (l == null) {
+                return null;
+            }
+            // l becomes the new head, its runnable is no longer part
+            // of the queue.
+            head = l;
+            return l;
+        }
+
+        /**
+         * Returns the first link without removing it.
+         */
+        public Link peek() {
+            return head.next;
+        }
+
+        /**
+         * Whether the queue is empty.
+         */
+        public boolean isEmpty() {
+            return head.next == null;
+        }
+    }
+
     /**
      * To store a Runnable.
      */
-    protected static class Link extends DoublyLinkedList.Node {
+    protected static class Link {
+
+        /**
+         * The next link in the queue.
+         */
+        private volatile Link next;
 
         /**
          * The Runnable.
@@ -175,8 +175,12 @@ public class StreamNormalizingReader extends NormalizingReader {
         CharDecoderFactory cdf = new ASCIIDecoderFactory();
         charDecoderFactories.put("ASCII", cdf);
         charDecoderFactories.put("US-ASCII", cdf);
-        charDecoderFactories.put("ISO-8859-1", new ISO_8859_1DecoderFactory());
-        charDecoderFactories.put("UTF-8", new UTF8DecoderFactory());
+        cdf = new ISO_8859_1DecoderFactory();
+        charDecoderFactories.put("ISO-8859-1", cdf);
+        charDecoderFactories.put("8859_1", cdf);
+        cdf = new UTF8DecoderFactory();
+        charDecoderFactories.put("UTF-8", cdf);
+        charDecoderFactories.put("UTF8", cdf);
         charDecoderFactories.put("UTF-16", new UTF16DecoderFactory());
     }
 
@@ -0,0 +1,158 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks the ordering and suspension behavior of
+ * <code>RunnableQueue</code>: runnables run in the order they were
+ * queued, preempting runnables run first, <code>invokeAndWait</code>
+ * returns once its runnable ran, nothing runs while the queue is
+ * suspended and the iterator sees the pending runnables in the order
+ * they will run.
+ *
+ * @version $Id$
+ */
+public class RunnableQueueOrderTest extends AbstractTest {
+
+    protected List log = new ArrayList();
+
+    /**
+     * A runnable logging its name.
+     */
+    protected class Logger implements Runnable {
+        protected String name;
+        public Logger(String name) {
+            this.name = name;
+        }
+        public void run() {
+            synchronized (log) {
+                log.add(name);
+            }
+        }
+        public String toString() {
+            return name;
+        }
+    }
+
+    public TestReport runImpl() throws Exception {
+        RunnableQueue rq = RunnableQueue.createRunnableQueue();
+        rq.resumeExecution();
+        try {
+            // Plain ordering, with invokeAndWait as a barrier.
+            for (int i = 0; i < 100; i++)
+                rq.invokeLater(new Logger("a" + i));
+            rq.invokeAndWait(new Logger("end"));
+            List expected = new ArrayList();
+            for (int i = 0; i < 100; i++)
+                expected.add("a" + i);
+            expected.add("end");
+            TestReport r = check("Plain", expected);
+            if (r != null) return r;
+
+            // Preempting runnables jump ahead of the queued ones but
+            // keep their own order.
+            rq.suspendExecution(true);
+            rq.invokeLater(new Logger("n0"));
+            rq.preemptLater(new Logger("p0"));
+            rq.invokeLater(new Logger("n1"));
+            rq.preemptLater(new Logger("p1"));
+
+            expected.clear();
+            expected.add("p0");
+            expected.add("p1");
+            expected.add("n0");
+            expected.add("n1");
+            List pending = new ArrayList();
+            synchronized (rq.getIteratorLock()) {
+                Iterator it = rq.iterator();
+                while (it.hasNext())
+                    pending.add(it.next().toString());
+            }
+            if (!expected.equals(pending))
+                return reportError("Iterator: expected " + expected +
+                                   " got " + pending);
+
+            Thread.sleep(50);
+            synchronized (log) {
+                if (!log.isEmpty())
+                    return reportError("Ran while suspended: " + log);
+            }
+
+            rq.resumeExecution();
+            rq.invokeAndWait(new Logger("end"));
+            expected.add("end");
+            r = check("Preempt", expected);
+            if (r != null) return r;
+
+            // Runnables queued from several threads all run.
+            final RunnableQueue q = rq;
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                final int n = t;
+                threads[t] = new Thread() {
+                        public void run() {
+                            for (int i = 0; i < 1000; i++)
+                                q.invokeLater(new Logger("t" + n));
+                        }
+                    };
+                threads[t].start();
+            }
+            for (int t = 0; t < threads.length; t++)
+                threads[t].join();
+            rq.invokeAndWait(new Logger("end"));
+            synchronized (log) {
+                int n = log.size();
+                log.clear();
+                if (n != threads.length * 1000 + 1)
+                    return reportError("Producers: expected " +
+                                       (threads.length * 1000 + 1) +
+                                       " runnables got " + n);
+            }
+        } finally {
+            rq.invokeLater(new Runnable() {
+                    public void run() {
+                        HaltingThread.haltThread();
+                    }
+                });
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Returns a failure report if the log is not <code>expected</code>,
+     * clears the log.
+     */
+    protected TestReport check(String step, List expected) {
+        List got;
+        synchronized (log) {
+            got = new ArrayList(log);
+            log.clear();
+        }
+        if (expected.equals(got))
+            return null;
+        return reportError(step + ": expected " + expected + " got " + got);
+    }
+}
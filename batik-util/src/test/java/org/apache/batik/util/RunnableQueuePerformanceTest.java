@@ -0,0 +1,71 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.util;
+
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Measures the time taken by <code>Producers</code> threads to post
+ * <code>Events</code> runnables each to a <code>RunnableQueue</code>
+ * and have them all run, as when many threads post updates to the
+ * <code>UpdateManager</code>.
+ *
+ * @version $Id$
+ */
+public class RunnableQueuePerformanceTest extends PerformanceTest {
+
+    protected int producers = 4;
+    protected int events = 20000;
+
+    protected RunnableQueue queue;
+
+    public void setProducers(int producers) {
+        this.producers = producers;
+    }
+
+    public void setEvents(int events) {
+        this.events = events;
+    }
+
+    protected static final Runnable NOOP = new Runnable() {
+            public void run() { }
+        };
+
+    protected void runOp() throws Exception {
+        if (queue == null) {
+            queue = RunnableQueue.createRunnableQueue();
+            queue.resumeExecution();
+        }
+
+        Thread[] threads = new Thread[producers];
+        for (int t = 0; t < producers; t++) {
+            threads[t] = new Thread() {
+                    public void run() {
+                        for (int i = 0; i < events; i++)
+                            queue.invokeLater(NOOP);
+                    }
+                };
+        }
+        for (int t = 0; t < producers; t++)
+            threads[t].start();
+        for (int t = 0; t < producers; t++)
+            threads[t].join();
+        queue.invokeAndWait(NOOP);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.util.io;
+
+import java.io.ByteArrayInputStream;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that <code>StreamNormalizingReader</code> decodes UTF-8 and
+ * ISO-8859-1 with its own decoders, under their standard names as
+ * well as the Java names an XML declaration is mapped to, and that
+ * UTF-8 sequences of every length come out right.
+ *
+ * @version $Id$
+ */
+public class StreamNormalizingReaderTest extends AbstractTest {
+
+    /**
+     * Characters encoded on one to four bytes, the trailing bytes
+     * having their high data bits set.
+     */
+    public static final String UTF8_TEXT =
+        "a\u00e9\u00ff\u07ff\u20ac\u4e3f\uffe9\ud83d\ude3f\udbff\udfff z";
+
+    public TestReport runImpl() throws Exception {
+        byte[] utf8 = UTF8_TEXT.getBytes("UTF-8");
+        String[] utf8Names = { "UTF-8", "utf-8", "UTF8" };
+        for (int i = 0; i < utf8Names.length; i++) {
+            TestReport r = check(utf8, utf8Names[i], UTF8_TEXT,
+                                 UTF8Decoder.class);
+            if (r != null) return r;
+        }
+
+        // Every byte but CR, which the reader turns into LF.
+        byte[] latin1 = new byte[255];
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0, b = 0; b < 256; b++) {
+            if (b == 13) continue;
+            latin1[i++] = (byte)b;
+            sb.append((char)b);
+        }
+        String[] latin1Names = { "ISO-8859-1", "8859_1" };
+        for (int i = 0; i < latin1Names.length; i++) {
+            TestReport r = check(latin1, latin1Names[i], sb.toString(),
+                                 ISO_8859_1Decoder.class);
+            if (r != null) return r;
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Decodes <code>data</code> and returns an error report if the
+     * result is not <code>expected</code> or was not decoded by an
+     * instance of <code>decoder</code>, null otherwise.
+     */
+    protected TestReport check(byte[] data, String enc, String expected,
+                               Class decoder)
+        throws Exception {
+        StreamNormalizingReader r = new StreamNormalizingReader
+            (new ByteArrayInputStream(data), enc);
+        if (!decoder.isInstance(r.charDecoder)) {
+            return reportError(enc + ": decoded by " +
+                               r.charDecoder.getClass().getName());
+        }
+        StringBuffer sb = new StringBuffer();
+        int c;
+        while ((c = r.read()) != -1) {
+            sb.append((char)c);
+        }
+        r.close();
+        if (!expected.equals(sb.toString())) {
+            StringBuffer got = new StringBuffer();
+            for (int i = 0; i < sb.length(); i++) {
+                got.append(Integer.toHexString(sb.charAt(i))).append(' ');
+            }
+            return reportError(enc + ": got " + got);
+        }
+        return null;
+    }
+}
@@ -1975,25 +1975,26 @@ public class XMLScanner implements Localizable {
             int i = 0;
             switch (current) {
             case 'x':
-                do {
+                nextChar();
+                while ((current >= '0' && current <= '9') ||
+                       (current >= 'a' && current <= 'f') ||
+                       (current >= 'A' && current <= 'F')) {
                     i++;
                     nextChar();
-                } while ((current >= '0' && current <= '9') ||
-                         (current >= 'a' && current <= 'f') ||
-                         (current >= 'A' && current <= 'F'));
+                }
                 break;
 
             default:
-                do {
+                while (current >= '0' && current <= '9') {
                     i++;
                     nextChar();
-                } while (current >= '0' && current <= '9');
+                }
                 break;
 
             case -1:
                 throw createXMLException("unexpected.eof");
             }
-            if (i == 1 || current != ';') {
+            if (i == 0 || current != ';') {
                 throw createXMLException("character.reference");
             }
             nextChar();